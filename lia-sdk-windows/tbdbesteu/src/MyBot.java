@@ -8,11 +8,82 @@ import java.util.*;
  * and sending units there. Worker units collect resources if they
  * see them while warrior units shoot if they see opponents.
  */
-public class MyBot implements Bot {
+public class MyBot implements AnytimeBot, StateListener {
+
+    // Warrior roles kept on the blackboard, warriors without a role follow workers
+    private static final int ROLE_GUARD = 1;
+    private static final int ROLE_ATTACK = 2;
+    private Blackboard blackboard = new Blackboard(1, 1);
+
+    // Why units got their commands, kept by the decision recorder
+    private static final int REASON_DODGE = 1;
+    private static final int REASON_FLEE = 2;
+    private static final int REASON_GATHER = 3;
+    private static final int REASON_EXPLORE = 4;
+    private static final int REASON_GUARD_POST = 5;
+    private static final int REASON_GUARD_CORNER = 6;
+    private static final int REASON_ATTACK = 7;
+    private static final int REASON_FOLLOW = 8;
+    private static final int REASON_ENGAGE = 9;
+    private static final int REASON_HOLD = 10;
+    private static final int REASON_RETREAT = 11;
+
+    static {
+        DecisionRecorder.defineReason(REASON_DODGE, "dodge");
+        DecisionRecorder.defineReason(REASON_FLEE, "flee");
+        DecisionRecorder.defineReason(REASON_GATHER, "gather");
+        DecisionRecorder.defineReason(REASON_EXPLORE, "explore");
+        DecisionRecorder.defineReason(REASON_GUARD_POST, "guard post");
+        DecisionRecorder.defineReason(REASON_GUARD_CORNER, "guard corner");
+        DecisionRecorder.defineReason(REASON_ATTACK, "attack");
+        DecisionRecorder.defineReason(REASON_FOLLOW, "follow worker");
+        DecisionRecorder.defineReason(REASON_ENGAGE, "engage");
+        DecisionRecorder.defineReason(REASON_HOLD, "hold");
+        DecisionRecorder.defineReason(REASON_RETREAT, "retreat");
+    }
 
-    public List<UnitData> previousUpdateUnits = new ArrayList<UnitData>();
-    public List<UnitData> guardBots = new ArrayList<UnitData>();
-    public List<UnitData> attackBots = new ArrayList<UnitData>();
+    // Guards stand this far behind the chokepoints out of the spawn region, a guard's post is kept on the blackboard
+    private static final float GUARD_STANDOFF = 4;
+    private float[] guardPostX = new float[0];
+    private float[] guardPostY = new float[0];
+    private float[] guardLookX = new float[0];
+    private float[] guardLookY = new float[0];
+    private int[] guardPostHolders = new int[0];
+
+    // Time we allow for planning bullet dodges on each update
+    private static final long DODGE_BUDGET_NANOS = 5_000_000;
+    private BulletThreats bulletThreats = new BulletThreats();
+    private ShotSafety shotSafety = new ShotSafety();
+    private DodgePlanner dodgePlanner = new DodgePlanner();
+    private AimSolver aimSolver = new AimSolver();
+    // Time we allow each fighting warrior for weighing up the fight
+    private static final long ENGAGEMENT_BUDGET_NANOS = 2_000_000;
+    private EngagementEvaluator engagementEvaluator = new EngagementEvaluator();
+    private SpeculativePlanner speculativePlanner = new SpeculativePlanner();
+    private TickScheduler scheduler = new TickScheduler();
+    private WorkerDispatchTask workerDispatch = new WorkerDispatchTask(1);
+    // Attackers share one flow field to the opponent's corner
+    private static final int GOAL_ATTACK = 0;
+    private FlowFields flowFields = new FlowFields(1);
+    private GameContext context;
+    private StateTracker stateTracker = new StateTracker();
+    private IntSet damagedUnits = new IntSet();
+    // Units that were dodging bullets in the last update
+    private IntSet dodgingUnits = new IntSet();
+    private IntSet targetedOpponents = new IntSet();
+
+    private final StrategyParams params;
+
+    public MyBot() {
+        this(new StrategyParams());
+    }
+
+    public MyBot(StrategyParams params) {
+        this.params = params;
+        stateTracker.subscribe(this);
+        scheduler.register(workerDispatch);
+        scheduler.register(flowFields);
+    }
 
 
     // This method is called 10 times per game second and holds current
@@ -21,114 +92,174 @@ public class MyBot implements Bot {
     // - Api reference:       https://docs.liagame.com/api/#api-object
     @Override
     public void update(GameState state, Api api) {
+        update(state, api, GameContext.lastLoaded());
+    }
+
+    @Override
+    public void update(GameState state, Api api, GameContext context, long deadline) {
+        this.context = context;
         int numberOfWorkers = 0;
-        List<OpponentInView> targetOpponents = new ArrayList<OpponentInView>();
+        targetedOpponents.clear();
 
         for (UnitData unit : state.units) {
             if (unit.type == UnitType.WORKER) numberOfWorkers++;
         }
+        int numberOfWarriors = state.units.length - numberOfWorkers;
 
-        if (numberOfWorkers / (float) state.units.length < 0.5f) {
-            if (state.resources >= Constants.WORKER_PRICE) {
+        if (numberOfWorkers / (float) state.units.length < params.workerRatio) {
+            if (state.resources >= context.workerPrice) {
                 api.spawnUnit(UnitType.WORKER);
             }
-        } else if (state.resources >= Constants.WARRIOR_PRICE) {
+        } else if (state.resources >= context.warriorPrice) {
             api.spawnUnit(UnitType.WARRIOR);
         }
 
-        RemoveDeadGuardBots(state.units);
-        RemoveDeadAttackBots(state.units);
+        damagedUnits.clear();
+        stateTracker.update(state);
+
+        FlightEvents.Subsystem event = FlightEvents.beginSubsystem();
+        bulletThreats.update(state, context);
+        FlightEvents.endSubsystem(event, state.uid, "bulletThreats", "update", 0);
+        event = FlightEvents.beginSubsystem();
+        shotSafety.update(state, context);
+        FlightEvents.endSubsystem(event, state.uid, "shotSafety", "update", 0);
+        event = FlightEvents.beginSubsystem();
+        aimSolver.update(state, context);
+        FlightEvents.endSubsystem(event, state.uid, "aimSolver", "update", 0);
+        long dodgeDeadline = Math.min(deadline, System.nanoTime() + DODGE_BUDGET_NANOS);
 
         // We iterate through all of our units that are still alive.
         for (int i = 0; i < state.units.length; i++) {
             UnitData unit = state.units[i];
 
+            // Units that are not busy fighting first try to get out of the way of incoming bullets.
+            if ((unit.type == UnitType.WORKER || unit.opponentsInView.length == 0) && DodgeBullets(unit, api, state.uid, dodgeDeadline)) {
+                continue;
+            }
+
             // If the unit is a worker and it sees at least one resource
             // then make it go to the first resource to collect it.
             if (unit.type == UnitType.WORKER) {
                 boolean anyOpponentIsLookingWorker = OpponentIsLooking(unit);
                 boolean healthIsLower = HealthIsLower(unit, api);
-                WorkerAction(unit, anyOpponentIsLookingWorker, api, healthIsLower);
+                WorkerAction(unit, anyOpponentIsLookingWorker, api, healthIsLower, state);
             }
 
             // If the unit is a warrior and it sees an opponent then start shooting
             if (unit.type == UnitType.WARRIOR) {
                 if (unit.opponentsInView.length > 0) {
-                    OpponentInView opponent = DetermineOpponent(unit, targetOpponents);
-                    targetOpponents.add(opponent);
+                    OpponentInView opponent = DetermineOpponent(unit);
+                    targetedOpponents.add(opponent.id);
                     float opponentAngle = GetOpponentAngle(unit, opponent);
 
-                    WarriorAction(unit, opponent, opponentAngle, api, state);
+                    WarriorAction(unit, opponent, opponentAngle, api, state, deadline);
                 } else {
                     AssignGuardBot(unit);
-                    AssignAttackBot(unit, state);
+                    AssignAttackBot(unit, numberOfWarriors);
                     MoveWarrior(unit, api, state);
                 }
             }
-
-            UpdatePreviousUnit(unit);
         }
+
+        // Planners use the rest of the time
+        scheduler.run(state, api, context, deadline);
     }
 
-    private void RemoveDeadAttackBots(UnitData[] units) {
-        List<UnitData> removeAttacks = new ArrayList<UnitData>();
+    @Override
+    public void setup(GameContext context) {
+        // Send exploring workers where resources spawned in past games
+        ResourceHeatmap heatmap = ResourceHeatmap.loadDefault();
+        workerDispatch.setResourceMap(heatmap != null ? new ResourceMap(context, heatmap) : null);
+        // Built here, the first update could not afford it
+        workerDispatch.setPathfinder(new HierarchicalPathfinder(context.navigation));
 
-        for (UnitData attackBot : this.attackBots) {
-            Optional<UnitData> existingUnit = Arrays.stream(units).filter((currentUnit) -> currentUnit.id == attackBot.id).findFirst();
+        PlaceGuardPosts(context);
 
-            if (!existingUnit.isPresent()) {
-                removeAttacks.add(attackBot);
-            }
-        }
+        boolean bottomSpawn = context.spawnPointY < (context.mapHeight / 2);
+        flowFields.setGoal(GOAL_ATTACK, bottomSpawn ? context.mapWidth - 1 : 0, bottomSpawn ? context.mapHeight - 1 : 0);
+    }
 
-        for (UnitData removeAttack : removeAttacks) {
-            this.attackBots.removeIf((guardBot) -> guardBot.id == removeAttack.id);
+    @Override
+    public String report() {
+        return scheduler.report();
+    }
+
+    @Override
+    public void responseSent(GameState state) {
+        // Plan the next state while waiting for it
+        speculativePlanner.plan(state, context);
+    }
+
+    @Override
+    public void onUnitDied(int unitId, UnitData lastKnown) {
+        blackboard.remove(unitId);
+        dodgingUnits.remove(unitId);
+        for (int post = 0; post < guardPostHolders.length; post++) {
+            if (guardPostHolders[post] == unitId) guardPostHolders[post] = -1;
         }
     }
 
-    private void AssignAttackBot(UnitData unit, GameState state) {
-        int currentUnitId = unit.id;
-        long currentWarriorAmount = Arrays.stream(state.units).filter((oneUnit) -> oneUnit.type == UnitType.WARRIOR).count();
+    @Override
+    public void onHealthDropped(UnitData unit, int previousHealth) {
+        damagedUnits.add(unit.id);
+    }
 
-        UnitData existingUnit = this.attackBots.stream().filter((attackBot) -> attackBot.id == currentUnitId).findFirst().orElse(null);
-        UnitData existingGuard = this.guardBots.stream().filter((guardBot) -> guardBot.id == currentUnitId).findFirst().orElse(null);
+    private boolean DodgeBullets(UnitData unit, Api api, long uid, long deadline) {
+        FlightEvents.Subsystem event = FlightEvents.beginSubsystem();
+        DodgePlanner.Plan plan = dodgePlanner.plan(bulletThreats, unit, dodgingUnits.contains(unit.id), deadline);
+        FlightEvents.endSubsystem(event, uid, "dodge", "plan", 1);
 
-        if (existingUnit == null && existingGuard == null && this.attackBots.stream().count() < 2 && currentWarriorAmount > 5) {
-            this.attackBots.add(unit);
+        if (plan == null) {
+            dodgingUnits.remove(unit.id);
+            return false;
+        }
+
+        dodgingUnits.add(unit.id);
+
+        api.reason(unit.id, REASON_DODGE);
+        api.setSpeed(unit.id, plan.speed);
+        api.setRotation(unit.id, plan.rotation);
+        return true;
+    }
+
+    private void AssignAttackBot(UnitData unit, int currentWarriorAmount) {
+        if (blackboard.role(unit.id) == Blackboard.NO_ROLE && blackboard.roleCount(ROLE_ATTACK) < params.attackerCount && currentWarriorAmount >= params.warriorsBeforeAttack) {
+            blackboard.setRole(unit.id, ROLE_ATTACK);
         }
     }
 
     private void MoveWarrior(UnitData unit, Api api, GameState state) {
-        if (this.guardBots.stream().filter((guardBot) -> guardBot.id == unit.id).findFirst().isPresent()) {
-            boolean bottomSpawn = Constants.SPAWN_POINT.y < (Constants.MAP_HEIGHT / 2);
+        if (blackboard.hasRole(unit.id, ROLE_GUARD) && blackboard.post(unit.id) != Blackboard.NO_POST) {
+            api.reason(unit.id, REASON_GUARD_POST);
+            HoldChokepoint(unit, api, blackboard.post(unit.id));
+        } else if (blackboard.hasRole(unit.id, ROLE_GUARD)) {
+            api.reason(unit.id, REASON_GUARD_CORNER);
+            boolean bottomSpawn = context.spawnPointY < (context.mapHeight / 2);
 
-            float distanceToCorner = bottomSpawn ? MathUtil.distance(unit.x, unit.y, 0, 0) : MathUtil.distance(unit.x, unit.y, Constants.MAP_WIDTH - 1, Constants.MAP_HEIGHT - 1);
-            float lookDirection = bottomSpawn ? MathUtil.angleBetweenUnitAndPoint(unit, Constants.MAP_WIDTH - 1, Constants.MAP_HEIGHT - 1) : MathUtil.angleBetweenUnitAndPoint(unit, 0, 0);
+            float distanceToCorner = bottomSpawn ? MathUtil.distance(unit.x, unit.y, 0, 0) : MathUtil.distance(unit.x, unit.y, context.mapWidth - 1, context.mapHeight - 1);
+            float lookDirection = bottomSpawn ? MathUtil.angleBetweenUnitAndPoint(unit, context.mapWidth - 1, context.mapHeight - 1) : MathUtil.angleBetweenUnitAndPoint(unit, 0, 0);
 
-            if (distanceToCorner > 6 && unit.speed == Speed.NONE) {
+            if (distanceToCorner > params.guardCornerDistance && unit.speed == Speed.NONE) {
                 Random random = new Random();
-                int rngPos = random.nextInt(5);
-                int xPos = Constants.SPAWN_POINT.x < (Constants.MAP_WIDTH / 2) ? 0 + rngPos : Constants.MAP_WIDTH - 1 - rngPos;
-                int yPos = Constants.SPAWN_POINT.y < (Constants.MAP_HEIGHT / 2) ? 0 + rngPos : Constants.MAP_HEIGHT - 1 - rngPos;
+                int rngPos = random.nextInt(params.guardCornerSpread);
+                int xPos = context.spawnPointX < (context.mapWidth / 2) ? 0 + rngPos : context.mapWidth - 1 - rngPos;
+                int yPos = context.spawnPointY < (context.mapHeight / 2) ? 0 + rngPos : context.mapHeight - 1 - rngPos;
                 api.navigationStart(unit.id, xPos, yPos);
-            } else if (Math.abs(lookDirection) > 10 && unit.speed == Speed.NONE) {
+            } else if (Math.abs(lookDirection) > params.lookAngle && unit.speed == Speed.NONE) {
                 api.setRotation(unit.id, Rotation.RIGHT);
-            } else if (Math.abs(lookDirection) < 10) {
+            } else if (Math.abs(lookDirection) < params.lookAngle) {
                 api.navigationStop(unit.id);
                 api.setSpeed(unit.id, Speed.NONE);
             }
-        } else if (this.attackBots.stream().filter((attackBot) -> attackBot.id == unit.id).findFirst().isPresent()) {
-            boolean bottomSpawn = Constants.SPAWN_POINT.y < (Constants.MAP_HEIGHT / 2);
-            float distanceToCorner = bottomSpawn ? MathUtil.distance(unit.x, unit.y, Constants.MAP_WIDTH -1, Constants.MAP_HEIGHT - 1) : MathUtil.distance(unit.x, unit.y, 0,0);
-            float lookDirection = bottomSpawn ? MathUtil.angleBetweenUnitAndPoint(unit, Constants.MAP_WIDTH -1, Constants.MAP_HEIGHT -1) : MathUtil.angleBetweenUnitAndPoint(unit, 0, 0 );
-
-            if (distanceToCorner > Constants.VIEWING_AREA_LENGTH - 2) {
-                if (bottomSpawn) {
-                    api.navigationStart(unit.id, Constants.MAP_WIDTH -1, Constants.MAP_HEIGHT - 1);
-                } else {
-                    api.navigationStart(unit.id, 0, 0);
-                }
-            } else if (Math.abs(lookDirection) > 10 && unit.speed == Speed.NONE) {
+        } else if (blackboard.hasRole(unit.id, ROLE_ATTACK)) {
+            api.reason(unit.id, REASON_ATTACK);
+            boolean bottomSpawn = context.spawnPointY < (context.mapHeight / 2);
+            float distanceToCorner = bottomSpawn ? MathUtil.distance(unit.x, unit.y, context.mapWidth -1, context.mapHeight - 1) : MathUtil.distance(unit.x, unit.y, 0,0);
+            float lookDirection = bottomSpawn ? MathUtil.angleBetweenUnitAndPoint(unit, context.mapWidth -1, context.mapHeight -1) : MathUtil.angleBetweenUnitAndPoint(unit, 0, 0 );
+
+            if (distanceToCorner > context.viewingAreaLength - params.attackCornerMargin) {
+                flowFields.steer(GOAL_ATTACK, unit);
+            } else if (Math.abs(lookDirection) > params.lookAngle && unit.speed == Speed.NONE) {
                 api.setRotation(unit.id, Rotation.LEFT);
             } else {
                 api.navigationStop(unit.id);
@@ -148,84 +279,113 @@ public class MyBot implements Bot {
             }
 
             if (workerToFollow != null) {
-                float xFollowPos = workerToFollow.x + 3;
-                float yFollowPos = workerToFollow.y + 3;
-                if (xFollowPos < (Constants.MAP_WIDTH - 1) && yFollowPos < (Constants.MAP_HEIGHT - 1)) {
+                api.reason(unit.id, REASON_FOLLOW);
+                float xFollowPos = workerToFollow.x + params.followOffset;
+                float yFollowPos = workerToFollow.y + params.followOffset;
+                if (xFollowPos < (context.mapWidth - 1) && yFollowPos < (context.mapHeight - 1)) {
                     api.navigationStart(unit.id, xFollowPos, yFollowPos);
                 }
             }
         }
     }
 
-    private void RemoveDeadGuardBots(UnitData[] units) {
-        List<UnitData> removeGuards = new ArrayList<UnitData>();
+    private void AssignGuardBot(UnitData unit) {
+        if (blackboard.role(unit.id) == Blackboard.NO_ROLE && blackboard.roleCount(ROLE_GUARD) < params.guardCount) {
+            blackboard.setRole(unit.id, ROLE_GUARD);
 
-        for (UnitData guardBot : this.guardBots) {
-            Optional<UnitData> existingUnit = Arrays.stream(units).filter((currentUnit) -> currentUnit.id == guardBot.id).findFirst();
+            for (int post = 0; post < guardPostHolders.length; post++) {
+                if (guardPostHolders[post] == -1) {
+                    guardPostHolders[post] = unit.id;
+                    blackboard.setPost(unit.id, post);
+                    break;
+                }
+            }
+        }
+    }
 
-            if (!existingUnit.isPresent()) {
-                removeGuards.add(guardBot);
+    // Guard posts are the chokepoints out of the spawn region, the one on the way to the
+    // opponent first. Without chokepoints guards fall back to holding the spawn corner.
+    private void PlaceGuardPosts(GameContext context) {
+        MapAnalysis analysis = context.analysis;
+        List<MapAnalysis.Chokepoint> chokepoints = new ArrayList<>();
+        int spawnRegion = analysis.region(context.spawnPointX, context.spawnPointY);
+
+        if (spawnRegion != MapAnalysis.NO_REGION) {
+            // The opponent spawns in the opposite corner
+            int opponentRegion = analysis.region(context.mapWidth - context.spawnPointX, context.mapHeight - context.spawnPointY);
+            MapAnalysis.Chokepoint towardsOpponent = opponentRegion != MapAnalysis.NO_REGION
+                    ? analysis.nextChokepoint(spawnRegion, opponentRegion) : null;
+            if (towardsOpponent != null) chokepoints.add(towardsOpponent);
+            for (MapAnalysis.Chokepoint chokepoint : analysis.chokepoints(spawnRegion)) {
+                if (chokepoint != towardsOpponent) chokepoints.add(chokepoint);
             }
         }
 
-        for (UnitData removeGuard : removeGuards) {
-            this.guardBots.removeIf((guardBot) -> guardBot.id == removeGuard.id);
+        int posts = chokepoints.size();
+        guardPostX = new float[posts];
+        guardPostY = new float[posts];
+        guardLookX = new float[posts];
+        guardLookY = new float[posts];
+        guardPostHolders = new int[posts];
+        Arrays.fill(guardPostHolders, -1);
+
+        for (int post = 0; post < posts; post++) {
+            MapAnalysis.Chokepoint chokepoint = chokepoints.get(post);
+            // Normal pointing into the spawn region
+            float side = chokepoint.regionA == spawnRegion ? 1 : -1;
+            float normalX = side * chokepoint.normalX;
+            float normalY = side * chokepoint.normalY;
+
+            guardPostX[post] = chokepoint.x + normalX * GUARD_STANDOFF;
+            guardPostY[post] = chokepoint.y + normalY * GUARD_STANDOFF;
+            if (analysis.clearance(guardPostX[post], guardPostY[post]) < context.unitDiameter / 2) {
+                guardPostX[post] = chokepoint.x;
+                guardPostY[post] = chokepoint.y;
+            }
+            guardLookX[post] = chokepoint.x - normalX * GUARD_STANDOFF;
+            guardLookY[post] = chokepoint.y - normalY * GUARD_STANDOFF;
         }
     }
 
-    private void AssignGuardBot(UnitData unit) {
-        int currentUnitId = unit.id;
-        UnitData existingUnit = this.guardBots.stream().filter((guardBot) -> guardBot.id == currentUnitId).findFirst().orElse(null);
-
-        if (existingUnit == null && this.guardBots.size() < 2) {
-            this.guardBots.add(unit);
+    private void HoldChokepoint(UnitData unit, Api api, int post) {
+        float distanceToPost = MathUtil.distance(unit.x, unit.y, guardPostX[post], guardPostY[post]);
+        float lookDirection = MathUtil.angleBetweenUnitAndPoint(unit, guardLookX[post], guardLookY[post]);
+
+        if (distanceToPost > params.guardCornerDistance && unit.speed == Speed.NONE) {
+            api.navigationStart(unit.id, guardPostX[post], guardPostY[post]);
+        } else if (Math.abs(lookDirection) > params.lookAngle && unit.speed == Speed.NONE) {
+            api.setRotation(unit.id, lookDirection > 0 ? Rotation.LEFT : Rotation.RIGHT);
+        } else if (Math.abs(lookDirection) < params.lookAngle) {
+            api.navigationStop(unit.id);
+            api.setSpeed(unit.id, Speed.NONE);
         }
     }
 
     private boolean HealthIsLower(UnitData unit, Api api) {
-        int currentUnitId = unit.id;
-        boolean healthIsLower = false;
-
-        Optional<UnitData> existingUnit = previousUpdateUnits.stream().filter((previousUpdateUnit) -> previousUpdateUnit.id == currentUnitId).findFirst();
+        boolean healthIsLower = damagedUnits.contains(unit.id);
 
-        if (existingUnit.isPresent()) {
-            healthIsLower = existingUnit.get().health > unit.health;
-
-            if (healthIsLower) {
-                api.saySomething(unit.id, "Health is " + String.valueOf(unit.health));
-            }
+        if (healthIsLower) {
+            api.saySomething(unit.id, "Health is " + String.valueOf(unit.health));
         }
 
         return healthIsLower;
     }
 
-    private void UpdatePreviousUnit(UnitData unit) {
-        int currentUnitId = unit.id;
-
-        previousUpdateUnits.removeIf((previousUpdateUnit) -> previousUpdateUnit.id == currentUnitId);
-
-        previousUpdateUnits.add(unit);
-    }
-
-    private void WorkerAction(UnitData unit, boolean anyOpponentIsLookingWorker, Api api, boolean healthIsLower) {
+    private void WorkerAction(UnitData unit, boolean anyOpponentIsLookingWorker, Api api, boolean healthIsLower, GameState state) {
         if (anyOpponentIsLookingWorker || healthIsLower) {
+            api.reason(unit.id, REASON_FLEE);
             api.saySomething(unit.id, "Run awaaayyy");
-            api.navigationStart(unit.id, Constants.SPAWN_POINT.x, Constants.SPAWN_POINT.y, true);
+            api.navigationStart(unit.id, context.spawnPointX, context.spawnPointY, true);
         } else if (unit.resourcesInView.length > 0) {
             ResourceInView resource = unit.resourcesInView[0];
+            api.reason(unit.id, REASON_GATHER);
             api.navigationStart(unit.id, resource.x, resource.y);
         } else if (unit.navigationPath.length == 0) {
-            while (true) {
-                int x = (int) (Math.random() * Constants.MAP_WIDTH);
-                int y = (int) (Math.random() * Constants.MAP_HEIGHT);
-
-                // Map is a 2D array of booleans. If map[x][y] equals false it means that
-                // at (x,y) there is no obstacle and we can safely move our unit there.
-                if (!Constants.MAP[x][y]) {
-                    api.navigationStart(unit.id, x, y);
-                    break;
-                }
-            }
+            // Free points on the map are sampled by the dispatch task, starting
+            // from the target planned ahead if there is one
+            SpeculativePlanner.Prediction prediction = speculativePlanner.prediction(unit, state.time);
+            api.reason(unit.id, REASON_EXPLORE);
+            workerDispatch.request(unit, prediction != null ? prediction.exploreTarget : null);
         }
     }
 
@@ -244,7 +404,7 @@ public class MyBot implements Bot {
 
             float oppoAngle = MathUtil.angleBetweenUnitAndPoint(opponentData, unit.x, unit.y);
 
-            opponentIsLooking = curOppo.type == UnitType.WARRIOR && Math.abs(oppoAngle) < 15;
+            opponentIsLooking = curOppo.type == UnitType.WARRIOR && Math.abs(oppoAngle) < params.opponentAimAngle;
 
             if (opponentIsLooking) break;
         }
@@ -252,17 +412,14 @@ public class MyBot implements Bot {
         return opponentIsLooking;
     }
 
-    private OpponentInView DetermineOpponent(UnitData unit, List<OpponentInView> otherOpponents) {
+    private OpponentInView DetermineOpponent(UnitData unit) {
 
         OpponentInView opponent = unit.opponentsInView[0];
 
+        // Prefer an opponent that another warrior is already shooting at
         for (int oppos = 0; oppos < unit.opponentsInView.length; oppos++) {
-            int curIterationId = unit.opponentsInView[oppos].id;
-
-            Optional<OpponentInView> existingTarget = otherOpponents.stream().filter((opponentInView) -> opponentInView.id == curIterationId).findFirst();
-
-            if (existingTarget.isPresent()) {
-                opponent = existingTarget.get();
+            if (targetedOpponents.contains(unit.opponentsInView[oppos].id)) {
+                opponent = unit.opponentsInView[oppos];
                 break;
             }
         }
@@ -271,36 +428,49 @@ public class MyBot implements Bot {
         return opponent;
     }
 
-    private void WarriorAction(UnitData unit, OpponentInView opponent, float targetAngle, Api api, GameState state) {
-        float aimAngle = MathUtil.angleBetweenUnitAndPoint(unit, opponent.x, opponent.y);
-        api.navigationStop(unit.id);
+    private void WarriorAction(UnitData unit, OpponentInView opponent, float targetAngle, Api api, GameState state, long deadline) {
+        AimSolver.Solution aim = speculativePlanner.aim(unit, opponent, state.time);
+        if (aim != null) {
+            // Planned for the predicted orientation, check it against the real one before shooting
+            aim = aimSolver.retarget(unit, aim);
+        } else {
+            aim = aimSolver.solve(unit, opponent.id);
+        }
 
-        if (Math.abs(aimAngle) < 2 && unit.canShoot) {
-            boolean shouldShoot = true;
-            for (UnitData otherUnit : state.units) {
-                if (otherUnit.id == unit.id || MathUtil.distance(unit.x, unit.y, otherUnit.x, otherUnit.y) > Constants.VIEWING_AREA_LENGTH)
-                    continue;
+        long engagementDeadline = Math.min(deadline, System.nanoTime() + ENGAGEMENT_BUDGET_NANOS);
+        FlightEvents.Subsystem event = FlightEvents.beginSubsystem();
+        EngagementEvaluator.Result outcome = engagementEvaluator.evaluate(Engagement.around(unit, state, context), context, engagementDeadline);
+        FlightEvents.endSubsystem(event, state.uid, "engagementEvaluator", "evaluate", outcome.rollouts());
+        CombatModel.Action action = outcome.best();
 
-                shouldShoot = Math.abs(MathUtil.angleBetweenUnitAndPoint(unit, otherUnit.x, otherUnit.y)) > 5;
-            }
+        api.navigationStop(unit.id);
+        if (action == CombatModel.Action.RETREAT) {
+            // Back straight away from the opponent while still aiming and shooting at it, as CombatModel plays it
+            api.reason(unit.id, REASON_RETREAT);
+            api.setSpeed(unit.id, Speed.BACKWARD);
+        } else {
+            boolean closeIn = action == CombatModel.Action.ENGAGE
+                    && MathUtil.distance(unit.x, unit.y, opponent.x, opponent.y) > context.viewingAreaLength / 2;
+            api.reason(unit.id, action == CombatModel.Action.ENGAGE ? REASON_ENGAGE : REASON_HOLD);
+            api.setSpeed(unit.id, closeIn ? Speed.FORWARD : Speed.NONE);
+        }
 
-            if (shouldShoot) {
+        if (aim.onTarget && unit.canShoot) {
+            // Hold fire if the bullet would hit one of ours or stop at an obstacle before the opponent
+            float distance = MathUtil.distance(unit.x, unit.y, opponent.x, opponent.y) - context.unitDiameter / 2;
+            float clearIn = shotSafety.timeToClear(unit.id, distance);
+            if (clearIn == 0) {
                 api.saySomething(unit.id, this.GetSomethingToSay());
                 api.shoot(unit.id);
-            }
-        } else if (aimAngle < -2) {
-            if (Math.abs(aimAngle) > 15) {
-                api.setRotation(unit.id, Rotation.RIGHT);
-            } else {
-                api.setRotation(unit.id, Rotation.SLOW_RIGHT);
-            }
-        } else if (aimAngle > 2) {
-            if (Math.abs(aimAngle) > 15) {
-                api.setRotation(unit.id, Rotation.LEFT);
-            } else {
-                api.setRotation(unit.id, Rotation.SLOW_LEFT);
+            } else if (clearIn != Float.POSITIVE_INFINITY && action != CombatModel.Action.RETREAT) {
+                // One of ours is about to pass the line of fire, stay on target and shoot once it has
+                api.reason(unit.id, REASON_HOLD);
+                api.setSpeed(unit.id, Speed.NONE);
             }
         }
+
+        // Keep turning with the predicted target, also while shooting or retreating.
+        api.setRotation(unit.id, aim.rotation);
     }
 
     private String GetSomethingToSay() {
@@ -333,6 +503,6 @@ public class MyBot implements Bot {
 
     // Connects your bot to Lia game engine, don't change it.
     public static void main(String[] args) throws Exception {
-        NetworkingClient.connectNew(args, new MyBot());
+        NetworkingClient.connectNew(args, new MyBot(StrategyParams.fromArgs(args)));
     }
 }
@@ -0,0 +1,231 @@
+package lia;
+
+import lia.api.GameState;
+import lia.api.OpponentInView;
+import lia.api.Point;
+import lia.api.Rotation;
+import lia.api.UnitData;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Computes where warriors should aim so that their bullets meet a moving
+ * opponent. The motion of every opponent in view is predicted once per
+ * update from its speed, rotation and the previous sighting, and stored as
+ * a short trajectory. Aim queries from all warriors then only look up that
+ * trajectory to find the intercept point.
+ */
+public class AimSolver {
+
+    /** Time between two game states, the engine answers every 3rd of its 30 ticks per second. */
+    public static final float STATE_INTERVAL = 0.1f;
+    /** Time step of the predicted trajectories. */
+    private static final float STEP = 1f / 30f;
+    /** Number of predicted trajectory points, covers a full bullet flight plus turning. */
+    private static final int TRAJECTORY_LENGTH = 96;
+    /** Opponents not seen for this long are forgotten. */
+    private static final float FORGET_AFTER = 1f;
+    private static final int INTERCEPT_ITERATIONS = 4;
+
+    private final Map<Integer, Track> tracks = new HashMap<>();
+    private GameContext context;
+    private float time;
+
+    private static class Track {
+        float x, y, angle;
+        float seenAt = Float.NEGATIVE_INFINITY;
+        /** Sighting before the current one, used to measure the actual velocity. */
+        float previousX, previousY, previousSeenAt;
+        float[] trajectoryX = new float[TRAJECTORY_LENGTH];
+        float[] trajectoryY = new float[TRAJECTORY_LENGTH];
+    }
+
+    public static class Solution {
+        /** Point the unit should look at so that the bullet meets the opponent. */
+        public float aimX;
+        public float aimY;
+        /** Angle between the unit's orientation and the aim point, see MathUtil.angleBetweenUnitAndPoint. */
+        public float aimAngle;
+        /** Time in seconds the unit needs to rotate onto the aim point. */
+        public float turnTime;
+        /** Time in seconds from now until the bullet reaches the opponent. */
+        public float interceptTime;
+        /** Rotation to apply now, NONE when the unit is already on target. */
+        public Rotation rotation;
+        /** True if a bullet shot now would hit the predicted opponent position. */
+        public boolean onTarget;
+    }
+
+    /** Records the opponents seen in the state and predicts their trajectories. */
+    public void update(GameState state, GameContext context) {
+        this.context = context;
+        time = state.time;
+
+        for (UnitData unit : state.units) {
+            for (OpponentInView opponent : unit.opponentsInView) {
+                Track track = tracks.get(opponent.id);
+                if (track == null) {
+                    track = new Track();
+                    tracks.put(opponent.id, track);
+                } else if (track.seenAt == time) {
+                    continue;
+                }
+                observe(track, opponent);
+            }
+        }
+
+        Iterator<Track> it = tracks.values().iterator();
+        while (it.hasNext()) {
+            if (time - it.next().seenAt > FORGET_AFTER) it.remove();
+        }
+    }
+
+    private void observe(Track track, OpponentInView opponent) {
+        track.previousX = track.x;
+        track.previousY = track.y;
+        track.previousSeenAt = track.seenAt;
+        track.x = opponent.x;
+        track.y = opponent.y;
+        track.angle = opponent.orientationAngle;
+        track.seenAt = time;
+
+        float velocity = DodgePlanner.velocity(context, opponent.speed);
+        float angularVelocity = DodgePlanner.angularVelocity(context, opponent.rotation);
+
+        // If we saw the opponent on the previous state too, trust the measured
+        // displacement for half of the velocity. This catches units that are
+        // pushing against a wall or another unit.
+        float measuredWeight = 0;
+        float measuredVx = 0;
+        float measuredVy = 0;
+        float dt = track.seenAt - track.previousSeenAt;
+        if (dt > 0 && dt <= 2 * STATE_INTERVAL + 0.001f) {
+            measuredWeight = 0.5f;
+            measuredVx = (track.x - track.previousX) / dt;
+            measuredVy = (track.y - track.previousY) / dt;
+        }
+
+        float x = track.x;
+        float y = track.y;
+        float angle = track.angle;
+        for (int i = 0; i < TRAJECTORY_LENGTH; i++) {
+            track.trajectoryX[i] = x;
+            track.trajectoryY[i] = y;
+
+            double rad = Math.toRadians(angle);
+            float modelVx = (float) Math.cos(rad) * velocity;
+            float modelVy = (float) Math.sin(rad) * velocity;
+            x += ((1 - measuredWeight) * modelVx + measuredWeight * measuredVx) * STEP;
+            y += ((1 - measuredWeight) * modelVy + measuredWeight * measuredVy) * STEP;
+            angle += angularVelocity * STEP;
+        }
+    }
+
+    /** Returns the aim solution for the unit shooting at the opponent, null if the opponent is unknown. */
+    public Solution solve(UnitData unit, int opponentId) {
+        return solve(unit, opponentId, time);
+    }
+
+    /**
+     * Returns the aim solution for the unit shooting at the given game time,
+     * which may be later than the last update when planning ahead.
+     */
+    public Solution solve(UnitData unit, int opponentId, float atTime) {
+        Track track = tracks.get(opponentId);
+        if (track == null) return null;
+
+        Solution solution = new Solution();
+        float staleness = atTime - track.seenAt;
+        float interceptTime = MathUtil.distance(unit.x, unit.y, track.x, track.y) / context.bulletVelocity;
+        float turnTime = 0;
+
+        for (int i = 0; i < INTERCEPT_ITERATIONS; i++) {
+            float t = staleness + turnTime + interceptTime;
+            solution.aimX = sample(track.trajectoryX, t);
+            solution.aimY = sample(track.trajectoryY, t);
+
+            solution.aimAngle = MathUtil.angleBetweenUnitAndPoint(unit, solution.aimX, solution.aimY);
+            turnTime = turnTime(context, solution.aimAngle);
+            interceptTime = MathUtil.distance(unit.x, unit.y, solution.aimX, solution.aimY) / context.bulletVelocity;
+        }
+
+        solution.turnTime = turnTime;
+        solution.interceptTime = turnTime + interceptTime;
+        settle(solution, unit);
+        return solution;
+    }
+
+    /**
+     * Returns a copy of a solution made for a predicted position of the
+     * unit, with the angle, onTarget and rotation taken from where the
+     * unit actually is and how it is turned.
+     */
+    public Solution retarget(UnitData unit, Solution planned) {
+        Solution solution = new Solution();
+        solution.aimX = planned.aimX;
+        solution.aimY = planned.aimY;
+        solution.aimAngle = MathUtil.angleBetweenUnitAndPoint(unit, solution.aimX, solution.aimY);
+        solution.turnTime = turnTime(context, solution.aimAngle);
+        solution.interceptTime = planned.interceptTime - planned.turnTime + solution.turnTime;
+        settle(solution, unit);
+        return solution;
+    }
+
+    private void settle(Solution solution, UnitData unit) {
+        float distance = MathUtil.distance(unit.x, unit.y, solution.aimX, solution.aimY);
+        float tolerance = (float) Math.toDegrees(Math.atan2(BulletThreats.hitRadius(context) / 2f, distance));
+        solution.onTarget = Math.abs(solution.aimAngle) < tolerance;
+        solution.rotation = solution.onTarget ? Rotation.NONE : chooseRotation(context, solution.aimAngle);
+    }
+
+    /** Predicted position of the opponent at the given game time, null if the opponent is unknown. */
+    public Point predict(int opponentId, float atTime) {
+        Track track = tracks.get(opponentId);
+        if (track == null) return null;
+        float t = atTime - track.seenAt;
+        return new Point(sample(track.trajectoryX, t), sample(track.trajectoryY, t));
+    }
+
+    /**
+     * Time in seconds to turn through the angle with the rotations
+     * chooseRotation() commands: fast while more is left than it switches
+     * to slow rotation at, slow for the rest.
+     */
+    private static float turnTime(GameContext context, float aimAngle) {
+        float angle = Math.abs(aimAngle);
+        float slowAngle = Math.min(angle, slowRotationAngle(context));
+        return (angle - slowAngle) / context.unitRotationVelocity + slowAngle / context.unitSlowRotationVelocity;
+    }
+
+    /** Largest angle left to the target for which chooseRotation() picks slow rotation. */
+    private static float slowRotationAngle(GameContext context) {
+        return (context.unitRotationVelocity + context.unitSlowRotationVelocity) * STATE_INTERVAL / 2;
+    }
+
+    /**
+     * Picks the rotation that leaves the smallest angle to the target after
+     * one state interval, so that slow rotation is used for fine adjustments
+     * and the unit does not overshoot. Slow rotation leaves the smaller
+     * angle once the angle is below halfway between the two turns.
+     */
+    private static Rotation chooseRotation(GameContext context, float aimAngle) {
+        boolean fast = Math.abs(aimAngle) > slowRotationAngle(context);
+
+        if (aimAngle > 0) {
+            return fast ? Rotation.LEFT : Rotation.SLOW_LEFT;
+        } else {
+            return fast ? Rotation.RIGHT : Rotation.SLOW_RIGHT;
+        }
+    }
+
+    private static float sample(float[] trajectory, float t) {
+        float index = t / STEP;
+        if (index <= 0) return trajectory[0];
+        if (index >= TRAJECTORY_LENGTH - 1) return trajectory[TRAJECTORY_LENGTH - 1];
+        int i = (int) index;
+        float fraction = index - i;
+        return trajectory[i] + (trajectory[i + 1] - trajectory[i]) * fraction;
+    }
+}
@@ -0,0 +1,37 @@
+package lia;
+
+import lia.api.GameState;
+
+/**
+ * A bot that is told how much time it has. NetworkingClient calls the
+ * update with the deadline measured from when the state was received, so
+ * time spent waiting behind a slow update counts against the budget.
+ */
+public interface AnytimeBot extends Bot {
+
+    /**
+     * Share of the time between two states the bot may use, the rest is
+     * kept for decoding, encoding and sending. TICK_TIMEOUT is much longer
+     * than a state interval, but the engine waits for the response, so
+     * using it all would slow the game down.
+     */
+    float BUDGET_SHARE = 0.5f;
+
+    /** Called with the System.nanoTime() by which the response should be ready. */
+    void update(GameState gameState, Api response, GameContext context, long deadlineNanos);
+
+    @Override
+    default void update(GameState gameState, Api response, GameContext context) {
+        update(gameState, response, context, System.nanoTime() + budgetNanos(context));
+    }
+
+    /** Telemetry of the bot's planning over the game, null if it keeps none. */
+    default String report() {
+        return null;
+    }
+
+    /** Time the bot may spend on one update. */
+    static long budgetNanos(GameContext context) {
+        return (long) (Math.min(context.tickTimeout, AimSolver.STATE_INTERVAL) * BUDGET_SHARE * 1e9);
+    }
+}
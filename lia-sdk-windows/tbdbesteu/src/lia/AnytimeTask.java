@@ -0,0 +1,32 @@
+package lia;
+
+import lia.api.GameState;
+
+/**
+ * A planner that can be stopped at any time and still has a usable
+ * result. TickScheduler calls begin() once per update, then improve()
+ * as long as the task has budget left, and finally commit() to write the
+ * best result found so far to the Api.
+ */
+public interface AnytimeTask {
+
+    /** Name shown in the scheduler telemetry. */
+    String name();
+
+    /** Tasks with a higher priority get a larger share of the budget and run first. */
+    int priority();
+
+    /** Starts planning for the state. The task must have a result to commit after this. */
+    void begin(GameState state, GameContext context);
+
+    /**
+     * Does one step of work towards a better result, for example one more
+     * level of search depth or one more sample. Returns false when the
+     * result cannot be improved any further this update. Steps should be
+     * short, the scheduler only checks the deadline between them.
+     */
+    boolean improve(long deadlineNanos);
+
+    /** Writes the best result so far to the Api. */
+    void commit(Api api);
+}
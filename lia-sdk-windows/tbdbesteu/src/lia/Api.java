@@ -8,27 +8,42 @@ import lia.api.*;
 /**
  * Used for building a response message that is later
  * sent to the game engine.
+ *
+ * Commands are kept in a slot table with one slot per unit. A later
+ * command of the same kind replaces the earlier one (navigationStart and
+ * navigationStop share a slot), and commands that would not change
+ * anything for the unit are left out of the response.
  **/
 public class Api {
 
+    private static final Gson gson = new Gson();
+
     private long uid;
     private int currentIndex = 0;
 
-    private ArrayList<SpeedEvent> speedEvents;
-    private ArrayList<RotationEvent> rotationEvents;
-    private ArrayList<ShootEvent> shootEvents;
-    private ArrayList<NavigationStartEvent> navigationStartEvents;
-    private ArrayList<NavigationStopEvent> navigationStopEvents;
-    private ArrayList<SaySomethingEvent> saySomethingEvents;
+    private GameState state;
+    private final IntIntMap unitIndex = new IntIntMap(32, -1);
+
+    private final ArrayList<CommandSlot> slots = new ArrayList<>();
+    private final IntIntMap slotIndex = new IntIntMap(32, -1);
     private ArrayList<SpawnUnitEvent> spawnUnitEvents;
 
+    private int droppedEvents;
+    private int savedBytes;
+
+    /** Commands issued to one unit during this update. */
+    private static class CommandSlot {
+        int unitId;
+        SpeedEvent speed;
+        RotationEvent rotation;
+        ShootEvent shoot;
+        /** Either a NavigationStartEvent or a NavigationStopEvent. */
+        Object navigation;
+        SaySomethingEvent say;
+        int reason;
+    }
+
     protected Api() {
-        speedEvents = new ArrayList<>();
-        rotationEvents = new ArrayList<>();
-        shootEvents = new ArrayList<>();
-        navigationStartEvents = new ArrayList<>();
-        navigationStopEvents = new ArrayList<>();
-        saySomethingEvents = new ArrayList<>();
         spawnUnitEvents = new ArrayList<>();
     }
 
@@ -40,45 +55,236 @@ public class Api {
         this.uid = uid;
     }
 
+    /** Sets the state the commands respond to, used to leave out commands that change nothing. */
+    protected void setState(GameState state) {
+        this.state = state;
+        unitIndex.clear();
+        for (int i = 0; i < state.units.length; i++) {
+            unitIndex.put(state.units[i].id, i);
+        }
+    }
+
     /** Change thrust speed of a unit */
     public void setSpeed(int unitId, Speed speed) {
-        speedEvents.add(new SpeedEvent(getNextIndex(), unitId, speed));
+        CommandSlot slot = slot(unitId);
+        drop(slot.speed);
+        slot.speed = new SpeedEvent(getNextIndex(), unitId, speed);
     }
 
     /** Change rotation speed of a unit */
     public void setRotation(int unitId, Rotation rotation) {
-        rotationEvents.add(new RotationEvent(getNextIndex(), unitId, rotation));
+        CommandSlot slot = slot(unitId);
+        drop(slot.rotation);
+        slot.rotation = new RotationEvent(getNextIndex(), unitId, rotation);
     }
 
     /** Make a unit shoot */
     public void shoot(int unitId) {
-        shootEvents.add(new ShootEvent(getNextIndex(), unitId));
+        CommandSlot slot = slot(unitId);
+        ShootEvent event = new ShootEvent(getNextIndex(), unitId);
+        UnitData unit = unit(unitId);
+        if (slot.shoot != null || (unit != null && !unit.canShoot)) {
+            drop(event);
+        } else {
+            slot.shoot = event;
+        }
     }
 
     /** Start navigation */
     public void navigationStart(int unitId, float x, float y, boolean moveBackwards) {
-        navigationStartEvents.add(new NavigationStartEvent(getNextIndex(), unitId, x, y, moveBackwards));
+        CommandSlot slot = slot(unitId);
+        drop(slot.navigation);
+        slot.navigation = new NavigationStartEvent(getNextIndex(), unitId, x, y, moveBackwards);
     }
 
     public void navigationStart(int unitId, float x, float y) {
-        navigationStartEvents.add(new NavigationStartEvent(getNextIndex(), unitId, x, y, false));
+        navigationStart(unitId, x, y, false);
     }
 
     /** Stop navigation */
     public void navigationStop(int unitId) {
-        navigationStopEvents.add(new NavigationStopEvent(getNextIndex(), unitId));
+        CommandSlot slot = slot(unitId);
+        drop(slot.navigation);
+        slot.navigation = new NavigationStopEvent(getNextIndex(), unitId);
     }
 
     /** Make your unit say something */
     public void saySomething(int unitId, String text) {
-        saySomethingEvents.add(new SaySomethingEvent(getNextIndex(), unitId, text));
+        CommandSlot slot = slot(unitId);
+        SaySomethingEvent event = new SaySomethingEvent(getNextIndex(), unitId, text);
+        if (state != null && !state.canSaySomething) {
+            drop(event);
+        } else {
+            drop(slot.say);
+            slot.say = event;
+        }
+    }
+
+    /** Notes why the unit got its commands in this update, kept by the DecisionRecorder. */
+    public void reason(int unitId, int reason) {
+        slot(unitId).reason = reason;
     }
 
     public void spawnUnit(UnitType type) {
         spawnUnitEvents.add(new SpawnUnitEvent(getNextIndex(), type));
     }
 
+    /** Number of events that were left out of the response because they were superseded or changed nothing. */
+    public int getDroppedEvents() {
+        return droppedEvents;
+    }
+
+    /** Approximate number of bytes the dropped events would have added to the response. */
+    public int getSavedBytes() {
+        return savedBytes;
+    }
+
+    /** Records the commands of every unit of the state. */
+    void record(DecisionRecorder recorder) {
+        if (state == null) return;
+        for (UnitData unit : state.units) {
+            int index = slotIndex.get(unit.id);
+            if (index < 0) {
+                recorder.unit(unit, 0, DecisionRecorder.NO_REASON, Float.NaN, Float.NaN);
+                continue;
+            }
+            CommandSlot slot = slots.get(index);
+            int actions = 0;
+            float targetX = Float.NaN;
+            float targetY = Float.NaN;
+            if (slot.speed != null) actions |= (slot.speed.speed.ordinal() + 1) << DecisionRecorder.SPEED_SHIFT;
+            if (slot.rotation != null) actions |= (slot.rotation.rotation.ordinal() + 1) << DecisionRecorder.ROTATION_SHIFT;
+            if (slot.shoot != null) actions |= DecisionRecorder.SHOOT;
+            if (slot.navigation instanceof NavigationStartEvent) {
+                NavigationStartEvent start = (NavigationStartEvent) slot.navigation;
+                int navigation = start.moveBackwards ? DecisionRecorder.NAVIGATION_BACKWARDS : DecisionRecorder.NAVIGATION_START;
+                actions |= navigation << DecisionRecorder.NAVIGATION_SHIFT;
+                targetX = start.x;
+                targetY = start.y;
+            } else if (slot.navigation != null) {
+                actions |= DecisionRecorder.NAVIGATION_STOP << DecisionRecorder.NAVIGATION_SHIFT;
+            }
+            if (slot.say != null) actions |= DecisionRecorder.SAY;
+            recorder.unit(unit, actions, slot.reason, targetX, targetY);
+        }
+    }
+
+    private CommandSlot slot(int unitId) {
+        int index = slotIndex.get(unitId);
+        if (index >= 0) return slots.get(index);
+
+        CommandSlot slot = new CommandSlot();
+        slot.unitId = unitId;
+        slotIndex.put(unitId, slots.size());
+        slots.add(slot);
+        return slot;
+    }
+
+    private UnitData unit(int unitId) {
+        int index = unitIndex.get(unitId);
+        return index >= 0 ? state.units[index] : null;
+    }
+
+    private void drop(Object event) {
+        if (event == null) return;
+        droppedEvents++;
+        // One more byte for the comma separating it from the other events
+        savedBytes += jsonLength(event) + 1;
+    }
+
+    /**
+     * Length of the event as gson writes it, from the fixed shape of the
+     * event classes so that counting does not serialize anything. Floats
+     * are counted as their integer digits and two decimals, and say text
+     * as if it needed no escaping.
+     */
+    private static int jsonLength(Object event) {
+        // {"index":N,"unitId":N}
+        int length = 9 + 10 + 1;
+        if (event instanceof SpeedEvent) {
+            SpeedEvent speed = (SpeedEvent) event;
+            // ,"speed":"NAME"
+            return length + digits(speed.index) + digits(speed.unitId) + 11 + speed.speed.name().length();
+        } else if (event instanceof RotationEvent) {
+            RotationEvent rotation = (RotationEvent) event;
+            // ,"rotation":"NAME"
+            return length + digits(rotation.index) + digits(rotation.unitId) + 14 + rotation.rotation.name().length();
+        } else if (event instanceof NavigationStartEvent) {
+            NavigationStartEvent navigation = (NavigationStartEvent) event;
+            // ,"x":F,"y":F,"moveBackwards":BOOLEAN
+            return length + digits(navigation.index) + digits(navigation.unitId)
+                    + 5 + digits((int) navigation.x) + 3 + 5 + digits((int) navigation.y) + 3
+                    + 17 + (navigation.moveBackwards ? 4 : 5);
+        } else if (event instanceof NavigationStopEvent) {
+            NavigationStopEvent navigation = (NavigationStopEvent) event;
+            return length + digits(navigation.index) + digits(navigation.unitId);
+        } else if (event instanceof ShootEvent) {
+            ShootEvent shoot = (ShootEvent) event;
+            return length + digits(shoot.index) + digits(shoot.unitId);
+        } else if (event instanceof SaySomethingEvent) {
+            SaySomethingEvent say = (SaySomethingEvent) event;
+            // ,"text":"TEXT"
+            return length + digits(say.index) + digits(say.unitId) + 10 + (say.text == null ? 0 : say.text.length());
+        }
+        return length;
+    }
+
+    private static int digits(int value) {
+        int digits = value < 0 ? 2 : 1;
+        for (long rest = Math.abs((long) value); rest >= 10; rest /= 10) digits++;
+        return digits;
+    }
+
     protected String toJson() {
+        ArrayList<SpeedEvent> speedEvents = new ArrayList<>();
+        ArrayList<RotationEvent> rotationEvents = new ArrayList<>();
+        ArrayList<ShootEvent> shootEvents = new ArrayList<>();
+        ArrayList<NavigationStartEvent> navigationStartEvents = new ArrayList<>();
+        ArrayList<NavigationStopEvent> navigationStopEvents = new ArrayList<>();
+        ArrayList<SaySomethingEvent> saySomethingEvents = new ArrayList<>();
+
+        for (CommandSlot slot : slots) {
+            UnitData unit = unit(slot.unitId);
+            // Speed and rotation commands also end navigation, so they are
+            // only no-ops for units that are not navigating.
+            boolean navigating = unit != null && (unit.navigationPath.length > 0 || slot.navigation != null);
+
+            if (slot.speed != null) {
+                if (unit != null && !navigating && slot.speed.speed == unit.speed) drop(slot.speed);
+                else speedEvents.add(slot.speed);
+            }
+            if (slot.rotation != null) {
+                if (unit != null && !navigating && slot.rotation.rotation == unit.rotation) drop(slot.rotation);
+                else rotationEvents.add(slot.rotation);
+            }
+            if (slot.shoot != null) {
+                shootEvents.add(slot.shoot);
+            }
+            if (slot.navigation instanceof NavigationStartEvent) {
+                navigationStartEvents.add((NavigationStartEvent) slot.navigation);
+            } else if (slot.navigation != null) {
+                if (unit != null && unit.navigationPath.length == 0) drop(slot.navigation);
+                else navigationStopEvents.add((NavigationStopEvent) slot.navigation);
+            }
+            if (slot.say != null) {
+                saySomethingEvents.add(slot.say);
+            }
+        }
+
+        FlightEvents.ApiEvents event = new FlightEvents.ApiEvents();
+        if (event.shouldCommit()) {
+            event.uid = uid;
+            event.speed = speedEvents.size();
+            event.rotation = rotationEvents.size();
+            event.shoot = shootEvents.size();
+            event.navigationStart = navigationStartEvents.size();
+            event.navigationStop = navigationStopEvents.size();
+            event.saySomething = saySomethingEvents.size();
+            event.spawnUnit = spawnUnitEvents.size();
+            event.dropped = droppedEvents;
+            event.commit();
+        }
+
         Response response = new Response(
                 uid,
                 MessageType.RESPONSE,
@@ -90,6 +296,6 @@ public class Api {
                 saySomethingEvents.toArray(new SaySomethingEvent[saySomethingEvents.size()]),
                 spawnUnitEvents.toArray(new SpawnUnitEvent[spawnUnitEvents.size()])
         );
-        return (new Gson()).toJson(response);
+        return gson.toJson(response);
     }
-}
\ No newline at end of file
+}
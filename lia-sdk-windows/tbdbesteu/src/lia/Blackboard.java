@@ -0,0 +1,123 @@
+package lia;
+
+import java.util.Arrays;
+
+/**
+ * Per-unit memory for bots: a role, a target, a post, timers and counters
+ * for every unit, all keyed by unit id. Roles, timer and counter slots are
+ * small ints defined by the bot. All operations are constant time and do
+ * not allocate once the tables have grown to the number of units.
+ *
+ * Call remove() when a unit dies so that its id does not keep old data.
+ */
+public class Blackboard {
+
+    public static final int NO_ROLE = 0;
+    public static final int NO_TARGET = -1;
+    public static final int NO_POST = -1;
+
+    private final int timerSlots;
+    private final int counterSlots;
+
+    private final IntIntMap roles = new IntIntMap(32, NO_ROLE);
+    private final IntIntMap targets = new IntIntMap(32, NO_TARGET);
+    private final IntIntMap posts = new IntIntMap(32, NO_POST);
+    /** Timer expiry times as float bits, keyed by unitId * timerSlots + slot. */
+    private final IntIntMap timers;
+    /** Counters keyed by unitId * counterSlots + slot. */
+    private final IntIntMap counters;
+    private int[] roleCounts = new int[8];
+
+    /**
+     * @param timerSlots   number of different timers each unit can have
+     * @param counterSlots number of different counters each unit can have
+     */
+    public Blackboard(int timerSlots, int counterSlots) {
+        this.timerSlots = Math.max(1, timerSlots);
+        this.counterSlots = Math.max(1, counterSlots);
+        this.timers = new IntIntMap(32 * this.timerSlots, 0);
+        this.counters = new IntIntMap(32 * this.counterSlots, 0);
+    }
+
+    /** Returns the role of the unit or NO_ROLE. */
+    public int role(int unitId) {
+        return roles.get(unitId);
+    }
+
+    public boolean hasRole(int unitId, int role) {
+        return roles.get(unitId) == role;
+    }
+
+    public void setRole(int unitId, int role) {
+        if (role >= roleCounts.length) roleCounts = Arrays.copyOf(roleCounts, role + 1);
+        int previous = role == NO_ROLE ? roles.remove(unitId) : roles.put(unitId, role);
+        roleCounts[previous]--;
+        roleCounts[role]++;
+    }
+
+    /** Number of units that currently have the role, not counting units without a role. */
+    public int roleCount(int role) {
+        return role != NO_ROLE && role < roleCounts.length ? roleCounts[role] : 0;
+    }
+
+    /** Returns the id of the unit's target or NO_TARGET. */
+    public int target(int unitId) {
+        return targets.get(unitId);
+    }
+
+    public void setTarget(int unitId, int targetId) {
+        if (targetId == NO_TARGET) targets.remove(unitId);
+        else targets.put(unitId, targetId);
+    }
+
+    /** Returns the index of the post the unit holds, as numbered by the bot, or NO_POST. */
+    public int post(int unitId) {
+        return posts.get(unitId);
+    }
+
+    public void setPost(int unitId, int post) {
+        if (post == NO_POST) posts.remove(unitId);
+        else posts.put(unitId, post);
+    }
+
+    /** Starts or restarts the unit's timer so that it expires at the given game time. */
+    public void setTimer(int unitId, int slot, float expiresAt) {
+        timers.put(unitId * timerSlots + slot, Float.floatToRawIntBits(expiresAt));
+    }
+
+    public boolean hasTimer(int unitId, int slot) {
+        return timers.containsKey(unitId * timerSlots + slot);
+    }
+
+    /** True if the timer was set and its expiry time is not after the given game time. */
+    public boolean timerExpired(int unitId, int slot, float time) {
+        int key = unitId * timerSlots + slot;
+        return timers.containsKey(key) && Float.intBitsToFloat(timers.get(key)) <= time;
+    }
+
+    public void clearTimer(int unitId, int slot) {
+        timers.remove(unitId * timerSlots + slot);
+    }
+
+    public int counter(int unitId, int slot) {
+        return counters.get(unitId * counterSlots + slot);
+    }
+
+    /** Adds delta to the counter and returns the new value. */
+    public int increment(int unitId, int slot, int delta) {
+        return counters.increment(unitId * counterSlots + slot, delta);
+    }
+
+    public void resetCounter(int unitId, int slot) {
+        counters.remove(unitId * counterSlots + slot);
+    }
+
+    /** Forgets everything about the unit. */
+    public void remove(int unitId) {
+        setRole(unitId, NO_ROLE);
+        targets.remove(unitId);
+        posts.remove(unitId);
+        for (int slot = 0; slot < timerSlots; slot++) timers.remove(unitId * timerSlots + slot);
+        for (int slot = 0; slot < counterSlots; slot++) counters.remove(unitId * counterSlots + slot);
+    }
+}
@@ -4,4 +4,28 @@ import lia.api.GameState;
 
 public interface Bot {
     void update(GameState gameState, Api response);
+
+    /**
+     * Called when the GAME_SETUP message has been loaded, before the first
+     * game state. The first state has a longer timeout than the rest, so
+     * per-map work that would be too slow for an update belongs here.
+     */
+    default void setup(GameContext context) {}
+
+    /**
+     * Called instead of update(GameState, Api) with the context of the game
+     * the state belongs to. Bots that can run next to other bots in the
+     * same JVM should override this and read the map and rules from the
+     * context instead of Constants.
+     */
+    default void update(GameState gameState, Api response, GameContext context) {
+        update(gameState, response);
+    }
+
+    /**
+     * Called after the response to the game state has been sent. The time
+     * until the next state arrives is mostly idle, so this is a good place
+     * to start planning ahead on another thread.
+     */
+    default void responseSent(GameState gameState) {}
 }
@@ -0,0 +1,66 @@
+package lia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+/**
+ * Runs several bots in one JVM, each in its own game connection. Every bot
+ * gets its own GameContext, and games played on the same map share the
+ * map data. Used for scrimmages where starting one JVM per bot is too
+ * expensive.
+ *
+ * Usage: java -cp build/libs/my-bot.jar lia.BotHost -p PORT -b BotClass -i ID [-i ID ...]
+ */
+public class BotHost {
+
+    private final CountDownLatch running;
+    private final List<NetworkingClient> clients = new ArrayList<>();
+
+    private BotHost(int sessions) {
+        this.running = new CountDownLatch(sessions);
+    }
+
+    /** Connects a new bot from the factory for every bot id. */
+    public static BotHost start(String port, List<String> botIds, Supplier<Bot> botFactory) throws Exception {
+        BotHost host = new BotHost(botIds.size());
+        for (String botId : botIds) {
+            host.clients.add(NetworkingClient.connect(
+                    NetworkingClient.createTransport("websocket", port, botId),
+                    botFactory.get(), false, host.running::countDown));
+        }
+        return host;
+    }
+
+    /** Blocks until all of the hosted games have ended. */
+    public void awaitAll() throws InterruptedException {
+        running.await();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String port = "8887";
+        String botClass = "MyBot";
+        List<String> botIds = new ArrayList<>();
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String arg = args[i];
+            if (arg.equals("-p") || arg.equals("--port")) port = args[i + 1];
+            else if (arg.equals("-b") || arg.equals("--bot")) botClass = args[i + 1];
+            else if (arg.equals("-i") || arg.equals("--id")) botIds.add(args[i + 1]);
+            else throw new IllegalArgumentException("Unknown argument " + arg);
+        }
+
+        Class<? extends Bot> type = Class.forName(botClass).asSubclass(Bot.class);
+        BotHost host = start(port, botIds, () -> {
+            try {
+                return type.getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot create bot " + type.getName(), e);
+            }
+        });
+        host.awaitAll();
+        Log.info("All games closed. Exiting...");
+        System.exit(0);
+    }
+}
@@ -0,0 +1,210 @@
+package lia;
+
+import lia.api.BulletInView;
+import lia.api.GameState;
+import lia.api.UnitData;
+
+import java.util.Arrays;
+
+/**
+ * Predicts which opponent bullets are going to hit our units.
+ *
+ * All bullets seen by any of our units are gathered into flat arrays
+ * once per tick (bullets seen by several units are merged) and every
+ * bullet is then tested against every own unit. For each pair the time
+ * to impact and the closest approach distance are stored, assuming the
+ * unit does not move. Bullet flight is limited by the bullet range and
+ * by the first obstacle on its path.
+ */
+public class BulletThreats {
+
+    /** Two bullets closer than this are considered the same bullet seen by two units. */
+    private static final float SAME_BULLET_DISTANCE = 0.05f;
+
+    private GameContext context;
+
+    private int nBullets;
+    private float[] bulletX = new float[16];
+    private float[] bulletY = new float[16];
+    private float[] bulletVx = new float[16];
+    private float[] bulletVy = new float[16];
+    /** Time in seconds until the bullet leaves its range or hits an obstacle. */
+    private float[] bulletFlightTime = new float[16];
+
+    private int nUnits;
+    private int[] unitIds = new int[32];
+    /** Time to impact per unit and bullet, indexed by unitIndex * nBullets + bulletIndex. */
+    private float[] impactTime = new float[512];
+    /** Closest approach per unit and bullet, indexed the same way as impactTime. */
+    private float[] closestApproach = new float[512];
+    /** Earliest impact time over all bullets for each unit. */
+    private float[] firstImpactTime = new float[32];
+
+    /** Recomputes all threats for the units in the given state. */
+    public void update(GameState state, GameContext context) {
+        this.context = context;
+        collectBullets(state.units);
+
+        nUnits = state.units.length;
+        if (unitIds.length < nUnits) {
+            unitIds = new int[nUnits * 2];
+            firstImpactTime = new float[nUnits * 2];
+        }
+        int pairs = nUnits * nBullets;
+        if (impactTime.length < pairs) {
+            impactTime = new float[pairs * 2];
+            closestApproach = new float[pairs * 2];
+        }
+
+        float hitRadius = hitRadius(context);
+        float hitRadius2 = hitRadius * hitRadius;
+
+        for (int u = 0; u < nUnits; u++) {
+            UnitData unit = state.units[u];
+            unitIds[u] = unit.id;
+            float first = Float.POSITIVE_INFINITY;
+            int base = u * nBullets;
+
+            for (int b = 0; b < nBullets; b++) {
+                float rx = bulletX[b] - unit.x;
+                float ry = bulletY[b] - unit.y;
+                float vx = bulletVx[b];
+                float vy = bulletVy[b];
+                float a = vx * vx + vy * vy;
+                float flight = bulletFlightTime[b];
+
+                // Closest approach of the bullet segment to the unit center
+                float tc = a > 0 ? -(rx * vx + ry * vy) / a : 0;
+                if (tc < 0) tc = 0;
+                else if (tc > flight) tc = flight;
+                float cx = rx + vx * tc;
+                float cy = ry + vy * tc;
+                closestApproach[base + b] = (float) Math.sqrt(cx * cx + cy * cy);
+
+                // First time the bullet touches the unit
+                float t = Float.POSITIVE_INFINITY;
+                float c = rx * rx + ry * ry - hitRadius2;
+                if (c <= 0) {
+                    t = 0;
+                } else if (a > 0) {
+                    float halfB = rx * vx + ry * vy;
+                    float disc = halfB * halfB - a * c;
+                    if (disc >= 0) {
+                        float entry = (-halfB - (float) Math.sqrt(disc)) / a;
+                        if (entry >= 0 && entry <= flight) t = entry;
+                    }
+                }
+                impactTime[base + b] = t;
+                if (t < first) first = t;
+            }
+            firstImpactTime[u] = first;
+        }
+    }
+
+    private void collectBullets(UnitData[] units) {
+        nBullets = 0;
+        for (UnitData unit : units) {
+            for (BulletInView bullet : unit.opponentBulletsInView) {
+                if (isKnown(bullet)) continue;
+                if (nBullets == bulletX.length) growBullets();
+
+                double rad = Math.toRadians(bullet.orientation);
+                float dirX = (float) Math.cos(rad);
+                float dirY = (float) Math.sin(rad);
+
+                bulletX[nBullets] = bullet.x;
+                bulletY[nBullets] = bullet.y;
+                bulletVx[nBullets] = dirX * bullet.velocity;
+                bulletVy[nBullets] = dirY * bullet.velocity;
+                float reach = distanceToObstacle(context, bullet.x, bullet.y, dirX, dirY, context.bulletRange);
+                bulletFlightTime[nBullets] = bullet.velocity > 0 ? reach / bullet.velocity : 0;
+                nBullets++;
+            }
+        }
+    }
+
+    private boolean isKnown(BulletInView bullet) {
+        for (int b = 0; b < nBullets; b++) {
+            if (Math.abs(bulletX[b] - bullet.x) < SAME_BULLET_DISTANCE
+                    && Math.abs(bulletY[b] - bullet.y) < SAME_BULLET_DISTANCE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void growBullets() {
+        int size = bulletX.length * 2;
+        bulletX = Arrays.copyOf(bulletX, size);
+        bulletY = Arrays.copyOf(bulletY, size);
+        bulletVx = Arrays.copyOf(bulletVx, size);
+        bulletVy = Arrays.copyOf(bulletVy, size);
+        bulletFlightTime = Arrays.copyOf(bulletFlightTime, size);
+    }
+
+    /**
+     * Returns how far a bullet at (x,y) flying in direction (dirX,dirY)
+     * gets before its edge touches an obstacle or the map edge, but at most
+     * maxDistance.
+     */
+    static float distanceToObstacle(GameContext context, float x, float y, float dirX, float dirY, float maxDistance) {
+        return context.obstacles.sweepCircle(x, y, dirX, dirY, context.bulletDiameter / 2, maxDistance);
+    }
+
+    /** Distance between unit and bullet centers at which the bullet hits the unit. */
+    public static float hitRadius(GameContext context) {
+        return (context.unitDiameter + context.bulletDiameter) / 2f;
+    }
+
+    /** Context of the game the threats were last computed for. */
+    public GameContext context() {
+        return context;
+    }
+
+    public int bulletCount() {
+        return nBullets;
+    }
+
+    public float bulletX(int bullet) {
+        return bulletX[bullet];
+    }
+
+    public float bulletY(int bullet) {
+        return bulletY[bullet];
+    }
+
+    public float bulletVelocityX(int bullet) {
+        return bulletVx[bullet];
+    }
+
+    public float bulletVelocityY(int bullet) {
+        return bulletVy[bullet];
+    }
+
+    public float bulletFlightTime(int bullet) {
+        return bulletFlightTime[bullet];
+    }
+
+    /** Returns the index of the unit with the given id in the last update or -1. */
+    public int unitIndex(int unitId) {
+        for (int u = 0; u < nUnits; u++) {
+            if (unitIds[u] == unitId) return u;
+        }
+        return -1;
+    }
+
+    /** Time in seconds until the bullet hits the unit if it stays still, infinity if it misses. */
+    public float impactTime(int unitIndex, int bullet) {
+        return impactTime[unitIndex * nBullets + bullet];
+    }
+
+    /** Closest distance between the bullet and the unit center if the unit stays still. */
+    public float closestApproach(int unitIndex, int bullet) {
+        return closestApproach[unitIndex * nBullets + bullet];
+    }
+
+    /** Earliest impact time of any bullet on the unit, infinity if no bullet hits it. */
+    public float firstImpactTime(int unitIndex) {
+        return firstImpactTime[unitIndex];
+    }
+}
@@ -0,0 +1,71 @@
+package lia;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of map cells by float key, for Dijkstra and A* over the
+ * NavigationGrid. A cell whose key improves is simply added again, users
+ * skip the stale entries when they come out. Does not allocate once it
+ * has grown to the largest size needed.
+ */
+public class CellQueue {
+
+    private int[] cells = new int[256];
+    private float[] keys = new float[256];
+    private int size;
+
+    public void add(int cell, float key) {
+        if (size == cells.length) {
+            cells = Arrays.copyOf(cells, size * 2);
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (keys[parent] <= key) break;
+            cells[i] = cells[parent];
+            keys[i] = keys[parent];
+            i = parent;
+        }
+        cells[i] = cell;
+        keys[i] = key;
+    }
+
+    /** Key of the first cell. The queue must not be empty. */
+    public float minKey() {
+        return keys[0];
+    }
+
+    /** Removes and returns the cell with the smallest key. The queue must not be empty. */
+    public int poll() {
+        int first = cells[0];
+        size--;
+        int cell = cells[size];
+        float key = keys[size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+            if (keys[child] >= key) break;
+            cells[i] = cells[child];
+            keys[i] = keys[child];
+            i = child;
+        }
+        cells[i] = cell;
+        keys[i] = key;
+        return first;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
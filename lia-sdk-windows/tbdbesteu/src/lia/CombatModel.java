@@ -0,0 +1,272 @@
+package lia;
+
+import lia.api.Rotation;
+import lia.api.Speed;
+import lia.api.UnitType;
+
+/**
+ * Simplified forward model of a local fight, built from the game rules.
+ * Units shoot at the weakest enemy in range as soon as they face it and
+ * their gun is ready, bullets take their flight time to arrive, guns
+ * reload when empty and health regenerates after a while without hits.
+ * Whether a shot hits is random: the aim error grows with distance and
+ * moving targets and shooters are harder to hit with.
+ *
+ * A rollout plays on a fork of a SimState made from the engagement, the
+ * unit fields hold positions, health, magazines and the time each gun is
+ * ready, and the speed tells whether a unit moves.
+ */
+public class CombatModel {
+
+    public enum Action {
+        /** Close in on the opponents while shooting. */
+        ENGAGE,
+        /** Stand still and shoot. */
+        HOLD,
+        /** Back away from the opponents while still facing them and shooting. */
+        RETREAT
+    }
+
+    public static final int LOSS = -1;
+    public static final int DRAW = 0;
+    public static final int WIN = 1;
+
+    /** Standard deviation of the aim error of a standing shooter, in radians. */
+    private static final float AIM_ERROR = (float) Math.toRadians(2.5);
+    /** Aim error multiplier for a moving shooter. */
+    private static final float MOVING_SHOOTER_ERROR = 2f;
+    /** Share of a moving target's travel during the bullet flight that the shooter fails to lead. */
+    private static final float LEAD_ERROR = 0.5f;
+    private static final float STEP = 1f / 30f;
+    private static final int MAX_PENDING_HITS = 64;
+    private static final int WARRIOR = UnitType.WARRIOR.ordinal();
+
+    private final float hitRadius;
+    private final float bulletVelocity;
+    private final float bulletRange;
+    private final float damageToWarrior;
+    private final float damageToWorker;
+    private final float delayBetweenShots;
+    private final float reloadTime;
+    private final int maxBullets;
+    private final float regenerationDelay;
+    private final float regenerationPerSecond;
+    private final float fullHealth;
+    private final float forwardVelocity;
+    private final float backwardVelocity;
+    private final float viewingAreaLength;
+    /** Distance at which an engaging unit stops closing in. */
+    private final float engageDistance;
+
+    public CombatModel(GameContext context) {
+        hitRadius = BulletThreats.hitRadius(context);
+        bulletVelocity = context.bulletVelocity;
+        bulletRange = context.bulletRange;
+        damageToWarrior = context.bulletDamageToWarrior;
+        damageToWorker = context.bulletDamageToWorker;
+        delayBetweenShots = context.delayBetweenShots;
+        reloadTime = context.reloadTime;
+        maxBullets = context.maxBullets;
+        regenerationDelay = context.healthRegenerationDelay;
+        regenerationPerSecond = context.healthRegenerationPerSecond;
+        fullHealth = context.unitFullHealth;
+        forwardVelocity = context.unitForwardVelocity;
+        backwardVelocity = context.unitBackwardVelocity;
+        viewingAreaLength = context.viewingAreaLength;
+        engageDistance = context.viewingAreaLength / 2;
+    }
+
+    /**
+     * Starting state of the rollouts of the engagement. Each rollout plays
+     * on its own fork of it, so only the chunks a rollout changes are
+     * copied. Combatants keep their engagement index as unit index, a
+     * gun that is empty at the start is ready once it has aimed and
+     * reloaded.
+     */
+    SimState start(Engagement engagement) {
+        SimState state = new SimState(Engagement.MAX_COMBATANTS, 0, 0);
+        for (int i = 0; i < engagement.size; i++) {
+            state.addUnit(i, i < engagement.ours ? SimState.OURS : SimState.THEIRS,
+                    engagement.warrior[i] ? UnitType.WARRIOR : UnitType.WORKER, engagement.x[i], engagement.y[i], 0,
+                    engagement.health[i], engagement.bullets[i], engagement.moving[i] ? Speed.FORWARD : Speed.NONE,
+                    Rotation.NONE);
+            float readyAt = engagement.aimDelay[i] + (engagement.bullets[i] == 0 ? reloadTime : 0);
+            state.setUnit(SimState.UNIT_NEXT_SHOT, i, readyAt);
+        }
+        return state;
+    }
+
+    /**
+     * Working memory of one rollout besides its state, reused by the next
+     * one: the hits on their way, and the sides and unit types, which do
+     * not change and are read on every step.
+     */
+    static class Rollout {
+        final boolean[] warrior = new boolean[Engagement.MAX_COMBATANTS];
+        int ours;
+        final float[] hitAt = new float[MAX_PENDING_HITS];
+        final int[] hitTarget = new int[MAX_PENDING_HITS];
+        int pendingHits;
+    }
+
+    /**
+     * Plays a fork of the start state forward for the horizon in seconds
+     * with the action for unit 0. Returns WIN if all opponents die, LOSS
+     * if unit 0 dies, and DRAW otherwise, including a successful retreat
+     * and both sides dying at once.
+     */
+    int simulate(SimState start, Action action, float horizon, SplitMix random, Rollout r) {
+        SimState state = start.fork();
+        int n = state.units();
+        r.ours = 0;
+        for (int i = 0; i < n; i++) {
+            if (state.unitInt(SimState.UNIT_TEAM, i) == SimState.OURS) r.ours++;
+            r.warrior[i] = state.unitInt(SimState.UNIT_TYPE, i) == WARRIOR;
+        }
+        r.pendingHits = 0;
+
+        for (float time = STEP; time <= horizon; time += STEP) {
+            applyHits(state, r, time);
+            boolean opponentsDead = aliveCount(state, r.ours, n) == 0;
+            if (!state.isAlive(0)) return opponentsDead ? DRAW : LOSS;
+            if (opponentsDead) return WIN;
+
+            regenerate(state, n, time);
+            if (move(state, action, r)) return DRAW;
+
+            for (int i = 0; i < n; i++) {
+                if (r.warrior[i] && state.isAlive(i)) shoot(state, r, i, time, random);
+            }
+        }
+        return DRAW;
+    }
+
+    /** Moves unit 0 and sets its speed, returns true if it got out of sight of all opponents. */
+    private boolean move(SimState state, Action action, Rollout r) {
+        Speed speed = Speed.NONE;
+        int enemy = action == Action.HOLD ? -1 : closestAlive(state, r, 0);
+        if (enemy >= 0) {
+            float x = state.unit(SimState.UNIT_X, 0);
+            float y = state.unit(SimState.UNIT_Y, 0);
+            float dx = state.unit(SimState.UNIT_X, enemy) - x;
+            float dy = state.unit(SimState.UNIT_Y, enemy) - y;
+            float distance = (float) Math.sqrt(dx * dx + dy * dy);
+            if (action == Action.RETREAT) {
+                if (distance > viewingAreaLength) return true;
+                // Walks backwards, so it keeps facing the enemy
+                if (distance > 0) {
+                    speed = Speed.BACKWARD;
+                    state.setUnit(SimState.UNIT_X, 0, x - dx / distance * backwardVelocity * STEP);
+                    state.setUnit(SimState.UNIT_Y, 0, y - dy / distance * backwardVelocity * STEP);
+                }
+            } else if (distance > engageDistance) {
+                speed = Speed.FORWARD;
+                state.setUnit(SimState.UNIT_X, 0, x + dx / distance * forwardVelocity * STEP);
+                state.setUnit(SimState.UNIT_Y, 0, y + dy / distance * forwardVelocity * STEP);
+            }
+        }
+        if (state.speed(0) != speed) state.setSpeed(0, speed);
+        return false;
+    }
+
+    /**
+     * Fires at the weakest enemy in range if the gun is ready. The last
+     * bullet of a magazine keeps the gun busy for the delay between shots
+     * and the reload, after which the magazine is full again.
+     */
+    private void shoot(SimState state, Rollout r, int i, float time, SplitMix random) {
+        if (time < state.unit(SimState.UNIT_NEXT_SHOT, i)) return;
+        int target = weakestInRange(state, r, i);
+        if (target < 0) return;
+
+        int left = state.unitInt(SimState.UNIT_BULLETS, i);
+        if (left == 0) left = maxBullets;
+        left--;
+        state.setUnitInt(SimState.UNIT_BULLETS, i, left);
+        state.setUnit(SimState.UNIT_NEXT_SHOT, i, time + delayBetweenShots + (left == 0 ? reloadTime : 0));
+
+        float distance = distance(state, i, target);
+        float flightTime = distance / bulletVelocity;
+        boolean shooterMoving = state.speed(i) != Speed.NONE;
+        float error = random.gaussian() * AIM_ERROR * distance * (shooterMoving ? MOVING_SHOOTER_ERROR : 1);
+        if (state.speed(target) != Speed.NONE) error += random.gaussian() * forwardVelocity * flightTime * LEAD_ERROR;
+
+        if (Math.abs(error) < hitRadius && r.pendingHits < MAX_PENDING_HITS) {
+            r.hitAt[r.pendingHits] = time + flightTime;
+            r.hitTarget[r.pendingHits] = target;
+            r.pendingHits++;
+        }
+    }
+
+    private void applyHits(SimState state, Rollout r, float time) {
+        for (int h = 0; h < r.pendingHits; ) {
+            if (r.hitAt[h] > time) {
+                h++;
+                continue;
+            }
+            int target = r.hitTarget[h];
+            float damage = r.warrior[target] ? damageToWarrior : damageToWorker;
+            state.setUnit(SimState.UNIT_HEALTH, target, state.unit(SimState.UNIT_HEALTH, target) - damage);
+            state.setUnit(SimState.UNIT_LAST_HIT, target, time);
+            r.pendingHits--;
+            r.hitAt[h] = r.hitAt[r.pendingHits];
+            r.hitTarget[h] = r.hitTarget[r.pendingHits];
+        }
+    }
+
+    private void regenerate(SimState state, int n, float time) {
+        for (int i = 0; i < n; i++) {
+            float health = state.unit(SimState.UNIT_HEALTH, i);
+            if (health > 0 && health < fullHealth && time - state.unit(SimState.UNIT_LAST_HIT, i) > regenerationDelay) {
+                state.setUnit(SimState.UNIT_HEALTH, i, Math.min(fullHealth, health + regenerationPerSecond * STEP));
+            }
+        }
+    }
+
+    private int weakestInRange(SimState state, Rollout r, int i) {
+        int from = i < r.ours ? r.ours : 0;
+        int to = i < r.ours ? state.units() : r.ours;
+        float x = state.unit(SimState.UNIT_X, i);
+        float y = state.unit(SimState.UNIT_Y, i);
+        int weakest = -1;
+        float weakestHealth = 0;
+        for (int j = from; j < to; j++) {
+            float health = state.unit(SimState.UNIT_HEALTH, j);
+            if (health <= 0 || MathUtil.distance(x, y, state.unit(SimState.UNIT_X, j), state.unit(SimState.UNIT_Y, j)) > bulletRange) continue;
+            if (weakest < 0 || health < weakestHealth) {
+                weakest = j;
+                weakestHealth = health;
+            }
+        }
+        return weakest;
+    }
+
+    private static int closestAlive(SimState state, Rollout r, int i) {
+        float x = state.unit(SimState.UNIT_X, i);
+        float y = state.unit(SimState.UNIT_Y, i);
+        int closest = -1;
+        float best = Float.POSITIVE_INFINITY;
+        for (int j = r.ours; j < state.units(); j++) {
+            if (!state.isAlive(j)) continue;
+            float distance = MathUtil.distance(x, y, state.unit(SimState.UNIT_X, j), state.unit(SimState.UNIT_Y, j));
+            if (distance < best) {
+                best = distance;
+                closest = j;
+            }
+        }
+        return closest;
+    }
+
+    private static float distance(SimState state, int i, int j) {
+        return MathUtil.distance(state.unit(SimState.UNIT_X, i), state.unit(SimState.UNIT_Y, i),
+                state.unit(SimState.UNIT_X, j), state.unit(SimState.UNIT_Y, j));
+    }
+
+    private static int aliveCount(SimState state, int from, int to) {
+        int alive = 0;
+        for (int i = from; i < to; i++) {
+            if (state.isAlive(i)) alive++;
+        }
+        return alive;
+    }
+}
@@ -1,6 +1,5 @@
 package lia;
 
-import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
 /**
@@ -8,6 +7,10 @@ import com.google.gson.JsonObject;
  * no effect. Find the predefined values in data/game-config.json
  * or print them out in processGameEnvironment() method in your bot
  * implementation.
+ *
+ * The fields hold the values of the game that was set up last. They are
+ * left unset when BotHost runs several games in one JVM, use the
+ * GameContext passed to Bot.update() instead.
  */
 public class Constants {
     /** The duration of the game in seconds. */
@@ -74,50 +77,43 @@ public class Constants {
     public static float TICK_TIMEOUT;
 
     protected static void load(JsonObject constantsJson) {
-        MAP_WIDTH = constantsJson.get("MAP_WIDTH").getAsInt();
-        MAP_HEIGHT = constantsJson.get("MAP_HEIGHT").getAsInt();
-        GAME_DURATION = constantsJson.get("GAME_DURATION").getAsFloat();
-        UNIT_DIAMETER = constantsJson.get("UNIT_DIAMETER").getAsFloat();
-        UNIT_FULL_HEALTH = constantsJson.get("UNIT_FULL_HEALTH").getAsInt();
-        UNIT_FORWARD_VELOCITY = constantsJson.get("UNIT_FORWARD_VELOCITY").getAsFloat();
-        UNIT_BACKWARD_VELOCITY = constantsJson.get("UNIT_BACKWARD_VELOCITY").getAsFloat();
-        UNIT_ROTATION_VELOCITY = constantsJson.get("UNIT_ROTATION_VELOCITY").getAsFloat();
-        UNIT_SLOW_ROTATION_VELOCITY = constantsJson.get("UNIT_SLOW_ROTATION_VELOCITY").getAsFloat();
-        DELAY_BETWEEN_SHOTS = constantsJson.get("DELAY_BETWEEN_SHOTS").getAsFloat();
-        RELOAD_TIME = constantsJson.get("RELOAD_TIME").getAsFloat();
-        MAX_BULLETS = constantsJson.get("MAX_BULLETS").getAsInt();
-        HEALTH_REGENERATION_DELAY = constantsJson.get("HEALTH_REGENERATION_DELAY").getAsFloat();
-        HEALTH_REGENERATION_PER_SECOND = constantsJson.get("HEALTH_REGENERATION_PER_SECOND").getAsInt();
-        VIEWING_AREA_LENGTH = constantsJson.get("VIEWING_AREA_LENGTH").getAsFloat();
-        VIEWING_AREA_WIDTH = constantsJson.get("VIEWING_AREA_WIDTH").getAsFloat();
-        VIEWING_AREA_OFFSET = constantsJson.get("VIEWING_AREA_OFFSET").getAsFloat();
-        BULLET_DIAMETER = constantsJson.get("BULLET_DIAMETER").getAsFloat();
-        BULLET_VELOCITY = constantsJson.get("BULLET_VELOCITY").getAsFloat();
-        BULLET_DAMAGE_TO_WARRIOR = constantsJson.get("BULLET_DAMAGE_TO_WARRIOR").getAsInt();
-        BULLET_DAMAGE_TO_WORKER = constantsJson.get("BULLET_DAMAGE_TO_WORKER").getAsInt();
-        BULLET_RANGE = constantsJson.get("BULLET_RANGE").getAsFloat();
-        WARRIOR_PRICE = constantsJson.get("WARRIOR_PRICE").getAsInt();
-        WORKER_PRICE = constantsJson.get("WORKER_PRICE").getAsInt();
-        MAX_NUMBER_OF_UNITS = constantsJson.get("MAX_NUMBER_OF_UNITS").getAsFloat();
-        FIRST_TICK_TIMEOUT = constantsJson.get("FIRST_TICK_TIMEOUT").getAsFloat();
-        TICK_TIMEOUT = constantsJson.get("TICK_TIMEOUT").getAsFloat();
-        STOP_SPAWNING_AFTER = constantsJson.get("STOP_SPAWNING_AFTER").getAsInt();
-        SPAWN_POINT = new SpawnPoint();
-        SPAWN_POINT.x = constantsJson.get("SPAWN_POINT").getAsJsonObject().get("x").getAsFloat();
-        SPAWN_POINT.y = constantsJson.get("SPAWN_POINT").getAsJsonObject().get("y").getAsFloat();
-
-        // Parse map
-        JsonArray mapRows = constantsJson.get("MAP").getAsJsonArray();
-        MAP = new boolean[mapRows.size()][];
-        for (int i = 0; i < mapRows.size(); i++) {
-
-            JsonArray mapColumns = mapRows.get(i).getAsJsonArray();
-            MAP[i] = new boolean[mapColumns.size()];
+        load(GameContext.fromJson(constantsJson));
+    }
 
-            for (int j = 0; j < mapColumns.size(); j++) {
-                MAP[i][j] = mapColumns.get(j).getAsBoolean();
-            }
-        }
+    /** Copies the values of the context into the static fields. */
+    static void load(GameContext context) {
+        MAP_WIDTH = context.mapWidth;
+        MAP_HEIGHT = context.mapHeight;
+        GAME_DURATION = context.gameDuration;
+        UNIT_DIAMETER = context.unitDiameter;
+        UNIT_FULL_HEALTH = context.unitFullHealth;
+        UNIT_FORWARD_VELOCITY = context.unitForwardVelocity;
+        UNIT_BACKWARD_VELOCITY = context.unitBackwardVelocity;
+        UNIT_ROTATION_VELOCITY = context.unitRotationVelocity;
+        UNIT_SLOW_ROTATION_VELOCITY = context.unitSlowRotationVelocity;
+        DELAY_BETWEEN_SHOTS = context.delayBetweenShots;
+        RELOAD_TIME = context.reloadTime;
+        MAX_BULLETS = context.maxBullets;
+        HEALTH_REGENERATION_DELAY = context.healthRegenerationDelay;
+        HEALTH_REGENERATION_PER_SECOND = context.healthRegenerationPerSecond;
+        VIEWING_AREA_LENGTH = context.viewingAreaLength;
+        VIEWING_AREA_WIDTH = context.viewingAreaWidth;
+        VIEWING_AREA_OFFSET = context.viewingAreaOffset;
+        BULLET_DIAMETER = context.bulletDiameter;
+        BULLET_VELOCITY = context.bulletVelocity;
+        BULLET_DAMAGE_TO_WARRIOR = context.bulletDamageToWarrior;
+        BULLET_DAMAGE_TO_WORKER = context.bulletDamageToWorker;
+        BULLET_RANGE = context.bulletRange;
+        WARRIOR_PRICE = context.warriorPrice;
+        WORKER_PRICE = context.workerPrice;
+        MAX_NUMBER_OF_UNITS = context.maxNumberOfUnits;
+        FIRST_TICK_TIMEOUT = context.firstTickTimeout;
+        TICK_TIMEOUT = context.tickTimeout;
+        STOP_SPAWNING_AFTER = context.stopSpawningAfter;
+        SPAWN_POINT = new SpawnPoint();
+        SPAWN_POINT.x = context.spawnPointX;
+        SPAWN_POINT.y = context.spawnPointY;
+        MAP = context.map;
     }
 
     public static class SpawnPoint {
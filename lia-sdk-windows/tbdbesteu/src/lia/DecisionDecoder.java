@@ -0,0 +1,97 @@
+package lia;
+
+import lia.api.Rotation;
+import lia.api.Speed;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import static lia.DecisionRecorder.*;
+
+/**
+ * Renders DecisionRecorder dumps as text, one line per tick followed by a
+ * line per unit.
+ *
+ * Run with: java -cp build/libs/my-bot.jar lia.DecisionDecoder decisions/decisions-1234.bin
+ */
+public class DecisionDecoder {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: DecisionDecoder <dump>...");
+            return;
+        }
+        for (String arg : args) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(arg))))) {
+                decode(in, System.out);
+            }
+        }
+    }
+
+    public static void decode(DataInputStream in, PrintStream out) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a decision dump");
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException("Unsupported dump version " + version);
+        out.println("Dumped on " + in.readUTF());
+
+        Map<Integer, String> reasons = new HashMap<>();
+        for (int code = in.readUnsignedByte(); code != NO_REASON; code = in.readUnsignedByte()) {
+            reasons.put(code, in.readUTF());
+        }
+
+        long[] tick = new long[TICK_FIELDS];
+        while (in.readBoolean()) {
+            for (int i = 0; i < TICK_FIELDS; i++) tick[i] = in.readLong();
+            out.printf("uid %d time %.2f: %d units, %d opponents, %d bullets, %d resources in view; "
+                            + "queue %s decode %s update %s encode %s send %s%s%s%n",
+                    tick[TICK_UID], Float.intBitsToFloat((int) tick[TICK_TIME]), tick[TICK_UNITS],
+                    tick[TICK_OPPONENTS], tick[TICK_BULLETS], tick[TICK_RESOURCES],
+                    micros(tick[TICK_QUEUE]), micros(tick[TICK_DECODE]), micros(tick[TICK_UPDATE]),
+                    micros(tick[TICK_ENCODE]), micros(tick[TICK_SEND]),
+                    (tick[TICK_FLAGS] & FLAG_SLOW) != 0 ? " SLOW" : "",
+                    (tick[TICK_FLAGS] & FLAG_EXCEPTION) != 0 ? " EXCEPTION" : "");
+
+            for (int u = 0; u < tick[TICK_UNITS]; u++) {
+                int id = in.readInt();
+                float x = Float.intBitsToFloat(in.readInt());
+                float y = Float.intBitsToFloat(in.readInt());
+                int health = in.readInt();
+                int actions = in.readInt();
+                int reason = in.readInt();
+                float targetX = Float.intBitsToFloat(in.readInt());
+                float targetY = Float.intBitsToFloat(in.readInt());
+                out.printf("  unit %d at %.1f, %.1f health %d: %s%s%n", id, x, y, health,
+                        actions(actions, targetX, targetY),
+                        reason == NO_REASON ? "" : " because " + reasons.getOrDefault(reason, "reason " + reason));
+            }
+        }
+    }
+
+    private static String micros(long nanos) {
+        return nanos < 0 ? "-" : nanos / 1000 + "us";
+    }
+
+    private static String actions(int actions, float targetX, float targetY) {
+        StringBuilder text = new StringBuilder();
+        int speed = (actions >> SPEED_SHIFT) & 3;
+        int rotation = (actions >> ROTATION_SHIFT) & 7;
+        int navigation = (actions >> NAVIGATION_SHIFT) & 3;
+        if (speed != 0) text.append(" speed ").append(Speed.values()[speed - 1]);
+        if (rotation != 0) text.append(" rotation ").append(Rotation.values()[rotation - 1]);
+        if ((actions & SHOOT) != 0) text.append(" shoot");
+        if (navigation == NAVIGATION_START || navigation == NAVIGATION_BACKWARDS) {
+            text.append(String.format(" navigate to %.1f, %.1f", targetX, targetY));
+            if (navigation == NAVIGATION_BACKWARDS) text.append(" backwards");
+        } else if (navigation == NAVIGATION_STOP) {
+            text.append(" stop navigation");
+        }
+        if ((actions & SAY) != 0) text.append(" say");
+        return text.length() == 0 ? "no commands" : text.substring(1);
+    }
+}
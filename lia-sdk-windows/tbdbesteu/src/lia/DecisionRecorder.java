@@ -0,0 +1,230 @@
+package lia;
+
+import lia.api.GameState;
+import lia.api.UnitData;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Flight recorder of the bot's decisions. Keeps the last TICKS updates:
+ * a summary of the game state, the commands each unit got with the
+ * reason the bot gave for them, and how long each step of the response
+ * took. Everything lives in arrays allocated up front, so recording does
+ * not allocate.
+ *
+ * Only the update thread records. Each slot has a sequence number that is
+ * odd while the slot is written, so dump() can run on any thread without
+ * locks and leaves out a tick that is being written. Dumps are binary,
+ * DecisionDecoder renders them as text.
+ */
+public class DecisionRecorder {
+
+    /** Ticks kept, 12.8 seconds of game time. */
+    public static final int TICKS = 128;
+    /** Units recorded per tick, the rest are left out. */
+    public static final int MAX_UNITS = 64;
+
+    static final int MAGIC = 0x4C494144;
+    static final int VERSION = 1;
+
+    // Tick fields
+    static final int TICK_UID = 0;
+    static final int TICK_TIME = 1;
+    static final int TICK_UNITS = 2;
+    static final int TICK_OPPONENTS = 3;
+    static final int TICK_BULLETS = 4;
+    static final int TICK_RESOURCES = 5;
+    /** Durations in nanoseconds, -1 if the step did not happen. */
+    static final int TICK_QUEUE = 6;
+    static final int TICK_DECODE = 7;
+    static final int TICK_UPDATE = 8;
+    static final int TICK_ENCODE = 9;
+    static final int TICK_SEND = 10;
+    static final int TICK_FLAGS = 11;
+    static final int TICK_FIELDS = 12;
+
+    // Unit fields, floats stored as their bits
+    static final int UNIT_ID = 0;
+    static final int UNIT_X = 1;
+    static final int UNIT_Y = 2;
+    static final int UNIT_HEALTH = 3;
+    static final int UNIT_ACTIONS = 4;
+    static final int UNIT_REASON = 5;
+    static final int UNIT_TARGET_X = 6;
+    static final int UNIT_TARGET_Y = 7;
+    static final int UNIT_FIELDS = 8;
+
+    public static final int FLAG_SLOW = 1;
+    public static final int FLAG_EXCEPTION = 2;
+
+    // Bits of UNIT_ACTIONS: speed and rotation are the ordinal plus one, 0 if not set
+    static final int SPEED_SHIFT = 0;
+    static final int ROTATION_SHIFT = 2;
+    static final int SHOOT = 1 << 5;
+    static final int NAVIGATION_SHIFT = 6;
+    static final int NAVIGATION_START = 1;
+    static final int NAVIGATION_BACKWARDS = 2;
+    static final int NAVIGATION_STOP = 3;
+    static final int SAY = 1 << 8;
+
+    public static final int NO_REASON = 0;
+    private static final String[] reasonNames = new String[256];
+
+    /** Time between dumps of slow ticks and exceptions, so a bad spell does not fill the disk. */
+    private static final long DUMP_INTERVAL_NANOS = 10_000_000_000L;
+
+    private final Path directory;
+    private final long[] ticks = new long[TICKS * TICK_FIELDS];
+    private final int[] units = new int[TICKS * MAX_UNITS * UNIT_FIELDS];
+    private final AtomicLongArray sequence = new AtomicLongArray(TICKS);
+    private volatile long written;
+    private boolean open;
+    private int slot;
+    private long lastDumpAt = System.nanoTime() - DUMP_INTERVAL_NANOS;
+
+    /** Records into memory and dumps into the directory, which is created when needed. */
+    public DecisionRecorder(Path directory) {
+        this.directory = directory;
+    }
+
+    /** Names a reason code for the decoded dumps. Codes are from 1 to 255. */
+    public static synchronized void defineReason(int code, String name) {
+        reasonNames[code] = name;
+    }
+
+    static synchronized String reasonName(int code) {
+        return code >= 0 && code < reasonNames.length ? reasonNames[code] : null;
+    }
+
+    /** Starts the record of a response to the state. */
+    public void beginTick(GameState state) {
+        if (open) endTick(0, 0, 0, 0, 0, 0, 0);
+        slot = (int) (written % TICKS);
+        sequence.set(slot, 2 * written + 1);
+        VarHandle.storeStoreFence();
+        open = true;
+
+        int bullets = 0;
+        int resources = 0;
+        for (UnitData unit : state.units) {
+            bullets += unit.opponentBulletsInView.length;
+            resources += unit.resourcesInView.length;
+        }
+        int base = slot * TICK_FIELDS;
+        ticks[base + TICK_UID] = state.uid;
+        ticks[base + TICK_TIME] = Float.floatToRawIntBits(state.time);
+        ticks[base + TICK_UNITS] = 0;
+        ticks[base + TICK_OPPONENTS] = state.numberOfOpponentUnits;
+        ticks[base + TICK_BULLETS] = bullets;
+        ticks[base + TICK_RESOURCES] = resources;
+        ticks[base + TICK_FLAGS] = 0;
+    }
+
+    /** True between beginTick() and endTick(). */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /** Records the commands of one unit in the open tick. */
+    void unit(UnitData unit, int actions, int reason, float targetX, float targetY) {
+        if (!open) return;
+        int base = slot * TICK_FIELDS;
+        int index = (int) ticks[base + TICK_UNITS];
+        if (index == MAX_UNITS) return;
+        ticks[base + TICK_UNITS] = index + 1;
+
+        int at = (slot * MAX_UNITS + index) * UNIT_FIELDS;
+        units[at + UNIT_ID] = unit.id;
+        units[at + UNIT_X] = Float.floatToRawIntBits(unit.x);
+        units[at + UNIT_Y] = Float.floatToRawIntBits(unit.y);
+        units[at + UNIT_HEALTH] = unit.health;
+        units[at + UNIT_ACTIONS] = actions;
+        units[at + UNIT_REASON] = reason;
+        units[at + UNIT_TARGET_X] = Float.floatToRawIntBits(targetX);
+        units[at + UNIT_TARGET_Y] = Float.floatToRawIntBits(targetY);
+    }
+
+    /**
+     * Closes the open tick with the System.nanoTime() at which the frame
+     * arrived and each step ended. A time of 0 means the step did not
+     * happen.
+     */
+    public void endTick(long receivedAt, long processStart, long decodeEnd, long updateEnd, long encodeEnd,
+                        long sentAt, int flags) {
+        if (!open) return;
+        int base = slot * TICK_FIELDS;
+        ticks[base + TICK_QUEUE] = duration(receivedAt, processStart);
+        ticks[base + TICK_DECODE] = duration(processStart, decodeEnd);
+        ticks[base + TICK_UPDATE] = duration(decodeEnd, updateEnd);
+        ticks[base + TICK_ENCODE] = duration(updateEnd, encodeEnd);
+        ticks[base + TICK_SEND] = duration(encodeEnd, sentAt);
+        ticks[base + TICK_FLAGS] |= flags;
+        sequence.set(slot, 2 * written + 2);
+        written++;
+        open = false;
+    }
+
+    private static long duration(long from, long to) {
+        return from == 0 || to == 0 ? -1 : to - from;
+    }
+
+    /**
+     * Dumps slow ticks and exceptions, at most one every ten seconds.
+     * Returns the file, or null if nothing was written.
+     */
+    public Path dumpIfDue(String trigger) {
+        if (System.nanoTime() - lastDumpAt < DUMP_INTERVAL_NANOS) return null;
+        return dump(trigger);
+    }
+
+    /** Writes the recorded ticks, oldest first. Returns the file, or null if writing failed. */
+    public synchronized Path dump(String trigger) {
+        lastDumpAt = System.nanoTime();
+        long end = written;
+        long[] tick = new long[TICK_FIELDS];
+        int[] unit = new int[MAX_UNITS * UNIT_FIELDS];
+        try {
+            Files.createDirectories(directory);
+            Path file = directory.resolve("decisions-" + System.currentTimeMillis() + ".bin");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(trigger);
+                for (int code = 1; code < reasonNames.length; code++) {
+                    String name = reasonName(code);
+                    if (name == null) continue;
+                    out.writeByte(code);
+                    out.writeUTF(name);
+                }
+                out.writeByte(NO_REASON);
+
+                for (long n = Math.max(0, end - TICKS); n < end; n++) {
+                    int s = (int) (n % TICKS);
+                    long before = sequence.get(s);
+                    if (before != 2 * n + 2) continue;
+                    System.arraycopy(ticks, s * TICK_FIELDS, tick, 0, TICK_FIELDS);
+                    int count = (int) Math.min(MAX_UNITS, tick[TICK_UNITS]);
+                    System.arraycopy(units, s * MAX_UNITS * UNIT_FIELDS, unit, 0, count * UNIT_FIELDS);
+                    // Overwritten by the update thread while copying
+                    VarHandle.acquireFence();
+                    if (sequence.get(s) != before) continue;
+
+                    out.writeBoolean(true);
+                    for (long value : tick) out.writeLong(value);
+                    for (int i = 0; i < count * UNIT_FIELDS; i++) out.writeInt(unit[i]);
+                }
+                out.writeBoolean(false);
+            }
+            return file;
+        } catch (IOException e) {
+            Log.error("Could not dump decisions", e);
+            return null;
+        }
+    }
+}
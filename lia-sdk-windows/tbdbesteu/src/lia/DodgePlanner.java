@@ -0,0 +1,146 @@
+package lia;
+
+import lia.api.Rotation;
+import lia.api.Speed;
+import lia.api.UnitData;
+
+import java.util.Arrays;
+
+/**
+ * Picks the speed and rotation that keep a unit furthest away from the
+ * bullets that are predicted to hit it. Every combination of Speed and
+ * Rotation is simulated forward against the bullets from BulletThreats
+ * and the one with the largest miss distance wins. A plan is only given
+ * when it avoids the bullets and improves on the unit's current command.
+ */
+public class DodgePlanner {
+
+    /** Simulation step, the engine runs at 30 ticks per second. */
+    private static final float STEP = 1f / 30f;
+    /** Threats further away in time than this are ignored. */
+    private static final float MAX_HORIZON = 1f;
+    /** Miss distances above this are all equally good, lets ties prefer the current command. */
+    private static final float SAFE_MARGIN = 1.5f;
+
+    private static final Speed[] SPEEDS = Speed.values();
+    private static final Rotation[] ROTATIONS = Rotation.values();
+
+    private int[] threatening = new int[16];
+    private final Plan best = new Plan();
+
+    public static class Plan {
+        public Speed speed;
+        public Rotation rotation;
+        /** Smallest predicted distance between the unit and any threatening bullet. */
+        public float missDistance;
+        /** True if the plan avoids every threatening bullet. */
+        public boolean safe;
+    }
+
+    /**
+     * Returns the best plan for the unit, or null if the unit should carry
+     * on with what it does: no bullet threatens it within the horizon, no
+     * command avoids the bullets, or its current command already is the
+     * best one. A unit that is already dodging gets a plan that keeps its
+     * command, so that the dodge is not cut short. Stops trying new
+     * combinations once the deadline (System.nanoTime() based) has passed
+     * and goes with the best one so far. The plan is reused by the next
+     * call.
+     */
+    public Plan plan(BulletThreats threats, UnitData unit, boolean dodging, long deadlineNanos) {
+        int unitIndex = threats.unitIndex(unit.id);
+        if (unitIndex < 0 || threats.firstImpactTime(unitIndex) > MAX_HORIZON) return null;
+
+        int nThreats = 0;
+        float horizon = 0;
+        for (int b = 0; b < threats.bulletCount(); b++) {
+            float t = threats.impactTime(unitIndex, b);
+            if (t > MAX_HORIZON) continue;
+            if (nThreats == threatening.length) threatening = Arrays.copyOf(threatening, nThreats * 2);
+            threatening[nThreats++] = b;
+            horizon = Math.max(horizon, Math.min(threats.bulletFlightTime(b), MAX_HORIZON));
+        }
+
+        best.speed = unit.speed;
+        best.rotation = unit.rotation;
+        best.missDistance = simulate(threats, nThreats, unit, unit.speed, unit.rotation, horizon);
+
+        for (Speed speed : SPEEDS) {
+            for (Rotation rotation : ROTATIONS) {
+                if (System.nanoTime() > deadlineNanos) return finish(threats, unit, dodging);
+                if (speed == unit.speed && rotation == unit.rotation) continue;
+
+                float miss = simulate(threats, nThreats, unit, speed, rotation, horizon);
+                if (miss > best.missDistance) {
+                    best.speed = speed;
+                    best.rotation = rotation;
+                    best.missDistance = miss;
+                }
+            }
+        }
+        return finish(threats, unit, dodging);
+    }
+
+    private Plan finish(BulletThreats threats, UnitData unit, boolean dodging) {
+        best.safe = best.missDistance > BulletThreats.hitRadius(threats.context());
+        if (!best.safe) return null;
+        boolean changed = best.speed != unit.speed || best.rotation != unit.rotation;
+        return changed || dodging ? best : null;
+    }
+
+    private float simulate(BulletThreats threats, int nThreats, UnitData unit,
+                           Speed speed, Rotation rotation, float horizon) {
+        GameContext context = threats.context();
+        float velocity = velocity(context, speed);
+        float angularVelocity = angularVelocity(context, rotation);
+
+        float x = unit.x;
+        float y = unit.y;
+        float angle = unit.orientationAngle;
+        float miss = SAFE_MARGIN * BulletThreats.hitRadius(context);
+        float radius = context.unitDiameter / 2;
+
+        for (float t = 0; t <= horizon; t += STEP) {
+            for (int i = 0; i < nThreats; i++) {
+                int b = threatening[i];
+                if (t > threats.bulletFlightTime(b)) continue;
+                float d = MathUtil.distance(x, y,
+                        threats.bulletX(b) + threats.bulletVelocityX(b) * t,
+                        threats.bulletY(b) + threats.bulletVelocityY(b) * t);
+                if (d < miss) miss = d;
+            }
+
+            angle += angularVelocity * STEP;
+            double rad = Math.toRadians(angle);
+            float dirX = (float) Math.cos(rad) * Math.signum(velocity);
+            float dirY = (float) Math.sin(rad) * Math.signum(velocity);
+            // The unit moves until its body touches an obstacle
+            float step = Math.abs(velocity) * STEP;
+            if (step > 0) {
+                step = context.obstacles.sweepCircle(x, y, dirX, dirY, radius, step);
+                x += dirX * step;
+                y += dirY * step;
+            }
+        }
+        return miss;
+    }
+
+    static float velocity(GameContext context, Speed speed) {
+        switch (speed) {
+            case FORWARD: return context.unitForwardVelocity;
+            case BACKWARD: return -context.unitBackwardVelocity;
+            default: return 0;
+        }
+    }
+
+    /** Rotation in degrees per second, positive is counter-clockwise (left). */
+    static float angularVelocity(GameContext context, Rotation rotation) {
+        switch (rotation) {
+            case LEFT: return context.unitRotationVelocity;
+            case RIGHT: return -context.unitRotationVelocity;
+            case SLOW_LEFT: return context.unitSlowRotationVelocity;
+            case SLOW_RIGHT: return -context.unitSlowRotationVelocity;
+            default: return 0;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package lia;
+
+import lia.api.GameState;
+import lia.api.OpponentInView;
+import lia.api.Speed;
+import lia.api.UnitData;
+import lia.api.UnitType;
+
+/**
+ * Snapshot of a local fight around one of our warriors, used as the
+ * starting point of CombatModel rollouts. Combatant 0 is the warrior the
+ * decision is made for, followed by our other warriors nearby and then
+ * the opponents it sees.
+ */
+public class Engagement {
+
+    /** Largest number of combatants taken into account. */
+    public static final int MAX_COMBATANTS = 16;
+
+    public int size;
+    /** Number of our combatants, they come first. */
+    public int ours;
+    public final float[] x = new float[MAX_COMBATANTS];
+    public final float[] y = new float[MAX_COMBATANTS];
+    public final float[] health = new float[MAX_COMBATANTS];
+    public final int[] bullets = new int[MAX_COMBATANTS];
+    public final boolean[] warrior = new boolean[MAX_COMBATANTS];
+    public final boolean[] moving = new boolean[MAX_COMBATANTS];
+    /** Time the combatant needs to turn to face the nearest enemy. */
+    public final float[] aimDelay = new float[MAX_COMBATANTS];
+
+    /** Builds the engagement of the unit against the opponents it sees. */
+    public static Engagement around(UnitData unit, GameState state, GameContext context) {
+        Engagement engagement = new Engagement();
+        UnitData[] ourUnits = new UnitData[MAX_COMBATANTS / 2];
+        ourUnits[0] = unit;
+        engagement.add(unit.x, unit.y, unit.health, unit.nBullets, true, unit.speed != Speed.NONE);
+
+        for (UnitData other : state.units) {
+            if (engagement.size >= MAX_COMBATANTS / 2) break;
+            if (other.id == unit.id || other.type != UnitType.WARRIOR) continue;
+            if (MathUtil.distance(unit.x, unit.y, other.x, other.y) > context.viewingAreaLength) continue;
+            ourUnits[engagement.size] = other;
+            engagement.add(other.x, other.y, other.health, other.nBullets, true, other.speed != Speed.NONE);
+        }
+        engagement.ours = engagement.size;
+
+        for (OpponentInView opponent : unit.opponentsInView) {
+            if (engagement.size >= MAX_COMBATANTS) break;
+            // Opponent bullets are not visible, assume a full magazine
+            engagement.add(opponent.x, opponent.y, opponent.health, context.maxBullets,
+                    opponent.type == UnitType.WARRIOR, opponent.speed != Speed.NONE);
+            float angle = MathUtil.angleBetweenUnitAndPoint(opponent.x, opponent.y, opponent.orientationAngle, unit.x, unit.y);
+            engagement.aimDelay[engagement.size - 1] = Math.abs(angle) / context.unitRotationVelocity;
+        }
+
+        // Our units first turn towards the closest opponent
+        for (int i = 0; i < engagement.ours; i++) {
+            int closest = engagement.closestEnemy(i);
+            if (closest < 0) continue;
+            float angle = MathUtil.angleBetweenUnitAndPoint(ourUnits[i], engagement.x[closest], engagement.y[closest]);
+            engagement.aimDelay[i] = Math.abs(angle) / context.unitRotationVelocity;
+        }
+        return engagement;
+    }
+
+    private int closestEnemy(int i) {
+        int from = i < ours ? ours : 0;
+        int to = i < ours ? size : ours;
+        float best = Float.POSITIVE_INFINITY;
+        int closest = -1;
+        for (int j = from; j < to; j++) {
+            float distance = MathUtil.distance(x[i], y[i], x[j], y[j]);
+            if (distance < best) {
+                best = distance;
+                closest = j;
+            }
+        }
+        return closest;
+    }
+
+    private void add(float x, float y, float health, int bullets, boolean warrior, boolean moving) {
+        this.x[size] = x;
+        this.y[size] = y;
+        this.health[size] = health;
+        this.bullets[size] = bullets;
+        this.warrior[size] = warrior;
+        this.moving[size] = moving;
+        this.aimDelay[size] = 0;
+        size++;
+    }
+
+    /** Number of opponents in the engagement. */
+    public int opponents() {
+        return size - ours;
+    }
+}
@@ -0,0 +1,156 @@
+package lia;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Estimates how a local fight goes for each CombatModel action by playing
+ * it out many times with random shot outcomes. The rollouts are split
+ * into chunks that run in parallel on a fork/join pool. Rollouts that
+ * have not started by the deadline are skipped, so the estimate is based
+ * on however many rollouts fit in the budget. Every rollout plays on its
+ * own fork of one SimState of the engagement, so the chunks share the
+ * start state without copying it.
+ */
+public class EngagementEvaluator {
+
+    /** Rollouts per action when there is enough time. */
+    public static final int ROLLOUTS = 2048;
+    /** How far ahead the fights are played, in seconds. */
+    public static final float HORIZON = 3f;
+    /** How much better retreating has to look before a warrior gives up a fight. */
+    public static final float RETREAT_MARGIN = 0.1f;
+    private static final int CHUNK = 128;
+    private static final CombatModel.Action[] ACTIONS = CombatModel.Action.values();
+
+    private static final ForkJoinPool pool = new ForkJoinPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+            pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("engagement-" + thread.getName());
+                thread.setDaemon(true);
+                return thread;
+            },
+            null, false);
+
+    private final SplittableRandom random = new SplittableRandom();
+    private CombatModel model;
+    private GameContext context;
+
+    /** Outcome counts of the rollouts of each action. */
+    public static class Result {
+        final int[] rollouts = new int[ACTIONS.length];
+        final int[] wins = new int[ACTIONS.length];
+        final int[] losses = new int[ACTIONS.length];
+
+        void add(Result other) {
+            for (int a = 0; a < ACTIONS.length; a++) {
+                rollouts[a] += other.rollouts[a];
+                wins[a] += other.wins[a];
+                losses[a] += other.losses[a];
+            }
+        }
+
+        /** Rollouts played over all actions. */
+        public int rollouts() {
+            int total = 0;
+            for (int count : rollouts) total += count;
+            return total;
+        }
+
+        public int rollouts(CombatModel.Action action) {
+            return rollouts[action.ordinal()];
+        }
+
+        /** Share of the rollouts in which all opponents died. */
+        public float winProbability(CombatModel.Action action) {
+            int n = rollouts[action.ordinal()];
+            return n == 0 ? 0 : wins[action.ordinal()] / (float) n;
+        }
+
+        /** Share of the rollouts in which our unit died. */
+        public float lossProbability(CombatModel.Action action) {
+            int n = rollouts[action.ordinal()];
+            return n == 0 ? 0 : losses[action.ordinal()] / (float) n;
+        }
+
+        /**
+         * Action with the best balance of wins and losses, null if nothing
+         * was evaluated. Retreating has to win by RETREAT_MARGIN so that
+         * noise in even fights does not make warriors run.
+         */
+        public CombatModel.Action best() {
+            CombatModel.Action best = null;
+            float bestScore = Float.NEGATIVE_INFINITY;
+            for (CombatModel.Action action : ACTIONS) {
+                if (rollouts[action.ordinal()] == 0) continue;
+                float score = winProbability(action) - lossProbability(action);
+                if (action == CombatModel.Action.RETREAT) score -= RETREAT_MARGIN;
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = action;
+                }
+            }
+            return best;
+        }
+    }
+
+    private class Chunk extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+
+        final SimState start;
+        final int from, to;
+        final long seed;
+        final long deadlineNanos;
+
+        Chunk(SimState start, int from, int to, long seed, long deadlineNanos) {
+            this.start = start;
+            this.from = from;
+            this.to = to;
+            this.seed = seed;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from > CHUNK) {
+                int middle = (from + to) >>> 1;
+                Chunk left = new Chunk(start, from, middle, seed, deadlineNanos);
+                Chunk right = new Chunk(start, middle, to, seed, deadlineNanos);
+                left.fork();
+                Result result = right.compute();
+                result.add(left.join());
+                return result;
+            }
+
+            Result result = new Result();
+            CombatModel.Rollout rollout = new CombatModel.Rollout();
+            SplitMix rolloutRandom = new SplitMix(0);
+            for (int i = from; i < to; i++) {
+                if (System.nanoTime() >= deadlineNanos) break;
+                for (CombatModel.Action action : ACTIONS) {
+                    // The same random numbers for every action make the comparison less noisy
+                    rolloutRandom.setState(seed + i);
+                    int outcome = model.simulate(start, action, HORIZON, rolloutRandom, rollout);
+                    int a = action.ordinal();
+                    result.rollouts[a]++;
+                    if (outcome == CombatModel.WIN) result.wins[a]++;
+                    else if (outcome == CombatModel.LOSS) result.losses[a]++;
+                }
+            }
+            return result;
+        }
+    }
+
+    /** Evaluates every action for the engagement, returning what was computed by the deadline. */
+    public Result evaluate(Engagement engagement, GameContext context, long deadlineNanos) {
+        if (this.context != context) {
+            this.context = context;
+            model = new CombatModel(context);
+        }
+        if (engagement.opponents() == 0) return new Result();
+        return pool.invoke(new Chunk(model.start(engagement), 0, ROLLOUTS, random.nextLong(), deadlineNanos));
+    }
+}
@@ -0,0 +1,231 @@
+package lia;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+
+/**
+ * Java Flight Recorder events of the bot runtime, so a recording of a
+ * match shows every tick next to the GC, JIT and thread activity of the
+ * JVM. Events are only written while a recording that enables them runs;
+ * otherwise creating and ending one costs next to nothing.
+ *
+ * Start a recording with --jfr &lt;file&gt;, or with -XX:StartFlightRecording
+ * and settings=lia.jfc.
+ */
+public final class FlightEvents {
+
+    /** Recording settings looked up in the working directory, like the heatmap file. */
+    public static final String DEFAULT_SETTINGS = "lia.jfc";
+
+    private FlightEvents() {}
+
+    @Name("lia.FrameReceived")
+    @Label("Frame Received")
+    @Description("Message from the engine handed to the update thread")
+    @Category({"Lia", "Network"})
+    @StackTrace(false)
+    public static class FrameReceived extends Event {
+        @Label("Payload Size")
+        @DataAmount
+        public int payloadBytes;
+
+        @Label("Queued Frames")
+        @Description("Frames waiting for the update thread, including this one")
+        public int queued;
+    }
+
+    @Name("lia.StateSkipped")
+    @Label("State Skipped")
+    @Description("Game state answered with an empty response because a newer one was waiting")
+    @Category({"Lia", "Network"})
+    @StackTrace(false)
+    public static class StateSkipped extends Event {
+        @Label("Uid")
+        public long uid;
+    }
+
+    @Name("lia.Decode")
+    @Label("Decode")
+    @Description("Parsing of a message from the engine")
+    @Category({"Lia", "Network"})
+    @StackTrace(false)
+    public static class Decode extends Event {
+        @Label("Uid")
+        public long uid;
+
+        @Label("Units")
+        public int units;
+
+        @Label("Payload Size")
+        @DataAmount
+        public int payloadBytes;
+    }
+
+    @Name("lia.Update")
+    @Label("Bot Update")
+    @Description("Call of Bot.update or Bot.setup")
+    @Category({"Lia", "Bot"})
+    @StackTrace(false)
+    public static class Update extends Event {
+        @Label("Uid")
+        public long uid;
+
+        @Label("Units")
+        public int units;
+
+        @Label("Opponents")
+        public int opponents;
+    }
+
+    @Name("lia.Subsystem")
+    @Label("Subsystem")
+    @Description("Work of a subsystem, or a slice or commit of an anytime task, within an update")
+    @Category({"Lia", "Bot"})
+    @StackTrace(false)
+    public static class Subsystem extends Event {
+        @Label("Uid")
+        public long uid;
+
+        @Label("Task")
+        public String task;
+
+        @Label("Phase")
+        public String phase;
+
+        @Label("Steps")
+        public int steps;
+    }
+
+    @Name("lia.ApiEvents")
+    @Label("Api Events")
+    @Description("Commands in a response and commands left out because they change nothing")
+    @Category({"Lia", "Bot"})
+    @StackTrace(false)
+    public static class ApiEvents extends Event {
+        @Label("Uid")
+        public long uid;
+
+        @Label("Speed")
+        public int speed;
+
+        @Label("Rotation")
+        public int rotation;
+
+        @Label("Shoot")
+        public int shoot;
+
+        @Label("Navigation Start")
+        public int navigationStart;
+
+        @Label("Navigation Stop")
+        public int navigationStop;
+
+        @Label("Say Something")
+        public int saySomething;
+
+        @Label("Spawn Unit")
+        public int spawnUnit;
+
+        @Label("Dropped")
+        public int dropped;
+    }
+
+    @Name("lia.Encode")
+    @Label("Encode")
+    @Description("Serialization of a response")
+    @Category({"Lia", "Network"})
+    @StackTrace(false)
+    public static class Encode extends Event {
+        @Label("Uid")
+        public long uid;
+
+        @Label("Payload Size")
+        @DataAmount
+        public int payloadBytes;
+    }
+
+    @Name("lia.Send")
+    @Label("Send")
+    @Description("Hand-off of a response to the transport")
+    @Category({"Lia", "Network"})
+    @StackTrace(false)
+    public static class Send extends Event {
+        @Label("Uid")
+        public long uid;
+
+        @Label("Payload Size")
+        @DataAmount
+        public int payloadBytes;
+    }
+
+    /** Starts timing a subsystem of the update. */
+    public static Subsystem beginSubsystem() {
+        Subsystem event = new Subsystem();
+        event.begin();
+        return event;
+    }
+
+    /** Ends the subsystem event and commits it if it is recorded. */
+    public static void endSubsystem(Subsystem event, long uid, String task, String phase, int steps) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.uid = uid;
+            event.task = task;
+            event.phase = phase;
+            event.steps = steps;
+            event.commit();
+        }
+    }
+
+    /** Size of the text in UTF-8, as sent over the WebSocket, without encoding it. */
+    static int utf8Length(String text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Starts a recording that is written to the destination when it is
+     * stopped or the JVM exits. Uses DEFAULT_SETTINGS if the file exists
+     * and the JDK's low overhead "default" settings otherwise.
+     */
+    public static Recording startRecording(String destination) throws IOException, ParseException {
+        Path settings = Paths.get(DEFAULT_SETTINGS);
+        Configuration configuration = Files.exists(settings)
+                ? Configuration.create(settings)
+                : Configuration.getConfiguration("default");
+
+        Recording recording = new Recording(configuration);
+        recording.setName("lia");
+        recording.setToDisk(true);
+        recording.setDestination(Paths.get(destination));
+        recording.setDumpOnExit(true);
+        recording.start();
+        return recording;
+    }
+}
@@ -0,0 +1,271 @@
+package lia;
+
+import java.util.Arrays;
+
+/**
+ * Directions towards one goal from every cell of the map, so that any
+ * number of units heading to the goal are steered with a lookup instead
+ * of a path search each. The field is a Dijkstra search outwards from the
+ * goal over the NavigationGrid, every cell pointing to the neighbour it was
+ * reached from.
+ *
+ * When the goal moves a few cells, the field is repaired right away: a
+ * search from the new goal covers the cells up to the old goal, and only
+ * those cells are rewritten. Every other cell keeps its direction, which
+ * leads into the repaired area, and its cost is raised by the cost from
+ * the old goal to the new one. Paths from outside the area may then be a
+ * little longer than the shortest one, so the exact field is still
+ * rebuilt in steps that fit into the time left of an update. A goal that
+ * moves further, or out of reach of the repair, waits for the rebuild.
+ * Queries keep using the last complete field until the new one is done.
+ * If the goal moves again while a rebuild runs, the rebuild still
+ * finishes and the next one starts with the latest goal, so a goal that
+ * moves every update does not starve the field.
+ */
+public class FlowField {
+
+    public static final byte NO_DIRECTION = -1;
+    /** Cells expanded between checks of the deadline. */
+    private static final int CELLS_PER_CHECK = 256;
+    /** A repair covers at least the cells this close to the new goal, so that nearby units take the shortest way. */
+    private static final float REPAIR_RADIUS = 6;
+    /** A repair that would cover more cells than this gives way to the rebuild. */
+    private static final int MAX_REPAIR_CELLS = 2048;
+
+    private final NavigationGrid grid;
+
+    // Complete field used by the queries. The cost of a cell is cost[cell] + costOffset.
+    private float[] cost;
+    private byte[] direction;
+    private float costOffset;
+    private int goalCell = -1;
+    private float goalX, goalY;
+    /** False while the field is a repair and the shortest ways still have to be rebuilt. */
+    private boolean exact = true;
+
+    // Search of a repair, its cells marked with the repair's number
+    private final float[] repairCost;
+    private final byte[] repairDirection;
+    private final int[] repairMark;
+    private int repairs;
+    private final CellQueue repairOpen = new CellQueue();
+    private int[] repaired = new int[256];
+
+    // Field being built
+    private float[] nextCost;
+    private byte[] nextDirection;
+    private final CellQueue open = new CellQueue();
+    private boolean building;
+    private int buildCell = -1;
+    private float buildX, buildY;
+
+    // Latest goal asked for
+    private int wantedCell = -1;
+    private float wantedX, wantedY;
+
+    public FlowField(NavigationGrid grid) {
+        this.grid = grid;
+        cost = new float[grid.cells()];
+        direction = new byte[grid.cells()];
+        nextCost = new float[grid.cells()];
+        nextDirection = new byte[grid.cells()];
+        repairCost = new float[grid.cells()];
+        repairDirection = new byte[grid.cells()];
+        repairMark = new int[grid.cells()];
+    }
+
+    /**
+     * Moves the goal. If the goal moved to another cell, the field is
+     * repaired right away when the goal is close to the old one and rebuilt
+     * otherwise. A goal on an obstacle is moved to the nearest free cell.
+     */
+    public void setGoal(float x, float y) {
+        wantedX = x;
+        wantedY = y;
+        wantedCell = grid.cell(x, y);
+        if (wantedCell >= 0 && grid.isBlocked(wantedCell)) {
+            wantedCell = grid.nearestFree(wantedCell);
+            wantedX = grid.x(wantedCell);
+            wantedY = grid.y(wantedCell);
+        }
+        if (wantedCell == goalCell) {
+            // Same cell, only the point units head for in the last cell changes
+            goalX = wantedX;
+            goalY = wantedY;
+        } else if (goalCell >= 0 && wantedCell >= 0) {
+            repair();
+        }
+    }
+
+    /** True if the field is behind the goal or not exact, and rebuild() has work to do. */
+    public boolean isStale() {
+        return building || (wantedCell >= 0 && wantedCell != goalCell) || !exact;
+    }
+
+    /** True once a field has been completed. */
+    public boolean isReady() {
+        return goalCell >= 0;
+    }
+
+    /**
+     * Works on the field until it is up to date with the goal or the
+     * deadline passes. Returns true if there is work left.
+     */
+    public boolean rebuild(long deadlineNanos) {
+        while (isStale()) {
+            if (!building) start();
+            for (int i = 0; i < CELLS_PER_CHECK && building; i++) expand();
+            if (building && System.nanoTime() >= deadlineNanos) return true;
+        }
+        return false;
+    }
+
+    /** True if the field gives the shortest way from every cell, not a repair of an older one. */
+    public boolean isExact() {
+        return exact;
+    }
+
+    private void start() {
+        buildCell = wantedCell;
+        buildX = wantedX;
+        buildY = wantedY;
+        Arrays.fill(nextCost, Float.POSITIVE_INFINITY);
+        Arrays.fill(nextDirection, NO_DIRECTION);
+        open.clear();
+        nextCost[buildCell] = 0;
+        open.add(buildCell, 0);
+        building = true;
+    }
+
+    private void expand() {
+        if (open.isEmpty()) {
+            finish();
+            return;
+        }
+        float key = open.minKey();
+        int cell = open.poll();
+        if (key > nextCost[cell]) return;
+
+        // Search backwards from the goal: a neighbour that can step into this cell points here
+        for (int d = 0; d < NavigationGrid.DIRECTIONS; d++) {
+            if (!grid.canStep(cell, d)) continue;
+            int neighbour = grid.step(cell, d);
+            int back = (d + NavigationGrid.DIRECTIONS / 2) % NavigationGrid.DIRECTIONS;
+            float neighbourCost = key + grid.stepCost(neighbour, back);
+            if (neighbourCost < nextCost[neighbour]) {
+                nextCost[neighbour] = neighbourCost;
+                nextDirection[neighbour] = (byte) back;
+                open.add(neighbour, neighbourCost);
+            }
+        }
+    }
+
+    private void finish() {
+        float[] swapCost = cost;
+        cost = nextCost;
+        nextCost = swapCost;
+        byte[] swapDirection = direction;
+        direction = nextDirection;
+        nextDirection = swapDirection;
+
+        costOffset = 0;
+        goalCell = buildCell;
+        goalX = buildX;
+        goalY = buildY;
+        exact = true;
+        building = false;
+        if (wantedCell == goalCell) {
+            goalX = wantedX;
+            goalY = wantedY;
+        } else if (wantedCell >= 0) {
+            // The goal moved while this field was built
+            repair();
+        }
+    }
+
+    /**
+     * Points the complete field at the wanted goal by searching outwards
+     * from it until the old goal and all cells within REPAIR_RADIUS are
+     * settled. Those cells get the directions of the search. A unit
+     * anywhere else follows the old field, whose cost keeps falling, into
+     * the repaired cells at the latest at the old goal. Gives up and
+     * leaves the field as it was if the search grows past
+     * MAX_REPAIR_CELLS.
+     */
+    private void repair() {
+        int mark = ++repairs;
+        int settled = 0;
+        boolean oldGoalSettled = false;
+        repairOpen.clear();
+        repairMark[wantedCell] = mark;
+        repairCost[wantedCell] = 0;
+        repairDirection[wantedCell] = NO_DIRECTION;
+        repairOpen.add(wantedCell, 0);
+        while (!repairOpen.isEmpty()) {
+            float key = repairOpen.minKey();
+            if (oldGoalSettled && key > REPAIR_RADIUS) break;
+            int cell = repairOpen.poll();
+            if (key > repairCost[cell]) continue;
+            if (settled == MAX_REPAIR_CELLS) return;
+            if (settled == repaired.length) repaired = Arrays.copyOf(repaired, settled * 2);
+            repaired[settled++] = cell;
+            if (cell == goalCell) oldGoalSettled = true;
+
+            for (int d = 0; d < NavigationGrid.DIRECTIONS; d++) {
+                if (!grid.canStep(cell, d)) continue;
+                int neighbour = grid.step(cell, d);
+                int back = (d + NavigationGrid.DIRECTIONS / 2) % NavigationGrid.DIRECTIONS;
+                float neighbourCost = key + grid.stepCost(neighbour, back);
+                if (repairMark[neighbour] != mark || neighbourCost < repairCost[neighbour]) {
+                    repairMark[neighbour] = mark;
+                    repairCost[neighbour] = neighbourCost;
+                    repairDirection[neighbour] = (byte) back;
+                    repairOpen.add(neighbour, neighbourCost);
+                }
+            }
+        }
+        if (!oldGoalSettled) return;
+
+        // The old goal had cost 0, every cell outside now goes through it
+        costOffset += repairCost[goalCell];
+        for (int i = 0; i < settled; i++) {
+            int cell = repaired[i];
+            cost[cell] = repairCost[cell] - costOffset;
+            direction[cell] = repairDirection[cell];
+        }
+        goalCell = wantedCell;
+        goalX = wantedX;
+        goalY = wantedY;
+        exact = false;
+    }
+
+    /** Direction of the step towards the goal from the point, NO_DIRECTION at the goal or where it cannot be reached. */
+    public byte direction(float x, float y) {
+        int cell = grid.cell(x, y);
+        return cell < 0 || goalCell < 0 ? NO_DIRECTION : direction[cell];
+    }
+
+    /**
+     * Cost of getting from the point to the goal, infinity if it cannot be
+     * reached. After a repair it is an upper bound until the rebuild.
+     */
+    public float cost(float x, float y) {
+        int cell = grid.cell(x, y);
+        return cell < 0 || goalCell < 0 ? Float.POSITIVE_INFINITY : cost[cell] + costOffset;
+    }
+
+    /** True if the point is in the goal's cell of the complete field. */
+    public boolean atGoal(float x, float y) {
+        return goalCell >= 0 && grid.cell(x, y) == goalCell;
+    }
+
+    /** X of the goal of the complete field. */
+    public float goalX() {
+        return goalX;
+    }
+
+    /** Y of the goal of the complete field. */
+    public float goalY() {
+        return goalY;
+    }
+}
@@ -0,0 +1,176 @@
+package lia;
+
+import lia.api.GameState;
+import lia.api.Rotation;
+import lia.api.Speed;
+import lia.api.UnitData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Moves groups of units to shared goals. Goals are small ints defined by
+ * the bot, each with one FlowField that all units heading there share.
+ * Units asked to be steered on an update follow the field of their goal
+ * and keep some distance from each other so that a group does not crowd
+ * into the same cells. A field whose goal moved a few cells is repaired
+ * at once, and rebuilds of fields whose goal moved run in the time the
+ * scheduler gives this task.
+ */
+public class FlowFields implements AnytimeTask {
+
+    /** Units closer than this many unit diameters push each other apart. */
+    private static final float SEPARATION_DIAMETERS = 2;
+    /** Weight of the push from a unit that is touching, relative to the field direction. */
+    private static final float SEPARATION_WEIGHT = 1.5f;
+    /** Degrees off the wanted heading within which a unit keeps going straight. */
+    private static final float HEADING_TOLERANCE = 5;
+    /** Degrees off within which rotation is slow, so that the unit does not overshoot. */
+    private static final float SLOW_TURN_ANGLE = 30;
+    /** Degrees off beyond which a unit turns on the spot instead of driving. */
+    private static final float TURN_IN_PLACE_ANGLE = 60;
+
+    private final int priority;
+    private GameContext context;
+    private NavigationGrid grid;
+
+    private FlowField[] fields = new FlowField[0];
+    private boolean[] hasGoal = new boolean[0];
+    private float[] goalX = new float[0];
+    private float[] goalY = new float[0];
+
+    private final List<UnitData> steered = new ArrayList<>();
+    private int[] steeredGoal = new int[8];
+
+    public FlowFields(int priority) {
+        this.priority = priority;
+    }
+
+    /** Sets where the units of the goal head to. Moving the goal repairs its field or rebuilds it in the background. */
+    public void setGoal(int goal, float x, float y) {
+        if (goal >= hasGoal.length) {
+            int size = goal + 1;
+            fields = Arrays.copyOf(fields, size);
+            hasGoal = Arrays.copyOf(hasGoal, size);
+            goalX = Arrays.copyOf(goalX, size);
+            goalY = Arrays.copyOf(goalY, size);
+        }
+        hasGoal[goal] = true;
+        goalX[goal] = x;
+        goalY[goal] = y;
+        if (fields[goal] != null) fields[goal].setGoal(x, y);
+    }
+
+    /** Steers the unit towards the goal on this update. The goal must have been set. */
+    public void steer(int goal, UnitData unit) {
+        if (steered.size() == steeredGoal.length) steeredGoal = Arrays.copyOf(steeredGoal, steeredGoal.length * 2);
+        steeredGoal[steered.size()] = goal;
+        steered.add(unit);
+    }
+
+    /** The field of the goal, null before the first update after the goal was set. */
+    public FlowField field(int goal) {
+        return goal < fields.length ? fields[goal] : null;
+    }
+
+    @Override
+    public String name() {
+        return "flow fields";
+    }
+
+    @Override
+    public int priority() {
+        return priority;
+    }
+
+    @Override
+    public void begin(GameState state, GameContext context) {
+        if (context != this.context) {
+            this.context = context;
+            grid = context.navigation;
+            Arrays.fill(fields, null);
+        }
+        for (int goal = 0; goal < fields.length; goal++) {
+            if (!hasGoal[goal]) continue;
+            if (fields[goal] == null) {
+                fields[goal] = new FlowField(grid);
+                fields[goal].setGoal(goalX[goal], goalY[goal]);
+            }
+            // Units cannot be steered without a field, so the first one is built right away
+            if (!fields[goal].isReady()) fields[goal].rebuild(Long.MAX_VALUE);
+        }
+    }
+
+    @Override
+    public boolean improve(long deadlineNanos) {
+        for (FlowField field : fields) {
+            if (field != null && field.isStale()) {
+                field.rebuild(deadlineNanos);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void commit(Api api) {
+        float separation = SEPARATION_DIAMETERS * context.unitDiameter;
+        for (int i = 0; i < steered.size(); i++) {
+            UnitData unit = steered.get(i);
+            FlowField field = field(steeredGoal[i]);
+            if (field == null || !field.isReady()) continue;
+
+            float dirX, dirY;
+            byte direction = field.direction(unit.x, unit.y);
+            if (direction != FlowField.NO_DIRECTION) {
+                dirX = NavigationGrid.DX[direction] / NavigationGrid.LENGTH[direction];
+                dirY = NavigationGrid.DY[direction] / NavigationGrid.LENGTH[direction];
+            } else if (field.atGoal(unit.x, unit.y)) {
+                float distance = MathUtil.distance(unit.x, unit.y, field.goalX(), field.goalY());
+                if (distance < context.unitDiameter / 2) {
+                    command(api, unit, Speed.NONE, Rotation.NONE);
+                    continue;
+                }
+                dirX = (field.goalX() - unit.x) / distance;
+                dirY = (field.goalY() - unit.y) / distance;
+            } else {
+                // No way to the goal from here
+                continue;
+            }
+
+            for (int j = 0; j < steered.size(); j++) {
+                UnitData other = steered.get(j);
+                if (j == i) continue;
+                float distance = MathUtil.distance(unit.x, unit.y, other.x, other.y);
+                if (distance >= separation || distance == 0) continue;
+                float push = SEPARATION_WEIGHT * (1 - distance / separation);
+                dirX += (unit.x - other.x) / distance * push;
+                dirY += (unit.y - other.y) / distance * push;
+            }
+
+            float angle = MathUtil.angleBetweenUnitAndPoint(unit, unit.x + dirX, unit.y + dirY);
+            float offBy = Math.abs(angle);
+            Rotation rotation;
+            if (offBy < HEADING_TOLERANCE) {
+                rotation = Rotation.NONE;
+            } else if (offBy < SLOW_TURN_ANGLE) {
+                rotation = angle > 0 ? Rotation.SLOW_LEFT : Rotation.SLOW_RIGHT;
+            } else {
+                rotation = angle > 0 ? Rotation.LEFT : Rotation.RIGHT;
+            }
+            command(api, unit, offBy < TURN_IN_PLACE_ANGLE ? Speed.FORWARD : Speed.NONE, rotation);
+        }
+        steered.clear();
+    }
+
+    /**
+     * Sends the speed and rotation that differ from what the unit does. A
+     * navigating unit gets both, they are what ends its navigation.
+     */
+    private static void command(Api api, UnitData unit, Speed speed, Rotation rotation) {
+        boolean navigating = unit.navigationPath.length > 0;
+        if (navigating || speed != unit.speed) api.setSpeed(unit.id, speed);
+        if (navigating || rotation != unit.rotation) api.setRotation(unit.id, rotation);
+    }
+}
@@ -0,0 +1,239 @@
+package lia;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Map and rule data of one game, read from the GAME_SETUP message. Unlike
+ * the static fields in Constants, every game gets its own context, so
+ * several games can run in the same JVM. Games played on the same map
+ * share a single copy of the map array and the data built from it. Only
+ * the most recently used maps are kept for sharing, a game keeps its own
+ * map data for as long as it holds the context.
+ *
+ * The map array must not be modified.
+ */
+public class GameContext {
+
+    /** Number of maps kept for sharing with later games. */
+    private static final int SHARED_MAPS = 8;
+
+    /** Recently loaded maps in access order, so that games on the same map share its data. */
+    private static final Map<MapKey, SharedMap> sharedMaps = new LinkedHashMap<MapKey, SharedMap>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MapKey, SharedMap> eldest) {
+            return size() > SHARED_MAPS;
+        }
+    };
+
+    private static volatile GameContext lastLoaded;
+
+    /** The duration of the game in seconds. */
+    public final float gameDuration;
+    /** The width of the map in world units. */
+    public final int mapWidth;
+    /** The height of the map in world units. */
+    public final int mapHeight;
+    /** Map as a 2D array of booleans. If map[x][y] equals True that means that at (x,y)
+     * there is an obstacle. x=0, y=0 points to bottom left corner. Shared, do not modify. */
+    public final boolean[][] map;
+    /** The obstacles of the map merged into rectangles, for geometric queries. Shared between games on the same map. */
+    public final ObstacleTree obstacles;
+    /** Clearance, regions and chokepoints of the map. Shared between games on the same map. */
+    public final MapAnalysis analysis;
+    /** The map as a graph for path planning. Shared between games on the same map. */
+    public final NavigationGrid navigation;
+    /** Approximate location where your team was spawned. */
+    public final float spawnPointX;
+    public final float spawnPointY;
+    /** The diameter of the unit in world units. */
+    public final float unitDiameter;
+    /** A full health of a unit when the game starts. */
+    public final int unitFullHealth;
+    /** The velocity in world units per second with which the unit moves forward. */
+    public final float unitForwardVelocity;
+    /** The velocity in world units per second with which the unit moves backward. */
+    public final float unitBackwardVelocity;
+    /** The angle with which the unit's orientation changes per second when rotating normally. */
+    public final float unitRotationVelocity;
+    /** The angle with which the unit's orientation changes per second when rotating slowly. */
+    public final float unitSlowRotationVelocity;
+    /** Delay between shooting two pre-loaded bullets. */
+    public final float delayBetweenShots;
+    /** The time to reload one bullet. */
+    public final float reloadTime;
+    /** A maximum number of bullets that a unit can hold at once. */
+    public final int maxBullets;
+    /** The time after which the unit starts to regenerate health after being hit by a bullet. */
+    public final float healthRegenerationDelay;
+    /** The amount of health points per second that the unit receives when recovering. */
+    public final int healthRegenerationPerSecond;
+    /** The length of unit's viewing area. */
+    public final float viewingAreaLength;
+    /** The width of unit's viewing area at the side that is the furthest away from the unit. */
+    public final float viewingAreaWidth;
+    /** The amount by which is the start of a viewing area offset from the unit's center
+     * (negative means towards the back). */
+    public final float viewingAreaOffset;
+    /** The diameter of the bullet in world units. */
+    public final float bulletDiameter;
+    /** The speed in world units per second with which the bullet moves forward. */
+    public final float bulletVelocity;
+    /** The damage that a warrior receives when it is hit by a bullet. */
+    public final int bulletDamageToWarrior;
+    /** The damage that a worker receives when it is hit by a bullet. */
+    public final int bulletDamageToWorker;
+    /** The range of the bullet in world units. */
+    public final float bulletRange;
+    /** Price in resources for purchasing a warrior unit. */
+    public final int warriorPrice;
+    /** Price in resources for purchasing a worker unit. */
+    public final int workerPrice;
+    /** Maximum number of units on your team. */
+    public final float maxNumberOfUnits;
+    /** After how many seconds new resources stop spawning */
+    public final int stopSpawningAfter;
+    /** The maximum duration of the first update() call. */
+    public final float firstTickTimeout;
+    /** The maximum duration of each update() call after the first one. */
+    public final float tickTimeout;
+
+    private GameContext(JsonObject constantsJson) {
+        mapWidth = constantsJson.get("MAP_WIDTH").getAsInt();
+        mapHeight = constantsJson.get("MAP_HEIGHT").getAsInt();
+        gameDuration = constantsJson.get("GAME_DURATION").getAsFloat();
+        unitDiameter = constantsJson.get("UNIT_DIAMETER").getAsFloat();
+        unitFullHealth = constantsJson.get("UNIT_FULL_HEALTH").getAsInt();
+        unitForwardVelocity = constantsJson.get("UNIT_FORWARD_VELOCITY").getAsFloat();
+        unitBackwardVelocity = constantsJson.get("UNIT_BACKWARD_VELOCITY").getAsFloat();
+        unitRotationVelocity = constantsJson.get("UNIT_ROTATION_VELOCITY").getAsFloat();
+        unitSlowRotationVelocity = constantsJson.get("UNIT_SLOW_ROTATION_VELOCITY").getAsFloat();
+        delayBetweenShots = constantsJson.get("DELAY_BETWEEN_SHOTS").getAsFloat();
+        reloadTime = constantsJson.get("RELOAD_TIME").getAsFloat();
+        maxBullets = constantsJson.get("MAX_BULLETS").getAsInt();
+        healthRegenerationDelay = constantsJson.get("HEALTH_REGENERATION_DELAY").getAsFloat();
+        healthRegenerationPerSecond = constantsJson.get("HEALTH_REGENERATION_PER_SECOND").getAsInt();
+        viewingAreaLength = constantsJson.get("VIEWING_AREA_LENGTH").getAsFloat();
+        viewingAreaWidth = constantsJson.get("VIEWING_AREA_WIDTH").getAsFloat();
+        viewingAreaOffset = constantsJson.get("VIEWING_AREA_OFFSET").getAsFloat();
+        bulletDiameter = constantsJson.get("BULLET_DIAMETER").getAsFloat();
+        bulletVelocity = constantsJson.get("BULLET_VELOCITY").getAsFloat();
+        bulletDamageToWarrior = constantsJson.get("BULLET_DAMAGE_TO_WARRIOR").getAsInt();
+        bulletDamageToWorker = constantsJson.get("BULLET_DAMAGE_TO_WORKER").getAsInt();
+        bulletRange = constantsJson.get("BULLET_RANGE").getAsFloat();
+        warriorPrice = constantsJson.get("WARRIOR_PRICE").getAsInt();
+        workerPrice = constantsJson.get("WORKER_PRICE").getAsInt();
+        maxNumberOfUnits = constantsJson.get("MAX_NUMBER_OF_UNITS").getAsFloat();
+        firstTickTimeout = constantsJson.get("FIRST_TICK_TIMEOUT").getAsFloat();
+        tickTimeout = constantsJson.get("TICK_TIMEOUT").getAsFloat();
+        stopSpawningAfter = constantsJson.get("STOP_SPAWNING_AFTER").getAsInt();
+        spawnPointX = constantsJson.get("SPAWN_POINT").getAsJsonObject().get("x").getAsFloat();
+        spawnPointY = constantsJson.get("SPAWN_POINT").getAsJsonObject().get("y").getAsFloat();
+
+        // Parse map
+        JsonArray mapRows = constantsJson.get("MAP").getAsJsonArray();
+        boolean[][] parsed = new boolean[mapRows.size()][];
+        for (int i = 0; i < mapRows.size(); i++) {
+
+            JsonArray mapColumns = mapRows.get(i).getAsJsonArray();
+            parsed[i] = new boolean[mapColumns.size()];
+
+            for (int j = 0; j < mapColumns.size(); j++) {
+                parsed[i][j] = mapColumns.get(j).getAsBoolean();
+            }
+        }
+        SharedMap shared = share(new MapKey(parsed));
+        map = shared.map;
+        obstacles = shared.obstacles;
+        analysis = shared.analysis(unitDiameter / 2);
+        navigation = shared.navigation(unitDiameter / 2);
+    }
+
+    /** The shared data of the map, built outside the lock if the map is not kept yet. */
+    private static SharedMap share(MapKey key) {
+        synchronized (sharedMaps) {
+            SharedMap shared = sharedMaps.get(key);
+            if (shared != null) return shared;
+        }
+        SharedMap built = new SharedMap(key.map);
+        synchronized (sharedMaps) {
+            SharedMap shared = sharedMaps.putIfAbsent(key, built);
+            return shared != null ? shared : built;
+        }
+    }
+
+    /** Creates the context from the "constants" object of a GAME_SETUP message. */
+    public static GameContext fromJson(JsonObject constantsJson) {
+        GameContext context = new GameContext(constantsJson);
+        lastLoaded = context;
+        return context;
+    }
+
+    /**
+     * Returns the context that was loaded last in this JVM. Only meaningful
+     * when the JVM runs a single game, prefer the context passed to
+     * Bot.update() otherwise.
+     */
+    public static GameContext lastLoaded() {
+        return lastLoaded;
+    }
+
+    /** True if the map cell at (x,y) is an obstacle or outside of the map. */
+    public boolean isObstacle(int x, int y) {
+        return x < 0 || y < 0 || x >= mapWidth || y >= mapHeight || map[x][y];
+    }
+
+    /** A map and what is built from it, shared by the games played on it. */
+    private static class SharedMap {
+        final boolean[][] map;
+        final ObstacleTree obstacles;
+        /** Analyses and navigation grids by unit radius. */
+        private final Map<Float, MapAnalysis> analyses = new HashMap<>();
+        private final Map<Float, NavigationGrid> navigationGrids = new HashMap<>();
+
+        SharedMap(boolean[][] map) {
+            this.map = map;
+            obstacles = new ObstacleTree(map);
+        }
+
+        synchronized MapAnalysis analysis(float unitRadius) {
+            return analyses.computeIfAbsent(unitRadius, (radius) -> new MapAnalysis(map, obstacles, radius));
+        }
+
+        synchronized NavigationGrid navigation(float unitRadius) {
+            NavigationGrid grid = navigationGrids.get(unitRadius);
+            if (grid == null) {
+                grid = new NavigationGrid(map, analysis(unitRadius), unitRadius);
+                navigationGrids.put(unitRadius, grid);
+            }
+            return grid;
+        }
+    }
+
+    private static class MapKey {
+        final boolean[][] map;
+        final int hash;
+
+        MapKey(boolean[][] map) {
+            this.map = map;
+            this.hash = Arrays.deepHashCode(map);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof MapKey && Arrays.deepEquals(map, ((MapKey) other).map);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
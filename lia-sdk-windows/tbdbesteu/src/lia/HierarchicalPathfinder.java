@@ -0,0 +1,467 @@
+package lia;
+
+import lia.api.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Path search for large maps in the style of HPA*. The NavigationGrid is
+ * cut into square clusters. Where two neighbouring clusters share open
+ * border cells, entrances are placed: one in the middle of a short
+ * opening, one at each end of a long one. Every entrance cell is a node
+ * of an abstract graph, joined to the cell across the border and, with the
+ * cost of the cheapest path inside the cluster, to the other nodes of its
+ * cluster. These edges are computed once when the pathfinder is built.
+ *
+ * A query connects the start and goal to the nodes of their clusters,
+ * searches the small abstract graph and returns the nodes as waypoints.
+ * Cell paths between waypoints are only searched when asked for, and each
+ * of those searches stays inside one cluster. Because paths have to pass
+ * through the fixed entrance cells they come out about a tenth longer
+ * than the shortest ones.
+ *
+ * Abstract paths are cached by start cluster and goal cell, so that units
+ * heading to the same goal from the same area, or one unit asking again as
+ * it moves, skip the abstract search. Not thread safe, use one per thread.
+ *
+ * For many destinations from one start, costsFrom() searches the abstract
+ * graph once and travelCost() then estimates the cost to any point from
+ * the entrances of its cluster.
+ */
+public class HierarchicalPathfinder {
+
+    public static final int DEFAULT_CLUSTER_SIZE = 16;
+    /** Openings wider than this get an entrance at each end instead of one in the middle. */
+    private static final int MAX_SINGLE_ENTRANCE = 6;
+    /** Abstract paths kept in the cache. */
+    private static final int CACHE_SIZE = 1024;
+
+    private final NavigationGrid grid;
+    private final int clusterSize;
+    private final int clusterColumns;
+    private final int clusterRows;
+
+    // Abstract graph, edges of node n are edgeStart[n] to edgeStart[n + 1] - 1
+    private final int nodes;
+    private final int[] nodeCell;
+    private final int[] edgeStart;
+    private final int[] edgeTarget;
+    private final float[] edgeCost;
+    /** Nodes of each cluster. */
+    private final int[][] clusterNodes;
+
+    // Cell search state, reset by stamping
+    private final CellQueue cellOpen = new CellQueue();
+    private final float[] cellCost;
+    private final int[] cellFrom;
+    private final int[] cellStamp;
+    private int cellSearch;
+
+    // Abstract search state
+    private final CellQueue nodeOpen = new CellQueue();
+    private final float[] nodeCost;
+    private final int[] nodeFrom;
+    private final int[] nodeStamp;
+    private final float[] goalCost;
+    private int nodeSearch;
+
+    private final Map<Long, int[]> cache = new LinkedHashMap<Long, int[]>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private long cacheHits;
+    private long cacheMisses;
+
+    public HierarchicalPathfinder(NavigationGrid grid) {
+        this(grid, DEFAULT_CLUSTER_SIZE);
+    }
+
+    public HierarchicalPathfinder(NavigationGrid grid, int clusterSize) {
+        this.grid = grid;
+        this.clusterSize = clusterSize;
+        clusterColumns = (grid.width + clusterSize - 1) / clusterSize;
+        clusterRows = (grid.height + clusterSize - 1) / clusterSize;
+
+        cellCost = new float[grid.cells()];
+        cellFrom = new int[grid.cells()];
+        cellStamp = new int[grid.cells()];
+
+        // Entrances between horizontally and vertically neighbouring clusters
+        IntIntMap nodeOfCell = new IntIntMap(256, -1);
+        List<Integer> cells = new ArrayList<>();
+        List<float[]> interEdges = new ArrayList<>();
+        for (int column = 0; column < clusterColumns; column++) {
+            for (int row = 0; row < clusterRows; row++) {
+                if (column + 1 < clusterColumns) {
+                    int x = (column + 1) * clusterSize - 1;
+                    findEntrances(x, row * clusterSize, 0, 1, Math.min(grid.height, (row + 1) * clusterSize) - row * clusterSize,
+                            0, nodeOfCell, cells, interEdges);
+                }
+                if (row + 1 < clusterRows) {
+                    int y = (row + 1) * clusterSize - 1;
+                    findEntrances(column * clusterSize, y, 1, 0, Math.min(grid.width, (column + 1) * clusterSize) - column * clusterSize,
+                            2, nodeOfCell, cells, interEdges);
+                }
+            }
+        }
+
+        nodes = cells.size();
+        nodeCell = new int[nodes];
+        for (int n = 0; n < nodes; n++) nodeCell[n] = cells.get(n);
+        nodeCost = new float[nodes];
+        nodeFrom = new int[nodes];
+        nodeStamp = new int[nodes];
+        goalCost = new float[nodes];
+
+        List<List<Integer>> byCluster = new ArrayList<>();
+        for (int c = 0; c < clusterColumns * clusterRows; c++) byCluster.add(new ArrayList<>());
+        for (int n = 0; n < nodes; n++) byCluster.get(cluster(nodeCell[n])).add(n);
+        clusterNodes = new int[byCluster.size()][];
+        for (int c = 0; c < clusterNodes.length; c++) {
+            clusterNodes[c] = byCluster.get(c).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        // Edges inside each cluster, from one search per node to all cells of the cluster
+        List<List<float[]>> edges = new ArrayList<>();
+        for (int n = 0; n < nodes; n++) edges.add(new ArrayList<>());
+        for (float[] edge : interEdges) edges.get((int) edge[0]).add(edge);
+        for (int[] members : clusterNodes) {
+            for (int from : members) {
+                searchWithin(nodeCell[from], -1, cluster(nodeCell[from]), false);
+                for (int to : members) {
+                    float cost = reached(nodeCell[to]);
+                    if (to != from && cost < Float.POSITIVE_INFINITY) edges.get(from).add(new float[] {from, to, cost});
+                }
+            }
+        }
+
+        edgeStart = new int[nodes + 1];
+        for (int n = 0; n < nodes; n++) edgeStart[n + 1] = edgeStart[n] + edges.get(n).size();
+        edgeTarget = new int[edgeStart[nodes]];
+        edgeCost = new float[edgeStart[nodes]];
+        for (int n = 0; n < nodes; n++) {
+            for (int i = 0; i < edges.get(n).size(); i++) {
+                float[] edge = edges.get(n).get(i);
+                edgeTarget[edgeStart[n] + i] = (int) edge[1];
+                edgeCost[edgeStart[n] + i] = edge[2];
+            }
+        }
+    }
+
+    /**
+     * Finds the openings along one cluster border. The border runs from
+     * (x,y) for length cells in steps of (stepX,stepY), the cells on the
+     * other side are in direction across.
+     */
+    private void findEntrances(int x, int y, int stepX, int stepY, int length, int across,
+                               IntIntMap nodeOfCell, List<Integer> cells, List<float[]> interEdges) {
+        int back = (across + NavigationGrid.DIRECTIONS / 2) % NavigationGrid.DIRECTIONS;
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean open = false;
+            if (i < length) {
+                int cell = (x + i * stepX) * grid.height + y + i * stepY;
+                open = !grid.isBlocked(cell) && grid.canStep(cell, across);
+            }
+            if (open && runStart < 0) runStart = i;
+            if (!open && runStart >= 0) {
+                int runLength = i - runStart;
+                if (runLength <= MAX_SINGLE_ENTRANCE) {
+                    addEntrance(x, y, stepX, stepY, runStart + runLength / 2, across, back, nodeOfCell, cells, interEdges);
+                } else {
+                    addEntrance(x, y, stepX, stepY, runStart, across, back, nodeOfCell, cells, interEdges);
+                    addEntrance(x, y, stepX, stepY, i - 1, across, back, nodeOfCell, cells, interEdges);
+                }
+                runStart = -1;
+            }
+        }
+    }
+
+    private void addEntrance(int x, int y, int stepX, int stepY, int i, int across, int back,
+                             IntIntMap nodeOfCell, List<Integer> cells, List<float[]> interEdges) {
+        int inside = (x + i * stepX) * grid.height + y + i * stepY;
+        int outside = grid.step(inside, across);
+        int a = node(inside, nodeOfCell, cells);
+        int b = node(outside, nodeOfCell, cells);
+        interEdges.add(new float[] {a, b, grid.stepCost(inside, across)});
+        interEdges.add(new float[] {b, a, grid.stepCost(outside, back)});
+    }
+
+    private static int node(int cell, IntIntMap nodeOfCell, List<Integer> cells) {
+        int node = nodeOfCell.get(cell);
+        if (node < 0) {
+            node = cells.size();
+            nodeOfCell.put(cell, node);
+            cells.add(cell);
+        }
+        return node;
+    }
+
+    private int cluster(int cell) {
+        return (cell / grid.height / clusterSize) * clusterRows + (cell % grid.height) / clusterSize;
+    }
+
+    /**
+     * Search over the cells of a cluster: A* to the goal cell, or with goal
+     * -1 Dijkstra to all cells. Returns the cost to the goal. A reverse
+     * search follows the steps backwards, so that its costs are those of
+     * getting from each cell to the start. Steps into cells a unit does not
+     * fit into cost more, so the two differ.
+     */
+    private float searchWithin(int start, int goal, int cluster, boolean reverse) {
+        int minX = cluster / clusterRows * clusterSize;
+        int minY = cluster % clusterRows * clusterSize;
+        int maxX = Math.min(grid.width, minX + clusterSize);
+        int maxY = Math.min(grid.height, minY + clusterSize);
+
+        cellSearch++;
+        cellOpen.clear();
+        cellStamp[start] = cellSearch;
+        cellCost[start] = 0;
+        cellFrom[start] = -1;
+        cellOpen.add(start, goal < 0 ? 0 : grid.estimate(start, goal));
+
+        while (!cellOpen.isEmpty()) {
+            float key = cellOpen.minKey();
+            int cell = cellOpen.poll();
+            float cost = cellCost[cell];
+            if (key > cost + (goal < 0 ? 0 : grid.estimate(cell, goal))) continue;
+            if (cell == goal) return cost;
+
+            int x = cell / grid.height;
+            int y = cell % grid.height;
+            for (int d = 0; d < NavigationGrid.DIRECTIONS; d++) {
+                int nx = x + NavigationGrid.DX[d];
+                int ny = y + NavigationGrid.DY[d];
+                if (nx < minX || ny < minY || nx >= maxX || ny >= maxY) continue;
+                int next = cell + (nx - x) * grid.height + (ny - y);
+                float nextCost = cost + (reverse
+                        ? grid.stepCost(next, (d + NavigationGrid.DIRECTIONS / 2) % NavigationGrid.DIRECTIONS)
+                        : grid.stepCost(cell, d));
+                if (nextCost == Float.POSITIVE_INFINITY) continue;
+                if (cellStamp[next] == cellSearch && cellCost[next] <= nextCost) continue;
+                cellStamp[next] = cellSearch;
+                cellCost[next] = nextCost;
+                cellFrom[next] = cell;
+                cellOpen.add(next, nextCost + (goal < 0 ? 0 : grid.estimate(next, goal)));
+            }
+        }
+        return goal < 0 ? 0 : Float.POSITIVE_INFINITY;
+    }
+
+    /** Cost to the cell in the last cell search, infinity if it was not reached. */
+    private float reached(int cell) {
+        return cellStamp[cell] == cellSearch ? cellCost[cell] : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Finds a path between the points and returns its waypoints: the start,
+     * the entrances it passes and the goal, all at cell centres. Null if
+     * the goal cannot be reached. Use refine() for the cells in between.
+     */
+    public Point[] findAbstractPath(float fromX, float fromY, float toX, float toY) {
+        int start = grid.cell(fromX, fromY);
+        int goal = grid.cell(toX, toY);
+        if (start < 0 || goal < 0 || grid.isBlocked(goal)) return null;
+        int startCluster = cluster(start);
+        int goalCluster = cluster(goal);
+
+        long key = (long) startCluster << 32 | goal;
+        int[] route = cache.get(key);
+        if (route != null) {
+            // The cached route is good for this start if the start reaches its first waypoint inside the cluster
+            int first = route.length > 0 ? nodeCell[route[0]] : goal;
+            if (searchWithin(start, first, startCluster, false) < Float.POSITIVE_INFINITY) {
+                cacheHits++;
+                return waypoints(start, route, goal);
+            }
+        }
+        cacheMisses++;
+
+        route = searchAbstract(start, goal, startCluster, goalCluster);
+        if (route == null) return null;
+        cache.put(key, route);
+        return waypoints(start, route, goal);
+    }
+
+    /** The nodes between start and goal on the cheapest abstract path, null if there is none. */
+    private int[] searchAbstract(int start, int goal, int startCluster, int goalCluster) {
+        // A path that stays in the cluster is the best one if nothing through the entrances beats it
+        float best = Float.POSITIVE_INFINITY;
+        int bestLast = -1;
+        if (startCluster == goalCluster) best = searchWithin(start, goal, startCluster, false);
+
+        // Costs from the goal's entrances to the goal
+        nodeSearch++;
+        searchWithin(goal, -1, goalCluster, true);
+        for (int n : clusterNodes[goalCluster]) goalCost[n] = reached(nodeCell[n]);
+
+        nodeOpen.clear();
+        searchWithin(start, -1, startCluster, false);
+        for (int n : clusterNodes[startCluster]) {
+            float cost = reached(nodeCell[n]);
+            if (cost == Float.POSITIVE_INFINITY) continue;
+            nodeStamp[n] = nodeSearch;
+            nodeCost[n] = cost;
+            nodeFrom[n] = -1;
+            nodeOpen.add(n, cost + grid.estimate(nodeCell[n], goal));
+        }
+
+        while (!nodeOpen.isEmpty()) {
+            float key = nodeOpen.minKey();
+            if (key >= best) break;
+            int node = nodeOpen.poll();
+            float cost = nodeCost[node];
+            if (key > cost + grid.estimate(nodeCell[node], goal)) continue;
+
+            if (cluster(nodeCell[node]) == goalCluster && cost + goalCost[node] < best) {
+                best = cost + goalCost[node];
+                bestLast = node;
+            }
+            for (int e = edgeStart[node]; e < edgeStart[node + 1]; e++) {
+                int next = edgeTarget[e];
+                float nextCost = cost + edgeCost[e];
+                if (nodeStamp[next] == nodeSearch && nodeCost[next] <= nextCost) continue;
+                nodeStamp[next] = nodeSearch;
+                nodeCost[next] = nextCost;
+                nodeFrom[next] = node;
+                nodeOpen.add(next, nextCost + grid.estimate(nodeCell[next], goal));
+            }
+        }
+
+        if (best == Float.POSITIVE_INFINITY) return null;
+        int length = 0;
+        for (int n = bestLast; n >= 0; n = nodeFrom[n]) length++;
+        int[] route = new int[length];
+        for (int n = bestLast, i = length - 1; n >= 0; n = nodeFrom[n], i--) route[i] = n;
+        return route;
+    }
+
+    private Point[] waypoints(int start, int[] route, int goal) {
+        Point[] waypoints = new Point[route.length + 2];
+        waypoints[0] = new Point(grid.x(start), grid.y(start));
+        for (int i = 0; i < route.length; i++) {
+            waypoints[i + 1] = new Point(grid.x(nodeCell[route[i]]), grid.y(nodeCell[route[i]]));
+        }
+        waypoints[route.length + 1] = new Point(grid.x(goal), grid.y(goal));
+        return waypoints;
+    }
+
+    /**
+     * The cells from one waypoint of an abstract path to the next, without
+     * the first waypoint and with the second. Null if the waypoints are
+     * not neighbours on an abstract path.
+     */
+    public Point[] refine(Point[] waypoints, int segment) {
+        int from = grid.cell(waypoints[segment].x, waypoints[segment].y);
+        int to = grid.cell(waypoints[segment + 1].x, waypoints[segment + 1].y);
+        if (from == to) return new Point[0];
+        if (cluster(from) != cluster(to)) {
+            // Entrances are joined across the border by a single step
+            return new Point[] {new Point(grid.x(to), grid.y(to))};
+        }
+        if (searchWithin(from, to, cluster(from), false) == Float.POSITIVE_INFINITY) return null;
+
+        int length = 0;
+        for (int cell = to; cell != from; cell = cellFrom[cell]) length++;
+        Point[] cells = new Point[length];
+        for (int cell = to, i = length - 1; i >= 0; cell = cellFrom[cell], i--) {
+            cells[i] = new Point(grid.x(cell), grid.y(cell));
+        }
+        return cells;
+    }
+
+    /** Finds a path between the points and returns the centres of all its cells, or null. */
+    public Point[] findPath(float fromX, float fromY, float toX, float toY) {
+        Point[] waypoints = findAbstractPath(fromX, fromY, toX, toY);
+        if (waypoints == null) return null;
+        List<Point> path = new ArrayList<>();
+        path.add(waypoints[0]);
+        for (int segment = 0; segment + 1 < waypoints.length; segment++) {
+            Point[] cells = refine(waypoints, segment);
+            if (cells == null) return null;
+            path.addAll(Arrays.asList(cells));
+        }
+        return path.toArray(new Point[0]);
+    }
+
+    /**
+     * Fills costs, which must hold nodes() values, with the cost of the
+     * cheapest way from the point to every entrance, infinity for the ones
+     * that cannot be reached. For travelCost().
+     */
+    public void costsFrom(float x, float y, float[] costs) {
+        Arrays.fill(costs, Float.POSITIVE_INFINITY);
+        int start = grid.cell(x, y);
+        if (start < 0) return;
+        int startCluster = cluster(start);
+
+        nodeOpen.clear();
+        searchWithin(start, -1, startCluster, false);
+        for (int n : clusterNodes[startCluster]) {
+            costs[n] = reached(nodeCell[n]);
+            if (costs[n] < Float.POSITIVE_INFINITY) nodeOpen.add(n, costs[n]);
+        }
+        while (!nodeOpen.isEmpty()) {
+            float cost = nodeOpen.minKey();
+            int node = nodeOpen.poll();
+            if (cost > costs[node]) continue;
+            for (int e = edgeStart[node]; e < edgeStart[node + 1]; e++) {
+                int next = edgeTarget[e];
+                float nextCost = cost + edgeCost[e];
+                if (nextCost < costs[next]) {
+                    costs[next] = nextCost;
+                    nodeOpen.add(next, nextCost);
+                }
+            }
+        }
+    }
+
+    /**
+     * Estimated cost of getting from (fromX,fromY) to (toX,toY), with the
+     * costs that costsFrom() gave for the first point: the cheapest entrance
+     * of the destination's cluster plus the octile distance from there. In
+     * the start's own cluster it is the octile distance. Infinity if no
+     * entrance of the destination's cluster can be reached.
+     */
+    public float travelCost(float[] costs, float fromX, float fromY, float toX, float toY) {
+        int start = grid.cell(fromX, fromY);
+        int goal = grid.cell(toX, toY);
+        if (start < 0 || goal < 0) return Float.POSITIVE_INFINITY;
+        int goalCluster = cluster(goal);
+        float best = goalCluster == cluster(start) ? grid.estimate(start, goal) : Float.POSITIVE_INFINITY;
+        for (int n : clusterNodes[goalCluster]) {
+            best = Math.min(best, costs[n] + grid.estimate(nodeCell[n], goal));
+        }
+        return best;
+    }
+
+    /** Forgets the cached abstract paths. */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    public long cacheHits() {
+        return cacheHits;
+    }
+
+    public long cacheMisses() {
+        return cacheMisses;
+    }
+
+    /** Number of entrance nodes in the abstract graph. */
+    public int nodes() {
+        return nodes;
+    }
+
+    /** Number of directed edges in the abstract graph. */
+    public int edges() {
+        return edgeStart[nodes];
+    }
+}
@@ -0,0 +1,130 @@
+package lia;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from int keys to int values that does not box. Uses open
+ * addressing with linear probing, so lookups and updates do not allocate
+ * unless the map has to grow.
+ */
+public class IntIntMap {
+
+    private int[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int mask;
+    private int size;
+    private final int missingValue;
+
+    public IntIntMap() {
+        this(16, 0);
+    }
+
+    /**
+     * @param expectedSize number of entries the map can hold without growing
+     * @param missingValue value returned by get() and remove() for keys that are not in the map
+     */
+    public IntIntMap(int expectedSize, int missingValue) {
+        int capacity = IntSet.capacityFor(expectedSize);
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.used = new boolean[capacity];
+        this.mask = capacity - 1;
+        this.missingValue = missingValue;
+    }
+
+    public int get(int key) {
+        int slot = find(key);
+        return slot < 0 ? missingValue : values[slot];
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /** Stores the value and returns the previous one or the missing value. */
+    public int put(int key, int value) {
+        int slot = IntSet.mix(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > (mask + 1) / 2) grow();
+        return missingValue;
+    }
+
+    /** Adds delta to the value of the key (missing keys start from 0) and returns the new value. */
+    public int increment(int key, int delta) {
+        int slot = find(key);
+        if (slot >= 0) {
+            return values[slot] += delta;
+        }
+        put(key, delta);
+        return delta;
+    }
+
+    /** Removes the key and returns its value or the missing value. */
+    public int remove(int key) {
+        int slot = find(key);
+        if (slot < 0) return missingValue;
+        int previous = values[slot];
+
+        // Shift back the entries that follow in the same probe run
+        int gap = slot;
+        int i = (gap + 1) & mask;
+        while (used[i]) {
+            int ideal = IntSet.mix(keys[i]) & mask;
+            if (((i - ideal) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+            i = (i + 1) & mask;
+        }
+        used[gap] = false;
+        size--;
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private int find(int key) {
+        int slot = IntSet.mix(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        int capacity = oldKeys.length * 2;
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        size = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
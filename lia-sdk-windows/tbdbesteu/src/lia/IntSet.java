@@ -0,0 +1,111 @@
+package lia;
+
+import java.util.Arrays;
+
+/**
+ * Set of ints that does not box. Uses open addressing with linear probing,
+ * so lookups and updates do not allocate unless the set has to grow.
+ */
+public class IntSet {
+
+    private int[] keys;
+    private boolean[] used;
+    private int mask;
+    private int size;
+
+    public IntSet() {
+        this(16);
+    }
+
+    /** @param expectedSize number of elements the set can hold without growing */
+    public IntSet(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        this.keys = new int[capacity];
+        this.used = new boolean[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public boolean contains(int key) {
+        return find(key) >= 0;
+    }
+
+    /** Adds the key and returns true if it was not in the set yet. */
+    public boolean add(int key) {
+        int slot = mix(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) return false;
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        if (++size > (mask + 1) / 2) grow();
+        return true;
+    }
+
+    /** Removes the key and returns true if it was in the set. */
+    public boolean remove(int key) {
+        int slot = find(key);
+        if (slot < 0) return false;
+
+        // Shift back the entries that follow in the same probe run
+        int gap = slot;
+        int i = (gap + 1) & mask;
+        while (used[i]) {
+            int ideal = mix(keys[i]) & mask;
+            if (((i - ideal) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                gap = i;
+            }
+            i = (i + 1) & mask;
+        }
+        used[gap] = false;
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private int find(int key) {
+        int slot = mix(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        boolean[] oldUsed = used;
+
+        int capacity = oldKeys.length * 2;
+        keys = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        size = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) add(oldKeys[i]);
+        }
+    }
+
+    /** Spreads the bits of sequential ids so that they do not form long probe runs. */
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /** Smallest power of two table size that keeps the load factor at most 0.5. */
+    static int capacityFor(int expectedSize) {
+        int capacity = 4;
+        while (capacity < expectedSize * 2) capacity <<= 1;
+        return capacity;
+    }
+}
@@ -0,0 +1,129 @@
+package lia;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Transport over the WebSocket client that ships with the JDK
+ * (java.net.http, JDK 11 and newer). Needs no extra library.
+ *
+ * Sends do not wait for the network: each frame is queued behind the
+ * previous one, since the JDK client allows only one send at a time, and
+ * the update thread goes on. The time until the frame is written to the
+ * socket is counted in the stats.
+ */
+public class JdkWebSocketTransport implements Transport {
+
+    private final URI serverUri;
+    private final String botId;
+    private final TransportStats stats = new TransportStats();
+    private volatile WebSocket webSocket;
+    private volatile Listener listener;
+    /** The last frame sent, only touched by the thread calling send(). */
+    private CompletableFuture<WebSocket> lastSend = CompletableFuture.completedFuture(null);
+
+    public JdkWebSocketTransport(URI serverUri, String botId) {
+        this.serverUri = serverUri;
+        this.botId = botId;
+    }
+
+    @Override
+    public void connect(Listener listener) {
+        this.listener = listener;
+        HttpClient.newHttpClient()
+                .newWebSocketBuilder()
+                .header("Id", botId)
+                .buildAsync(serverUri, new Adapter(listener))
+                .whenComplete((ws, ex) -> {
+                    if (ex != null) listener.onError(ex instanceof Exception ? (Exception) ex : new Exception(ex));
+                });
+    }
+
+    @Override
+    public void send(String message) {
+        long start = System.nanoTime();
+        WebSocket ws = webSocket;
+        // Frames must not overlap, so send after the previous one, also if that one failed
+        lastSend = lastSend.exceptionally(ex -> null)
+                .thenCompose(previous -> ws.sendText(message, true));
+        lastSend.whenComplete((sent, ex) -> {
+            if (ex != null) listener.onError(ex instanceof Exception ? (Exception) ex : new Exception(ex));
+            else stats.written(System.nanoTime() - start);
+        });
+        stats.sent(message, System.nanoTime() - start);
+    }
+
+    @Override
+    public void close() {
+        WebSocket ws = webSocket;
+        if (ws != null) ws.sendClose(WebSocket.NORMAL_CLOSURE, "");
+    }
+
+    @Override
+    public boolean isOpen() {
+        WebSocket ws = webSocket;
+        return ws != null && !ws.isOutputClosed() && !ws.isInputClosed();
+    }
+
+    @Override
+    public TransportStats stats() {
+        return stats;
+    }
+
+    private class Adapter implements WebSocket.Listener {
+        private final Listener listener;
+        /** Collects the parts of a text frame that arrives in pieces. */
+        private final StringBuilder partial = new StringBuilder();
+
+        Adapter(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onOpen(WebSocket ws) {
+            webSocket = ws;
+            listener.onOpen();
+            ws.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+            if (!last) {
+                partial.append(data);
+            } else {
+                String message;
+                if (partial.length() == 0) {
+                    message = data.toString();
+                } else {
+                    message = partial.append(data).toString();
+                    partial.setLength(0);
+                }
+                stats.received(message);
+                listener.onMessage(message);
+            }
+            ws.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket ws, ByteBuffer data, boolean last) {
+            ws.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket ws, int statusCode, String reason) {
+            listener.onClose(statusCode, reason, true);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket ws, Throwable error) {
+            listener.onError(error instanceof Exception ? (Exception) error : new Exception(error));
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package lia;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Logging for the tick path. A call stores the level, the format and its
+ * arguments in a ring buffer allocated up front and returns; a daemon
+ * thread formats the messages and writes them to standard output. Number
+ * arguments are stored as they are, so logging them does not allocate.
+ * Object arguments are formatted later on the writer thread and should not
+ * change after the call. A Throwable argument without a placeholder has
+ * its stack trace written after the message.
+ *
+ * Formats use {} for the arguments, like SLF4J. The level is read once
+ * from the lia.log system property (debug, info, warn, error or off,
+ * default info). It is a constant to the JIT, so calls below it are
+ * removed when the caller is compiled, but their arguments are still
+ * evaluated. Guard expensive arguments with DEBUG_ENABLED.
+ *
+ * When the ring is full, messages are dropped instead of blocking the
+ * caller. The writer reports how many were dropped. A message whose
+ * argument fails to format is written as a placeholder line.
+ */
+public final class Log {
+
+    public static final int DEBUG = 0;
+    public static final int INFO = 1;
+    public static final int WARN = 2;
+    public static final int ERROR = 3;
+    public static final int OFF = 4;
+    private static final String[] LEVEL_NAMES = {"DEBUG", "INFO", "WARN", "ERROR"};
+
+    public static final int LEVEL = level(System.getProperty("lia.log", "info"));
+    public static final boolean DEBUG_ENABLED = LEVEL <= DEBUG;
+
+    /** Messages the ring holds, a power of two. Small enough for the ring to stay in the L2 cache. */
+    private static final int CAPACITY = 1 << 12;
+    private static final int MASK = CAPACITY - 1;
+    private static final int MAX_ARGS = 3;
+    /** How long the writer sleeps when the ring is empty. */
+    private static final long IDLE_NANOS = 1_000_000;
+
+    // Argument types
+    private static final byte NONE = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte OBJECT = 3;
+
+    // Ring of messages, each in one cache line of numbers and half a line
+    // of references. A slot can be claimed when its sequence equals the
+    // position, and read when it is the position plus one.
+    private static final int STRIDE = 8;
+    private static final int SEQUENCE = 0;
+    private static final int TIME = 1;
+    /** Level in the lowest byte, the argument types in the next three. */
+    private static final int HEADER = 2;
+    private static final int VALUES = 3;
+    private static final int FORMAT = 0;
+    private static final int THREAD = 1;
+    private static final int OBJECTS = 2;
+    private static final long[] records = new long[CAPACITY * STRIDE];
+    private static final Object[] references = new Object[CAPACITY * STRIDE];
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final AtomicLong tail = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+
+    // Writer state, only touched by the writer thread
+    private static long head;
+    private static long reportedDrops;
+    /** The line being formatted, encoded as UTF-8. */
+    private static byte[] line = new byte[256];
+    private static int length;
+    private static final long startNanos = System.nanoTime();
+
+    private static volatile OutputStream out = buffered(new FileOutputStream(FileDescriptor.out));
+    /** Position up to which the writer has written, for flush(). */
+    private static final AtomicLong written = new AtomicLong();
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) SLOT.setVolatile(records, i * STRIDE + SEQUENCE, (long) i);
+        Thread thread = new Thread(Log::drain, "lia-log");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> flush(100_000_000)));
+    }
+
+    private Log() {}
+
+    private static int level(String name) {
+        for (int level = DEBUG; level < OFF; level++) {
+            if (LEVEL_NAMES[level].equalsIgnoreCase(name)) return level;
+        }
+        return name.equalsIgnoreCase("off") ? OFF : INFO;
+    }
+
+    private static OutputStream buffered(OutputStream stream) {
+        return new BufferedOutputStream(stream, 1 << 16);
+    }
+
+    /** Writes the messages to the stream from now on, for tests and benchmarks. */
+    public static void setOutput(OutputStream stream) {
+        flush(100_000_000);
+        out = buffered(stream);
+    }
+
+    /** Messages dropped because the ring was full. */
+    public static long dropped() {
+        return dropped.get();
+    }
+
+    /** Waits up to the timeout for the messages logged so far to be written. Returns true if they were. */
+    public static boolean flush(long timeoutNanos) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (written.get() < target) {
+            if (System.nanoTime() >= deadline) return false;
+            LockSupport.parkNanos(100_000);
+        }
+        return true;
+    }
+
+    public static void debug(String format) { if (LEVEL <= DEBUG) put(DEBUG, format, NONE, 0, null, NONE, 0, null, NONE, 0, null); }
+    public static void debug(String format, long a) { if (LEVEL <= DEBUG) put(DEBUG, format, LONG, a, null, NONE, 0, null, NONE, 0, null); }
+    public static void debug(String format, double a) { if (LEVEL <= DEBUG) put(DEBUG, format, DOUBLE, Double.doubleToRawLongBits(a), null, NONE, 0, null, NONE, 0, null); }
+    public static void debug(String format, Object a) { if (LEVEL <= DEBUG) put(DEBUG, format, OBJECT, 0, a, NONE, 0, null, NONE, 0, null); }
+    public static void debug(String format, long a, long b) { if (LEVEL <= DEBUG) put(DEBUG, format, LONG, a, null, LONG, b, null, NONE, 0, null); }
+    public static void debug(String format, long a, double b) { if (LEVEL <= DEBUG) put(DEBUG, format, LONG, a, null, DOUBLE, Double.doubleToRawLongBits(b), null, NONE, 0, null); }
+    public static void debug(String format, long a, Object b) { if (LEVEL <= DEBUG) put(DEBUG, format, LONG, a, null, OBJECT, 0, b, NONE, 0, null); }
+    public static void debug(String format, Object a, long b) { if (LEVEL <= DEBUG) put(DEBUG, format, OBJECT, 0, a, LONG, b, null, NONE, 0, null); }
+    public static void debug(String format, Object a, Object b) { if (LEVEL <= DEBUG) put(DEBUG, format, OBJECT, 0, a, OBJECT, 0, b, NONE, 0, null); }
+    public static void debug(String format, long a, long b, long c) { if (LEVEL <= DEBUG) put(DEBUG, format, LONG, a, null, LONG, b, null, LONG, c, null); }
+
+    public static void info(String format) { if (LEVEL <= INFO) put(INFO, format, NONE, 0, null, NONE, 0, null, NONE, 0, null); }
+    public static void info(String format, long a) { if (LEVEL <= INFO) put(INFO, format, LONG, a, null, NONE, 0, null, NONE, 0, null); }
+    public static void info(String format, double a) { if (LEVEL <= INFO) put(INFO, format, DOUBLE, Double.doubleToRawLongBits(a), null, NONE, 0, null, NONE, 0, null); }
+    public static void info(String format, Object a) { if (LEVEL <= INFO) put(INFO, format, OBJECT, 0, a, NONE, 0, null, NONE, 0, null); }
+    public static void info(String format, long a, long b) { if (LEVEL <= INFO) put(INFO, format, LONG, a, null, LONG, b, null, NONE, 0, null); }
+    public static void info(String format, long a, double b) { if (LEVEL <= INFO) put(INFO, format, LONG, a, null, DOUBLE, Double.doubleToRawLongBits(b), null, NONE, 0, null); }
+    public static void info(String format, long a, Object b) { if (LEVEL <= INFO) put(INFO, format, LONG, a, null, OBJECT, 0, b, NONE, 0, null); }
+    public static void info(String format, Object a, long b) { if (LEVEL <= INFO) put(INFO, format, OBJECT, 0, a, LONG, b, null, NONE, 0, null); }
+    public static void info(String format, Object a, Object b) { if (LEVEL <= INFO) put(INFO, format, OBJECT, 0, a, OBJECT, 0, b, NONE, 0, null); }
+    public static void info(String format, long a, long b, long c) { if (LEVEL <= INFO) put(INFO, format, LONG, a, null, LONG, b, null, LONG, c, null); }
+
+    public static void warn(String format) { if (LEVEL <= WARN) put(WARN, format, NONE, 0, null, NONE, 0, null, NONE, 0, null); }
+    public static void warn(String format, long a) { if (LEVEL <= WARN) put(WARN, format, LONG, a, null, NONE, 0, null, NONE, 0, null); }
+    public static void warn(String format, Object a) { if (LEVEL <= WARN) put(WARN, format, OBJECT, 0, a, NONE, 0, null, NONE, 0, null); }
+    public static void warn(String format, long a, Object b) { if (LEVEL <= WARN) put(WARN, format, LONG, a, null, OBJECT, 0, b, NONE, 0, null); }
+    public static void warn(String format, Object a, Object b) { if (LEVEL <= WARN) put(WARN, format, OBJECT, 0, a, OBJECT, 0, b, NONE, 0, null); }
+
+    public static void error(String format) { if (LEVEL <= ERROR) put(ERROR, format, NONE, 0, null, NONE, 0, null, NONE, 0, null); }
+    public static void error(String format, long a) { if (LEVEL <= ERROR) put(ERROR, format, LONG, a, null, NONE, 0, null, NONE, 0, null); }
+    public static void error(String format, Object a) { if (LEVEL <= ERROR) put(ERROR, format, OBJECT, 0, a, NONE, 0, null, NONE, 0, null); }
+    public static void error(String format, long a, Object b) { if (LEVEL <= ERROR) put(ERROR, format, LONG, a, null, OBJECT, 0, b, NONE, 0, null); }
+    public static void error(String format, Object a, Object b) { if (LEVEL <= ERROR) put(ERROR, format, OBJECT, 0, a, OBJECT, 0, b, NONE, 0, null); }
+
+    private static void put(int level, String format,
+                            byte typeA, long valueA, Object objectA,
+                            byte typeB, long valueB, Object objectB,
+                            byte typeC, long valueC, Object objectC) {
+        long position;
+        while (true) {
+            position = tail.get();
+            long available = (long) SLOT.getAcquire(records, ((int) position & MASK) * STRIDE + SEQUENCE);
+            if (available < position) {
+                // Full, the caller must not wait for the writer
+                dropped.incrementAndGet();
+                return;
+            }
+            if (available == position && tail.compareAndSet(position, position + 1)) break;
+        }
+
+        int at = ((int) position & MASK) * STRIDE;
+        records[at + TIME] = System.nanoTime();
+        records[at + HEADER] = level | typeA << 8 | typeB << 16 | typeC << 24;
+        records[at + VALUES] = valueA;
+        records[at + VALUES + 1] = valueB;
+        records[at + VALUES + 2] = valueC;
+        references[at + FORMAT] = format;
+        references[at + THREAD] = Thread.currentThread();
+        references[at + OBJECTS] = objectA;
+        references[at + OBJECTS + 1] = objectB;
+        references[at + OBJECTS + 2] = objectC;
+        SLOT.setRelease(records, at + SEQUENCE, position + 1);
+    }
+
+    private static void drain() {
+        OutputStream stream = out;
+        while (true) {
+            boolean any = false;
+            int at;
+            while ((long) SLOT.getAcquire(records, at = ((int) head & MASK) * STRIDE + SEQUENCE) == head + 1) {
+                if (stream != out) {
+                    // setOutput() was called, finish with the old stream first
+                    flush(stream);
+                    stream = out;
+                }
+                try {
+                    format(at);
+                } catch (Throwable e) {
+                    // An argument's toString() failed, keep the rest of the log going
+                    formatFailed(at, e);
+                }
+                write(stream);
+                for (int i = at; i < at + STRIDE; i++) references[i] = null;
+                SLOT.setRelease(records, at + SEQUENCE, head + CAPACITY);
+                head++;
+                any = true;
+            }
+            long drops = dropped.get();
+            if (drops != reportedDrops) {
+                length = 0;
+                appendAscii("Log dropped ");
+                appendLong(drops - reportedDrops);
+                appendAscii(" messages, the ring was full\n");
+                reportedDrops = drops;
+                write(stream);
+                any = true;
+            }
+            if (any) flush(stream);
+            written.set(head);
+            if (!any) LockSupport.parkNanos(IDLE_NANOS);
+        }
+    }
+
+    private static void format(int at) {
+        length = 0;
+        long millis = (records[at + TIME] - startNanos) / 1_000_000;
+        appendLong(millis / 1000);
+        append('.');
+        long fraction = millis % 1000;
+        if (fraction < 100) append('0');
+        if (fraction < 10) append('0');
+        appendLong(fraction);
+        append(' ');
+        long header = records[at + HEADER];
+        appendAscii(LEVEL_NAMES[(int) header & 0xff]);
+        appendAscii(" [");
+        appendString(((Thread) references[at + THREAD]).getName());
+        appendAscii("] ");
+
+        String format = (String) references[at + FORMAT];
+        int arg = 0;
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            if (c == '{' && i + 1 < format.length() && format.charAt(i + 1) == '}' && arg < MAX_ARGS
+                    && type(header, arg) != NONE) {
+                appendArg(at, arg++, type(header, arg - 1));
+                i++;
+            } else {
+                append(c);
+            }
+        }
+        // A Throwable without a placeholder gets its stack trace written
+        Throwable thrown = null;
+        for (; arg < MAX_ARGS; arg++) {
+            if (type(header, arg) == OBJECT && references[at + OBJECTS + arg] instanceof Throwable) {
+                thrown = (Throwable) references[at + OBJECTS + arg];
+            }
+        }
+        append('\n');
+        if (thrown != null) {
+            StringWriter trace = new StringWriter();
+            thrown.printStackTrace(new PrintWriter(trace));
+            appendString(trace.toString());
+        }
+    }
+
+    private static void formatFailed(int at, Throwable e) {
+        length = 0;
+        appendAscii(LEVEL_NAMES[(int) records[at + HEADER] & 0xff]);
+        appendAscii(" Log could not format \"");
+        appendString((String) references[at + FORMAT]);
+        appendAscii("\": ");
+        appendAscii(e.getClass().getName());
+        append('\n');
+    }
+
+    private static int type(long header, int arg) {
+        return (int) (header >>> (8 * (arg + 1))) & 0xff;
+    }
+
+    private static void appendArg(int at, int arg, int type) {
+        switch (type) {
+            case LONG:
+                appendLong(records[at + VALUES + arg]);
+                break;
+            case DOUBLE:
+                appendAscii(Double.toString(Double.longBitsToDouble(records[at + VALUES + arg])));
+                break;
+            default:
+                appendString(String.valueOf(references[at + OBJECTS + arg]));
+        }
+    }
+
+    private static void ensure(int more) {
+        if (length + more > line.length) line = Arrays.copyOf(line, Math.max(length + more, line.length * 2));
+    }
+
+    private static void append(char c) {
+        if (c < 0x80) {
+            ensure(1);
+            line[length++] = (byte) c;
+        } else {
+            appendString(String.valueOf(c));
+        }
+    }
+
+    /** Appends text known to be ASCII, such as names and numbers. */
+    private static void appendAscii(String text) {
+        int n = text.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) line[length++] = (byte) text.charAt(i);
+    }
+
+    private static void appendString(String text) {
+        int n = text.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                // Rare in the log, let the JDK encode the rest
+                byte[] encoded = text.substring(i).getBytes(StandardCharsets.UTF_8);
+                ensure(encoded.length);
+                System.arraycopy(encoded, 0, line, length, encoded.length);
+                length += encoded.length;
+                return;
+            }
+            line[length++] = (byte) c;
+        }
+    }
+
+    private static void appendLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            appendAscii(Long.toString(value));
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            line[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value; rest >= 10; rest /= 10) digits++;
+        for (int i = length + digits - 1; i >= length; i--) {
+            line[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private static void flush(OutputStream stream) {
+        try {
+            stream.flush();
+        } catch (Throwable e) {
+            // Nowhere left to report it
+        }
+    }
+
+    private static void write(OutputStream stream) {
+        try {
+            stream.write(line, 0, length);
+        } catch (Throwable e) {
+            // Nowhere left to report it
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package lia;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * In-process transport made of two connected ends. Frames sent on one end
+ * are delivered to the listener of the other end on a delivery thread,
+ * the String itself is passed on without copying or encoding. Used by
+ * local engine stand-ins and test harnesses that run the bot without
+ * sockets.
+ */
+public class LoopbackTransport implements Transport {
+
+    /** Put in the queue to tell the delivery thread that the other end closed. */
+    private static final String REMOTE_CLOSE = new String("remote close");
+    /** Put in the queue to tell the delivery thread that this end closed. */
+    private static final String LOCAL_CLOSE = new String("local close");
+
+    private final BlockingQueue<String> inbox = new LinkedBlockingQueue<>();
+    private final TransportStats stats = new TransportStats();
+    private final String name;
+    private LoopbackTransport peer;
+    private volatile boolean open;
+
+    private LoopbackTransport(String name) {
+        this.name = name;
+    }
+
+    /** Creates two connected ends, one for the engine side and one for the bot. */
+    public static LoopbackTransport[] pair() {
+        LoopbackTransport engine = new LoopbackTransport("engine");
+        LoopbackTransport bot = new LoopbackTransport("bot");
+        engine.peer = bot;
+        bot.peer = engine;
+        return new LoopbackTransport[] { engine, bot };
+    }
+
+    @Override
+    public void connect(Listener listener) {
+        open = true;
+        Thread delivery = new Thread(() -> deliver(listener), "loopback-" + name);
+        delivery.setDaemon(true);
+        delivery.start();
+    }
+
+    private void deliver(Listener listener) {
+        listener.onOpen();
+        try {
+            while (true) {
+                String message = inbox.take();
+                if (message == REMOTE_CLOSE || message == LOCAL_CLOSE) {
+                    open = false;
+                    listener.onClose(1000, "", message == REMOTE_CLOSE);
+                    return;
+                }
+                stats.received(message);
+                listener.onMessage(message);
+            }
+        } catch (InterruptedException e) {
+            open = false;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void send(String message) {
+        long start = System.nanoTime();
+        peer.inbox.add(message);
+        stats.sent(message, System.nanoTime() - start);
+    }
+
+    @Override
+    public void close() {
+        if (open) {
+            open = false;
+            peer.inbox.add(REMOTE_CLOSE);
+            inbox.add(LOCAL_CLOSE);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public TransportStats stats() {
+        return stats;
+    }
+}
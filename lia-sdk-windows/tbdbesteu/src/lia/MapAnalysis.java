@@ -0,0 +1,482 @@
+package lia;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The structure of a map: how far every cell is from the nearest obstacle,
+ * the open regions the map divides into and the chokepoints, the narrow
+ * passages that connect them.
+ *
+ * Regions come from a watershed over the clearance of the cells. Cells
+ * are flooded from the most open ones down, and every local maximum of
+ * the clearance starts a region. Where two regions meet, the clearance of
+ * the meeting cell is the half-width of the passage between them: if the
+ * passage is about as wide as the open space on both sides, the regions
+ * are joined, otherwise the meeting cell becomes a chokepoint. Only cells
+ * a unit fits into are flooded, so every chokepoint can be passed.
+ *
+ * Routes between regions go through the chokepoints and are precomputed
+ * for all pairs of regions. The analysis is built once per map, after
+ * which all queries take constant time and can run on several threads.
+ */
+public class MapAnalysis {
+
+    public static final int NO_REGION = -1;
+
+    /** A passage is a chokepoint if it is narrower than this share of the open space on both sides. */
+    private static final float CHOKE_RATIO = 0.6f;
+    /** Regions with fewer cells than this when they meet a neighbour are joined with it. */
+    private static final int MIN_REGION_AREA = 24;
+    /** Meetings of the same two regions closer than this to a chokepoint's edge belong to that chokepoint. */
+    private static final float SAME_PASSAGE_DISTANCE = 2;
+
+    /** A narrow passage between two regions. */
+    public static class Chokepoint {
+        /** Rank of the chokepoint, 0 for the most important one. */
+        public final int id;
+        public final float x;
+        public final float y;
+        /** Width of the passage in world units. */
+        public final float width;
+        public final int regionA;
+        public final int regionB;
+        /** Unit vector across the passage, pointing from region B into region A. */
+        public final float normalX;
+        public final float normalY;
+        /** Cells of the smaller side per unit of width, chokepoints are ranked by this. */
+        public final float importance;
+
+        Chokepoint(int id, float x, float y, float width, int regionA, int regionB,
+                   float normalX, float normalY, float importance) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.regionA = regionA;
+            this.regionB = regionB;
+            this.normalX = normalX;
+            this.normalY = normalY;
+            this.importance = importance;
+        }
+
+        /** The region on the other side of the chokepoint. */
+        public int otherRegion(int region) {
+            return region == regionA ? regionB : regionA;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    /** Distance from each cell's centre to the nearest obstacle or map edge, indexed by x * height + y. */
+    private final float[] clearance;
+    private final int[] cellRegion;
+
+    private final int regionCount;
+    private final int[] regionArea;
+    private final int[] regionComponent;
+    /** The most open cell of each region. */
+    private final float[] regionX, regionY, regionClearance;
+
+    private final List<Chokepoint> chokepoints;
+    private final List<List<Chokepoint>> regionChokepoints;
+    /** Length of the shortest route between two regions through chokepoints, indexed by from * regionCount + to. */
+    private final float[] routeDistance;
+    /** First chokepoint on that route, or -1. */
+    private final int[] routeNext;
+
+    // Union-find over the regions while flooding
+    private int[] parent;
+    private int[] area;
+    private float[] peak;
+    private int[] peakCell;
+    // Regions that can reach each other, whether through a chokepoint or not
+    private int[] linked;
+
+    // Meetings of two regions that did not join, in the order they were flooded
+    private int saddles;
+    private int[] saddleCell = new int[64];
+    private int[] saddleA = new int[64];
+    private int[] saddleB = new int[64];
+
+    /**
+     * @param unitRadius cells closer than this to an obstacle are not flooded
+     *                   and belong to the region of the nearest cell that is
+     */
+    public MapAnalysis(boolean[][] map, ObstacleTree obstacles, float unitRadius) {
+        width = map.length;
+        height = width > 0 ? map[0].length : 0;
+        int cells = width * height;
+
+        clearance = new float[cells];
+        float maxClearance = Math.max(width, height);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (map[x][y]) continue;
+                clearance[x * height + y] = obstacles.clearance(x + 0.5f, y + 0.5f, maxClearance);
+            }
+        }
+
+        int[] labels = flood(unitRadius);
+        spreadToEdges(map, labels);
+
+        // Number the final regions
+        int[] regionOf = new int[parent.length];
+        Arrays.fill(regionOf, NO_REGION);
+        int regions = 0;
+        for (int label = 0; label < parent.length; label++) {
+            if (find(parent, label) == label) regionOf[label] = regions++;
+        }
+        regionCount = regions;
+        regionArea = new int[regions];
+        regionComponent = new int[regions];
+        regionX = new float[regions];
+        regionY = new float[regions];
+        regionClearance = new float[regions];
+
+        cellRegion = new int[cells];
+        for (int i = 0; i < cells; i++) {
+            cellRegion[i] = labels[i] < 0 ? NO_REGION : regionOf[find(parent, labels[i])];
+            if (cellRegion[i] != NO_REGION) regionArea[cellRegion[i]]++;
+        }
+
+        int[] componentOf = new int[parent.length];
+        Arrays.fill(componentOf, -1);
+        int components = 0;
+        for (int label = 0; label < parent.length; label++) {
+            int root = find(parent, label);
+            if (root != label) continue;
+            int r = regionOf[root];
+            int component = find(linked, root);
+            if (componentOf[component] < 0) componentOf[component] = components++;
+            regionComponent[r] = componentOf[component];
+            regionX[r] = peakCell[root] / height + 0.5f;
+            regionY[r] = peakCell[root] % height + 0.5f;
+            regionClearance[r] = peak[root];
+        }
+
+        chokepoints = Collections.unmodifiableList(findChokepoints(regionOf));
+        List<List<Chokepoint>> byRegion = new ArrayList<>();
+        for (int r = 0; r < regions; r++) byRegion.add(new ArrayList<>());
+        for (Chokepoint chokepoint : chokepoints) {
+            byRegion.get(chokepoint.regionA).add(chokepoint);
+            byRegion.get(chokepoint.regionB).add(chokepoint);
+        }
+        for (int r = 0; r < regions; r++) byRegion.set(r, Collections.unmodifiableList(byRegion.get(r)));
+        regionChokepoints = Collections.unmodifiableList(byRegion);
+
+        routeDistance = new float[regions * regions];
+        routeNext = new int[regions * regions];
+        findRoutes();
+
+        parent = area = peakCell = linked = null;
+        peak = null;
+        saddleCell = saddleA = saddleB = null;
+    }
+
+    /** Floods the cells a unit fits into from the most open one down and returns the region label of every cell. */
+    private int[] flood(float unitRadius) {
+        int cells = width * height;
+        int[] labels = new int[cells];
+        Arrays.fill(labels, -1);
+
+        // Clearance is never negative, so the bits of the float sort like the float
+        long[] order = new long[cells];
+        int open = 0;
+        for (int i = 0; i < cells; i++) {
+            if (clearance[i] >= unitRadius) order[open++] = (long) Float.floatToIntBits(clearance[i]) << 32 | i;
+        }
+        Arrays.sort(order, 0, open);
+
+        parent = new int[open];
+        area = new int[open];
+        peak = new float[open];
+        peakCell = new int[open];
+        linked = new int[open];
+        int regions = 0;
+
+        for (int k = open - 1; k >= 0; k--) {
+            int i = (int) order[k];
+            int x = i / height;
+            int y = i % height;
+            int label = -1;
+
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    int nx = x + dx;
+                    int ny = y + dy;
+                    if (nx < 0 || ny < 0 || nx >= width || ny >= height) continue;
+                    int neighbour = labels[nx * height + ny];
+                    if (neighbour < 0) continue;
+                    int r = find(parent, neighbour);
+                    if (label < 0) {
+                        label = r;
+                    } else if (r != label) {
+                        // Two regions meet
+                        union(linked, label, r);
+                        boolean small = area[label] < MIN_REGION_AREA || area[r] < MIN_REGION_AREA;
+                        if (small || clearance[i] >= CHOKE_RATIO * Math.min(peak[label], peak[r])) {
+                            label = join(label, r);
+                        } else {
+                            addSaddle(i, label, r);
+                        }
+                    }
+                }
+            }
+
+            if (label < 0) {
+                // A local maximum starts a new region
+                label = regions++;
+                parent[label] = label;
+                linked[label] = label;
+                peak[label] = clearance[i];
+                peakCell[label] = i;
+            }
+            labels[i] = label;
+            area[label]++;
+        }
+
+        parent = Arrays.copyOf(parent, regions);
+        linked = Arrays.copyOf(linked, regions);
+        return labels;
+    }
+
+    /** Gives the free cells a unit does not fit into the region of the nearest flooded cell. */
+    private void spreadToEdges(boolean[][] map, int[] labels) {
+        int[] queue = new int[labels.length];
+        int head = 0, tail = 0;
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] >= 0) queue[tail++] = i;
+        }
+        while (head < tail) {
+            int i = queue[head++];
+            int x = i / height;
+            int y = i % height;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + (d == 0 ? 1 : d == 1 ? -1 : 0);
+                int ny = y + (d == 2 ? 1 : d == 3 ? -1 : 0);
+                if (nx < 0 || ny < 0 || nx >= width || ny >= height || map[nx][ny]) continue;
+                int neighbour = nx * height + ny;
+                if (labels[neighbour] >= 0) continue;
+                labels[neighbour] = labels[i];
+                queue[tail++] = neighbour;
+            }
+        }
+    }
+
+    private int join(int a, int b) {
+        if (area[a] < area[b]) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        parent[b] = a;
+        area[a] += area[b];
+        if (peak[b] > peak[a]) {
+            peak[a] = peak[b];
+            peakCell[a] = peakCell[b];
+        }
+        return a;
+    }
+
+    private static int find(int[] parent, int label) {
+        while (parent[label] != label) {
+            parent[label] = parent[parent[label]];
+            label = parent[label];
+        }
+        return label;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a != b) parent[b] = a;
+    }
+
+    private void addSaddle(int cell, int a, int b) {
+        if (saddles == saddleCell.length) {
+            saddleCell = Arrays.copyOf(saddleCell, saddles * 2);
+            saddleA = Arrays.copyOf(saddleA, saddles * 2);
+            saddleB = Arrays.copyOf(saddleB, saddles * 2);
+        }
+        saddleCell[saddles] = cell;
+        saddleA[saddles] = a;
+        saddleB[saddles] = b;
+        saddles++;
+    }
+
+    /**
+     * Turns the meetings of regions that stayed apart into chokepoints. The
+     * first meeting of two regions is the widest point of the passage, the
+     * later ones next to it run along the same passage towards its walls.
+     */
+    private List<Chokepoint> findChokepoints(int[] regionOf) {
+        List<float[]> found = new ArrayList<>();
+        for (int s = 0; s < saddles; s++) {
+            int a = regionOf[find(parent, saddleA[s])];
+            int b = regionOf[find(parent, saddleB[s])];
+            if (a == b) continue;
+            float x = saddleCell[s] / height + 0.5f;
+            float y = saddleCell[s] % height + 0.5f;
+            float passageWidth = 2 * clearance[saddleCell[s]];
+
+            boolean known = false;
+            for (float[] other : found) {
+                boolean samePair = (other[3] == a && other[4] == b) || (other[3] == b && other[4] == a);
+                if (samePair && MathUtil.distance(x, y, other[0], other[1]) < other[2] / 2 + SAME_PASSAGE_DISTANCE) {
+                    known = true;
+                    break;
+                }
+            }
+            if (!known) found.add(new float[] {x, y, passageWidth, a, b});
+        }
+
+        // Rank by the size of the smaller side for the width that has to be held
+        found.sort((p, q) -> Float.compare(importance(q), importance(p)));
+        List<Chokepoint> result = new ArrayList<>(found.size());
+        for (float[] p : found) {
+            int a = (int) p[3];
+            int b = (int) p[4];
+            float[] normal = normal(p[0], p[1], p[2], a, b);
+            result.add(new Chokepoint(result.size(), p[0], p[1], p[2], a, b, normal[0], normal[1], importance(p)));
+        }
+        return result;
+    }
+
+    private float importance(float[] passage) {
+        return Math.min(regionArea[(int) passage[3]], regionArea[(int) passage[4]]) / passage[2];
+    }
+
+    /** Direction from the cells of region b around the passage to the cells of region a. */
+    private float[] normal(float x, float y, float passageWidth, int a, int b) {
+        int reach = (int) Math.ceil(passageWidth / 2 + SAME_PASSAGE_DISTANCE);
+        int cx = (int) x;
+        int cy = (int) y;
+        float ax = 0, ay = 0, bx = 0, by = 0;
+        int na = 0, nb = 0;
+        for (int px = Math.max(0, cx - reach); px <= Math.min(width - 1, cx + reach); px++) {
+            for (int py = Math.max(0, cy - reach); py <= Math.min(height - 1, cy + reach); py++) {
+                int r = cellRegion[px * height + py];
+                if (r == a) {
+                    ax += px;
+                    ay += py;
+                    na++;
+                } else if (r == b) {
+                    bx += px;
+                    by += py;
+                    nb++;
+                }
+            }
+        }
+        float dx = na > 0 && nb > 0 ? ax / na - bx / nb : regionX[a] - regionX[b];
+        float dy = na > 0 && nb > 0 ? ay / na - by / nb : regionY[a] - regionY[b];
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        return length > 0 ? new float[] {dx / length, dy / length} : new float[] {1, 0};
+    }
+
+    /** All-pairs shortest routes from region centre to region centre through the chokepoints. */
+    private void findRoutes() {
+        int n = regionCount;
+        Arrays.fill(routeDistance, Float.POSITIVE_INFINITY);
+        Arrays.fill(routeNext, -1);
+        for (int r = 0; r < n; r++) routeDistance[r * n + r] = 0;
+
+        for (Chokepoint c : chokepoints) {
+            int a = c.regionA;
+            int b = c.regionB;
+            float length = MathUtil.distance(regionX[a], regionY[a], c.x, c.y)
+                    + MathUtil.distance(c.x, c.y, regionX[b], regionY[b]);
+            if (length < routeDistance[a * n + b]) {
+                routeDistance[a * n + b] = routeDistance[b * n + a] = length;
+                routeNext[a * n + b] = routeNext[b * n + a] = c.id;
+            }
+        }
+
+        for (int k = 0; k < n; k++) {
+            for (int i = 0; i < n; i++) {
+                float toK = routeDistance[i * n + k];
+                if (toK == Float.POSITIVE_INFINITY) continue;
+                for (int j = 0; j < n; j++) {
+                    float through = toK + routeDistance[k * n + j];
+                    if (through < routeDistance[i * n + j]) {
+                        routeDistance[i * n + j] = through;
+                        routeNext[i * n + j] = routeNext[i * n + k];
+                    }
+                }
+            }
+        }
+    }
+
+    private int cell(float x, float y) {
+        int cx = (int) x;
+        int cy = (int) y;
+        if (x < 0 || y < 0 || cx >= width || cy >= height) return -1;
+        return cx * height + cy;
+    }
+
+    /** Distance from the centre of the cell at the point to the nearest obstacle or map edge, 0 outside the map. */
+    public float clearance(float x, float y) {
+        int cell = cell(x, y);
+        return cell < 0 ? 0 : clearance[cell];
+    }
+
+    /** Region of the point, or NO_REGION for obstacles, closed off pockets and points outside the map. */
+    public int region(float x, float y) {
+        int cell = cell(x, y);
+        return cell < 0 ? NO_REGION : cellRegion[cell];
+    }
+
+    /** True if a unit can get from one point to the other. */
+    public boolean connected(float x1, float y1, float x2, float y2) {
+        int a = region(x1, y1);
+        int b = region(x2, y2);
+        return a != NO_REGION && b != NO_REGION && regionComponent[a] == regionComponent[b];
+    }
+
+    public int regionCount() {
+        return regionCount;
+    }
+
+    /** Number of map cells in the region. */
+    public int regionArea(int region) {
+        return regionArea[region];
+    }
+
+    /** X of the most open point of the region, the centre of the largest circle that fits into it. */
+    public float regionX(int region) {
+        return regionX[region];
+    }
+
+    /** Y of the most open point of the region. */
+    public float regionY(int region) {
+        return regionY[region];
+    }
+
+    /** Radius of the largest circle that fits into the region. */
+    public float regionClearance(int region) {
+        return regionClearance[region];
+    }
+
+    /** All chokepoints, most important first. A chokepoint's id is its index in this list. */
+    public List<Chokepoint> chokepoints() {
+        return chokepoints;
+    }
+
+    /** The chokepoints leading out of the region, most important first. */
+    public List<Chokepoint> chokepoints(int region) {
+        return regionChokepoints.get(region);
+    }
+
+    /** Length of the shortest route between the regions' centres, infinity if they are not connected. */
+    public float routeDistance(int fromRegion, int toRegion) {
+        return routeDistance[fromRegion * regionCount + toRegion];
+    }
+
+    /** The first chokepoint on the shortest route between the regions, null if they are the same or not connected. */
+    public Chokepoint nextChokepoint(int fromRegion, int toRegion) {
+        int id = routeNext[fromRegion * regionCount + toRegion];
+        return id < 0 ? null : chokepoints.get(id);
+    }
+}
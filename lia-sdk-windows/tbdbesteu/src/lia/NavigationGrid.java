@@ -0,0 +1,133 @@
+package lia;
+
+/**
+ * The map as a graph for path planning. Every cell that is not an obstacle
+ * is a node, connected to its eight neighbours. Diagonal steps may not cut
+ * the corner of an obstacle. Cells too close to an obstacle for a unit to
+ * stand in the middle of them cost more to enter, so paths keep clear of
+ * walls but units that end up next to one can still get away from it.
+ *
+ * Cells are indexed by x * height + y, like the rest of the map data.
+ */
+public class NavigationGrid {
+
+    public static final int DIRECTIONS = 8;
+    /** Steps in each direction, counter-clockwise from the positive x-axis. */
+    public static final int[] DX = {1, 1, 0, -1, -1, -1, 0, 1};
+    public static final int[] DY = {0, 1, 1, 1, 0, -1, -1, -1};
+    /** Length of a step in each direction. */
+    public static final float[] LENGTH = {1, (float) Math.sqrt(2), 1, (float) Math.sqrt(2), 1, (float) Math.sqrt(2), 1, (float) Math.sqrt(2)};
+    /** Cost multiplier for entering a cell a unit does not fit into. */
+    private static final float NARROW_COST = 5;
+
+    public final int width;
+    public final int height;
+    private final boolean[] blocked;
+    private final boolean[] narrow;
+    /** Bit d is set if a unit can step from the cell in direction d. */
+    private final byte[] moves;
+    /** Change of the cell index for a step in each direction. */
+    private final int[] offset = new int[DIRECTIONS];
+
+    public NavigationGrid(boolean[][] map, MapAnalysis analysis, float unitRadius) {
+        width = map.length;
+        height = width > 0 ? map[0].length : 0;
+        blocked = new boolean[width * height];
+        narrow = new boolean[width * height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                blocked[x * height + y] = map[x][y];
+                narrow[x * height + y] = analysis.clearance(x + 0.5f, y + 0.5f) < unitRadius;
+            }
+        }
+
+        moves = new byte[width * height];
+        for (int d = 0; d < DIRECTIONS; d++) offset[d] = DX[d] * height + DY[d];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                for (int d = 0; d < DIRECTIONS; d++) {
+                    int nx = x + DX[d];
+                    int ny = y + DY[d];
+                    if (nx < 0 || ny < 0 || nx >= width || ny >= height || map[nx][ny]) continue;
+                    // Diagonal steps may not cut the corner of an obstacle
+                    if ((d & 1) == 1 && (map[nx][y] || map[x][ny])) continue;
+                    moves[x * height + y] |= 1 << d;
+                }
+            }
+        }
+    }
+
+    /** Cell of the point, -1 outside the map. */
+    public int cell(float x, float y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) return -1;
+        return (int) x * height + (int) y;
+    }
+
+    /** X of the cell's centre. */
+    public float x(int cell) {
+        return cell / height + 0.5f;
+    }
+
+    /** Y of the cell's centre. */
+    public float y(int cell) {
+        return cell % height + 0.5f;
+    }
+
+    public int cells() {
+        return width * height;
+    }
+
+    public boolean isBlocked(int cell) {
+        return blocked[cell];
+    }
+
+    /** The free cell nearest to the cell, searching outwards square by square. The cell itself if it is free. */
+    public int nearestFree(int cell) {
+        int x = cell / height;
+        int y = cell % height;
+        for (int radius = 0; radius < Math.max(width, height); radius++) {
+            int best = -1;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int nx = x - radius; nx <= x + radius; nx++) {
+                for (int ny = y - radius; ny <= y + radius; ny++) {
+                    boolean onRing = Math.abs(nx - x) == radius || Math.abs(ny - y) == radius;
+                    if (!onRing || nx < 0 || ny < 0 || nx >= width || ny >= height || blocked[nx * height + ny]) continue;
+                    int distance = (nx - x) * (nx - x) + (ny - y) * (ny - y);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        best = nx * height + ny;
+                    }
+                }
+            }
+            if (best >= 0) return best;
+        }
+        return cell;
+    }
+
+    /**
+     * True if a unit can step from the cell to its neighbour in the
+     * direction. Steps are possible from obstacles but not into them, and
+     * between free cells they are possible both ways.
+     */
+    public boolean canStep(int cell, int direction) {
+        return (moves[cell] >> direction & 1) != 0;
+    }
+
+    /** The neighbour of the cell in the direction. Only valid if canStep() is true. */
+    public int step(int cell, int direction) {
+        return cell + offset[direction];
+    }
+
+    /** Cost of stepping from the cell to its neighbour in the direction, infinity if the step is not possible. */
+    public float stepCost(int cell, int direction) {
+        if ((moves[cell] >> direction & 1) == 0) return Float.POSITIVE_INFINITY;
+        return narrow[cell + offset[direction]] ? LENGTH[direction] * NARROW_COST : LENGTH[direction];
+    }
+
+    /** Lower bound of the cost between two cells, the octile distance. */
+    public float estimate(int from, int to) {
+        int dx = Math.abs(from / height - to / height);
+        int dy = Math.abs(from % height - to % height);
+        return Math.max(dx, dy) + (LENGTH[1] - 1) * Math.min(dx, dy);
+    }
+}
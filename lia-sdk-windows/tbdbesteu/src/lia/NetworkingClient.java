@@ -5,23 +5,64 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import lia.api.GameState;
 import lia.api.MessageType;
-import org.java_websocket.client.WebSocketClient;
-import org.java_websocket.handshake.ServerHandshake;
+import jdk.jfr.Recording;
 
 import java.net.URI;
-import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 
 /**
  * Handles the connection to the game engine and takes
  * care of sending and retrieving data.
+ *
+ * Frames are handed from the transport to an update thread. If the bot
+ * falls behind and several game states are waiting, only the newest one
+ * is played. The older ones get an empty response as soon as their uid is
+ * read, and all frames are handled in the order they arrived.
+ *
+ * Every step of a tick is reported as a FlightEvents event, and --jfr
+ * records them to a file together with the JVM's own events. The last
+ * ticks' decisions are kept by a DecisionRecorder and dumped to the
+ * decisions directory when a tick throws or nearly times out, and when the
+ * connection closes.
  **/
-public class NetworkingClient extends WebSocketClient {
+public class NetworkingClient implements Transport.Listener {
 
+    private Transport transport;
     private Bot myBot;
     private Gson gson;
+    private GameContext context;
+
+    // When several bots share the JVM, closing one connection must not exit
+    private boolean exitOnClose = true;
+    private Runnable closeListener;
+
+    private final BlockingQueue<Frame> frames = new LinkedBlockingQueue<>();
+    private final ResponseStats responseStats = new ResponseStats();
+    private final PauseMonitor pauseMonitor = new PauseMonitor();
+    /** A response taking this share of the time between states counts as nearly timed out. */
+    private static final float NEAR_TIMEOUT_SHARE = 0.8f;
+    private final DecisionRecorder decisions = new DecisionRecorder(Paths.get("decisions"));
+    private Thread updateThread;
+    private Recording recording;
+
+    // Events and bytes left out of the responses by Api over the whole game
+    private long droppedEvents;
+    private long savedBytes;
+
+    private static class Frame {
+        final String message;
+        final long receivedAt;
+
+        Frame(String message, long receivedAt) {
+            this.message = message;
+            this.receivedAt = receivedAt;
+        }
+    }
 
     private static Exception illegalArgumentsException = new Exception(
             "Illegal arguments. See --help for the correct structure."
@@ -30,6 +71,8 @@ public class NetworkingClient extends WebSocketClient {
     public static NetworkingClient connectNew(String[] args, Bot myBot) throws Exception {
         String botId = "";
         String port = "8887";
+        String transport = "websocket";
+        String jfrFile = null;
 
         if (args.length == 1 && (args[0].equals("--help") || args[0].equals("-h"))) {
             System.out.println("Displaying help (TODO)...");
@@ -53,67 +96,319 @@ public class NetworkingClient extends WebSocketClient {
                     throw illegalArgumentsException;
                 }
             }
+            else if (arg.equals("-t") || arg.equals("--transport")) {
+                if (i + 1 < args.length) {
+                    transport = args[i + 1];
+                } else {
+                    throw illegalArgumentsException;
+                }
+            }
+            else if (arg.equals("--jfr")) {
+                if (i + 1 < args.length) {
+                    jfrFile = args[i + 1];
+                } else {
+                    throw illegalArgumentsException;
+                }
+            }
         }
 
-        // Setup headers
-        Map<String,String> httpHeaders = new HashMap<>();
-        httpHeaders.put("Id", botId);
+        // Started before connecting so that the setup is recorded too
+        Recording recording = jfrFile != null ? FlightEvents.startRecording(jfrFile) : null;
+        NetworkingClient client = connect(createTransport(transport, port, botId), myBot, true, null);
+        client.recording = recording;
+        return client;
+    }
+
+    /**
+     * Creates a WebSocket transport to the engine on localhost, "websocket"
+     * uses the Java-WebSocket library and "jdk" the JDK's own client.
+     */
+    static Transport createTransport(String type, String port, String botId) throws Exception {
+        URI serverUri = new URI("ws://localhost:" + port);
+        if (type.equals("websocket")) {
+            return new WebSocketTransport(serverUri, botId);
+        } else if (type.equals("jdk")) {
+            return new JdkWebSocketTransport(serverUri, botId);
+        }
+        throw illegalArgumentsException;
+    }
 
-        NetworkingClient c = new NetworkingClient(new URI("ws://localhost:" + port), httpHeaders, myBot);
-        c.connect();
+    /**
+     * Connects the bot to the engine over the transport. If exitOnClose is
+     * false the JVM keeps running when the connection closes and
+     * closeListener is called instead, and the static fields of Constants
+     * are not filled in, as other games may share the JVM.
+     */
+    public static NetworkingClient connect(Transport transport, Bot myBot,
+                                           boolean exitOnClose, Runnable closeListener) throws Exception {
+        NetworkingClient c = new NetworkingClient(transport, myBot);
+        c.exitOnClose = exitOnClose;
+        c.closeListener = closeListener;
+        c.updateThread = new Thread(c::processFrames, "bot-update");
+        c.updateThread.setDaemon(true);
+        c.updateThread.start();
+        c.pauseMonitor.start(c.updateThread);
+        transport.connect(c);
 
         return c;
     }
 
-    private NetworkingClient(URI serverUri, Map<String, String> httpHeaders, Bot myBot) {
-        super(serverUri, httpHeaders);
+    private NetworkingClient(Transport transport, Bot myBot) {
+        this.transport = transport;
         this.gson = new Gson();
         this.myBot = myBot;
     }
 
-    @Override
-    public void onMessage(ByteBuffer bytes) {}
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public ResponseStats getResponseStats() {
+        return responseStats;
+    }
+
+    public PauseMonitor getPauseMonitor() {
+        return pauseMonitor;
+    }
+
+    public DecisionRecorder getDecisionRecorder() {
+        return decisions;
+    }
 
     @Override
     public void onClose(int code, String reason, boolean remote) {
-        System.out.println("Connection closed. Exiting...");
-        System.exit(0);
+        Log.info("Api left out {} events ({} bytes) from the responses.", droppedEvents, savedBytes);
+        Log.info("Transport {}", transport.stats());
+        Log.info("Responses {}", responseStats);
+        String tasks = myBot instanceof AnytimeBot ? ((AnytimeBot) myBot).report() : null;
+        if (tasks != null) Log.info("Tasks\n{}", tasks);
+        pauseMonitor.stop();
+        Log.info("Pauses {}", pauseMonitor.report());
+        Path pauses = pauseMonitor.write(Paths.get("pauses"));
+        if (pauses != null) Log.info("Pause report written to {}", pauses);
+        Path dump = decisions.dump("close");
+        if (dump != null) Log.info("Decisions of the last ticks written to {}", dump);
+        updateThread.interrupt();
+        if (recording != null) {
+            // Stopping writes the recording to its destination
+            recording.stop();
+            Log.info("Flight recording written to {}", recording.getDestination());
+        }
+        if (closeListener != null) {
+            closeListener.run();
+        }
+        if (exitOnClose) {
+            Log.info("Connection closed. Exiting...");
+            System.exit(0);
+        }
     }
 
     @Override
     public void onError(Exception ex) {
-        ex.printStackTrace();
-        if (!isOpen()) {
+        Log.error("Transport error", ex);
+        if (!transport.isOpen() && exitOnClose) {
             System.exit(1);
         }
     }
 
     @Override
-    public void onOpen(ServerHandshake handshakedata) {}
+    public void onOpen() {}
 
     @Override
     public void onMessage(String message) {
+        frames.add(new Frame(message, System.nanoTime()));
+
+        FlightEvents.FrameReceived event = new FlightEvents.FrameReceived();
+        if (event.shouldCommit()) {
+            event.payloadBytes = FlightEvents.utf8Length(message);
+            event.queued = frames.size();
+            event.commit();
+        }
+    }
+
+    private void processFrames() {
+        ArrayList<Frame> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(frames.take());
+                frames.drainTo(batch);
+
+                // Frames are handled in order, but of the game states only
+                // the newest one is played, the others get an empty response
+                int latestState = -1;
+                for (int i = 0; i < batch.size(); i++) {
+                    if (isState(batch.get(i))) latestState = i;
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    Frame frame = batch.get(i);
+                    if (i < latestState && isState(frame)) skip(frame);
+                    else handle(frame);
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean isState(Frame frame) {
+        return frame.message.contains(MessageType.GAME_STATE.toString());
+    }
+
+    /** Answers a game state that a newer one replaces with an empty response, so the engine does not count it as failed. */
+    private void skip(Frame frame) {
+        long uid = readLong(frame.message, "uid");
+        responseStats.skipped(uid);
+        FlightEvents.StateSkipped event = new FlightEvents.StateSkipped();
+        event.uid = uid;
+        event.commit();
         try {
             Api response = new Api();
+            response.setUid(uid);
+            transport.send(response.toJson());
+        } catch (Exception e) {
+            Log.error("Answering a skipped state failed", e);
+        }
+    }
+
+    private void handle(Frame frame) {
+        String message = frame.message;
+        long processStart = System.nanoTime();
+        long decodeEnd = 0;
+        long updateEnd = 0;
+        try {
+            Api response = new Api();
+            GameState gameState = null;
+
+            long uid = -1;
 
             if (message.contains(MessageType.GAME_SETUP.toString())) {
                 // Load constants
+                FlightEvents.Decode decode = new FlightEvents.Decode();
+                decode.begin();
                 JsonParser parser = new JsonParser();
                 JsonObject jsonObject = parser.parse(message).getAsJsonObject();
                 JsonObject constantsJson = jsonObject.getAsJsonObject("constants");
-                Constants.load(constantsJson);
-                response.setUid(jsonObject.get("uid").getAsLong());
+                context = GameContext.fromJson(constantsJson);
+                // The static fields are shared by every game in the JVM, only a client that owns its JVM fills them
+                if (exitOnClose) Constants.load(context);
+                uid = jsonObject.get("uid").getAsLong();
+                decode.end();
+                if (decode.shouldCommit()) {
+                    decode.uid = uid;
+                    decode.payloadBytes = FlightEvents.utf8Length(message);
+                    decode.commit();
+                }
+
+                FlightEvents.Update update = new FlightEvents.Update();
+                update.begin();
+                myBot.setup(context);
+                update.end();
+                if (update.shouldCommit()) {
+                    update.uid = uid;
+                    update.commit();
+                }
+                response.setUid(uid);
 
             } else if (message.contains(MessageType.GAME_STATE.toString())) {
                 // Extract GameState and send it to bot
-                GameState gameState = gson.fromJson(message, GameState.class);
-                response.setUid(gameState.uid);
-                myBot.update(gameState, response);
+                FlightEvents.Decode decode = new FlightEvents.Decode();
+                decode.begin();
+                gameState = gson.fromJson(message, GameState.class);
+                uid = gameState.uid;
+                decode.end();
+                decodeEnd = System.nanoTime();
+                decisions.beginTick(gameState);
+                if (decode.shouldCommit()) {
+                    decode.uid = uid;
+                    decode.units = gameState.units.length;
+                    decode.payloadBytes = FlightEvents.utf8Length(message);
+                    decode.commit();
+                }
+
+                response.setUid(uid);
+                response.setState(gameState);
+                FlightEvents.Update update = new FlightEvents.Update();
+                update.begin();
+                if (myBot instanceof AnytimeBot) {
+                    long deadline = frame.receivedAt + AnytimeBot.budgetNanos(context);
+                    ((AnytimeBot) myBot).update(gameState, response, context, deadline);
+                } else {
+                    myBot.update(gameState, response, context);
+                }
+                update.end();
+                updateEnd = System.nanoTime();
+                response.record(decisions);
+                if (update.shouldCommit()) {
+                    update.uid = uid;
+                    update.units = gameState.units.length;
+                    update.opponents = gameState.numberOfOpponentUnits;
+                    update.commit();
+                }
+            }
+
+            FlightEvents.Encode encode = new FlightEvents.Encode();
+            encode.begin();
+            String json = response.toJson();
+            encode.end();
+            if (encode.shouldCommit()) {
+                encode.uid = uid;
+                encode.payloadBytes = FlightEvents.utf8Length(json);
+                encode.commit();
             }
-            send(response.toJson());
+
+            long processEnd = System.nanoTime();
+            FlightEvents.Send send = new FlightEvents.Send();
+            send.begin();
+            transport.send(json);
+            send.end();
+            long sentAt = System.nanoTime();
+            if (send.shouldCommit()) {
+                send.uid = uid;
+                send.payloadBytes = FlightEvents.utf8Length(json);
+                send.commit();
+            }
+            responseStats.responded(sentAt - frame.receivedAt);
+            if (gameState != null) {
+                boolean slow = sentAt - frame.receivedAt
+                        > Math.min(context.tickTimeout, AimSolver.STATE_INTERVAL) * NEAR_TIMEOUT_SHARE * 1e9;
+                decisions.endTick(frame.receivedAt, processStart, decodeEnd, updateEnd, processEnd, sentAt,
+                        slow ? DecisionRecorder.FLAG_SLOW : 0);
+                if (slow) decisions.dumpIfDue("slow tick " + uid);
+                pauseMonitor.tick(uid, frame.receivedAt, processStart, processEnd, sentAt, AnytimeBot.budgetNanos(context));
+                myBot.responseSent(gameState);
+            }
+            droppedEvents += response.getDroppedEvents();
+            savedBytes += response.getSavedBytes();
 
         } catch (Exception e) {
-            e.printStackTrace();
+            Log.error("Handling a frame failed", e);
+            if (decisions.isOpen()) {
+                decisions.endTick(frame.receivedAt, processStart, decodeEnd, updateEnd, 0, 0, DecisionRecorder.FLAG_EXCEPTION);
+            }
+            decisions.dumpIfDue(e.toString());
+        }
+    }
+
+    /** Index of the value of the first field with the name, or -1 if there is none. */
+    private static int findValue(String message, String name) {
+        int i = message.indexOf("\"" + name + "\"");
+        if (i < 0) return -1;
+        i += name.length() + 2;
+        while (i < message.length() && (message.charAt(i) == ':' || Character.isWhitespace(message.charAt(i)))) i++;
+        return i;
+    }
+
+    /** Reads an integer field without parsing the rest of the message, -1 if it is missing. */
+    static long readLong(String message, String name) {
+        int i = findValue(message, name);
+        if (i < 0) return -1;
+        long value = 0;
+        boolean found = false;
+        for (; i < message.length() && Character.isDigit(message.charAt(i)); i++) {
+            value = value * 10 + (message.charAt(i) - '0');
+            found = true;
         }
+        return found ? value : -1;
     }
-}
\ No newline at end of file
+}
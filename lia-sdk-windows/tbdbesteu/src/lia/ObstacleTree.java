@@ -0,0 +1,338 @@
+package lia;
+
+import lia.api.ObstacleData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The obstacles of a map as rectangles in a static AABB tree. The map's
+ * obstacle cells are merged into a small set of rectangles, so that
+ * queries test a few dozen rectangles instead of walking thousands of
+ * cells. The map edges count as obstacles too and are tested directly.
+ * Plain rays are the exception: they walk the cells they cross, which for
+ * rays as long as a bullet flies is several times faster than the tree,
+ * see lia.bench.ObstacleTreeBenchmark.
+ *
+ * The tree is built once per map and never changes, queries do not
+ * allocate and may run on several threads at once.
+ */
+public class ObstacleTree {
+
+    private static final int LEAF_SIZE = 4;
+
+    /** The merged obstacle rectangles. */
+    private final ObstacleData[] obstacles;
+    private final boolean[][] map;
+    private final int width;
+    private final int height;
+
+    // Rectangles in tree order
+    private final float[] minX, minY, maxX, maxY;
+
+    // Nodes, a leaf has no children and covers rectangles start to start + count
+    private int nodes;
+    private float[] nodeMinX, nodeMinY, nodeMaxX, nodeMaxY;
+    private int[] left, right, start, count;
+
+    public ObstacleTree(boolean[][] map) {
+        obstacles = merge(map);
+        this.map = map;
+        width = map.length;
+        height = width > 0 ? map[0].length : 0;
+
+        int n = obstacles.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        int maxNodes = Math.max(1, 2 * n);
+        nodeMinX = new float[maxNodes];
+        nodeMinY = new float[maxNodes];
+        nodeMaxX = new float[maxNodes];
+        nodeMaxY = new float[maxNodes];
+        left = new int[maxNodes];
+        right = new int[maxNodes];
+        start = new int[maxNodes];
+        count = new int[maxNodes];
+        build(order, 0, n);
+
+        minX = new float[n];
+        minY = new float[n];
+        maxX = new float[n];
+        maxY = new float[n];
+        for (int i = 0; i < n; i++) {
+            ObstacleData rectangle = obstacles[order[i]];
+            minX[i] = rectangle.x;
+            minY[i] = rectangle.y;
+            maxX[i] = rectangle.x + rectangle.width;
+            maxY[i] = rectangle.y + rectangle.height;
+        }
+    }
+
+    /**
+     * Merges the obstacle cells of the map into rectangles. Each rectangle
+     * starts at the lowest free corner cell, grows up as far as it can and
+     * then right for as long as the whole column is an obstacle.
+     */
+    public static ObstacleData[] merge(boolean[][] map) {
+        int width = map.length;
+        int height = width > 0 ? map[0].length : 0;
+        boolean[][] used = new boolean[width][height];
+        List<ObstacleData> rectangles = new ArrayList<>();
+
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (!map[x][y] || used[x][y]) continue;
+                int h = 1;
+                while (y + h < height && map[x][y + h] && !used[x][y + h]) h++;
+                int w = 1;
+                while (x + w < width && isFreeColumn(map, used, x + w, y, h)) w++;
+                for (int i = x; i < x + w; i++) {
+                    for (int j = y; j < y + h; j++) used[i][j] = true;
+                }
+                rectangles.add(new ObstacleData(x, y, w, h));
+            }
+        }
+        return rectangles.toArray(new ObstacleData[0]);
+    }
+
+    private static boolean isFreeColumn(boolean[][] map, boolean[][] used, int x, int y, int h) {
+        for (int j = y; j < y + h; j++) {
+            if (!map[x][j] || used[x][j]) return false;
+        }
+        return true;
+    }
+
+    private int build(Integer[] order, int from, int to) {
+        int node = nodes++;
+        float x0 = Float.POSITIVE_INFINITY, y0 = Float.POSITIVE_INFINITY;
+        float x1 = Float.NEGATIVE_INFINITY, y1 = Float.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            ObstacleData r = obstacles[order[i]];
+            x0 = Math.min(x0, r.x);
+            y0 = Math.min(y0, r.y);
+            x1 = Math.max(x1, r.x + r.width);
+            y1 = Math.max(y1, r.y + r.height);
+        }
+        nodeMinX[node] = x0;
+        nodeMinY[node] = y0;
+        nodeMaxX[node] = x1;
+        nodeMaxY[node] = y1;
+        start[node] = from;
+        count[node] = to - from;
+        left[node] = right[node] = -1;
+
+        if (to - from > LEAF_SIZE) {
+            // Split at the median center along the longer side
+            boolean alongX = x1 - x0 >= y1 - y0;
+            Arrays.sort(order, from, to, (a, b) -> Float.compare(center(obstacles[a], alongX), center(obstacles[b], alongX)));
+            int middle = (from + to) >>> 1;
+            left[node] = build(order, from, middle);
+            right[node] = build(order, middle, to);
+        }
+        return node;
+    }
+
+    private static float center(ObstacleData r, boolean alongX) {
+        return alongX ? r.x + r.width / 2 : r.y + r.height / 2;
+    }
+
+    /** The obstacle rectangles of the map. */
+    public ObstacleData[] getObstacles() {
+        return obstacles;
+    }
+
+    /**
+     * Distance along the ray from (x,y) in the unit direction (dirX,dirY)
+     * to the first obstacle or map edge, but at most maxDistance. Returns 0
+     * if the point is inside an obstacle or outside the map. Walks the
+     * cells the ray crosses.
+     */
+    public float raycast(float x, float y, float dirX, float dirY, float maxDistance) {
+        int cellX = (int) Math.floor(x);
+        int cellY = (int) Math.floor(y);
+        int stepX = dirX > 0 ? 1 : -1;
+        int stepY = dirY > 0 ? 1 : -1;
+        float deltaX = dirX != 0 ? Math.abs(1f / dirX) : Float.POSITIVE_INFINITY;
+        float deltaY = dirY != 0 ? Math.abs(1f / dirY) : Float.POSITIVE_INFINITY;
+        float nextX = dirX != 0 ? (dirX > 0 ? cellX + 1 - x : x - cellX) * deltaX : Float.POSITIVE_INFINITY;
+        float nextY = dirY != 0 ? (dirY > 0 ? cellY + 1 - y : y - cellY) * deltaY : Float.POSITIVE_INFINITY;
+
+        float travelled = 0;
+        while (travelled < maxDistance) {
+            if (cellX < 0 || cellY < 0 || cellX >= width || cellY >= height || map[cellX][cellY]) {
+                return travelled;
+            }
+            if (nextX < nextY) {
+                travelled = nextX;
+                nextX += deltaX;
+                cellX += stepX;
+            } else {
+                travelled = nextY;
+                nextY += deltaY;
+                cellY += stepY;
+            }
+        }
+        return maxDistance;
+    }
+
+    /**
+     * Distance a circle of the radius can move from (x,y) in the unit
+     * direction (dirX,dirY) before it touches an obstacle or map edge, but
+     * at most maxDistance. Obstacles and edges the circle already overlaps
+     * are ignored, so that a unit pressed against a wall can still move away.
+     */
+    public float sweepCircle(float x, float y, float dirX, float dirY, float radius, float maxDistance) {
+        float best = Math.min(maxDistance, exit(x, dirX, width, radius));
+        best = Math.min(best, exit(y, dirY, height, radius));
+
+        float invX = 1 / dirX;
+        float invY = 1 / dirY;
+        if (count[0] == 0 || entry(x, y, invX, invY, nodeMinX[0] - radius, nodeMinY[0] - radius,
+                nodeMaxX[0] + radius, nodeMaxY[0] + radius) >= best) {
+            return best;
+        }
+        return sweepCircle(0, x, y, dirX, dirY, invX, invY, radius, best);
+    }
+
+    private float sweepCircle(int node, float x, float y, float dirX, float dirY, float invX, float invY,
+                              float radius, float best) {
+        if (left[node] < 0) {
+            for (int i = start[node]; i < start[node] + count[node]; i++) {
+                if (distanceSquared(i, x, y) < radius * radius) continue;
+                if (entry(x, y, invX, invY, minX[i] - radius, minY[i] - radius, maxX[i] + radius, maxY[i] + radius) >= best) continue;
+                // The rectangle grown by the radius has rounded corners: two slabs and four circles
+                float t = entry(x, y, invX, invY, minX[i] - radius, minY[i], maxX[i] + radius, maxY[i]);
+                t = Math.min(t, entry(x, y, invX, invY, minX[i], minY[i] - radius, maxX[i], maxY[i] + radius));
+                t = Math.min(t, circleEntry(x, y, dirX, dirY, minX[i], minY[i], radius));
+                t = Math.min(t, circleEntry(x, y, dirX, dirY, maxX[i], minY[i], radius));
+                t = Math.min(t, circleEntry(x, y, dirX, dirY, minX[i], maxY[i], radius));
+                t = Math.min(t, circleEntry(x, y, dirX, dirY, maxX[i], maxY[i], radius));
+                if (t < best) best = Math.max(0, t);
+            }
+            return best;
+        }
+        int a = left[node];
+        int b = right[node];
+        float ta = entry(x, y, invX, invY, nodeMinX[a] - radius, nodeMinY[a] - radius, nodeMaxX[a] + radius, nodeMaxY[a] + radius);
+        float tb = entry(x, y, invX, invY, nodeMinX[b] - radius, nodeMinY[b] - radius, nodeMaxX[b] + radius, nodeMaxY[b] + radius);
+        if (tb < ta) {
+            int swap = a; a = b; b = swap;
+            float swapT = ta; ta = tb; tb = swapT;
+        }
+        if (ta < best) best = sweepCircle(a, x, y, dirX, dirY, invX, invY, radius, best);
+        if (tb < best) best = sweepCircle(b, x, y, dirX, dirY, invX, invY, radius, best);
+        return best;
+    }
+
+    /** True if the segment from (x0,y0) to (x1,y1) crosses an obstacle or map edge. */
+    public boolean isBlocked(float x0, float y0, float x1, float y1) {
+        float length = MathUtil.distance(x0, y0, x1, y1);
+        if (length == 0) return overlapsCircle(x0, y0, 0);
+        return raycast(x0, y0, (x1 - x0) / length, (y1 - y0) / length, length) < length;
+    }
+
+    /** True if a circle at (x,y) with the radius overlaps an obstacle or map edge. */
+    public boolean overlapsCircle(float x, float y, float radius) {
+        if (x - radius < 0 || y - radius < 0 || x + radius > width || y + radius > height) return true;
+        return count[0] > 0 && overlapsCircle(0, x, y, radius);
+    }
+
+    private boolean overlapsCircle(int node, float x, float y, float radius) {
+        if (distanceSquared(nodeMinX[node], nodeMinY[node], nodeMaxX[node], nodeMaxY[node], x, y) > radius * radius) {
+            return false;
+        }
+        if (left[node] < 0) {
+            for (int i = start[node]; i < start[node] + count[node]; i++) {
+                if (distanceSquared(i, x, y) <= radius * radius) return true;
+            }
+            return false;
+        }
+        return overlapsCircle(left[node], x, y, radius) || overlapsCircle(right[node], x, y, radius);
+    }
+
+    /**
+     * Distance from (x,y) to the nearest obstacle or map edge, but at most
+     * maxDistance. 0 inside an obstacle or outside the map.
+     */
+    public float clearance(float x, float y, float maxDistance) {
+        float edge = Math.min(Math.min(x, width - x), Math.min(y, height - y));
+        if (edge <= 0) return 0;
+        float best = Math.min(maxDistance, edge);
+        if (count[0] == 0) return best;
+        return (float) Math.sqrt(clearance(0, x, y, best * best));
+    }
+
+    private float clearance(int node, float x, float y, float best) {
+        if (distanceSquared(nodeMinX[node], nodeMinY[node], nodeMaxX[node], nodeMaxY[node], x, y) >= best) {
+            return best;
+        }
+        if (left[node] < 0) {
+            for (int i = start[node]; i < start[node] + count[node]; i++) {
+                best = Math.min(best, distanceSquared(i, x, y));
+            }
+            return best;
+        }
+        best = clearance(left[node], x, y, best);
+        return clearance(right[node], x, y, best);
+    }
+
+    private float distanceSquared(int i, float x, float y) {
+        return distanceSquared(minX[i], minY[i], maxX[i], maxY[i], x, y);
+    }
+
+    private static float distanceSquared(float x0, float y0, float x1, float y1, float x, float y) {
+        float dx = x < x0 ? x0 - x : x > x1 ? x - x1 : 0;
+        float dy = y < y0 ? y0 - y : y > y1 ? y - y1 : 0;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Distance along one axis until a circle of the radius at position p
+     * moving with direction component dir touches the edge at 0 or size.
+     * Infinity if it moves along the edge or already overlaps it.
+     */
+    private static float exit(float p, float dir, float size, float radius) {
+        if (dir > 0 && p <= size - radius) return (size - radius - p) / dir;
+        if (dir < 0 && p >= radius) return (radius - p) / dir;
+        return Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Distance along the ray with inverse direction (invX,invY) at which it
+     * enters the box, negative if it starts inside, infinity if it misses.
+     */
+    private static float entry(float x, float y, float invX, float invY, float x0, float y0, float x1, float y1) {
+        float near = Float.NEGATIVE_INFINITY;
+        float far = Float.POSITIVE_INFINITY;
+        if (Float.isInfinite(invX)) {
+            if (x < x0 || x > x1) return Float.POSITIVE_INFINITY;
+        } else {
+            float a = (x0 - x) * invX;
+            float b = (x1 - x) * invX;
+            near = Math.min(a, b);
+            far = Math.max(a, b);
+        }
+        if (Float.isInfinite(invY)) {
+            if (y < y0 || y > y1) return Float.POSITIVE_INFINITY;
+        } else {
+            float a = (y0 - y) * invY;
+            float b = (y1 - y) * invY;
+            near = Math.max(near, Math.min(a, b));
+            far = Math.min(far, Math.max(a, b));
+        }
+        return near <= far && far > 0 ? near : Float.POSITIVE_INFINITY;
+    }
+
+    /** Distance along the ray at which it enters the circle, infinity if it misses or starts inside. */
+    private static float circleEntry(float x, float y, float dirX, float dirY, float cx, float cy, float radius) {
+        float rx = x - cx;
+        float ry = y - cy;
+        float halfB = rx * dirX + ry * dirY;
+        float c = rx * rx + ry * ry - radius * radius;
+        float disc = halfB * halfB - c;
+        if (c < 0 || disc < 0) return Float.POSITIVE_INFINITY;
+        float t = -halfB - (float) Math.sqrt(disc);
+        return t >= 0 ? t : Float.POSITIVE_INFINITY;
+    }
+}
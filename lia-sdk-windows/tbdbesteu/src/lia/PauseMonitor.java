@@ -0,0 +1,359 @@
+package lia;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Tells whether slow responses were the bot's fault or the JVM's. GC
+ * pauses are taken from the collectors' notifications. Safepoints and
+ * other stops of the JVM have no public API before JFR streaming, so a
+ * daemon thread sleeps a millisecond at a time and records every wake-up
+ * that comes clearly too late: while the JVM is stopped, nothing runs.
+ * A late wake-up is also what a busy or single-core host gives when the
+ * update thread has the CPU, so a late probe only counts as a stall if
+ * the update thread hardly ran meanwhile. At a safepoint it stands still
+ * like every other Java thread.
+ *
+ * Every response is split into time in our code, GC pauses, other JVM
+ * stalls and the rest, which is waiting in the queue and sending. Slow
+ * responses are counted by the largest part. GC notifications arrive
+ * shortly after the pause, so a pause at the very end of a response can
+ * count as a JVM stall instead. The report also gives the
+ * allocation per tick, to choose the collector and heap size for the run
+ * scripts.
+ */
+public class PauseMonitor {
+
+    public static final int BOT = 0;
+    public static final int GC = 1;
+    public static final int JVM = 2;
+    public static final int TRANSPORT = 3;
+    private static final String[] CAUSES = {"bot", "gc", "jvm", "transport"};
+
+    /** Sleep of the stall detector. */
+    private static final long PROBE_NANOS = 1_000_000;
+    /** A wake-up this much later than asked for counts as a stall. */
+    private static final long STALL_NANOS = 2_000_000;
+    /**
+     * Share of a late wake-up the update thread may have spent on the CPU
+     * for the wake-up to still count as a stall. More than that and the
+     * probe was just waiting for its turn.
+     */
+    private static final double STALL_MAX_RUNNING_SHARE = 0.25;
+    /** Pauses kept for matching with ticks, far more than fit into one response. */
+    private static final int PAUSES = 256;
+    /** Slowest ticks listed in the report. */
+    private static final int WORST = 5;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener listener = this::onNotification;
+    private Thread detector;
+    private long watchedThreadId = -1;
+
+    // Recent pauses as rings of start and end times, guarded by this
+    private final long[] gcStart = new long[PAUSES];
+    private final long[] gcEnd = new long[PAUSES];
+    private int gcCount;
+    private final long[] stallStart = new long[PAUSES];
+    private final long[] stallEnd = new long[PAUSES];
+    private int stallCount;
+    /** Late wake-ups during which the update thread had the CPU. */
+    private int scheduledCount;
+
+    /**
+     * System.nanoTime() at the zero of the GC timestamps. Notifications
+     * arrive a little after the pause ends, so the smallest difference
+     * between arrival and end seen so far is the best estimate.
+     */
+    private long clockOffset = Long.MAX_VALUE;
+
+    // Game totals, guarded by this
+    private long gcNanos;
+    private long maxGcNanos;
+    private long freedBytes;
+    private final TreeSet<String> collectors = new TreeSet<>();
+
+    // Ticks, only touched by the update thread
+    private int ticks;
+    private final int[] slowByCause = new int[CAUSES.length];
+    private final long[] timeByCause = new long[CAUSES.length];
+    private long[] allocated = new long[1024];
+    private long threadAllocated;
+    private long lastUsed = -1;
+    private long lastFreed;
+    private long firstTickAt;
+    private long lastTickAt;
+    private final Tick[] worst = new Tick[WORST];
+
+    /** Breakdown of one response. */
+    public static class Tick {
+        public long uid;
+        public long totalNanos;
+        public final long[] nanos = new long[CAUSES.length];
+        public int cause;
+
+        @Override
+        public String toString() {
+            return "uid " + uid + " " + totalNanos / 1000 + " us: bot " + nanos[BOT] / 1000
+                    + ", gc " + nanos[GC] / 1000 + ", jvm " + nanos[JVM] / 1000
+                    + ", transport " + nanos[TRANSPORT] / 1000;
+        }
+    }
+
+    /**
+     * Starts listening to the collectors and the stall detector. Late
+     * wake-ups while the thread is running are not taken for stalls.
+     */
+    public void start(Thread updateThread) {
+        if (threads.isThreadCpuTimeSupported()) {
+            threads.setThreadCpuTimeEnabled(true);
+            watchedThreadId = updateThread.getId();
+        }
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) collector;
+                emitter.addNotificationListener(listener, null, null);
+                emitters.add(emitter);
+            }
+        }
+        detector = new Thread(this::detectStalls, "pause-monitor");
+        detector.setDaemon(true);
+        detector.start();
+    }
+
+    public void stop() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener);
+            } catch (Exception e) {
+                // Already removed
+            }
+        }
+        emitters.clear();
+        if (detector != null) detector.interrupt();
+    }
+
+    private void onNotification(Notification notification, Object handback) {
+        long arrival = System.nanoTime();
+        if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) return;
+        GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        GcInfo gc = info.getGcInfo();
+
+        long freed = 0;
+        Map<String, MemoryUsage> before = gc.getMemoryUsageBeforeGc();
+        for (Map.Entry<String, MemoryUsage> after : gc.getMemoryUsageAfterGc().entrySet()) {
+            MemoryUsage usage = before.get(after.getKey());
+            if (usage != null) freed += Math.max(0, usage.getUsed() - after.getValue().getUsed());
+        }
+
+        // Concurrent cycles run next to the application, their pauses are reported separately
+        String name = info.getGcName();
+        boolean concurrent = name.contains("Concurrent") || name.endsWith("Cycles");
+        synchronized (this) {
+            clockOffset = Math.min(clockOffset, arrival - gc.getEndTime() * 1_000_000);
+            freedBytes += freed;
+            collectors.add(name);
+            if (concurrent) return;
+            long start = clockOffset + gc.getStartTime() * 1_000_000;
+            long duration = gc.getDuration() * 1_000_000;
+            int i = gcCount++ % PAUSES;
+            gcStart[i] = start;
+            gcEnd[i] = start + duration;
+            gcNanos += duration;
+            maxGcNanos = Math.max(maxGcNanos, duration);
+        }
+    }
+
+    private void detectStalls() {
+        try {
+            while (true) {
+                long cpuBefore = watchedCpuNanos();
+                long before = System.nanoTime();
+                Thread.sleep(PROBE_NANOS / 1_000_000);
+                long after = System.nanoTime();
+                long late = after - before - PROBE_NANOS;
+                if (late > STALL_NANOS) {
+                    long running = watchedCpuNanos() - cpuBefore;
+                    synchronized (this) {
+                        if (running > late * STALL_MAX_RUNNING_SHARE) {
+                            scheduledCount++;
+                            continue;
+                        }
+                        int i = stallCount++ % PAUSES;
+                        stallStart[i] = before + PROBE_NANOS;
+                        stallEnd[i] = after;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** CPU time of the update thread, 0 if it is not known. */
+    private long watchedCpuNanos() {
+        if (watchedThreadId < 0) return 0;
+        return Math.max(0, threads.getThreadCpuTime(watchedThreadId));
+    }
+
+    private static long overlap(long[] starts, long[] ends, int count, long from, long to) {
+        long sum = 0;
+        for (int i = Math.max(0, count - PAUSES); i < count; i++) {
+            int j = i % PAUSES;
+            sum += Math.max(0, Math.min(to, ends[j]) - Math.max(from, starts[j]));
+        }
+        return sum;
+    }
+
+    /**
+     * Records a response. The frame arrived at receivedAt, our code
+     * worked on it from processStart to processEnd and it was sent at
+     * sentAt. Responses taking longer than slowNanos are counted as slow.
+     * Called on the update thread after sending.
+     */
+    public Tick tick(long uid, long receivedAt, long processStart, long processEnd, long sentAt, long slowNanos) {
+        Tick tick = new Tick();
+        tick.uid = uid;
+        tick.totalNanos = sentAt - receivedAt;
+
+        long gc, stalls, processPauses, freed;
+        synchronized (this) {
+            gc = overlap(gcStart, gcEnd, gcCount, receivedAt, sentAt);
+            stalls = overlap(stallStart, stallEnd, stallCount, receivedAt, sentAt);
+            processPauses = Math.max(overlap(gcStart, gcEnd, gcCount, processStart, processEnd),
+                    overlap(stallStart, stallEnd, stallCount, processStart, processEnd));
+            freed = freedBytes;
+        }
+        // The stall detector also sees GC pauses, and both are only accurate to a millisecond
+        long pauses = Math.min(tick.totalNanos, Math.max(gc, stalls));
+        tick.nanos[GC] = Math.min(gc, pauses);
+        tick.nanos[JVM] = pauses - tick.nanos[GC];
+        tick.nanos[BOT] = Math.max(0, processEnd - processStart - processPauses);
+        tick.nanos[TRANSPORT] = Math.max(0, tick.totalNanos - tick.nanos[BOT] - pauses);
+        for (int cause = 1; cause < CAUSES.length; cause++) {
+            if (tick.nanos[cause] > tick.nanos[tick.cause]) tick.cause = cause;
+        }
+        for (int cause = 0; cause < CAUSES.length; cause++) timeByCause[cause] += tick.nanos[cause];
+        if (tick.totalNanos > slowNanos) slowByCause[tick.cause]++;
+        keepIfWorst(tick);
+
+        // Allocated since the last tick: growth of the heap plus what the collectors freed
+        long used = memory.getHeapMemoryUsage().getUsed();
+        if (lastUsed >= 0) {
+            if (ticks == allocated.length) allocated = Arrays.copyOf(allocated, ticks * 2);
+            allocated[ticks] = Math.max(0, used - lastUsed + freed - lastFreed);
+        } else {
+            firstTickAt = sentAt;
+        }
+        lastUsed = used;
+        lastFreed = freed;
+        lastTickAt = sentAt;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            threadAllocated = ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        ticks++;
+        return tick;
+    }
+
+    private void keepIfWorst(Tick tick) {
+        int slot = -1;
+        for (int i = 0; i < WORST; i++) {
+            if (worst[i] == null) {
+                slot = i;
+                break;
+            }
+            if (slot < 0 || worst[i].totalNanos < worst[slot].totalNanos) slot = i;
+        }
+        if (worst[slot] == null || worst[slot].totalNanos < tick.totalNanos) worst[slot] = tick;
+    }
+
+    /** Slow responses of the game by cause. */
+    public int slow(int cause) {
+        return slowByCause[cause];
+    }
+
+    /** Summary of the game. */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        int slow = 0;
+        for (int count : slowByCause) slow += count;
+        report.append(ticks).append(" responses, ").append(slow).append(" slow:");
+        for (int cause = 0; cause < CAUSES.length; cause++) {
+            report.append(' ').append(CAUSES[cause]).append(' ').append(slowByCause[cause]);
+        }
+        report.append("\nTime in responses:");
+        for (int cause = 0; cause < CAUSES.length; cause++) {
+            report.append(' ').append(CAUSES[cause]).append(' ').append(timeByCause[cause] / 1_000_000).append(" ms");
+        }
+
+        synchronized (this) {
+            report.append("\nGC ").append(collectors).append(": ").append(gcCount).append(" pauses, ")
+                    .append(gcNanos / 1_000_000).append(" ms total, ").append(maxGcNanos / 1_000_000).append(" ms max")
+                    .append("\nJVM stalls over ").append(STALL_NANOS / 1_000_000).append(" ms, GC included: ")
+                    .append(stallCount).append(", late wake-ups while the bot ran: ").append(scheduledCount);
+        }
+
+        int samples = Math.max(0, ticks - 1);
+        if (samples > 0) {
+            long[] sorted = Arrays.copyOf(allocated, samples);
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (long bytes : sorted) sum += bytes;
+            double seconds = (lastTickAt - firstTickAt) / 1e9;
+            report.append("\nAllocation per tick: ").append(sum / samples / 1024).append(" KB avg, ")
+                    .append(sorted[samples / 2] / 1024).append(" KB median, ")
+                    .append(sorted[samples - 1] / 1024).append(" KB max, ")
+                    .append(seconds > 0 ? (long) (sum / seconds / (1024 * 1024)) : 0).append(" MB/s");
+        }
+        report.append("\nUpdate thread allocated ").append(threadAllocated / (1024 * 1024)).append(" MB")
+                .append("\nHeap ").append(memory.getHeapMemoryUsage().getMax() / (1024 * 1024)).append(" MB max, JVM options ")
+                .append(ManagementFactory.getRuntimeMXBean().getInputArguments());
+
+        Tick[] slowest = Arrays.stream(worst).filter(t -> t != null).toArray(Tick[]::new);
+        Arrays.sort(slowest, (a, b) -> Long.compare(b.totalNanos, a.totalNanos));
+        for (Tick tick : slowest) report.append("\n  ").append(tick);
+        return report.toString();
+    }
+
+    /**
+     * Writes the report into the directory, which is created when needed.
+     * Returns the file, or null if writing failed.
+     */
+    public Path write(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            Path file = directory.resolve("pauses-" + System.currentTimeMillis() + ".txt");
+            try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                writer.write(report());
+                writer.newLine();
+            }
+            return file;
+        } catch (IOException e) {
+            Log.error("Could not write the pause report", e);
+            return null;
+        }
+    }
+}
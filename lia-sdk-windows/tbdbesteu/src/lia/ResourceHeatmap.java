@@ -0,0 +1,93 @@
+package lia;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Probability of a resource spawning in each cell of a grid laid over the
+ * map, learned from past games. The file is a small header followed by
+ * one float per cell, column by column like GameContext.map, and is read
+ * through a memory mapping. Lookups use coordinates relative to the map
+ * size, so a heatmap can be used on maps of another size.
+ */
+public class ResourceHeatmap {
+
+    /** Environment variable with the path of the heatmap file. */
+    public static final String ENVIRONMENT_VARIABLE = "LIA_RESOURCE_HEATMAP";
+    public static final String DEFAULT_FILE = "resource-heatmap.bin";
+
+    private static final int MAGIC = 0x4c494148; // LIAH
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    public final float mapWidth;
+    public final float mapHeight;
+    public final int columns;
+    public final int rows;
+    /** Number of spawns the heatmap was learned from. */
+    public final int spawns;
+    /** Number of games the heatmap was learned from. */
+    public final int games;
+    private final FloatBuffer cells;
+
+    private ResourceHeatmap(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) throw new IOException("Not a resource heatmap");
+        if (buffer.getInt(4) != VERSION) throw new IOException("Unsupported version " + buffer.getInt(4));
+        mapWidth = buffer.getFloat(8);
+        mapHeight = buffer.getFloat(12);
+        columns = buffer.getInt(16);
+        rows = buffer.getInt(20);
+        spawns = buffer.getInt(24);
+        games = buffer.getInt(28);
+        if (buffer.limit() < HEADER_SIZE + 4 * columns * rows) throw new IOException("Resource heatmap is truncated");
+        buffer.position(HEADER_SIZE);
+        cells = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+
+    public static ResourceHeatmap load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new ResourceHeatmap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Loads the heatmap named by LIA_RESOURCE_HEATMAP, or DEFAULT_FILE in
+     * the working directory. Returns null if there is none.
+     */
+    public static ResourceHeatmap loadDefault() {
+        String name = System.getenv(ENVIRONMENT_VARIABLE);
+        Path file = Paths.get(name != null && !name.isEmpty() ? name : DEFAULT_FILE);
+        if (!Files.exists(file)) return null;
+        try {
+            return load(file);
+        } catch (IOException e) {
+            Log.warn("Could not load resource heatmap {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /** Probability of a spawn in the cell at the point of a map of the given size. */
+    public float probability(float x, float y, float width, float height) {
+        int column = Math.min(columns - 1, Math.max(0, (int) (x / width * columns)));
+        int row = Math.min(rows - 1, Math.max(0, (int) (y / height * rows)));
+        return cells.get(column * rows + row);
+    }
+
+    /** Writes a heatmap, cells holds the probabilities column by column. */
+    public static void write(Path file, float mapWidth, float mapHeight, int columns, int rows,
+                             int spawns, int games, float[] cells) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 * cells.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putFloat(mapWidth).putFloat(mapHeight)
+                .putInt(columns).putInt(rows).putInt(spawns).putInt(games);
+        for (float cell : cells) buffer.putFloat(cell);
+        Files.write(file, buffer.array());
+    }
+}
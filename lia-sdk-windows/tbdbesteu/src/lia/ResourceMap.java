@@ -0,0 +1,108 @@
+package lia;
+
+import java.util.Random;
+
+/**
+ * Where resources are likely to spawn on the current map: the learned
+ * ResourceHeatmap with the cells taken out where the engine's spawn rules
+ * never put a resource. Built once when the game is set up, after which
+ * lookups and sampling a cell in proportion to its weight take constant
+ * and logarithmic time. Nothing spawns after STOP_SPAWNING_AFTER, see
+ * spawning().
+ */
+public class ResourceMap {
+
+    // Spawn rules from the engine's game-config.json, they are not sent with the game constants
+    /** Distance a resource keeps from the edges of the map. */
+    static final float OFFSET_FROM_WALLS = 2;
+    /** Distance a resource keeps from obstacles. */
+    static final float OFFSET_FROM_OBSTACLES = 0;
+
+    private final int width;
+    private final int height;
+    /** Weight of each map cell relative to the best one, indexed by x * height + y. */
+    private final float[] weights;
+    /** Running sum of the weights, for sampling. */
+    private final float[] cumulative;
+    private final float stopSpawningAfter;
+
+    public ResourceMap(GameContext context, ResourceHeatmap heatmap) {
+        width = context.mapWidth;
+        height = context.mapHeight;
+        weights = new float[width * height];
+        cumulative = new float[width * height];
+        stopSpawningAfter = context.stopSpawningAfter;
+
+        float max = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (!canSpawn(context, x, y)) continue;
+                float weight = heatmap.probability(x + 0.5f, y + 0.5f, width, height);
+                weights[x * height + y] = weight;
+                max = Math.max(max, weight);
+            }
+        }
+
+        float sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (max > 0) weights[i] /= max;
+            sum += weights[i];
+            cumulative[i] = sum;
+        }
+    }
+
+    /** Whether the spawn rules allow a resource in the map cell. */
+    private static boolean canSpawn(GameContext context, int x, int y) {
+        float centerX = x + 0.5f;
+        float centerY = y + 0.5f;
+        if (centerX < OFFSET_FROM_WALLS || centerX > context.mapWidth - OFFSET_FROM_WALLS
+                || centerY < OFFSET_FROM_WALLS || centerY > context.mapHeight - OFFSET_FROM_WALLS) {
+            return false;
+        }
+        int reach = (int) Math.ceil(OFFSET_FROM_OBSTACLES);
+        for (int cellX = Math.max(0, x - reach); cellX <= Math.min(context.mapWidth - 1, x + reach); cellX++) {
+            for (int cellY = Math.max(0, y - reach); cellY <= Math.min(context.mapHeight - 1, y + reach); cellY++) {
+                if (!context.map[cellX][cellY]) continue;
+                // Distance from the cell center to the closest point of the obstacle cell
+                float dx = Math.max(0, Math.abs(centerX - (cellX + 0.5f)) - 0.5f);
+                float dy = Math.max(0, Math.abs(centerY - (cellY + 0.5f)) - 0.5f);
+                if (dx * dx + dy * dy <= OFFSET_FROM_OBSTACLES * OFFSET_FROM_OBSTACLES) return false;
+            }
+        }
+        return true;
+    }
+
+    /** True while new resources spawn, the map says nothing about the game after that. */
+    public boolean spawning(float time) {
+        return time < stopSpawningAfter;
+    }
+
+    /** Weight of the map cell at the point, 1 for the most likely cells and 0 where nothing spawns. */
+    public float weight(float x, float y) {
+        int cellX = (int) x;
+        int cellY = (int) y;
+        if (cellX < 0 || cellY < 0 || cellX >= width || cellY >= height) return 0;
+        return weights[cellX * height + cellY];
+    }
+
+    /**
+     * Picks a map cell with a chance proportional to its weight and writes
+     * its center to the point. Returns false if no cell has any weight.
+     */
+    public boolean sample(Random random, float[] point) {
+        float total = cumulative[cumulative.length - 1];
+        if (total <= 0) return false;
+        float target = random.nextFloat() * total;
+
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] <= target) low = middle + 1;
+            else high = middle;
+        }
+        point[0] = low / height + 0.5f;
+        point[1] = low % height + 0.5f;
+        return true;
+    }
+}
@@ -0,0 +1,85 @@
+package lia;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of how NetworkingClient kept up with the engine. Staleness is
+ * the time from receiving a game state to sending the response to it.
+ * Besides the average and maximum, staleness is counted in a histogram
+ * with four buckets per power of two, so percentiles are known to within
+ * a fifth of their value.
+ */
+public class ResponseStats {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int BUCKETS = 64 << SUB_BUCKET_BITS;
+
+    public final AtomicLong responses = new AtomicLong();
+    /** Game states that got an empty response because a newer one was already waiting. */
+    public final AtomicLong coalescedFrames = new AtomicLong();
+    /** Uid of the last skipped game state, -1 if none was skipped. */
+    public final AtomicLong lastSkippedUid = new AtomicLong(-1);
+    public final AtomicLong stalenessNanos = new AtomicLong();
+    public final AtomicLong maxStalenessNanos = new AtomicLong();
+    private final AtomicLongArray stalenessHistogram = new AtomicLongArray(BUCKETS);
+
+    void skipped(long uid) {
+        coalescedFrames.incrementAndGet();
+        lastSkippedUid.set(uid);
+    }
+
+    void responded(long staleness) {
+        responses.incrementAndGet();
+        stalenessNanos.addAndGet(staleness);
+        maxStalenessNanos.accumulateAndGet(staleness, Math::max);
+        stalenessHistogram.incrementAndGet(bucket(Math.max(0, staleness)));
+    }
+
+    /**
+     * Staleness that the given share of the responses did not exceed, as
+     * the upper end of its histogram bucket. 0 if nothing was sent.
+     */
+    public long stalenessPercentileNanos(double share) {
+        long total = 0;
+        long[] counts = new long[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++) total += counts[b] = stalenessHistogram.get(b);
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(share * total));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank) return Math.min(upperBound(b), maxStalenessNanos.get());
+        }
+        return maxStalenessNanos.get();
+    }
+
+    /** Values below 2^SUB_BUCKET_BITS get a bucket each, above that every power of two is split in four. */
+    private static int bucket(long nanos) {
+        if (nanos < 1 << SUB_BUCKET_BITS) return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + sub;
+    }
+
+    /** Largest value that falls into the bucket. */
+    private static long upperBound(int bucket) {
+        if (bucket < 1 << SUB_BUCKET_BITS) return bucket;
+        int exponent = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        long sub = bucket & ((1 << SUB_BUCKET_BITS) - 1);
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+
+    @Override
+    public String toString() {
+        long sent = responses.get();
+        return sent + " responses, " + coalescedFrames.get() + " states skipped, "
+                + "staleness " + (sent == 0 ? 0 : stalenessNanos.get() / sent / 1000) + " us avg, "
+                + stalenessPercentileNanos(0.5) / 1000 + " us p50, "
+                + stalenessPercentileNanos(0.9) / 1000 + " us p90, "
+                + stalenessPercentileNanos(0.99) / 1000 + " us p99, "
+                + maxStalenessNanos.get() / 1000 + " us max";
+    }
+}
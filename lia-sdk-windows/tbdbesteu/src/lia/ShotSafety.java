@@ -0,0 +1,211 @@
+package lia;
+
+import lia.api.GameState;
+import lia.api.Speed;
+import lia.api.UnitData;
+import lia.api.UnitType;
+
+/**
+ * Tells whether a warrior can shoot at a target without hitting its own
+ * team, which the game allows. Once per tick the own units are put into a
+ * coarse grid and the range of every warrior's shot is found. When a
+ * warrior wants to shoot, the path of a bullet fired now along its
+ * heading is tested against the units near it, with each unit moving on
+ * at its current speed while the bullet flies. The path ends at the
+ * target or the first obstacle, whichever comes first, so own units
+ * behind the target do not hold the shot. For a warrior whose shot is
+ * blocked by own units, the time until it clears is estimated by testing
+ * a few moments ahead, once per tick and only when asked for.
+ */
+public class ShotSafety {
+
+    /** Grid cell size, about the distance a unit travels during a bullet's flight. */
+    private static final float CELL_SIZE = 8;
+    /** Extra distance kept from own units for errors in the predicted motion. */
+    private static final float SAFETY_MARGIN = 0.3f;
+    /** How far ahead the time to clear is searched, in seconds. */
+    private static final float CLEAR_HORIZON = 1f;
+    private static final float CLEAR_STEP = 0.1f;
+
+    private GameContext context;
+    private float hitRadius;
+
+    private int nUnits;
+    private final IntIntMap index = new IntIntMap(32, -1);
+    private float[] x = new float[32];
+    private float[] y = new float[32];
+    private float[] vx = new float[32];
+    private float[] vy = new float[32];
+    private float[] dirX = new float[32];
+    private float[] dirY = new float[32];
+    /** Distance a bullet fired now travels before it hits an obstacle. */
+    private float[] range = new float[32];
+    /** Time to clear found this tick and the target distance it was found for, NaN until asked for. */
+    private float[] timeToClear = new float[32];
+    private float[] clearDistance = new float[32];
+
+    // Units by grid cell: the units of cell c are cellUnits[cellStart[c]] to cellUnits[cellStart[c + 1] - 1]
+    private int columns, rows;
+    private int[] cellStart = new int[1];
+    private int[] cellUnits = new int[32];
+    private int[] unitCell = new int[32];
+
+    /**
+     * Takes in the units of the state and finds the range of every
+     * warrior's shot. Forgets the times to clear of the previous tick.
+     */
+    public void update(GameState state, GameContext context) {
+        this.context = context;
+        hitRadius = BulletThreats.hitRadius(context) + SAFETY_MARGIN;
+        nUnits = state.units.length;
+        if (x.length < nUnits) grow(nUnits * 2);
+        index.clear();
+
+        for (int u = 0; u < nUnits; u++) {
+            UnitData unit = state.units[u];
+            double rad = Math.toRadians(unit.orientationAngle);
+            float velocity = unit.speed == Speed.FORWARD ? context.unitForwardVelocity
+                    : unit.speed == Speed.BACKWARD ? -context.unitBackwardVelocity : 0;
+            index.put(unit.id, u);
+            x[u] = unit.x;
+            y[u] = unit.y;
+            dirX[u] = (float) Math.cos(rad);
+            dirY[u] = (float) Math.sin(rad);
+            vx[u] = dirX[u] * velocity;
+            vy[u] = dirY[u] * velocity;
+            range[u] = unit.type == UnitType.WARRIOR
+                    ? BulletThreats.distanceToObstacle(context, x[u], y[u], dirX[u], dirY[u], context.bulletRange) : 0;
+            timeToClear[u] = Float.NaN;
+        }
+        buildGrid();
+    }
+
+    private void buildGrid() {
+        columns = (int) Math.ceil(context.mapWidth / CELL_SIZE);
+        rows = (int) Math.ceil(context.mapHeight / CELL_SIZE);
+        int cells = columns * rows;
+        if (cellStart.length < cells + 1) cellStart = new int[cells + 1];
+        for (int c = 0; c <= cells; c++) cellStart[c] = 0;
+
+        // Counting sort of the units by cell
+        for (int u = 0; u < nUnits; u++) {
+            unitCell[u] = cell(column(x[u]), row(y[u]));
+            cellStart[unitCell[u] + 1]++;
+        }
+        for (int c = 0; c < cells; c++) cellStart[c + 1] += cellStart[c];
+        for (int u = 0; u < nUnits; u++) {
+            cellUnits[cellStart[unitCell[u]]++] = u;
+        }
+        for (int c = cells; c > 0; c--) cellStart[c] = cellStart[c - 1];
+        cellStart[0] = 0;
+    }
+
+    /**
+     * True if a bullet fired by the shooter after the delay misses all own
+     * units while it flies the distance, with all units moving on until
+     * then and during the flight.
+     */
+    private boolean isClear(int shooter, float distance, float delay) {
+        float startX = x[shooter] + vx[shooter] * delay;
+        float startY = y[shooter] + vy[shooter] * delay;
+        float bulletVx = dirX[shooter] * context.bulletVelocity;
+        float bulletVy = dirY[shooter] * context.bulletVelocity;
+        float flight = distance / context.bulletVelocity;
+
+        // Cells any unit the bullet could meet can be in during the flight
+        float reach = hitRadius + context.unitForwardVelocity * (delay + flight);
+        float endX = startX + bulletVx * flight;
+        float endY = startY + bulletVy * flight;
+        int fromColumn = column(Math.min(startX, endX) - reach);
+        int toColumn = column(Math.max(startX, endX) + reach);
+        int fromRow = row(Math.min(startY, endY) - reach);
+        int toRow = row(Math.max(startY, endY) + reach);
+
+        for (int column = fromColumn; column <= toColumn; column++) {
+            for (int row = fromRow; row <= toRow; row++) {
+                int c = cell(column, row);
+                for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                    int u = cellUnits[i];
+                    if (u != shooter && hits(startX, startY, bulletVx, bulletVy, flight, u, delay)) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** True if the bullet comes within the hit radius of the moving unit during its flight. */
+    private boolean hits(float bx, float by, float bvx, float bvy, float flight, int u, float delay) {
+        // Bullet relative to the unit
+        float rx = bx - (x[u] + vx[u] * delay);
+        float ry = by - (y[u] + vy[u] * delay);
+        float rvx = bvx - vx[u];
+        float rvy = bvy - vy[u];
+        float a = rvx * rvx + rvy * rvy;
+        float t = a > 0 ? -(rx * rvx + ry * rvy) / a : 0;
+        if (t < 0) t = 0;
+        else if (t > flight) t = flight;
+        float cx = rx + rvx * t;
+        float cy = ry + rvy * t;
+        return cx * cx + cy * cy < hitRadius * hitRadius;
+    }
+
+    private int column(float px) {
+        return Math.max(0, Math.min(columns - 1, (int) (px / CELL_SIZE)));
+    }
+
+    private int row(float py) {
+        return Math.max(0, Math.min(rows - 1, (int) (py / CELL_SIZE)));
+    }
+
+    private int cell(int column, int row) {
+        return column * rows + row;
+    }
+
+    private void grow(int size) {
+        x = new float[size];
+        y = new float[size];
+        vx = new float[size];
+        vy = new float[size];
+        dirX = new float[size];
+        dirY = new float[size];
+        range = new float[size];
+        timeToClear = new float[size];
+        clearDistance = new float[size];
+        cellUnits = new int[size];
+        unitCell = new int[size];
+    }
+
+    /**
+     * True if a bullet the unit fires now flies the distance to its target
+     * before it hits an obstacle or runs out of range, and misses all own
+     * units on the way. Units not in the last update never have a clear
+     * shot.
+     */
+    public boolean isClearShot(int unitId, float distance) {
+        return timeToClear(unitId, distance) == 0;
+    }
+
+    /**
+     * Seconds until the unit could shoot at a target the distance away
+     * without hitting an own unit, 0 if it can now, infinity if it could
+     * not within a second or the shot stops at an obstacle first. The
+     * search runs only for blocked shots and once per tick for each
+     * warrior and distance.
+     */
+    public float timeToClear(int unitId, float distance) {
+        int u = index.get(unitId);
+        if (u < 0 || distance > range[u]) return Float.POSITIVE_INFINITY;
+        if (!Float.isNaN(timeToClear[u]) && clearDistance[u] == distance) return timeToClear[u];
+
+        float time = Float.POSITIVE_INFINITY;
+        for (float delay = 0; delay <= CLEAR_HORIZON + 1e-3f; delay += CLEAR_STEP) {
+            if (isClear(u, distance, delay)) {
+                time = delay;
+                break;
+            }
+        }
+        timeToClear[u] = time;
+        clearDistance[u] = distance;
+        return time;
+    }
+}
@@ -0,0 +1,430 @@
+package lia;
+
+import lia.api.BulletInView;
+import lia.api.GameState;
+import lia.api.OpponentInView;
+import lia.api.Rotation;
+import lia.api.Speed;
+import lia.api.UnitData;
+import lia.api.UnitType;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Game state for look-ahead search, flat and cheap to branch. Units and
+ * bullets are columns of ints in one array, floats stored as their bits,
+ * split into chunks of 32 values. fork() and snapshot() share all chunks
+ * with the original and take constant time. A chunk is copied the first
+ * time either side writes to it, so a branch costs only the chunks it
+ * changes, and branches that are dropped are simply collected.
+ *
+ * The state carries its own SplitMix64 generator, so a restored snapshot
+ * draws the same random numbers again and a search from the same seed
+ * plays out the same way.
+ *
+ * Units keep their index for the life of the state, dead units stay with
+ * health 0. A state is not thread safe, but forks of it can be used on
+ * other threads. CombatModel plays every rollout of the
+ * EngagementEvaluator on a fork of one state of the engagement.
+ */
+public class SimState {
+
+    // Unit fields, the float ones first
+    public static final int UNIT_X = 0;
+    public static final int UNIT_Y = 1;
+    /** Orientation in degrees, counter-clockwise from the x-axis. */
+    public static final int UNIT_ANGLE = 2;
+    public static final int UNIT_HEALTH = 3;
+    /** Time at which the unit can shoot again. */
+    public static final int UNIT_NEXT_SHOT = 4;
+    public static final int UNIT_LAST_HIT = 5;
+    public static final int UNIT_ID = 6;
+    public static final int UNIT_TEAM = 7;
+    /** UnitType ordinal. */
+    public static final int UNIT_TYPE = 8;
+    /** Speed ordinal. */
+    public static final int UNIT_SPEED = 9;
+    /** Rotation ordinal. */
+    public static final int UNIT_ROTATION = 10;
+    public static final int UNIT_BULLETS = 11;
+    private static final int UNIT_FIELDS = 12;
+
+    // Bullet fields
+    public static final int BULLET_X = 0;
+    public static final int BULLET_Y = 1;
+    public static final int BULLET_DIR_X = 2;
+    public static final int BULLET_DIR_Y = 3;
+    /** Distance the bullet still flies before it hits an obstacle or runs out of range. */
+    public static final int BULLET_RANGE = 4;
+    /** Index of the unit that fired the bullet, -1 if unknown. */
+    public static final int BULLET_OWNER = 5;
+    private static final int BULLET_FIELDS = 6;
+
+    public static final int OURS = 0;
+    public static final int THEIRS = 1;
+
+    private static final int CHUNK_BITS = 5;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final AtomicLong ids = new AtomicLong();
+
+    private static final Speed[] SPEEDS = Speed.values();
+    private static final Rotation[] ROTATIONS = Rotation.values();
+
+    public final int unitCapacity;
+    public final int bulletCapacity;
+    private final int bulletBase;
+
+    // Header, copied on fork
+    private float time;
+    private int units;
+    private int bullets;
+    private long random;
+
+    // Chunks and the state that may write to each of them in place
+    private int[][] chunks;
+    private long[] owners;
+    /** State that may change the chunks and owners arrays themselves. */
+    private long tableOwner;
+    private long id;
+
+    public SimState(int unitCapacity, int bulletCapacity, long seed) {
+        this.unitCapacity = unitCapacity;
+        this.bulletCapacity = bulletCapacity;
+        bulletBase = UNIT_FIELDS * unitCapacity;
+        int size = bulletBase + BULLET_FIELDS * bulletCapacity;
+        int n = (size + CHUNK_MASK) >>> CHUNK_BITS;
+        chunks = new int[n][1 << CHUNK_BITS];
+        owners = new long[n];
+        id = ids.incrementAndGet();
+        tableOwner = id;
+        Arrays.fill(owners, id);
+        random = seed;
+    }
+
+    private SimState(SimState other) {
+        unitCapacity = other.unitCapacity;
+        bulletCapacity = other.bulletCapacity;
+        bulletBase = other.bulletBase;
+        copyFrom(other);
+    }
+
+    private void copyFrom(SimState other) {
+        time = other.time;
+        units = other.units;
+        bullets = other.bullets;
+        random = other.random;
+        chunks = other.chunks;
+        owners = other.owners;
+        tableOwner = other.tableOwner;
+        // Neither side may write to the shared chunks in place any more
+        id = ids.incrementAndGet();
+        other.id = ids.incrementAndGet();
+    }
+
+    /** A branch of this state. Both go on independently. */
+    public SimState fork() {
+        return new SimState(this);
+    }
+
+    /** A copy of the state to restore() later. Same as fork(), named for intent. */
+    public SimState snapshot() {
+        return new SimState(this);
+    }
+
+    /** Makes this state equal to the snapshot, which stays usable. */
+    public void restore(SimState snapshot) {
+        if (snapshot.unitCapacity != unitCapacity || snapshot.bulletCapacity != bulletCapacity) {
+            throw new IllegalArgumentException("Snapshot has a different capacity");
+        }
+        copyFrom(snapshot);
+    }
+
+    private int get(int index) {
+        return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    private void set(int index, int value) {
+        int chunk = index >>> CHUNK_BITS;
+        if (owners[chunk] != id) own(chunk);
+        chunks[chunk][index & CHUNK_MASK] = value;
+    }
+
+    private void own(int chunk) {
+        if (tableOwner != id) {
+            chunks = chunks.clone();
+            owners = owners.clone();
+            tableOwner = id;
+        }
+        chunks[chunk] = chunks[chunk].clone();
+        owners[chunk] = id;
+    }
+
+    public float time() {
+        return time;
+    }
+
+    public int units() {
+        return units;
+    }
+
+    public int bullets() {
+        return bullets;
+    }
+
+    public float unit(int field, int unit) {
+        return Float.intBitsToFloat(get(field * unitCapacity + unit));
+    }
+
+    public int unitInt(int field, int unit) {
+        return get(field * unitCapacity + unit);
+    }
+
+    public void setUnit(int field, int unit, float value) {
+        set(field * unitCapacity + unit, Float.floatToRawIntBits(value));
+    }
+
+    public void setUnitInt(int field, int unit, int value) {
+        set(field * unitCapacity + unit, value);
+    }
+
+    public float bullet(int field, int bullet) {
+        return Float.intBitsToFloat(get(bulletBase + field * bulletCapacity + bullet));
+    }
+
+    public int bulletInt(int field, int bullet) {
+        return get(bulletBase + field * bulletCapacity + bullet);
+    }
+
+    private void setBullet(int field, int bullet, float value) {
+        set(bulletBase + field * bulletCapacity + bullet, Float.floatToRawIntBits(value));
+    }
+
+    private void setBulletInt(int field, int bullet, int value) {
+        set(bulletBase + field * bulletCapacity + bullet, value);
+    }
+
+    public boolean isAlive(int unit) {
+        return unit(UNIT_HEALTH, unit) > 0;
+    }
+
+    public Speed speed(int unit) {
+        return SPEEDS[unitInt(UNIT_SPEED, unit)];
+    }
+
+    public Rotation rotation(int unit) {
+        return ROTATIONS[unitInt(UNIT_ROTATION, unit)];
+    }
+
+    public void setSpeed(int unit, Speed speed) {
+        setUnitInt(UNIT_SPEED, unit, speed.ordinal());
+    }
+
+    public void setRotation(int unit, Rotation rotation) {
+        setUnitInt(UNIT_ROTATION, unit, rotation.ordinal());
+    }
+
+    /** Adds a unit and returns its index, or -1 if the state is full. */
+    public int addUnit(int unitId, int team, UnitType type, float x, float y, float angle, float health,
+                       int bulletsLeft, Speed speed, Rotation rotation) {
+        if (units == unitCapacity) return -1;
+        int unit = units++;
+        setUnitInt(UNIT_ID, unit, unitId);
+        setUnitInt(UNIT_TEAM, unit, team);
+        setUnitInt(UNIT_TYPE, unit, type.ordinal());
+        setUnit(UNIT_X, unit, x);
+        setUnit(UNIT_Y, unit, y);
+        setUnit(UNIT_ANGLE, unit, angle);
+        setUnit(UNIT_HEALTH, unit, health);
+        setUnit(UNIT_NEXT_SHOT, unit, time);
+        setUnit(UNIT_LAST_HIT, unit, Float.NEGATIVE_INFINITY);
+        setUnitInt(UNIT_BULLETS, unit, bulletsLeft);
+        setSpeed(unit, speed);
+        setRotation(unit, rotation);
+        return unit;
+    }
+
+    /** Adds a bullet and returns its index, or -1 if the state is full. */
+    public int addBullet(float x, float y, float dirX, float dirY, float range, int owner) {
+        if (bullets == bulletCapacity) return -1;
+        int bullet = bullets++;
+        setBullet(BULLET_X, bullet, x);
+        setBullet(BULLET_Y, bullet, y);
+        setBullet(BULLET_DIR_X, bullet, dirX);
+        setBullet(BULLET_DIR_Y, bullet, dirY);
+        setBullet(BULLET_RANGE, bullet, range);
+        setBulletInt(BULLET_OWNER, bullet, owner);
+        return bullet;
+    }
+
+    private void removeBullet(int bullet) {
+        int last = --bullets;
+        if (bullet == last) return;
+        for (int field = 0; field < BULLET_FIELDS; field++) {
+            setBulletInt(field, bullet, bulletInt(field, last));
+        }
+    }
+
+    /** Next number of the state's generator. */
+    public long nextLong() {
+        random = SplitMix.next(random);
+        return SplitMix.mix(random);
+    }
+
+    /** Uniform in [0, 1). */
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    /**
+     * Fires a bullet from the unit if it is alive and its gun is ready.
+     * Guns reload all bullets at once after the last one is fired. Returns
+     * true if a bullet was fired.
+     */
+    public boolean shoot(int unit, GameContext context) {
+        if (!isAlive(unit) || time < unit(UNIT_NEXT_SHOT, unit)) return false;
+        int left = unitInt(UNIT_BULLETS, unit);
+        if (left == 0) left = context.maxBullets;
+
+        float x = unit(UNIT_X, unit);
+        float y = unit(UNIT_Y, unit);
+        double angle = Math.toRadians(unit(UNIT_ANGLE, unit));
+        float dirX = (float) Math.cos(angle);
+        float dirY = (float) Math.sin(angle);
+        float range = BulletThreats.distanceToObstacle(context, x, y, dirX, dirY, context.bulletRange);
+        if (addBullet(x, y, dirX, dirY, range, unit) < 0) return false;
+
+        left--;
+        setUnitInt(UNIT_BULLETS, unit, left);
+        setUnit(UNIT_NEXT_SHOT, unit, time + (left == 0 ? context.reloadTime : context.delayBetweenShots));
+        return true;
+    }
+
+    /**
+     * Plays the state forward: units turn and move as set, stopping at
+     * obstacles, bullets fly and hit the first unit in their way other
+     * than the one that fired them, and health regenerates after a while
+     * without hits.
+     */
+    public void advance(float seconds, GameContext context) {
+        time += seconds;
+        float radius = context.unitDiameter / 2;
+
+        for (int u = 0; u < units; u++) {
+            if (!isAlive(u)) continue;
+            Rotation rotation = rotation(u);
+            if (rotation != Rotation.NONE) {
+                float velocity = rotation == Rotation.LEFT || rotation == Rotation.RIGHT
+                        ? context.unitRotationVelocity : context.unitSlowRotationVelocity;
+                boolean left = rotation == Rotation.LEFT || rotation == Rotation.SLOW_LEFT;
+                float angle = unit(UNIT_ANGLE, u) + (left ? velocity : -velocity) * seconds;
+                setUnit(UNIT_ANGLE, u, ((angle % 360) + 360) % 360);
+            }
+            Speed speed = speed(u);
+            if (speed != Speed.NONE) {
+                float velocity = speed == Speed.FORWARD ? context.unitForwardVelocity : -context.unitBackwardVelocity;
+                double angle = Math.toRadians(unit(UNIT_ANGLE, u));
+                float dirX = (float) Math.cos(angle) * Math.signum(velocity);
+                float dirY = (float) Math.sin(angle) * Math.signum(velocity);
+                float x = unit(UNIT_X, u);
+                float y = unit(UNIT_Y, u);
+                float distance = context.obstacles.sweepCircle(x, y, dirX, dirY, radius, Math.abs(velocity) * seconds);
+                setUnit(UNIT_X, u, x + dirX * distance);
+                setUnit(UNIT_Y, u, y + dirY * distance);
+            }
+            float health = unit(UNIT_HEALTH, u);
+            if (health < context.unitFullHealth && time - unit(UNIT_LAST_HIT, u) > context.healthRegenerationDelay) {
+                setUnit(UNIT_HEALTH, u, Math.min(context.unitFullHealth, health + context.healthRegenerationPerSecond * seconds));
+            }
+        }
+
+        float hitRadius = BulletThreats.hitRadius(context);
+        for (int b = 0; b < bullets; ) {
+            float x = bullet(BULLET_X, b);
+            float y = bullet(BULLET_Y, b);
+            float dirX = bullet(BULLET_DIR_X, b);
+            float dirY = bullet(BULLET_DIR_Y, b);
+            float range = bullet(BULLET_RANGE, b);
+            float travel = Math.min(range, context.bulletVelocity * seconds);
+
+            // First unit the bullet's path passes within the hit radius of
+            int hit = -1;
+            float hitAt = travel;
+            int owner = bulletInt(BULLET_OWNER, b);
+            for (int u = 0; u < units; u++) {
+                if (u == owner || !isAlive(u)) continue;
+                float rx = unit(UNIT_X, u) - x;
+                float ry = unit(UNIT_Y, u) - y;
+                float along = rx * dirX + ry * dirY;
+                if (along < 0 || along > hitAt + hitRadius) continue;
+                float across = rx * dirY - ry * dirX;
+                if (across * across >= hitRadius * hitRadius) continue;
+                float at = Math.max(0, along - (float) Math.sqrt(hitRadius * hitRadius - across * across));
+                if (at <= hitAt) {
+                    hitAt = at;
+                    hit = u;
+                }
+            }
+
+            if (hit >= 0) {
+                boolean warrior = unitInt(UNIT_TYPE, hit) == UnitType.WARRIOR.ordinal();
+                float damage = warrior ? context.bulletDamageToWarrior : context.bulletDamageToWorker;
+                setUnit(UNIT_HEALTH, hit, Math.max(0, unit(UNIT_HEALTH, hit) - damage));
+                setUnit(UNIT_LAST_HIT, hit, time);
+                removeBullet(b);
+            } else if (travel >= range) {
+                removeBullet(b);
+            } else {
+                setBullet(BULLET_X, b, x + dirX * travel);
+                setBullet(BULLET_Y, b, y + dirY * travel);
+                setBullet(BULLET_RANGE, b, range - travel);
+                b++;
+            }
+        }
+    }
+
+    /**
+     * Builds the state from what the bot sees: our units, the opponents
+     * any of them sees and the bullets in view. Opponent magazines are not
+     * visible and are assumed full, bullets in view are assumed to have
+     * their whole range ahead of them.
+     */
+    public static SimState of(GameState state, GameContext context, long seed) {
+        int maxUnits = (int) context.maxNumberOfUnits;
+        SimState sim = new SimState(2 * maxUnits, 2 * maxUnits * context.maxBullets, seed);
+        sim.time = state.time;
+
+        IntSet seen = new IntSet();
+        for (UnitData unit : state.units) {
+            sim.addUnit(unit.id, OURS, unit.type, unit.x, unit.y, unit.orientationAngle, unit.health,
+                    unit.nBullets, unit.speed, unit.rotation);
+        }
+        for (UnitData unit : state.units) {
+            for (OpponentInView opponent : unit.opponentsInView) {
+                if (seen.contains(opponent.id)) continue;
+                seen.add(opponent.id);
+                sim.addUnit(opponent.id, THEIRS, opponent.type, opponent.x, opponent.y, opponent.orientationAngle,
+                        opponent.health, context.maxBullets, opponent.speed, opponent.rotation);
+            }
+        }
+        for (UnitData unit : state.units) {
+            for (BulletInView bullet : unit.opponentBulletsInView) {
+                if (sim.hasBulletAt(bullet.x, bullet.y)) continue;
+                double angle = Math.toRadians(bullet.orientation);
+                float dirX = (float) Math.cos(angle);
+                float dirY = (float) Math.sin(angle);
+                float range = BulletThreats.distanceToObstacle(context, bullet.x, bullet.y, dirX, dirY, context.bulletRange);
+                sim.addBullet(bullet.x, bullet.y, dirX, dirY, range, -1);
+            }
+        }
+        return sim;
+    }
+
+    /** True if a bullet is exactly at the point, used to skip bullets seen by several units. */
+    private boolean hasBulletAt(float x, float y) {
+        for (int b = 0; b < bullets; b++) {
+            if (bullet(BULLET_X, b) == x && bullet(BULLET_Y, b) == y) return true;
+        }
+        return false;
+    }
+}
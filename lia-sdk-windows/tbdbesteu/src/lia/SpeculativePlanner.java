@@ -0,0 +1,232 @@
+package lia;
+
+import lia.api.GameState;
+import lia.api.OpponentInView;
+import lia.api.Point;
+import lia.api.UnitData;
+import lia.api.UnitType;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Uses the idle time between two game states to plan ahead. After the
+ * response to a state is sent, our units are moved forward by one state
+ * interval using their speed, rotation and navigation path, and aim
+ * solutions and exploration targets for that predicted state are computed
+ * on a background thread. The next update reuses them for units that
+ * ended up close to where they were predicted.
+ *
+ * plan() and the lookups must be called from the same thread, the one
+ * that runs Bot.update.
+ */
+public class SpeculativePlanner {
+
+    /** How far a unit or opponent may be from its predicted position for the plans to be reused. */
+    public static final float POSITION_TOLERANCE = 0.5f;
+    /** How many degrees a unit's orientation may differ from the prediction. */
+    public static final float ANGLE_TOLERANCE = 3f;
+    private static final float TIME_TOLERANCE = 0.01f;
+    private static final int EXPLORE_ATTEMPTS = 100;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "speculative-planner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Only used on the planner thread
+    private final AimSolver aimSolver = new AimSolver();
+    private final Random random = new Random();
+
+    private volatile Speculation latest;
+    private Future<?> running;
+
+    private long hits;
+    private long misses;
+
+    /** Where one of our units is expected to be on the next state and what it should do there. */
+    public static class Prediction {
+        public int unitId;
+        public float x;
+        public float y;
+        public float orientationAngle;
+        /** Opponents in view of the unit and their predicted positions. */
+        public int[] opponentIds;
+        public float[] opponentX;
+        public float[] opponentY;
+        /** Aim solution against each of the opponents, null where the opponent is unknown. */
+        public AimSolver.Solution[] aims;
+        /** Free point for a worker to explore, null for warriors. */
+        public Point exploreTarget;
+    }
+
+    private static class Speculation {
+        final float time;
+        final IntIntMap index = new IntIntMap(32, -1);
+        final ArrayList<Prediction> predictions = new ArrayList<>();
+
+        Speculation(float time) {
+            this.time = time;
+        }
+    }
+
+    /**
+     * Starts planning for the state that follows the given one. A plan still
+     * running for an earlier state is cancelled.
+     */
+    public void plan(GameState state, GameContext context) {
+        if (running != null) running.cancel(true);
+        latest = null;
+        running = executor.submit(() -> speculate(state, context));
+    }
+
+    private void speculate(GameState state, GameContext context) {
+        aimSolver.update(state, context);
+        Speculation speculation = new Speculation(state.time + AimSolver.STATE_INTERVAL);
+
+        for (UnitData unit : state.units) {
+            if (Thread.currentThread().isInterrupted()) return;
+
+            Prediction prediction = new Prediction();
+            prediction.unitId = unit.id;
+            deadReckon(context, unit, prediction);
+
+            UnitData predicted = new UnitData(unit.id, unit.type, unit.health, prediction.x, prediction.y,
+                    prediction.orientationAngle, unit.speed, unit.rotation, unit.canShoot, unit.nBullets,
+                    unit.opponentsInView, unit.opponentBulletsInView, unit.resourcesInView, unit.navigationPath);
+
+            int opponents = unit.opponentsInView.length;
+            prediction.opponentIds = new int[opponents];
+            prediction.opponentX = new float[opponents];
+            prediction.opponentY = new float[opponents];
+            prediction.aims = new AimSolver.Solution[opponents];
+            for (int i = 0; i < opponents; i++) {
+                int opponentId = unit.opponentsInView[i].id;
+                prediction.opponentIds[i] = opponentId;
+                Point opponent = aimSolver.predict(opponentId, speculation.time);
+                if (opponent == null) continue;
+                prediction.opponentX[i] = opponent.x;
+                prediction.opponentY[i] = opponent.y;
+                if (unit.type == UnitType.WARRIOR) {
+                    prediction.aims[i] = aimSolver.solve(predicted, opponentId, speculation.time);
+                }
+            }
+
+            if (unit.type == UnitType.WORKER) {
+                prediction.exploreTarget = randomFreePoint(context);
+            }
+
+            speculation.index.put(unit.id, speculation.predictions.size());
+            speculation.predictions.add(prediction);
+        }
+        latest = speculation;
+    }
+
+    /** Moves the unit forward by one state interval the way the engine would. */
+    private static void deadReckon(GameContext context, UnitData unit, Prediction prediction) {
+        float x = unit.x;
+        float y = unit.y;
+        float angle = unit.orientationAngle;
+        float remaining = AimSolver.STATE_INTERVAL;
+
+        if (unit.navigationPath.length > 0) {
+            // Navigating units follow the path at full speed, facing the next point
+            float distance = context.unitForwardVelocity * remaining;
+            for (int i = 0; i < unit.navigationPath.length && distance > 0; i++) {
+                Point point = unit.navigationPath[i];
+                float segment = MathUtil.distance(x, y, point.x, point.y);
+                if (segment < 1e-4f) continue;
+                angle = MathUtil.angle(x, y, point.x, point.y);
+                float step = Math.min(segment, distance);
+                x += (point.x - x) / segment * step;
+                y += (point.y - y) / segment * step;
+                distance -= step;
+            }
+        } else {
+            float velocity = DodgePlanner.velocity(context, unit.speed);
+            float angularVelocity = DodgePlanner.angularVelocity(context, unit.rotation);
+            float step = 1f / 30f;
+            for (; remaining > 1e-4f; remaining -= step) {
+                double rad = Math.toRadians(angle);
+                x += (float) Math.cos(rad) * velocity * step;
+                y += (float) Math.sin(rad) * velocity * step;
+                angle += angularVelocity * step;
+            }
+        }
+
+        prediction.x = x;
+        prediction.y = y;
+        prediction.orientationAngle = angle;
+    }
+
+    private Point randomFreePoint(GameContext context) {
+        for (int i = 0; i < EXPLORE_ATTEMPTS; i++) {
+            int x = random.nextInt(context.mapWidth);
+            int y = random.nextInt(context.mapHeight);
+            if (!context.map[x][y]) return new Point(x, y);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the prediction made for the unit if the planning for this
+     * state has finished and the unit is where it was expected to be,
+     * otherwise null.
+     */
+    public Prediction prediction(UnitData unit, float time) {
+        Speculation speculation = latest;
+        if (speculation == null || Math.abs(speculation.time - time) > TIME_TOLERANCE) {
+            misses++;
+            return null;
+        }
+        int index = speculation.index.get(unit.id);
+        if (index < 0) {
+            misses++;
+            return null;
+        }
+        Prediction prediction = speculation.predictions.get(index);
+        float angleError = Math.abs(((unit.orientationAngle - prediction.orientationAngle) % 360 + 540) % 360 - 180);
+        if (MathUtil.distance(unit.x, unit.y, prediction.x, prediction.y) > POSITION_TOLERANCE
+                || angleError > ANGLE_TOLERANCE) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return prediction;
+    }
+
+    /**
+     * Returns the precomputed aim solution for the unit shooting at the
+     * opponent, or null if the unit or the opponent moved differently than
+     * predicted and the solution has to be computed again. Its onTarget and
+     * rotation are for the predicted orientation, which may be a few
+     * degrees off, so pass it through AimSolver.retarget before shooting.
+     */
+    public AimSolver.Solution aim(UnitData unit, OpponentInView opponent, float time) {
+        Prediction prediction = prediction(unit, time);
+        if (prediction == null) return null;
+        for (int i = 0; i < prediction.opponentIds.length; i++) {
+            if (prediction.opponentIds[i] != opponent.id || prediction.aims[i] == null) continue;
+            if (MathUtil.distance(opponent.x, opponent.y, prediction.opponentX[i], prediction.opponentY[i]) > POSITION_TOLERANCE) {
+                break;
+            }
+            return prediction.aims[i];
+        }
+        hits--;
+        misses++;
+        return null;
+    }
+
+    /** Number of lookups that found a usable prediction. */
+    public long getHits() {
+        return hits;
+    }
+
+    /** Number of lookups that had to fall back to planning from scratch. */
+    public long getMisses() {
+        return misses;
+    }
+}
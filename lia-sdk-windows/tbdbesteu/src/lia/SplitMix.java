@@ -0,0 +1,58 @@
+package lia;
+
+/**
+ * SplitMix64 random numbers, the generator behind SplittableRandom. The
+ * whole state is one long, so it can be saved, restored and stored in a
+ * SimState, and the same seed always gives the same numbers.
+ */
+public class SplitMix {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long state;
+
+    public SplitMix(long seed) {
+        state = seed;
+    }
+
+    public long state() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix(state);
+    }
+
+    /** Uniform in [0, 1). */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /** Uniform in [0, 1). */
+    public float nextFloat() {
+        return (nextLong() >>> 40) * 0x1.0p-24f;
+    }
+
+    /** Approximately normal sample with zero mean and unit variance, sum of four uniforms. */
+    public float gaussian() {
+        double sum = nextDouble() + nextDouble() + nextDouble() + nextDouble();
+        return (float) ((sum - 2) * Math.sqrt(3));
+    }
+
+    /** The output function of SplitMix64, also a good hash of a long. */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /** The state after the given state, for generators kept as a plain long. */
+    public static long next(long state) {
+        return state + GOLDEN_GAMMA;
+    }
+}
@@ -0,0 +1,29 @@
+package lia;
+
+import lia.api.OpponentInView;
+import lia.api.UnitData;
+
+/**
+ * Receives the changes that StateTracker finds between two consecutive
+ * game states. Override only the events you are interested in.
+ */
+public interface StateListener {
+
+    /** A unit of ours appeared that was not there on the previous state. */
+    default void onUnitSpawned(UnitData unit) {}
+
+    /** A unit of ours that was there on the previous state is gone. */
+    default void onUnitDied(int unitId, UnitData lastKnown) {}
+
+    /** A unit of ours has less health than on the previous state. */
+    default void onHealthDropped(UnitData unit, int previousHealth) {}
+
+    /** A unit of ours has more bullets than on the previous state. */
+    default void onReloaded(UnitData unit, int previousBullets) {}
+
+    /** An opponent is in view that was not in view of any of our units on the previous state. */
+    default void onOpponentSeen(OpponentInView opponent) {}
+
+    /** An opponent that was in view on the previous state is not in view anymore. */
+    default void onOpponentLost(int opponentId, OpponentInView lastSeen) {}
+}
@@ -0,0 +1,152 @@
+package lia;
+
+import lia.api.GameState;
+import lia.api.OpponentInView;
+import lia.api.UnitData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compares each game state with the previous one and publishes what
+ * changed to the subscribed listeners. Units and opponents are stored in
+ * arrays indexed by their id, so one update is a single pass over the
+ * units and their views.
+ */
+public class StateTracker {
+
+    private final List<StateListener> listeners = new ArrayList<>();
+
+    /**
+     * Update counter, a unit or opponent was seen on an update if its stamp
+     * equals it. Starts at 1 so that the zeroed arrays do not look like
+     * they were seen on the update before the first one.
+     */
+    private int stamp = 1;
+
+    private int[] unitStamps = new int[64];
+    private UnitData[] units = new UnitData[64];
+    private int[] unitIds = new int[32];
+    private int nUnitIds;
+    private int[] previousUnitIds = new int[32];
+    private int nPreviousUnitIds;
+
+    private int[] opponentStamps = new int[64];
+    private OpponentInView[] opponents = new OpponentInView[64];
+    private int[] opponentIds = new int[32];
+    private int nOpponentIds;
+    private int[] previousOpponentIds = new int[32];
+    private int nPreviousOpponentIds;
+
+    public void subscribe(StateListener listener) {
+        listeners.add(listener);
+    }
+
+    public void unsubscribe(StateListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Diffs the state against the previous one and notifies the listeners. */
+    public void update(GameState state) {
+        stamp++;
+        swapIdLists();
+
+        for (UnitData unit : state.units) {
+            ensureUnitCapacity(unit.id);
+            UnitData previous = unitStamps[unit.id] == stamp - 1 ? units[unit.id] : null;
+            unitStamps[unit.id] = stamp;
+            units[unit.id] = unit;
+            unitIds = append(unitIds, nUnitIds++, unit.id);
+
+            if (previous == null) {
+                for (StateListener listener : listeners) listener.onUnitSpawned(unit);
+            } else {
+                if (unit.health < previous.health) {
+                    for (StateListener listener : listeners) listener.onHealthDropped(unit, previous.health);
+                }
+                if (unit.nBullets > previous.nBullets) {
+                    for (StateListener listener : listeners) listener.onReloaded(unit, previous.nBullets);
+                }
+            }
+
+            for (OpponentInView opponent : unit.opponentsInView) {
+                ensureOpponentCapacity(opponent.id);
+                int seen = opponentStamps[opponent.id];
+                if (seen == stamp) continue;
+
+                opponentStamps[opponent.id] = stamp;
+                opponents[opponent.id] = opponent;
+                opponentIds = append(opponentIds, nOpponentIds++, opponent.id);
+
+                if (seen != stamp - 1) {
+                    for (StateListener listener : listeners) listener.onOpponentSeen(opponent);
+                }
+            }
+        }
+
+        for (int i = 0; i < nPreviousUnitIds; i++) {
+            int id = previousUnitIds[i];
+            if (unitStamps[id] != stamp) {
+                UnitData lastKnown = units[id];
+                units[id] = null;
+                for (StateListener listener : listeners) listener.onUnitDied(id, lastKnown);
+            }
+        }
+
+        for (int i = 0; i < nPreviousOpponentIds; i++) {
+            int id = previousOpponentIds[i];
+            if (opponentStamps[id] != stamp) {
+                OpponentInView lastSeen = opponents[id];
+                opponents[id] = null;
+                for (StateListener listener : listeners) listener.onOpponentLost(id, lastSeen);
+            }
+        }
+    }
+
+    /** Returns our unit with the given id from the current state or null if it is not alive. */
+    public UnitData unit(int unitId) {
+        return unitId < unitStamps.length && unitStamps[unitId] == stamp ? units[unitId] : null;
+    }
+
+    /** Returns the opponent with the given id if it is in view on the current state, otherwise null. */
+    public OpponentInView opponent(int opponentId) {
+        return opponentId < opponentStamps.length && opponentStamps[opponentId] == stamp ? opponents[opponentId] : null;
+    }
+
+    private void swapIdLists() {
+        int[] ids = previousUnitIds;
+        previousUnitIds = unitIds;
+        nPreviousUnitIds = nUnitIds;
+        unitIds = ids;
+        nUnitIds = 0;
+
+        ids = previousOpponentIds;
+        previousOpponentIds = opponentIds;
+        nPreviousOpponentIds = nOpponentIds;
+        opponentIds = ids;
+        nOpponentIds = 0;
+    }
+
+    private void ensureUnitCapacity(int id) {
+        if (id >= unitStamps.length) {
+            int size = Math.max(id + 1, unitStamps.length * 2);
+            unitStamps = Arrays.copyOf(unitStamps, size);
+            units = Arrays.copyOf(units, size);
+        }
+    }
+
+    private void ensureOpponentCapacity(int id) {
+        if (id >= opponentStamps.length) {
+            int size = Math.max(id + 1, opponentStamps.length * 2);
+            opponentStamps = Arrays.copyOf(opponentStamps, size);
+            opponents = Arrays.copyOf(opponents, size);
+        }
+    }
+
+    private static int[] append(int[] array, int index, int value) {
+        if (index == array.length) array = Arrays.copyOf(array, array.length * 2);
+        array[index] = value;
+        return array;
+    }
+}
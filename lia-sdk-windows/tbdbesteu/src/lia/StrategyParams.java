@@ -0,0 +1,151 @@
+package lia;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Tunable numbers of the bot's strategy. The defaults are the values the
+ * bot was hand-tuned with. Every parameter is also described in PARAMS
+ * with its allowed range, which is what the tuner searches over.
+ */
+public class StrategyParams {
+
+    /** Environment variable with the path of a parameters file, used when the bot is started by the lia CLI. */
+    public static final String ENVIRONMENT_VARIABLE = "LIA_STRATEGY_PARAMS";
+
+    /** Share of workers below which a worker is spawned instead of a warrior. */
+    public float workerRatio = 0.5f;
+    /** Number of warriors guarding the chokepoints out of the spawn region, or the spawn corner. */
+    public int guardCount = 2;
+    /** Number of warriors sent to the opponent's corner. */
+    public int attackerCount = 2;
+    /** Warriors needed before any of them is sent to attack. */
+    public int warriorsBeforeAttack = 6;
+    /** How close to their corner or chokepoint guards have to be before they stop. */
+    public float guardCornerDistance = 6;
+    /** Guards pick a random point this many units from the corner. */
+    public int guardCornerSpread = 5;
+    /** Attackers stop this far inside the viewing distance of the opponent's corner. */
+    public float attackCornerMargin = 2;
+    /** Degrees within which guards and attackers consider themselves facing their target. */
+    public float lookAngle = 10;
+    /** Degrees within which an opponent warrior is considered to be aiming at a worker. */
+    public float opponentAimAngle = 15;
+    /** Offset from the followed worker at which a warrior without a role stays. */
+    public float followOffset = 3;
+
+    /** A parameter and the range it may be tuned in. */
+    public static class Param {
+        public final String name;
+        public final double min;
+        public final double max;
+        public final boolean integer;
+        private final ToDoubleFunction<StrategyParams> getter;
+        private final ObjDoubleConsumer<StrategyParams> setter;
+
+        Param(String name, double min, double max, boolean integer,
+              ToDoubleFunction<StrategyParams> getter, ObjDoubleConsumer<StrategyParams> setter) {
+            this.name = name;
+            this.min = min;
+            this.max = max;
+            this.integer = integer;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        public double get(StrategyParams params) {
+            return getter.applyAsDouble(params);
+        }
+
+        /** Sets the value, clamped to the range and rounded for integer parameters. */
+        public void set(StrategyParams params, double value) {
+            value = Math.max(min, Math.min(max, value));
+            setter.accept(params, integer ? Math.round(value) : value);
+        }
+    }
+
+    public static final Param[] PARAMS = {
+            new Param("workerRatio", 0.2, 0.8, false, p -> p.workerRatio, (p, v) -> p.workerRatio = (float) v),
+            new Param("guardCount", 0, 5, true, p -> p.guardCount, (p, v) -> p.guardCount = (int) v),
+            new Param("attackerCount", 0, 5, true, p -> p.attackerCount, (p, v) -> p.attackerCount = (int) v),
+            new Param("warriorsBeforeAttack", 0, 15, true, p -> p.warriorsBeforeAttack, (p, v) -> p.warriorsBeforeAttack = (int) v),
+            new Param("guardCornerDistance", 2, 15, false, p -> p.guardCornerDistance, (p, v) -> p.guardCornerDistance = (float) v),
+            new Param("guardCornerSpread", 1, 10, true, p -> p.guardCornerSpread, (p, v) -> p.guardCornerSpread = (int) v),
+            new Param("attackCornerMargin", 0, 10, false, p -> p.attackCornerMargin, (p, v) -> p.attackCornerMargin = (float) v),
+            new Param("lookAngle", 2, 30, false, p -> p.lookAngle, (p, v) -> p.lookAngle = (float) v),
+            new Param("opponentAimAngle", 5, 45, false, p -> p.opponentAimAngle, (p, v) -> p.opponentAimAngle = (float) v),
+            new Param("followOffset", 0, 8, false, p -> p.followOffset, (p, v) -> p.followOffset = (float) v),
+    };
+
+    /** Values of all parameters in the order of PARAMS. */
+    public double[] toVector() {
+        double[] vector = new double[PARAMS.length];
+        for (int i = 0; i < PARAMS.length; i++) {
+            vector[i] = PARAMS[i].get(this);
+        }
+        return vector;
+    }
+
+    /** Creates parameters from values in the order of PARAMS, out of range values are clamped. */
+    public static StrategyParams fromVector(double[] vector) {
+        StrategyParams params = new StrategyParams();
+        for (int i = 0; i < PARAMS.length; i++) {
+            PARAMS[i].set(params, vector[i]);
+        }
+        return params;
+    }
+
+    /** Reads the parameters from a properties file, parameters missing from the file keep their defaults. */
+    public static StrategyParams load(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path)) {
+            properties.load(reader);
+        }
+        StrategyParams params = new StrategyParams();
+        for (Param param : PARAMS) {
+            String value = properties.getProperty(param.name);
+            if (value != null) param.set(params, Double.parseDouble(value.trim()));
+        }
+        return params;
+    }
+
+    public void save(Path path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path)) {
+            writer.write(toString());
+        }
+    }
+
+    /**
+     * Parameters given with --params on the command line, or in the file
+     * named by LIA_STRATEGY_PARAMS, otherwise the defaults.
+     */
+    public static StrategyParams fromArgs(String[] args) throws IOException {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--params")) return load(Paths.get(args[i + 1]));
+        }
+        String file = System.getenv(ENVIRONMENT_VARIABLE);
+        if (file != null && !file.isEmpty()) return load(Paths.get(file));
+        return new StrategyParams();
+    }
+
+    /** The parameters in properties file format. */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Param param : PARAMS) {
+            double value = param.get(this);
+            builder.append(param.name).append('=');
+            if (param.integer) builder.append((long) value);
+            else builder.append((float) value);
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+}
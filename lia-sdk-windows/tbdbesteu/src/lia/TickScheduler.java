@@ -0,0 +1,149 @@
+package lia;
+
+import lia.api.GameState;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Runs anytime tasks within the time left for an update. The remaining
+ * budget is split between the tasks by priority: every task in turn gets
+ * its share of what is left, so time a task does not use goes to the
+ * tasks after it. Time left after the first round goes to the tasks that
+ * still had work, highest priority first. A reserve is kept at the end so
+ * that every task's result is committed before the deadline.
+ */
+public class TickScheduler {
+
+    /** Time kept at the end of the budget for committing the results. */
+    private static final long COMMIT_RESERVE_NANOS = 500_000;
+    /** A step ending later than this after the slice counts as an overrun. */
+    private static final long OVERRUN_TOLERANCE_NANOS = 100_000;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private static class Entry {
+        final AnytimeTask task;
+        final TaskStats stats = new TaskStats();
+        boolean done;
+
+        Entry(AnytimeTask task) {
+            this.task = task;
+        }
+    }
+
+    /** Budget use of one task over the game. */
+    public static class TaskStats {
+        public long updates;
+        public long steps;
+        /** Time the task was given and the time it actually used. */
+        public long budgetNanos;
+        public long usedNanos;
+        /** Updates in which the task ran out of work before its budget. */
+        public long finished;
+        /** Slices in which a step ran clearly past the end of the slice. */
+        public long overruns;
+
+        @Override
+        public String toString() {
+            return updates + " updates, " + (updates == 0 ? 0 : steps / updates) + " steps/update, "
+                    + "used " + (updates == 0 ? 0 : usedNanos / updates / 1000) + " of "
+                    + (updates == 0 ? 0 : budgetNanos / updates / 1000) + " us/update, "
+                    + finished + " finished, " + overruns + " overruns";
+        }
+    }
+
+    public void register(AnytimeTask task) {
+        entries.add(new Entry(task));
+        entries.sort(Comparator.comparingInt((Entry entry) -> entry.task.priority()).reversed());
+    }
+
+    /** Runs all tasks for the state and commits their results before the deadline. */
+    public void run(GameState state, Api api, GameContext context, long deadlineNanos) {
+        long planningDeadline = deadlineNanos - COMMIT_RESERVE_NANOS;
+
+        int remainingPriority = 0;
+        for (Entry entry : entries) {
+            entry.done = false;
+            entry.stats.updates++;
+            entry.task.begin(state, context);
+            remainingPriority += Math.max(1, entry.task.priority());
+        }
+
+        for (Entry entry : entries) {
+            int weight = Math.max(1, entry.task.priority());
+            long remaining = planningDeadline - System.nanoTime();
+            long slice = remaining * weight / remainingPriority;
+            remainingPriority -= weight;
+            if (slice > 0) runSlice(entry, System.nanoTime() + slice, state.uid);
+        }
+
+        // Hand out what is left to the tasks that still have work
+        for (Entry entry : entries) {
+            if (!entry.done && System.nanoTime() < planningDeadline) runSlice(entry, planningDeadline, state.uid);
+        }
+
+        for (Entry entry : entries) {
+            FlightEvents.Subsystem event = new FlightEvents.Subsystem();
+            event.begin();
+            entry.task.commit(api);
+            event.end();
+            if (event.shouldCommit()) {
+                event.uid = state.uid;
+                event.task = entry.task.name();
+                event.phase = "commit";
+                event.commit();
+            }
+        }
+    }
+
+    private static void runSlice(Entry entry, long sliceDeadline, long uid) {
+        FlightEvents.Subsystem event = new FlightEvents.Subsystem();
+        event.begin();
+        long start = System.nanoTime();
+        entry.stats.budgetNanos += sliceDeadline - start;
+
+        int steps = 0;
+        long now = start;
+        while (now < sliceDeadline) {
+            steps++;
+            entry.stats.steps++;
+            boolean more = entry.task.improve(sliceDeadline);
+            now = System.nanoTime();
+            if (!more) {
+                entry.done = true;
+                entry.stats.finished++;
+                break;
+            }
+        }
+        if (now > sliceDeadline + OVERRUN_TOLERANCE_NANOS) entry.stats.overruns++;
+        entry.stats.usedNanos += now - start;
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.uid = uid;
+            event.task = entry.task.name();
+            event.phase = "slice";
+            event.steps = steps;
+            event.commit();
+        }
+    }
+
+    /** Telemetry of the task, null if it is not registered. */
+    public TaskStats stats(AnytimeTask task) {
+        for (Entry entry : entries) {
+            if (entry.task == task) return entry.stats;
+        }
+        return null;
+    }
+
+    /** One line of telemetry per task. */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (Entry entry : entries) {
+            report.append(entry.task.name()).append(": ").append(entry.stats).append('\n');
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,32 @@
+package lia;
+
+/**
+ * Carries text frames between the bot and the game engine. NetworkingClient
+ * only talks to the engine through this interface, so the connection can be
+ * a WebSocket or an in-process queue.
+ */
+public interface Transport {
+
+    /** Receives the events of a transport. Called from the transport's own thread. */
+    interface Listener {
+        void onOpen();
+
+        void onMessage(String message);
+
+        void onClose(int code, String reason, boolean remote);
+
+        void onError(Exception ex);
+    }
+
+    /** Opens the connection and starts delivering frames to the listener. */
+    void connect(Listener listener) throws Exception;
+
+    void send(String message);
+
+    void close();
+
+    boolean isOpen();
+
+    /** Counters of the frames that went through this transport. */
+    TransportStats stats();
+}
@@ -0,0 +1,49 @@
+package lia;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Frame counters of a transport. Sizes are counted in characters, which
+ * equals bytes for the ASCII JSON the engine sends.
+ */
+public class TransportStats {
+
+    public final AtomicLong receivedFrames = new AtomicLong();
+    public final AtomicLong receivedChars = new AtomicLong();
+    public final AtomicLong sentFrames = new AtomicLong();
+    public final AtomicLong sentChars = new AtomicLong();
+    /** Time spent inside send() calls. */
+    public final AtomicLong sendNanos = new AtomicLong();
+    /**
+     * Time from send() until the frame was written to the socket, for
+     * transports that send in the background.
+     */
+    public final AtomicLong writtenFrames = new AtomicLong();
+    public final AtomicLong writeNanos = new AtomicLong();
+
+    void received(String message) {
+        receivedFrames.incrementAndGet();
+        receivedChars.addAndGet(message.length());
+    }
+
+    void sent(String message, long nanos) {
+        sentFrames.incrementAndGet();
+        sentChars.addAndGet(message.length());
+        sendNanos.addAndGet(nanos);
+    }
+
+    void written(long nanos) {
+        writtenFrames.incrementAndGet();
+        writeNanos.addAndGet(nanos);
+    }
+
+    @Override
+    public String toString() {
+        long sent = sentFrames.get();
+        long written = writtenFrames.get();
+        return "received " + receivedFrames.get() + " frames (" + receivedChars.get() + " chars), "
+                + "sent " + sent + " frames (" + sentChars.get() + " chars), "
+                + "send " + (sent == 0 ? 0 : sendNanos.get() / sent / 1000) + " us/frame"
+                + (written == 0 ? "" : ", written after " + writeNanos.get() / written / 1000 + " us/frame");
+    }
+}
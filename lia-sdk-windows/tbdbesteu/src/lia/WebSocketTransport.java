@@ -0,0 +1,88 @@
+package lia;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Transport over the Java-WebSocket client library, the way the bot has
+ * always connected to the engine.
+ */
+public class WebSocketTransport implements Transport {
+
+    private final URI serverUri;
+    private final Map<String, String> httpHeaders;
+    private final TransportStats stats = new TransportStats();
+    private Client client;
+
+    public WebSocketTransport(URI serverUri, String botId) {
+        this.serverUri = serverUri;
+        this.httpHeaders = new HashMap<>();
+        this.httpHeaders.put("Id", botId);
+    }
+
+    @Override
+    public void connect(Listener listener) {
+        client = new Client(listener);
+        client.connect();
+    }
+
+    @Override
+    public void send(String message) {
+        long start = System.nanoTime();
+        client.send(message);
+        stats.sent(message, System.nanoTime() - start);
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return client != null && client.isOpen();
+    }
+
+    @Override
+    public TransportStats stats() {
+        return stats;
+    }
+
+    private class Client extends WebSocketClient {
+        private final Listener listener;
+
+        Client(Listener listener) {
+            super(serverUri, httpHeaders);
+            this.listener = listener;
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshakedata) {
+            listener.onOpen();
+        }
+
+        @Override
+        public void onMessage(String message) {
+            stats.received(message);
+            listener.onMessage(message);
+        }
+
+        @Override
+        public void onMessage(ByteBuffer bytes) {}
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            listener.onClose(code, reason, remote);
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            listener.onError(ex);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package lia;
+
+import lia.api.GameState;
+import lia.api.Point;
+import lia.api.UnitData;
+import lia.api.UnitType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Sends idle workers out to explore. Every step samples one more free
+ * point on the map for one of the requested workers and keeps it if it
+ * scores better: points that are far from where the other workers are
+ * heading spread the workers over the map, and nearby points waste less
+ * time travelling. With a HierarchicalPathfinder the travel is measured
+ * around the obstacles and points a worker cannot reach are skipped,
+ * otherwise it is the straight distance. The pathfinder's costs from a
+ * worker are found in a step of their own, one worker per step, and the
+ * worker's points are measured by the straight distance until then. With a ResourceMap, points are
+ * sampled where resources are likely to spawn and score higher the
+ * likelier they are, as long as resources still spawn.
+ */
+public class WorkerDispatchTask implements AnytimeTask {
+
+    /** Samples per worker after which the result is considered good enough. */
+    private static final int MAX_SAMPLES = 256;
+    /** Attempts to find a free point for a single sample. */
+    private static final int FREE_POINT_ATTEMPTS = 20;
+    /** Score lost per unit of travel distance. */
+    private static final float TRAVEL_WEIGHT = 0.25f;
+    /** Score of the most likely resource cell, in the same units as the spread. */
+    private static final float RESOURCE_WEIGHT = 10;
+
+    private final int priority;
+    private final Random random = new Random();
+    private GameContext context;
+    private ResourceMap resourceMap;
+    /** The resource map while resources spawn, null after that. */
+    private ResourceMap spawnMap;
+    private HierarchicalPathfinder pathfinder;
+    /** Costs from each requested worker to the pathfinder's entrances. */
+    private float[][] travelCosts = new float[8][];
+    private boolean[] costsReady = new boolean[8];
+    private final float[] point = new float[2];
+
+    private final List<UnitData> requested = new ArrayList<>();
+    private final List<Point> seeds = new ArrayList<>();
+    /** Destinations of the workers that are already on their way. */
+    private final List<Point> destinations = new ArrayList<>();
+
+    private float[] bestX = new float[8];
+    private float[] bestY = new float[8];
+    private float[] bestScore = new float[8];
+    private int[] samples = new int[8];
+    private int next;
+
+    public WorkerDispatchTask(int priority) {
+        this.priority = priority;
+    }
+
+    /** Sets where resources are likely to spawn on the current map, null to explore uniformly. */
+    public void setResourceMap(ResourceMap resourceMap) {
+        this.resourceMap = resourceMap;
+    }
+
+    /** Sets the pathfinder for the current map, null to measure travel as the straight distance. */
+    public void setPathfinder(HierarchicalPathfinder pathfinder) {
+        this.pathfinder = pathfinder;
+    }
+
+    /**
+     * Asks for an exploration target for the worker on this update. The
+     * seed, if not null, is used as the first candidate.
+     */
+    public void request(UnitData worker, Point seed) {
+        requested.add(worker);
+        seeds.add(seed);
+    }
+
+    @Override
+    public String name() {
+        return "worker dispatch";
+    }
+
+    @Override
+    public int priority() {
+        return priority;
+    }
+
+    @Override
+    public void begin(GameState state, GameContext context) {
+        this.context = context;
+        next = 0;
+        spawnMap = resourceMap != null && resourceMap.spawning(state.time) ? resourceMap : null;
+
+        destinations.clear();
+        for (UnitData unit : state.units) {
+            if (unit.type == UnitType.WORKER && unit.navigationPath.length > 0) {
+                destinations.add(unit.navigationPath[unit.navigationPath.length - 1]);
+            }
+        }
+
+        int n = requested.size();
+        if (bestX.length < n) {
+            bestX = new float[n];
+            bestY = new float[n];
+            bestScore = new float[n];
+            samples = new int[n];
+            travelCosts = new float[n][];
+            costsReady = new boolean[n];
+        }
+        for (int i = 0; i < n; i++) {
+            bestScore[i] = Float.NEGATIVE_INFINITY;
+            samples[i] = 0;
+            costsReady[i] = false;
+        }
+        for (int i = 0; i < n; i++) {
+            Point seed = seeds.get(i);
+            if (seed != null) {
+                consider(i, seed.x, seed.y);
+            }
+            while (bestScore[i] == Float.NEGATIVE_INFINITY && samples[i] < MAX_SAMPLES) {
+                sample(i);
+            }
+        }
+    }
+
+    @Override
+    public boolean improve(long deadlineNanos) {
+        int n = requested.size();
+        if (pathfinder != null) {
+            for (int i = 0; i < n; i++) {
+                if (!costsReady[i]) {
+                    findCosts(i);
+                    return true;
+                }
+            }
+        }
+        for (int tried = 0; tried < n; tried++) {
+            int i = next;
+            next = (next + 1) % n;
+            if (samples[i] < MAX_SAMPLES) {
+                sample(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the pathfinder's costs from the worker and measures its best
+     * point again with them, which drops the point if it is unreachable.
+     */
+    private void findCosts(int i) {
+        if (travelCosts[i] == null || travelCosts[i].length != pathfinder.nodes()) {
+            travelCosts[i] = new float[pathfinder.nodes()];
+        }
+        UnitData worker = requested.get(i);
+        pathfinder.costsFrom(worker.x, worker.y, travelCosts[i]);
+        costsReady[i] = true;
+
+        if (bestScore[i] != Float.NEGATIVE_INFINITY) {
+            bestScore[i] = Float.NEGATIVE_INFINITY;
+            consider(i, bestX[i], bestY[i]);
+        }
+    }
+
+    private void sample(int i) {
+        if (spawnMap != null && spawnMap.sample(random, point)) {
+            consider(i, point[0], point[1]);
+            return;
+        }
+        for (int attempt = 0; attempt < FREE_POINT_ATTEMPTS; attempt++) {
+            int x = random.nextInt(context.mapWidth);
+            int y = random.nextInt(context.mapHeight);
+            if (!context.map[x][y]) {
+                consider(i, x, y);
+                return;
+            }
+        }
+        samples[i]++;
+    }
+
+    private void consider(int i, float x, float y) {
+        samples[i]++;
+        UnitData worker = requested.get(i);
+        float travel = pathfinder != null && costsReady[i]
+                ? pathfinder.travelCost(travelCosts[i], worker.x, worker.y, x, y)
+                : MathUtil.distance(worker.x, worker.y, x, y);
+        if (travel == Float.POSITIVE_INFINITY) return;
+
+        float spread = 2 * context.viewingAreaLength;
+        for (Point destination : destinations) {
+            spread = Math.min(spread, MathUtil.distance(x, y, destination.x, destination.y));
+        }
+        for (int other = 0; other < requested.size(); other++) {
+            if (other != i && bestScore[other] != Float.NEGATIVE_INFINITY) {
+                spread = Math.min(spread, MathUtil.distance(x, y, bestX[other], bestY[other]));
+            }
+        }
+
+        float score = spread - TRAVEL_WEIGHT * travel;
+        if (spawnMap != null) score += RESOURCE_WEIGHT * spawnMap.weight(x, y);
+        if (score > bestScore[i]) {
+            bestScore[i] = score;
+            bestX[i] = x;
+            bestY[i] = y;
+        }
+    }
+
+    @Override
+    public void commit(Api api) {
+        for (int i = 0; i < requested.size(); i++) {
+            if (bestScore[i] == Float.NEGATIVE_INFINITY) continue;
+            api.navigationStart(requested.get(i).id, bestX[i], bestY[i]);
+        }
+        requested.clear();
+        seeds.clear();
+    }
+}
@@ -0,0 +1,53 @@
+package lia.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.IntSupplier;
+
+/**
+ * Minimal timing loop shared by the benchmarks in this package. Runs the
+ * operation for a number of warmup iterations so that the JIT compiles
+ * it, then reports the average time and allocation per iteration. The
+ * time is given both as elapsed time and as the CPU time of the measuring
+ * thread; they differ when other threads, such as the log writer, take
+ * turns on the same CPU.
+ */
+class Bench {
+
+    /** Keeps the results alive so that the JIT cannot remove the measured work. */
+    static volatile int sink;
+
+    static void run(String name, int warmup, int iterations, IntSupplier operation) {
+        int result = 0;
+        for (int i = 0; i < warmup; i++) result += operation.getAsInt();
+
+        long allocatedBefore = allocatedBytes();
+        long cpuBefore = cpuNanos();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) result += operation.getAsInt();
+        long elapsed = System.nanoTime() - start;
+        long cpu = cpuNanos() - cpuBefore;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        sink = result;
+        System.out.printf("%-24s %10.1f ns/op %10.1f cpu ns/op %10.1f B/op%n", name,
+                elapsed / (double) iterations,
+                cpuBefore < 0 ? Double.NaN : cpu / (double) iterations,
+                allocatedBefore < 0 ? Double.NaN : allocated / (double) iterations);
+    }
+
+    /** CPU time used by the current thread, or -1 if the JVM does not tell. */
+    private static long cpuNanos() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean.isCurrentThreadCpuTimeSupported() ? bean.getCurrentThreadCpuTime() : -1;
+    }
+
+    /** Bytes allocated by the current thread, or -1 if the JVM does not tell. */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,32 @@
+package lia.bench;
+
+import java.util.Random;
+
+/** Maps for the path planning benchmarks, shaped like the generated game maps. */
+class BenchMaps {
+
+    /** Side of the square obstacles the game places. */
+    private static final int BLOCK_SIZE = 3;
+    /** Corners kept free for the spawns. */
+    private static final int SPAWN_SIZE = 12;
+
+    /** A map with randomly placed square obstacles, the same for the same seed. */
+    static boolean[][] blocks(int width, int height, int blocks, long seed) {
+        Random random = new Random(seed);
+        boolean[][] map = new boolean[width][height];
+        for (int i = 0; i < blocks; i++) {
+            int x = random.nextInt(width - BLOCK_SIZE);
+            int y = random.nextInt(height - BLOCK_SIZE);
+            for (int dx = 0; dx < BLOCK_SIZE; dx++) {
+                for (int dy = 0; dy < BLOCK_SIZE; dy++) map[x + dx][y + dy] = true;
+            }
+        }
+        for (int x = 0; x < SPAWN_SIZE; x++) {
+            for (int y = 0; y < SPAWN_SIZE; y++) {
+                map[x][y] = false;
+                map[width - 1 - x][height - 1 - y] = false;
+            }
+        }
+        return map;
+    }
+}
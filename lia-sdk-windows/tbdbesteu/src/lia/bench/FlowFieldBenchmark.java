@@ -0,0 +1,119 @@
+package lia.bench;
+
+import lia.FlowField;
+import lia.MapAnalysis;
+import lia.NavigationGrid;
+import lia.ObstacleTree;
+import lia.api.Point;
+
+import java.util.Random;
+
+/**
+ * Compares routing 30 units to a common goal with one A* search each
+ * against a shared FlowField. One operation routes all units: 30 path
+ * searches, or 30 field lookups. Building the field once and repairing it
+ * after the goal moved two cells are measured on their own. The map is
+ * the size of the game map with 250 blocks.
+ *
+ * Run with: java -cp build/libs/my-bot.jar lia.bench.FlowFieldBenchmark
+ */
+public class FlowFieldBenchmark {
+
+    private static final int UNITS = 30;
+    private static final float UNIT_RADIUS = 1;
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1000;
+
+    public static void main(String[] args) {
+        boolean[][] map = BenchMaps.blocks(176, 99, 250, 1);
+        ObstacleTree tree = new ObstacleTree(map);
+        MapAnalysis analysis = new MapAnalysis(map, tree, UNIT_RADIUS);
+        NavigationGrid grid = new NavigationGrid(map, analysis, UNIT_RADIUS);
+
+        Random random = new Random(2);
+        float[] x = new float[UNITS];
+        float[] y = new float[UNITS];
+        for (int i = 0; i < UNITS; i++) {
+            do {
+                x[i] = random.nextFloat() * 176;
+                y[i] = random.nextFloat() * 99;
+            } while (analysis.clearance(x[i], y[i]) < UNIT_RADIUS);
+        }
+        float goalX = 170.5f;
+        float goalY = 92.5f;
+        float otherGoalX = 168.5f;
+
+        GridPathfinder pathfinder = new GridPathfinder(grid);
+        FlowField field = new FlowField(grid);
+        field.setGoal(goalX, goalY);
+        field.rebuild(Long.MAX_VALUE);
+
+        // Both search the same graph, so the costs have to agree
+        float worst = 0;
+        int expanded = 0;
+        for (int i = 0; i < UNITS; i++) {
+            pathfinder.findPath(x[i], y[i], goalX, goalY);
+            worst = Math.max(worst, Math.abs(pathfinder.lastCost() - field.cost(x[i], y[i])));
+            expanded += pathfinder.lastExpanded();
+        }
+        System.out.printf("A* expands %d cells per unit, largest cost difference to the field %.4f%n", expanded / UNITS, worst);
+
+        Bench.run("A* x" + UNITS, WARMUP, ITERATIONS, () -> {
+            int length = 0;
+            for (int i = 0; i < UNITS; i++) {
+                Point[] path = pathfinder.findPath(x[i], y[i], goalX, goalY);
+                if (path != null) length += path.length;
+            }
+            return length;
+        });
+
+        // A repaired field has to bring every unit to the new goal, on a way not much longer than the shortest
+        FlowField exact = new FlowField(grid);
+        exact.setGoal(otherGoalX, goalY);
+        exact.rebuild(Long.MAX_VALUE);
+        field.setGoal(otherGoalX, goalY);
+        float longest = 0;
+        int arrived = 0;
+        for (int i = 0; i < UNITS; i++) {
+            float length = follow(grid, field, x[i], y[i]);
+            if (length < Float.POSITIVE_INFINITY) arrived++;
+            longest = Math.max(longest, length - exact.cost(x[i], y[i]));
+        }
+        System.out.printf("Repaired field: exact %b, %d of %d units arrive, at most %.2f longer than the shortest way%n",
+                field.isExact(), arrived, UNITS, longest);
+
+        int[] repairs = new int[1];
+        Bench.run("flow field repair", WARMUP, ITERATIONS, () -> {
+            field.setGoal(repairs[0]++ % 2 == 0 ? goalX : otherGoalX, goalY);
+            return (int) field.cost(x[0], y[0]);
+        });
+
+        int[] builds = new int[1];
+        Bench.run("flow field build", WARMUP, ITERATIONS, () -> {
+            field.setGoal(builds[0]++ % 2 == 0 ? otherGoalX : goalX, goalY);
+            field.rebuild(Long.MAX_VALUE);
+            return (int) field.cost(x[0], y[0]);
+        });
+
+        Bench.run("flow field lookup x" + UNITS, WARMUP * 1000, ITERATIONS * 1000, () -> {
+            int sum = 0;
+            for (int i = 0; i < UNITS; i++) sum += field.direction(x[i], y[i]);
+            return sum;
+        });
+    }
+
+    /** Cost of following the field from the point to its goal, infinity if it does not get there. */
+    private static float follow(NavigationGrid grid, FlowField field, float x, float y) {
+        int cell = grid.cell(x, y);
+        float length = 0;
+        for (int steps = 0; steps < grid.cells(); steps++) {
+            byte direction = field.direction(grid.x(cell), grid.y(cell));
+            if (direction == FlowField.NO_DIRECTION) {
+                return field.atGoal(grid.x(cell), grid.y(cell)) ? length : Float.POSITIVE_INFINITY;
+            }
+            length += grid.stepCost(cell, direction);
+            cell = grid.step(cell, direction);
+        }
+        return Float.POSITIVE_INFINITY;
+    }
+}
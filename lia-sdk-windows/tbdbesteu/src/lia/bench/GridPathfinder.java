@@ -0,0 +1,97 @@
+package lia.bench;
+
+import lia.CellQueue;
+import lia.NavigationGrid;
+import lia.api.Point;
+
+/**
+ * A* search over the NavigationGrid for a single unit, the baseline that
+ * the flow field and hierarchical benchmarks compare against. Search state
+ * is kept between calls and reset by stamping, so a search allocates only
+ * the path it returns. Not thread safe, use one per thread.
+ */
+class GridPathfinder {
+
+    private final NavigationGrid grid;
+    private final CellQueue open = new CellQueue();
+    private final float[] cost;
+    private final int[] from;
+    /** Search in which the cell's cost was last set, older costs count as infinity. */
+    private final int[] visited;
+    private int search;
+    private int expanded;
+    private float pathCost;
+
+    GridPathfinder(NavigationGrid grid) {
+        this.grid = grid;
+        cost = new float[grid.cells()];
+        from = new int[grid.cells()];
+        visited = new int[grid.cells()];
+    }
+
+    /**
+     * Finds the cheapest path between the points and returns the centres of
+     * its cells from the start to the goal, or null if the goal cannot be
+     * reached. The start cell may be an obstacle, so that units touching
+     * one can still be routed.
+     */
+    Point[] findPath(float fromX, float fromY, float toX, float toY) {
+        int start = grid.cell(fromX, fromY);
+        int goal = grid.cell(toX, toY);
+        if (start < 0 || goal < 0 || grid.isBlocked(goal)) return null;
+
+        search++;
+        expanded = 0;
+        pathCost = Float.POSITIVE_INFINITY;
+        open.clear();
+        visit(start, 0, -1);
+        open.add(start, grid.estimate(start, goal));
+
+        while (!open.isEmpty()) {
+            float key = open.minKey();
+            int cell = open.poll();
+            if (key > cost[cell] + grid.estimate(cell, goal)) continue;
+            if (cell == goal) {
+                pathCost = cost[goal];
+                return path(start, goal);
+            }
+            expanded++;
+
+            for (int d = 0; d < NavigationGrid.DIRECTIONS; d++) {
+                if (!grid.canStep(cell, d)) continue;
+                int next = grid.step(cell, d);
+                float nextCost = cost[cell] + grid.stepCost(cell, d);
+                if (visited[next] == search && cost[next] <= nextCost) continue;
+                visit(next, nextCost, cell);
+                open.add(next, nextCost + grid.estimate(next, goal));
+            }
+        }
+        return null;
+    }
+
+    /** Cost of the path found by the last search, infinity if there was none. */
+    float lastCost() {
+        return pathCost;
+    }
+
+    /** Cells expanded by the last search. */
+    int lastExpanded() {
+        return expanded;
+    }
+
+    private void visit(int cell, float cellCost, int previous) {
+        visited[cell] = search;
+        cost[cell] = cellCost;
+        from[cell] = previous;
+    }
+
+    private Point[] path(int start, int goal) {
+        int length = 1;
+        for (int cell = goal; cell != start; cell = from[cell]) length++;
+        Point[] path = new Point[length];
+        for (int cell = goal, i = length - 1; i >= 0; cell = from[cell], i--) {
+            path[i] = new Point(grid.x(cell), grid.y(cell));
+        }
+        return path;
+    }
+}
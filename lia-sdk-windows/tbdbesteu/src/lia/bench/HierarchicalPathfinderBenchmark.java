@@ -0,0 +1,144 @@
+package lia.bench;
+
+import lia.HierarchicalPathfinder;
+import lia.MapAnalysis;
+import lia.NavigationGrid;
+import lia.ObstacleTree;
+import lia.api.Point;
+
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Compares A* over all cells with the HierarchicalPathfinder on the stock
+ * map size and on maps with 4 and 16 times its area, with the same density
+ * of blocks. One operation is one query between random points of the map:
+ * the full A* path, the abstract path with and without the cache, and the
+ * abstract path refined to cells, and costsFrom() for one start with
+ * travelCost() to every query goal. Also prints the build time of the
+ * abstract graph, how much longer its paths are, and the heap each
+ * pathfinder keeps, measured as the used heap that a full collection
+ * frees once a pathfinder built for the purpose is dropped.
+ *
+ * Run with: java -cp build/libs/my-bot.jar lia.bench.HierarchicalPathfinderBenchmark
+ */
+public class HierarchicalPathfinderBenchmark {
+
+    private static final float UNIT_RADIUS = 1;
+    private static final int QUERIES = 256;
+    private static final int WARMUP = 500;
+    private static final int ITERATIONS = 2000;
+
+    /** Width, height and blocks of the maps. */
+    private static final int[][] MAPS = {{176, 99, 250}, {2 * 176, 2 * 99, 4 * 250}, {4 * 176, 4 * 99, 16 * 250}};
+
+    public static void main(String[] args) {
+        // Heap first, the timed runs keep objects of their map reachable for a while after
+        for (int[] size : MAPS) {
+            boolean[][] map = BenchMaps.blocks(size[0], size[1], size[2], 1);
+            NavigationGrid grid = new NavigationGrid(map, new MapAnalysis(map, new ObstacleTree(map), UNIT_RADIUS), UNIT_RADIUS);
+            System.out.printf("%dx%d heap: HPA* %.1f kB, A* %.1f kB%n", size[0], size[1],
+                    retainedBytes(() -> new HierarchicalPathfinder(grid)) / 1e3, retainedBytes(() -> new GridPathfinder(grid)) / 1e3);
+        }
+        for (int[] size : MAPS) run(size[0], size[1], size[2]);
+    }
+
+    private static void run(int width, int height, int blocks) {
+        boolean[][] map = BenchMaps.blocks(width, height, blocks, 1);
+        MapAnalysis analysis = new MapAnalysis(map, new ObstacleTree(map), UNIT_RADIUS);
+        NavigationGrid grid = new NavigationGrid(map, analysis, UNIT_RADIUS);
+
+        long start = System.nanoTime();
+        HierarchicalPathfinder hierarchical = new HierarchicalPathfinder(grid);
+        long build = System.nanoTime() - start;
+        GridPathfinder pathfinder = new GridPathfinder(grid);
+
+        // Connected random pairs
+        Random random = new Random(2);
+        float[][] queries = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            float[] query;
+            do {
+                query = new float[] {point(random, width), point(random, height), point(random, width), point(random, height)};
+            } while (analysis.clearance(query[0], query[1]) < UNIT_RADIUS || analysis.clearance(query[2], query[3]) < UNIT_RADIUS
+                    || !analysis.connected(query[0], query[1], query[2], query[3]));
+            queries[i] = query;
+        }
+
+        double optimal = 0, found = 0;
+        for (float[] q : queries) {
+            optimal += length(pathfinder.findPath(q[0], q[1], q[2], q[3]));
+            found += length(hierarchical.findPath(q[0], q[1], q[2], q[3]));
+        }
+
+        System.out.printf("%dx%d, %d blocks: %d nodes, %d edges, built in %.1f ms, paths %.1f%% longer%n",
+                width, height, blocks, hierarchical.nodes(), hierarchical.edges(), build / 1e6, 100 * (found / optimal - 1));
+
+        int[] next = new int[1];
+        Bench.run("  A*", WARMUP / 10, ITERATIONS / 10, () -> {
+            float[] q = queries[next[0]++ % QUERIES];
+            Point[] path = pathfinder.findPath(q[0], q[1], q[2], q[3]);
+            return path == null ? 0 : path.length;
+        });
+        Bench.run("  HPA* abstract", WARMUP, ITERATIONS, () -> {
+            float[] q = queries[next[0]++ % QUERIES];
+            hierarchical.clearCache();
+            Point[] path = hierarchical.findAbstractPath(q[0], q[1], q[2], q[3]);
+            return path == null ? 0 : path.length;
+        });
+        Bench.run("  HPA* abstract cached", WARMUP, ITERATIONS, () -> {
+            float[] q = queries[next[0]++ % QUERIES];
+            Point[] path = hierarchical.findAbstractPath(q[0], q[1], q[2], q[3]);
+            return path == null ? 0 : path.length;
+        });
+        Bench.run("  HPA* refined", WARMUP, ITERATIONS, () -> {
+            float[] q = queries[next[0]++ % QUERIES];
+            hierarchical.clearCache();
+            Point[] path = hierarchical.findPath(q[0], q[1], q[2], q[3]);
+            return path == null ? 0 : path.length;
+        });
+        float[] costs = new float[hierarchical.nodes()];
+        Bench.run("  HPA* travel costs x" + QUERIES, WARMUP / 10, ITERATIONS / 10, () -> {
+            float[] from = queries[next[0]++ % QUERIES];
+            hierarchical.costsFrom(from[0], from[1], costs);
+            float sum = 0;
+            for (float[] q : queries) sum += hierarchical.travelCost(costs, from[0], from[1], q[2], q[3]);
+            return (int) sum;
+        });
+    }
+
+    /** Heap kept by what the factory makes. */
+    private static long retainedBytes(Supplier<Object> factory) {
+        Object[] holder = {factory.get()};
+        long with = usedHeap();
+        holder[0] = null;
+        return with - usedHeap();
+    }
+
+    /** Used heap after a full collection. */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        while (true) {
+            System.gc();
+            // Give the reference handler time to release what the collection found, for the next one
+            LockSupport.parkNanos(20_000_000);
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            if (now >= used) return now;
+            used = now;
+        }
+    }
+
+    private static float point(Random random, int size) {
+        return random.nextFloat() * size;
+    }
+
+    private static double length(Point[] path) {
+        double length = 0;
+        for (int i = 1; i < path.length; i++) {
+            length += Math.hypot(path[i].x - path[i - 1].x, path[i].y - path[i - 1].y);
+        }
+        return length;
+    }
+}
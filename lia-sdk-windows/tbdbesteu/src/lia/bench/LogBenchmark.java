@@ -0,0 +1,96 @@
+package lia.bench;
+
+import lia.Log;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * Measures what logging adds to an update. The update is a stand-in for
+ * the bot's own: each of 30 units looks for the nearest of 300 points.
+ * It runs without logging, with a debug message per unit while the level
+ * is info, with info messages per update and per damaged unit, and with
+ * the same messages built as strings and printed to a PrintStream the
+ * way System.out.println did. Output goes to a null stream, so only the
+ * cost on the updating thread is measured.
+ *
+ * Run with: java -cp build/libs/my-bot.jar lia.bench.LogBenchmark
+ */
+public class LogBenchmark {
+
+    private static final int UNITS = 30;
+    private static final int OPPONENTS = 300;
+    private static final int WARMUP = 20_000;
+    private static final int ITERATIONS = 100_000;
+
+    private static final float[] x = new float[UNITS];
+    private static final float[] y = new float[UNITS];
+    private static final float[] opponentX = new float[OPPONENTS];
+    private static final float[] opponentY = new float[OPPONENTS];
+    private static final int[] health = new int[UNITS];
+    private static int uid;
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        for (int i = 0; i < UNITS; i++) {
+            x[i] = random.nextFloat() * 176;
+            y[i] = random.nextFloat() * 99;
+            // A few units were hit and get a message every update
+            health[i] = i % 10 == 0 ? 60 : 100;
+        }
+        for (int j = 0; j < OPPONENTS; j++) {
+            opponentX[j] = random.nextFloat() * 176;
+            opponentY[j] = random.nextFloat() * 99;
+        }
+        Log.setOutput(OutputStream.nullOutputStream());
+        PrintStream console = new PrintStream(OutputStream.nullOutputStream(), true);
+
+        // Compile update() with every branch taken, so that no mode pays for a recompilation
+        for (int i = 0; i < WARMUP; i++) {
+            for (int mode = 0; mode < 4; mode++) update(mode, console);
+        }
+        Log.flush(1_000_000_000);
+
+        Bench.run("no logging", WARMUP, ITERATIONS, () -> update(0, null));
+        Bench.run("debug below level", WARMUP, ITERATIONS, () -> update(1, null));
+        Bench.run("info to ring", WARMUP, ITERATIONS, () -> update(2, null));
+        Bench.run("println", WARMUP / 10, ITERATIONS / 10, () -> update(3, console));
+
+        System.out.println("Level " + Log.LEVEL + ", " + Log.dropped() + " messages dropped while the writer fell behind");
+    }
+
+    private static int update(int mode, PrintStream console) {
+        uid++;
+        int targets = 0;
+        for (int i = 0; i < UNITS; i++) {
+            int nearest = 0;
+            float best = Float.MAX_VALUE;
+            for (int j = 0; j < OPPONENTS; j++) {
+                float dx = opponentX[j] - x[i];
+                float dy = opponentY[j] - y[i];
+                float distance = dx * dx + dy * dy;
+                if (distance < best) {
+                    best = distance;
+                    nearest = j;
+                }
+            }
+            targets += nearest;
+
+            if (mode == 1) {
+                Log.debug("Unit {} targets {} at {}", i, nearest, (long) best);
+            } else if (mode == 2 && health[i] < 100) {
+                Log.info("Health of unit {} is {}", i, health[i]);
+            } else if (mode == 3 && health[i] < 100) {
+                console.println("Health of unit " + i + " is " + String.valueOf(health[i]));
+            }
+        }
+
+        if (mode == 2) {
+            Log.info("Update {} of {} units, target sum {}", uid, UNITS, targets);
+        } else if (mode == 3) {
+            console.println("Update " + uid + " of " + UNITS + " units, target sum " + targets);
+        }
+        return targets;
+    }
+}
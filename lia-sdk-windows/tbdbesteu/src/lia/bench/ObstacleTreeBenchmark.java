@@ -0,0 +1,193 @@
+package lia.bench;
+
+import lia.ObstacleTree;
+
+import java.util.Random;
+
+/**
+ * Measures the ray queries of the ObstacleTree against probing map cells.
+ * One operation is one query from a random free point in a random
+ * direction. A point ray is answered by walking the cells it crosses,
+ * ObstacleTree.raycast() does that too. A bullet's swept circle, which
+ * bullet paths and unit moves use, is measured three ways: testing every
+ * obstacle cell in the box around its path, testing the obstacle cells
+ * next to each cell under its center, and ObstacleTree.sweepCircle().
+ * The rays are as long as a bullet flies, the map is the size of the game
+ * map with 250 blocks. Also prints the largest difference between the
+ * answers of the cells and the tree.
+ *
+ * Run with: java -cp build/libs/my-bot.jar lia.bench.ObstacleTreeBenchmark
+ */
+public class ObstacleTreeBenchmark {
+
+    private static final int WIDTH = 176;
+    private static final int HEIGHT = 99;
+    /** Bullet range and radius of the stock game config. */
+    private static final float RANGE = 42;
+    private static final float BULLET_RADIUS = 0.2f;
+    private static final int QUERIES = 1024;
+    private static final int WARMUP = 200_000;
+    private static final int ITERATIONS = 1_000_000;
+
+    public static void main(String[] args) {
+        boolean[][] map = BenchMaps.blocks(WIDTH, HEIGHT, 250, 1);
+        ObstacleTree tree = new ObstacleTree(map);
+
+        Random random = new Random(2);
+        float[][] rays = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            float x, y;
+            do {
+                x = random.nextFloat() * WIDTH;
+                y = random.nextFloat() * HEIGHT;
+            } while (tree.overlapsCircle(x, y, BULLET_RADIUS));
+            double angle = random.nextDouble() * 2 * Math.PI;
+            rays[i] = new float[] {x, y, (float) Math.cos(angle), (float) Math.sin(angle)};
+        }
+
+        float sweepDifference = 0, walkDifference = 0;
+        for (float[] r : rays) {
+            sweepDifference = Math.max(sweepDifference, Math.abs(sweepCells(map, r[0], r[1], r[2], r[3], BULLET_RADIUS, RANGE)
+                    - tree.sweepCircle(r[0], r[1], r[2], r[3], BULLET_RADIUS, RANGE)));
+            walkDifference = Math.max(walkDifference, Math.abs(sweepWalk(map, r[0], r[1], r[2], r[3], BULLET_RADIUS, RANGE)
+                    - tree.sweepCircle(r[0], r[1], r[2], r[3], BULLET_RADIUS, RANGE)));
+        }
+        System.out.printf("%d rectangles, largest difference to the cells: sweep %.5f, walked sweep %.5f%n",
+                tree.getObstacles().length, sweepDifference, walkDifference);
+
+        int[] next = new int[1];
+        Bench.run("raycast", WARMUP, ITERATIONS, () -> {
+            float[] r = rays[next[0]++ % QUERIES];
+            return (int) tree.raycast(r[0], r[1], r[2], r[3], RANGE);
+        });
+        Bench.run("cell bullet sweep", WARMUP / 10, ITERATIONS / 10, () -> {
+            float[] r = rays[next[0]++ % QUERIES];
+            return (int) sweepCells(map, r[0], r[1], r[2], r[3], BULLET_RADIUS, RANGE);
+        });
+        Bench.run("cell walk bullet sweep", WARMUP, ITERATIONS, () -> {
+            float[] r = rays[next[0]++ % QUERIES];
+            return (int) sweepWalk(map, r[0], r[1], r[2], r[3], BULLET_RADIUS, RANGE);
+        });
+        Bench.run("tree bullet sweep", WARMUP, ITERATIONS, () -> {
+            float[] r = rays[next[0]++ % QUERIES];
+            return (int) tree.sweepCircle(r[0], r[1], r[2], r[3], BULLET_RADIUS, RANGE);
+        });
+    }
+
+    /**
+     * Distance the circle moves before it touches an obstacle cell or map
+     * edge, testing every obstacle cell in the box around its path the
+     * same way the tree tests a rectangle.
+     */
+    private static float sweepCells(boolean[][] map, float x, float y, float dirX, float dirY, float radius,
+                                    float maxDistance) {
+        float best = maxDistance;
+        if (dirX > 0) best = Math.min(best, (map.length - radius - x) / dirX);
+        if (dirX < 0) best = Math.min(best, (radius - x) / dirX);
+        if (dirY > 0) best = Math.min(best, (map[0].length - radius - y) / dirY);
+        if (dirY < 0) best = Math.min(best, (radius - y) / dirY);
+
+        float endX = x + dirX * best;
+        float endY = y + dirY * best;
+        int fromX = Math.max(0, (int) Math.floor(Math.min(x, endX) - radius));
+        int toX = Math.min(map.length - 1, (int) Math.floor(Math.max(x, endX) + radius));
+        int fromY = Math.max(0, (int) Math.floor(Math.min(y, endY) - radius));
+        int toY = Math.min(map[0].length - 1, (int) Math.floor(Math.max(y, endY) + radius));
+        for (int cx = fromX; cx <= toX; cx++) {
+            for (int cy = fromY; cy <= toY; cy++) {
+                if (!map[cx][cy]) continue;
+                float t = slabEntry(x, y, dirX, dirY, cx - radius, cy, cx + 1 + radius, cy + 1);
+                t = Math.min(t, slabEntry(x, y, dirX, dirY, cx, cy - radius, cx + 1, cy + 1 + radius));
+                t = Math.min(t, circleEntry(x, y, dirX, dirY, cx, cy, radius));
+                t = Math.min(t, circleEntry(x, y, dirX, dirY, cx + 1, cy, radius));
+                t = Math.min(t, circleEntry(x, y, dirX, dirY, cx, cy + 1, radius));
+                t = Math.min(t, circleEntry(x, y, dirX, dirY, cx + 1, cy + 1, radius));
+                if (t < best) best = Math.max(0, t);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Same as sweepCells(), but walks the cells under the circle's center
+     * and tests only the obstacle cells next to them. A circle with a
+     * radius below one cell can only touch those.
+     */
+    private static float sweepWalk(boolean[][] map, float x, float y, float dirX, float dirY, float radius,
+                                   float maxDistance) {
+        float best = maxDistance;
+        if (dirX > 0) best = Math.min(best, (map.length - radius - x) / dirX);
+        if (dirX < 0) best = Math.min(best, (radius - x) / dirX);
+        if (dirY > 0) best = Math.min(best, (map[0].length - radius - y) / dirY);
+        if (dirY < 0) best = Math.min(best, (radius - y) / dirY);
+
+        int cellX = (int) Math.floor(x);
+        int cellY = (int) Math.floor(y);
+        int stepX = dirX > 0 ? 1 : -1;
+        int stepY = dirY > 0 ? 1 : -1;
+        float deltaX = dirX != 0 ? Math.abs(1f / dirX) : Float.POSITIVE_INFINITY;
+        float deltaY = dirY != 0 ? Math.abs(1f / dirY) : Float.POSITIVE_INFINITY;
+        float nextX = dirX != 0 ? (dirX > 0 ? cellX + 1 - x : x - cellX) * deltaX : Float.POSITIVE_INFINITY;
+        float nextY = dirY != 0 ? (dirY > 0 ? cellY + 1 - y : y - cellY) * deltaY : Float.POSITIVE_INFINITY;
+
+        // A touch found from a later cell can still be up to a cell diagonal closer
+        float travelled = 0;
+        while (travelled < best + 1.5f && cellX >= 0 && cellY >= 0 && cellX < map.length && cellY < map[0].length) {
+            for (int cx = Math.max(0, cellX - 1); cx <= Math.min(map.length - 1, cellX + 1); cx++) {
+                for (int cy = Math.max(0, cellY - 1); cy <= Math.min(map[0].length - 1, cellY + 1); cy++) {
+                    if (!map[cx][cy]) continue;
+                    float t = slabEntry(x, y, dirX, dirY, cx - radius, cy, cx + 1 + radius, cy + 1);
+                    t = Math.min(t, slabEntry(x, y, dirX, dirY, cx, cy - radius, cx + 1, cy + 1 + radius));
+                    t = Math.min(t, circleEntry(x, y, dirX, dirY, cx, cy, radius));
+                    t = Math.min(t, circleEntry(x, y, dirX, dirY, cx + 1, cy, radius));
+                    t = Math.min(t, circleEntry(x, y, dirX, dirY, cx, cy + 1, radius));
+                    t = Math.min(t, circleEntry(x, y, dirX, dirY, cx + 1, cy + 1, radius));
+                    if (t < best) best = Math.max(0, t);
+                }
+            }
+            if (nextX < nextY) {
+                travelled = nextX;
+                nextX += deltaX;
+                cellX += stepX;
+            } else {
+                travelled = nextY;
+                nextY += deltaY;
+                cellY += stepY;
+            }
+        }
+        return best;
+    }
+
+    private static float slabEntry(float x, float y, float dirX, float dirY, float x0, float y0, float x1, float y1) {
+        float near = Float.NEGATIVE_INFINITY;
+        float far = Float.POSITIVE_INFINITY;
+        if (dirX == 0) {
+            if (x < x0 || x > x1) return Float.POSITIVE_INFINITY;
+        } else {
+            float a = (x0 - x) / dirX;
+            float b = (x1 - x) / dirX;
+            near = Math.min(a, b);
+            far = Math.max(a, b);
+        }
+        if (dirY == 0) {
+            if (y < y0 || y > y1) return Float.POSITIVE_INFINITY;
+        } else {
+            float a = (y0 - y) / dirY;
+            float b = (y1 - y) / dirY;
+            near = Math.max(near, Math.min(a, b));
+            far = Math.min(far, Math.max(a, b));
+        }
+        return near <= far && far > 0 ? near : Float.POSITIVE_INFINITY;
+    }
+
+    private static float circleEntry(float x, float y, float dirX, float dirY, float cx, float cy, float radius) {
+        float rx = x - cx;
+        float ry = y - cy;
+        float halfB = rx * dirX + ry * dirY;
+        float c = rx * rx + ry * ry - radius * radius;
+        float disc = halfB * halfB - c;
+        if (c < 0 || disc < 0) return Float.POSITIVE_INFINITY;
+        float t = -halfB - (float) Math.sqrt(disc);
+        return t >= 0 ? t : Float.POSITIVE_INFINITY;
+    }
+}
@@ -0,0 +1,118 @@
+package lia.bench;
+
+import lia.replay.ColumnField;
+import lia.replay.ColumnarReplay;
+import lia.replay.EntityType;
+import lia.replay.Property;
+import lia.replay.ReplayListener;
+import lia.replay.ReplayReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares scanning the .lia replays of a directory with scanning the
+ * .liac files that ReplayTranscoder made of them. One operation is a scan
+ * of every file in the directory: decoding the whole .lia file to sum the
+ * unit positions, opening the .liac file, reading the x column of every
+ * unit, and reading the health of every unit over a 30 second window.
+ * Opening maps the file and reads its footer index, so the column reads
+ * run on replays opened once and measure only the decoding.
+ *
+ * Run with: java -cp build/libs/my-bot.jar lia.bench.ReplayScanBenchmark [lia directory] [liac directory]
+ */
+public class ReplayScanBenchmark {
+
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 10;
+
+    public static void main(String[] args) throws IOException {
+        Path liaDirectory = Paths.get(args.length > 0 ? args[0] : "../replays");
+        Path liacDirectory = args.length > 1 ? Paths.get(args[1]) : liaDirectory;
+        List<Path> lia = list(liaDirectory, ".lia");
+        List<Path> liac = list(liacDirectory, ".liac");
+        if (liac.isEmpty()) {
+            System.out.println("No .liac files in " + liacDirectory + ", run lia.replay.ReplayTranscoder first");
+            return;
+        }
+        System.out.printf("%d .lia files, %.1f MB%n", lia.size(), size(lia) / 1e6);
+        System.out.printf("%d .liac files, %.1f MB%n", liac.size(), size(liac) / 1e6);
+
+        ReplayReader reader = new ReplayReader();
+        float[] sum = new float[1];
+        ReplayListener positions = new ReplayListener() {
+            @Override
+            public void vector(float time, int entityId, EntityType type, Property property, float x, float y) {
+                if (property == Property.POSITION && (type == EntityType.WARRIOR || type == EntityType.WORKER)) sum[0] += x;
+            }
+        };
+        Bench.run(".lia unit x", WARMUP, ITERATIONS, () -> {
+            for (Path file : lia) {
+                try {
+                    reader.read(file, positions);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return (int) sum[0];
+        });
+
+        Bench.run(".liac open", WARMUP, ITERATIONS, () -> {
+            int units = 0;
+            for (Path file : liac) units += open(file).units();
+            return units;
+        });
+
+        List<ColumnarReplay> replays = liac.stream().map(ReplayScanBenchmark::open).collect(Collectors.toList());
+        float[] values = new float[1 << 16];
+        Bench.run(".liac unit x", WARMUP, ITERATIONS, () -> {
+            float total = 0;
+            for (ColumnarReplay replay : replays) {
+                for (int unit = 0; unit < replay.units(); unit++) {
+                    int n = replay.read(ColumnField.UNIT_X, unit, 0, replay.ticks, values);
+                    for (int i = 0; i < n; i++) total += values[i];
+                }
+            }
+            return (int) total;
+        });
+
+        Bench.run(".liac health 60-90 s", WARMUP, ITERATIONS, () -> {
+            float total = 0;
+            for (ColumnarReplay replay : replays) {
+                int from = (int) (60 * replay.tickRate);
+                int to = (int) (90 * replay.tickRate);
+                for (int unit = 0; unit < replay.units(); unit++) {
+                    int n = replay.read(ColumnField.UNIT_HEALTH, unit, from, to, values);
+                    for (int i = 0; i < n; i++) total += values[i];
+                }
+            }
+            return (int) total;
+        });
+    }
+
+    private static ColumnarReplay open(Path file) {
+        try {
+            return ColumnarReplay.open(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<Path> list(Path directory, String extension) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(p -> p.toString().endsWith(extension)).collect(Collectors.toList());
+        }
+    }
+
+    private static long size(List<Path> files) throws IOException {
+        long bytes = 0;
+        for (Path file : files) bytes += Files.size(file);
+        return bytes;
+    }
+}
@@ -0,0 +1,63 @@
+package lia.bench;
+
+import lia.Blackboard;
+import lia.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares role lookups done with the Blackboard against keeping roles in
+ * lists of UnitData and searching them with streams, the way MyBot used to.
+ * Every simulated tick checks guard and attack membership for each unit
+ * and counts the attackers.
+ *
+ * Run with: java -cp build/libs/my-bot.jar lia.bench.RoleLookupBenchmark
+ */
+public class RoleLookupBenchmark {
+
+    private static final int UNITS = 30;
+    private static final int WARMUP_TICKS = 200_000;
+    private static final int MEASURED_TICKS = 1_000_000;
+
+    private static final int ROLE_GUARD = 1;
+    private static final int ROLE_ATTACK = 2;
+
+    public static void main(String[] args) {
+        UnitData[] units = new UnitData[UNITS];
+        for (int i = 0; i < UNITS; i++) {
+            units[i] = new UnitData(i * 7 + 3, UnitType.WARRIOR, 100, 0, 0, 0, Speed.NONE, Rotation.NONE,
+                    true, 3, new OpponentInView[0], new BulletInView[0], new ResourceInView[0], new Point[0]);
+        }
+
+        List<UnitData> guardBots = new ArrayList<>();
+        List<UnitData> attackBots = new ArrayList<>();
+        Blackboard blackboard = new Blackboard(1, 1);
+        for (int i = 0; i < 2; i++) {
+            guardBots.add(units[i * 5]);
+            attackBots.add(units[i * 5 + 1]);
+            blackboard.setRole(units[i * 5].id, ROLE_GUARD);
+            blackboard.setRole(units[i * 5 + 1].id, ROLE_ATTACK);
+        }
+
+        Bench.run("list + stream", WARMUP_TICKS, MEASURED_TICKS, () -> {
+            int found = 0;
+            for (UnitData unit : units) {
+                if (guardBots.stream().filter((guardBot) -> guardBot.id == unit.id).findFirst().isPresent()) found++;
+                if (attackBots.stream().filter((attackBot) -> attackBot.id == unit.id).findFirst().isPresent()) found++;
+                found += (int) attackBots.stream().count();
+            }
+            return found;
+        });
+
+        Bench.run("blackboard", WARMUP_TICKS, MEASURED_TICKS, () -> {
+            int found = 0;
+            for (UnitData unit : units) {
+                if (blackboard.hasRole(unit.id, ROLE_GUARD)) found++;
+                if (blackboard.hasRole(unit.id, ROLE_ATTACK)) found++;
+                found += blackboard.roleCount(ROLE_ATTACK);
+            }
+            return found;
+        });
+    }
+}
@@ -0,0 +1,113 @@
+package lia.bench;
+
+import lia.SimState;
+import lia.api.*;
+
+import java.util.Random;
+
+/**
+ * Compares branching a search from a deep copy of the GameState the bot
+ * receives against SimState.fork(). Every branch moves two units and
+ * damages one, like one step of a look-ahead search. A tick is 4096
+ * branches. The state is 30 units of ours seeing 30 opponents and 60
+ * bullets.
+ *
+ * Run with: java -cp build/libs/my-bot.jar lia.bench.SimStateBenchmark
+ */
+public class SimStateBenchmark {
+
+    private static final int UNITS = 30;
+    private static final int BULLETS = 60;
+    private static final int BRANCHES = 4096;
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1000;
+
+    public static void main(String[] args) {
+        Random random = new Random(1);
+        UnitData[] units = new UnitData[UNITS];
+        SimState root = new SimState(2 * UNITS, 2 * BULLETS, 1);
+        for (int i = 0; i < UNITS; i++) {
+            OpponentInView[] opponents = new OpponentInView[3];
+            for (int j = 0; j < opponents.length; j++) {
+                opponents[j] = new OpponentInView(100 + (i + j) % UNITS, UnitType.WARRIOR, 100,
+                        random.nextFloat() * 176, random.nextFloat() * 99, 0, Speed.FORWARD, Rotation.NONE);
+            }
+            BulletInView[] bullets = new BulletInView[2];
+            for (int j = 0; j < bullets.length; j++) {
+                bullets[j] = new BulletInView(random.nextFloat() * 176, random.nextFloat() * 99, 90, 24);
+            }
+            units[i] = new UnitData(i, UnitType.WARRIOR, 100, random.nextFloat() * 176, random.nextFloat() * 99, 0,
+                    Speed.NONE, Rotation.NONE, true, 5, opponents, bullets, new ResourceInView[0], new Point[0]);
+        }
+        GameState state = new GameState(1, MessageType.GAME_STATE, 10, UNITS, 0, false, units);
+
+        for (int i = 0; i < 2 * UNITS; i++) {
+            root.addUnit(i, i < UNITS ? SimState.OURS : SimState.THEIRS, UnitType.WARRIOR,
+                    random.nextFloat() * 176, random.nextFloat() * 99, 0, 100, 5, Speed.NONE, Rotation.NONE);
+        }
+        for (int i = 0; i < BULLETS; i++) {
+            root.addBullet(random.nextFloat() * 176, random.nextFloat() * 99, 0, 1, 24, -1);
+        }
+
+        Bench.run("GameState copy x" + BRANCHES, 20, 100, () -> {
+            int sum = 0;
+            for (int b = 0; b < BRANCHES; b++) {
+                GameState branch = copy(state);
+                int u = b % UNITS;
+                branch.units[u].x += 1;
+                branch.units[(u + 1) % UNITS].y += 1;
+                branch.units[u].opponentsInView[0].health -= 10;
+                sum += branch.units[u].opponentsInView[0].health;
+            }
+            return sum;
+        });
+
+        Bench.run("SimState fork x" + BRANCHES, WARMUP, ITERATIONS, () -> {
+            int sum = 0;
+            for (int b = 0; b < BRANCHES; b++) {
+                SimState branch = root.fork();
+                int u = b % UNITS;
+                branch.setUnit(SimState.UNIT_X, u, branch.unit(SimState.UNIT_X, u) + 1);
+                branch.setUnit(SimState.UNIT_Y, (u + 1) % UNITS, branch.unit(SimState.UNIT_Y, (u + 1) % UNITS) + 1);
+                branch.setUnit(SimState.UNIT_HEALTH, UNITS + u, branch.unit(SimState.UNIT_HEALTH, UNITS + u) - 10);
+                sum += (int) branch.unit(SimState.UNIT_HEALTH, UNITS + u);
+            }
+            return sum;
+        });
+
+        SimState scratch = root.fork();
+        SimState snapshot = scratch.snapshot();
+        Bench.run("SimState restore x" + BRANCHES, WARMUP, ITERATIONS, () -> {
+            int sum = 0;
+            for (int b = 0; b < BRANCHES; b++) {
+                scratch.restore(snapshot);
+                int u = b % UNITS;
+                scratch.setUnit(SimState.UNIT_X, u, scratch.unit(SimState.UNIT_X, u) + 1);
+                sum += (int) scratch.unit(SimState.UNIT_X, u);
+            }
+            return sum;
+        });
+    }
+
+    private static GameState copy(GameState state) {
+        UnitData[] units = new UnitData[state.units.length];
+        for (int i = 0; i < units.length; i++) {
+            UnitData unit = state.units[i];
+            OpponentInView[] opponents = new OpponentInView[unit.opponentsInView.length];
+            for (int j = 0; j < opponents.length; j++) {
+                OpponentInView o = unit.opponentsInView[j];
+                opponents[j] = new OpponentInView(o.id, o.type, o.health, o.x, o.y, o.orientationAngle, o.speed, o.rotation);
+            }
+            BulletInView[] bullets = new BulletInView[unit.opponentBulletsInView.length];
+            for (int j = 0; j < bullets.length; j++) {
+                BulletInView b = unit.opponentBulletsInView[j];
+                bullets[j] = new BulletInView(b.x, b.y, b.orientation, b.velocity);
+            }
+            units[i] = new UnitData(unit.id, unit.type, unit.health, unit.x, unit.y, unit.orientationAngle,
+                    unit.speed, unit.rotation, unit.canShoot, unit.nBullets, opponents, bullets,
+                    unit.resourcesInView, unit.navigationPath);
+        }
+        return new GameState(state.uid, state.type, state.time, state.numberOfOpponentUnits, state.resources,
+                state.canSaySomething, units);
+    }
+}
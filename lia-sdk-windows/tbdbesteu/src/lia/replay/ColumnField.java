@@ -0,0 +1,48 @@
+package lia.replay;
+
+/**
+ * Columns of a columnar replay. Unit track columns have one column per
+ * unit, indexed by the unit's row in the unit table, holding a value for
+ * every tick the unit was alive. All other columns are tables with one
+ * value per row, the unit table has a row per unit and the bullet and
+ * resource tables a row per shot and per resource spawn, in tick order.
+ *
+ * Values are stored as integers, a value is the stored integer divided
+ * by the field's scale. Ticks are stored as they are.
+ */
+public enum ColumnField {
+    UNIT_ID(1, false),
+    /** Ordinal of the unit's EntityType. */
+    UNIT_TYPE(1, false),
+    /** Ordinal of the unit's Team. */
+    UNIT_TEAM(1, false),
+    UNIT_SPAWN_TICK(1, false),
+    /** First tick after the unit died, or the tick count if it survived. */
+    UNIT_DEATH_TICK(1, false),
+    UNIT_X(100, true),
+    UNIT_Y(100, true),
+    /** Rotation in degrees, not wrapped to a full turn. */
+    UNIT_ANGLE(10, true),
+    UNIT_HEALTH(1, true),
+    BULLET_FIRED_TICK(1, false),
+    BULLET_GONE_TICK(1, false),
+    BULLET_START_X(100, false),
+    BULLET_START_Y(100, false),
+    BULLET_END_X(100, false),
+    BULLET_END_Y(100, false),
+    RESOURCE_SPAWN_TICK(1, false),
+    /** Tick at which the resource was picked up, or the tick count if it never was. */
+    RESOURCE_GONE_TICK(1, false),
+    RESOURCE_X(100, false),
+    RESOURCE_Y(100, false);
+
+    /** Stored integers per unit of the value. */
+    public final float scale;
+    /** True for unit track columns, which are indexed by tick. */
+    public final boolean track;
+
+    ColumnField(float scale, boolean track) {
+        this.scale = scale;
+        this.track = track;
+    }
+}
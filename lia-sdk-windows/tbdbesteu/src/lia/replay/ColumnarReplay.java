@@ -0,0 +1,190 @@
+package lia.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reader for replays written by ReplayTranscoder. The file starts with a
+ * fixed header and ends with a footer that indexes every column, so
+ * opening a file only reads those two. Each column is split into blocks
+ * of BLOCK_SIZE values that hold the first value and then the deltas as
+ * zigzag varints, and a query decodes only the blocks of the columns and
+ * the range it asks for, straight from the memory-mapped file.
+ *
+ * Positions in a column are ticks for track columns and row numbers for
+ * tables. A reader is not safe to use from several threads at once.
+ */
+public class ColumnarReplay {
+
+    static final int MAGIC = 0x4c494143; // LIAC
+    static final int VERSION = 1;
+    static final int BLOCK_SIZE = 128;
+    static final int HEADER_SIZE = 32;
+    static final int TRAILER_SIZE = 12;
+
+    private static final ColumnField[] FIELDS = ColumnField.values();
+
+    private final ByteBuffer buffer;
+
+    public final float tickRate;
+    public final int ticks;
+    public final float mapWidth;
+    public final float mapHeight;
+    public final float duration;
+    public final Team winner;
+
+    // Column index from the footer
+    private final int[] columnFirst;
+    private final int[] columnCount;
+    private final int[] columnFirstBlock;
+    private final int[] blockOffsets;
+    /** Column number by field and row, -1 where the column does not exist. */
+    private final int[][] columns = new int[FIELDS.length][];
+
+    private int position;
+
+    private ColumnarReplay(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int size = buffer.limit();
+        if (size < HEADER_SIZE + TRAILER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(size - 4) != MAGIC) {
+            throw new IOException("Not a columnar replay");
+        }
+        if (buffer.getInt(4) != VERSION) throw new IOException("Unsupported version " + buffer.getInt(4));
+        tickRate = buffer.getFloat(8);
+        ticks = buffer.getInt(12);
+        mapWidth = buffer.getFloat(16);
+        mapHeight = buffer.getFloat(20);
+        duration = buffer.getFloat(24);
+        winner = Team.values()[buffer.getInt(28)];
+
+        position = (int) buffer.getLong(size - TRAILER_SIZE);
+        int columnCount = readVarint();
+        int[] columnField = new int[columnCount];
+        int[] columnRow = new int[columnCount];
+        this.columnFirst = new int[columnCount];
+        this.columnCount = new int[columnCount];
+        this.columnFirstBlock = new int[columnCount];
+        int[] rows = new int[FIELDS.length];
+        int blocks = 0;
+        for (int c = 0; c < columnCount; c++) {
+            columnField[c] = readVarint();
+            columnRow[c] = readVarint();
+            columnFirst[c] = readVarint();
+            this.columnCount[c] = readVarint();
+            columnFirstBlock[c] = blocks;
+            blocks += (this.columnCount[c] + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            rows[columnField[c]] = Math.max(rows[columnField[c]], columnRow[c] + 1);
+        }
+        blockOffsets = new int[blocks + 1];
+        int offset = HEADER_SIZE;
+        for (int b = 0; b <= blocks; b++) {
+            offset += readVarint();
+            blockOffsets[b] = offset;
+        }
+
+        for (int f = 0; f < FIELDS.length; f++) {
+            columns[f] = new int[rows[f]];
+            Arrays.fill(columns[f], -1);
+        }
+        for (int c = 0; c < columnCount; c++) {
+            columns[columnField[c]][columnRow[c]] = c;
+        }
+    }
+
+    public static ColumnarReplay open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new ColumnarReplay(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /** Number of units, which is the number of rows of the unit table and of track columns. */
+    public int units() {
+        return count(ColumnField.UNIT_ID, 0);
+    }
+
+    public int bullets() {
+        return count(ColumnField.BULLET_FIRED_TICK, 0);
+    }
+
+    public int resources() {
+        return count(ColumnField.RESOURCE_SPAWN_TICK, 0);
+    }
+
+    /** First position of the column, the spawn tick for track columns and 0 for tables. */
+    public int first(ColumnField field, int row) {
+        int column = column(field, row);
+        return column < 0 ? 0 : columnFirst[column];
+    }
+
+    /** Number of values in the column, 0 if it does not exist. */
+    public int count(ColumnField field, int row) {
+        int column = column(field, row);
+        return column < 0 ? 0 : columnCount[column];
+    }
+
+    /**
+     * Reads the values of the column at positions from (inclusive) to
+     * (exclusive) into out, scaled to their real values. The range is
+     * clipped to the column, so out[0] holds the value at
+     * max(from, first(field, row)). Row is the unit for track columns and
+     * 0 for tables. Returns the number of values read.
+     */
+    public int read(ColumnField field, int row, int from, int to, float[] out) {
+        int column = column(field, row);
+        if (column < 0) return 0;
+        int start = Math.max(from, columnFirst[column]) - columnFirst[column];
+        int end = Math.min(to, columnFirst[column] + columnCount[column]) - columnFirst[column];
+        float scale = field.scale;
+
+        int n = 0;
+        for (int block = start / BLOCK_SIZE; block * BLOCK_SIZE < end; block++) {
+            position = blockOffsets[columnFirstBlock[column] + block];
+            int blockEnd = Math.min(end, (block + 1) * BLOCK_SIZE);
+            int value = 0;
+            for (int i = block * BLOCK_SIZE; i < blockEnd; i++) {
+                value += zigzag(readVarint());
+                if (i >= start) out[n++] = value / scale;
+            }
+        }
+        return n;
+    }
+
+    /** Reads a whole table column without scaling, for ticks, ids and ordinals. */
+    public int[] readTable(ColumnField field) {
+        int column = column(field, 0);
+        int[] values = new int[column < 0 ? 0 : columnCount[column]];
+        for (int block = 0; block * BLOCK_SIZE < values.length; block++) {
+            position = blockOffsets[columnFirstBlock[column] + block];
+            int blockEnd = Math.min(values.length, (block + 1) * BLOCK_SIZE);
+            int value = 0;
+            for (int i = block * BLOCK_SIZE; i < blockEnd; i++) {
+                value += zigzag(readVarint());
+                values[i] = value;
+            }
+        }
+        return values;
+    }
+
+    private int column(ColumnField field, int row) {
+        int[] rows = columns[field.ordinal()];
+        return row >= 0 && row < rows.length ? rows[row] : -1;
+    }
+
+    private int readVarint() {
+        int result = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get(position++);
+            result |= (b & 0x7f) << shift;
+            if (b >= 0) return result;
+        }
+    }
+
+    private static int zigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,6 @@
+package lia.replay;
+
+/** Kinds of entities in a replay. */
+public enum EntityType {
+    OBSTACLE, BULLET, RESOURCE, WARRIOR, WORKER, GAME_STATS, UNKNOWN
+}
@@ -0,0 +1,205 @@
+package lia.replay;
+
+import java.util.Arrays;
+
+/**
+ * Collects the metrics of one game from a replay into primitive columns,
+ * one row per unit, and adds them to a ReplaySummary when the game is
+ * done. An instance is reused for every game a thread reads, so reading
+ * a game does not allocate once the columns have grown to size.
+ */
+public class GameMetrics implements ReplayListener {
+
+    private static final int TEAMS = Team.values().length;
+    /** Resources are moved this far out of the map while waiting to respawn. */
+    private static final float PARKED = 10000;
+
+    private final int workerPrice;
+    private final int warriorPrice;
+
+    // Per game
+    private float duration;
+    private float endTime;
+    private Team winner;
+    private float firstKill;
+    private int shotsFired;
+    private int resourceSpawns;
+    private final int[] firstResources = new int[TEAMS];
+    private final int[] lastResources = new int[TEAMS];
+    private final float[] lastStatsTime = new float[TEAMS];
+    private final int[] spent = new int[TEAMS];
+
+    // Per unit columns, indexed by row
+    private int units;
+    private int[] unitRow = new int[512];
+    private EntityType[] unitType = new EntityType[64];
+    private byte[] unitTeam = new byte[64];
+    private float[] spawnTime = new float[64];
+    private float[] deathTime = new float[64];
+    private float[] lastX = new float[64];
+    private float[] lastY = new float[64];
+    private float[] distance = new float[64];
+    private float[] health = new float[64];
+    private float[] damage = new float[64];
+
+    public GameMetrics(int workerPrice, int warriorPrice) {
+        this.workerPrice = workerPrice;
+        this.warriorPrice = warriorPrice;
+        reset();
+    }
+
+    /** Clears the metrics before the next game. */
+    public void reset() {
+        duration = endTime = 0;
+        winner = null;
+        firstKill = Float.NaN;
+        shotsFired = resourceSpawns = 0;
+        Arrays.fill(firstResources, -1);
+        Arrays.fill(lastResources, 0);
+        Arrays.fill(lastStatsTime, 0);
+        Arrays.fill(spent, 0);
+        units = 0;
+        Arrays.fill(unitRow, -1);
+    }
+
+    @Override
+    public void header(float mapWidth, float mapHeight, String team1, String team2, float duration) {
+        this.duration = duration;
+    }
+
+    @Override
+    public void entity(int entityId, EntityType type, Team team) {
+        if (type != EntityType.WARRIOR && type != EntityType.WORKER) return;
+        if (entityId >= unitRow.length) {
+            int size = unitRow.length;
+            unitRow = Arrays.copyOf(unitRow, Math.max(entityId + 1, size * 2));
+            Arrays.fill(unitRow, size, unitRow.length, -1);
+        }
+        if (units == unitType.length) grow();
+
+        int row = units++;
+        unitRow[entityId] = row;
+        unitType[row] = type;
+        unitTeam[row] = (byte) team.ordinal();
+        spawnTime[row] = Float.NaN;
+        deathTime[row] = Float.NaN;
+        lastX[row] = lastY[row] = Float.NaN;
+        distance[row] = 0;
+        health[row] = Float.NaN;
+        damage[row] = 0;
+    }
+
+    @Override
+    public void number(float time, int entityId, EntityType type, Property property, float value) {
+        // Some entities are still updated after the game has ended
+        if (winner != null) return;
+
+        if (type == EntityType.BULLET) {
+            if (property == Property.VISIBILITY && value != 0) shotsFired++;
+            return;
+        }
+        int row = row(entityId);
+        if (row < 0) return;
+
+        if (property == Property.VISIBILITY) {
+            if (value != 0) {
+                spawnTime[row] = time;
+                // The units the teams start with are free
+                if (time > 0) spent[unitTeam[row]] += unitType[row] == EntityType.WARRIOR ? warriorPrice : workerPrice;
+            } else {
+                deathTime[row] = time;
+                if (Float.isNaN(firstKill)) firstKill = time;
+            }
+        } else if (property == Property.HEALTH) {
+            if (value < health[row]) damage[row] += health[row] - value;
+            health[row] = value;
+        }
+    }
+
+    @Override
+    public void vector(float time, int entityId, EntityType type, Property property, float x, float y) {
+        if (winner != null || property != Property.POSITION) return;
+
+        if (type == EntityType.RESOURCE) {
+            if (x < PARKED) resourceSpawns++;
+            return;
+        }
+        int row = row(entityId);
+        if (row < 0) return;
+        if (!Float.isNaN(lastX[row])) {
+            float dx = x - lastX[row];
+            float dy = y - lastY[row];
+            distance[row] += (float) Math.sqrt(dx * dx + dy * dy);
+        }
+        lastX[row] = x;
+        lastY[row] = y;
+    }
+
+    @Override
+    public void gameStats(float time, Team team, int value, int resources, int workers, int warriors) {
+        if (winner != null) return;
+        int t = team.ordinal();
+        if (firstResources[t] < 0) firstResources[t] = resources;
+        lastResources[t] = resources;
+        lastStatsTime[t] = time;
+    }
+
+    @Override
+    public void end(float time, Team winner) {
+        this.endTime = time;
+        this.winner = winner;
+    }
+
+    /** Adds the metrics of the game that was read to the summary. */
+    public void addTo(ReplaySummary summary) {
+        float end = winner != null ? endTime : duration;
+        summary.games++;
+        if (winner == null || winner == Team.NONE) summary.draws++;
+        else summary.wins[winner.ordinal()]++;
+        summary.duration.add(end);
+        if (!Float.isNaN(firstKill)) summary.timeToFirstKill.add(firstKill);
+        summary.shotsFired.add(shotsFired);
+        summary.resourceSpawns.add(resourceSpawns);
+
+        int[] spawned = new int[TEAMS];
+        for (int row = 0; row < units; row++) {
+            if (Float.isNaN(spawnTime[row])) continue;
+            int team = unitTeam[row];
+            spawned[team]++;
+
+            float died = Float.isNaN(deathTime[row]) ? end : deathTime[row];
+            ReplaySummary.UnitStats stats = unitType[row] == EntityType.WARRIOR ? summary.warriors : summary.workers;
+            stats.lifetime.add(died - spawnTime[row]);
+            stats.distance.add(distance[row]);
+            stats.damageTaken.add(damage[row]);
+            if (!Float.isNaN(deathTime[row])) stats.deaths++;
+        }
+
+        for (Team team : ReplaySummary.PLAYING_TEAMS) {
+            int t = team.ordinal();
+            summary.unitsSpawned[t].add(spawned[t]);
+            if (firstResources[t] >= 0 && lastStatsTime[t] > 0) {
+                // Everything gathered was either spent on units or is still unspent
+                int income = lastResources[t] - firstResources[t] + spent[t];
+                summary.incomePerMinute[t].add(income * 60.0 / lastStatsTime[t]);
+            }
+        }
+    }
+
+    private int row(int entityId) {
+        return entityId < unitRow.length ? unitRow[entityId] : -1;
+    }
+
+    private void grow() {
+        int size = unitType.length * 2;
+        unitType = Arrays.copyOf(unitType, size);
+        unitTeam = Arrays.copyOf(unitTeam, size);
+        spawnTime = Arrays.copyOf(spawnTime, size);
+        deathTime = Arrays.copyOf(deathTime, size);
+        lastX = Arrays.copyOf(lastX, size);
+        lastY = Arrays.copyOf(lastY, size);
+        distance = Arrays.copyOf(distance, size);
+        health = Arrays.copyOf(health, size);
+        damage = Arrays.copyOf(damage, size);
+    }
+}
@@ -0,0 +1,6 @@
+package lia.replay;
+
+/** Properties of entities that change over time in a replay, each one is stored as a curve. */
+public enum Property {
+    POSITION, SIZE, TEXTURE_NAME, VISIBILITY, HEALTH, ROTATION, AMMUNITION, TEXT_BUBBLE, COLOR, GAME_STATS, UNKNOWN
+}
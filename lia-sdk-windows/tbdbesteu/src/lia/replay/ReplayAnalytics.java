@@ -0,0 +1,135 @@
+package lia.replay;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads every .lia replay in a directory and writes metrics aggregated
+ * over all of them as one line of JSON. Each thread has its own reader,
+ * metrics and partial summary and takes the next unread file until none
+ * are left, then the partial summaries are combined. Unit prices come
+ * from the game config unless they are given on the command line.
+ *
+ * Run with: java -cp build/libs/my-bot.jar lia.replay.ReplayAnalytics [directory] [options]
+ */
+public class ReplayAnalytics {
+
+    private final List<Path> files;
+    private final int workerPrice;
+    private final int warriorPrice;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public ReplayAnalytics(List<Path> files, int workerPrice, int warriorPrice) {
+        this.files = files;
+        this.workerPrice = workerPrice;
+        this.warriorPrice = warriorPrice;
+    }
+
+    /** Reads all files on the given number of threads and returns the combined summary. */
+    public ReplaySummary run(int threads) throws InterruptedException {
+        ReplaySummary[] partials = new ReplaySummary[threads];
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            ReplaySummary partial = partials[i] = new ReplaySummary();
+            workers[i] = new Thread(() -> readFiles(partial), "replay-reader-" + i);
+            workers[i].start();
+        }
+
+        ReplaySummary summary = new ReplaySummary();
+        for (int i = 0; i < threads; i++) {
+            workers[i].join();
+            summary.combine(partials[i]);
+        }
+        return summary;
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    private void readFiles(ReplaySummary summary) {
+        ReplayReader reader = new ReplayReader();
+        GameMetrics metrics = new GameMetrics(workerPrice, warriorPrice);
+        for (int i = next.getAndIncrement(); i < files.size(); i = next.getAndIncrement()) {
+            metrics.reset();
+            try {
+                reader.read(files.get(i), metrics);
+                metrics.addTo(summary);
+            } catch (IOException | RuntimeException e) {
+                failed.incrementAndGet();
+                System.err.println("Could not read " + files.get(i) + ": " + e);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Paths.get("../replays");
+        Path output = Paths.get("replay-summary.json");
+        Path config = Paths.get("../data/game-config.json");
+        int threads = Runtime.getRuntime().availableProcessors();
+        int workerPrice = -1;
+        int warriorPrice = -1;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--output": output = Paths.get(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--config": config = Paths.get(args[++i]); break;
+                case "--worker-price": workerPrice = Integer.parseInt(args[++i]); break;
+                case "--warrior-price": warriorPrice = Integer.parseInt(args[++i]); break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        System.out.println("Usage: ReplayAnalytics [directory] [--output file] [--threads n]"
+                                + " [--config game-config.json] [--worker-price n] [--warrior-price n]");
+                        return;
+                    }
+                    directory = Paths.get(args[i]);
+            }
+        }
+        if (workerPrice < 0 || warriorPrice < 0) {
+            try (Reader reader = Files.newBufferedReader(config)) {
+                JsonObject units = new JsonParser().parse(reader).getAsJsonObject().getAsJsonObject("units");
+                if (workerPrice < 0) workerPrice = units.get("workerPrice").getAsInt();
+                if (warriorPrice < 0) warriorPrice = units.get("warriorPrice").getAsInt();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not read the unit prices from " + config + ": " + e
+                        + ", give them with --worker-price and --warrior-price");
+                System.exit(1);
+            }
+        }
+
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(p -> p.toString().endsWith(".lia")).collect(Collectors.toList());
+        }
+        long bytes = 0;
+        for (Path file : files) bytes += Files.size(file);
+
+        long start = System.nanoTime();
+        ReplayAnalytics analytics = new ReplayAnalytics(files, workerPrice, warriorPrice);
+        ReplaySummary summary = analytics.run(threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        JsonObject json = summary.toJson();
+        json.addProperty("failed", analytics.getFailed());
+        try (Writer writer = Files.newBufferedWriter(output)) {
+            new Gson().toJson(json, writer);
+            writer.write('\n');
+        }
+        System.out.printf("Read %d replays (%.1f MB) on %d threads in %.2f s, %.0f MB/s, summary written to %s%n",
+                files.size(), bytes / 1e6, threads, seconds, bytes / 1e6 / seconds, output);
+    }
+}
@@ -0,0 +1,31 @@
+package lia.replay;
+
+/**
+ * Receives the contents of a replay from ReplayReader in file order.
+ * Times are in game seconds. Override only what you need.
+ */
+public interface ReplayListener {
+
+    default void header(float mapWidth, float mapHeight, String team1, String team2, float duration) {}
+
+    /** An entity was defined. Entities are defined before their first values. */
+    default void entity(int entityId, EntityType type, Team team) {}
+
+    /**
+     * A numeric property changed: VISIBILITY (1 visible, 0 hidden), HEALTH,
+     * AMMUNITION, or ROTATION in radians, which is not wrapped to a full turn.
+     */
+    default void number(float time, int entityId, EntityType type, Property property, float value) {}
+
+    /** A two dimensional property changed, POSITION or SIZE. */
+    default void vector(float time, int entityId, EntityType type, Property property, float x, float y) {}
+
+    /**
+     * Team statistics. Value is the price of the team's units plus its
+     * unspent resources.
+     */
+    default void gameStats(float time, Team team, int value, int resources, int workers, int warriors) {}
+
+    /** The game ended, winner is NONE if nobody won. */
+    default void end(float time, Team winner) {}
+}
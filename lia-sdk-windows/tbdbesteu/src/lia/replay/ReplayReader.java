@@ -0,0 +1,272 @@
+package lia.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streaming decoder for .lia replay files. A replay is a sequence of
+ * length-prefixed protobuf messages, each holding one entry: the game
+ * details, an entity or curve definition, a point on a curve, team
+ * statistics or the end of the game. The file is memory-mapped and
+ * decoded in one pass without building the messages as objects, points
+ * are resolved to their entity and property through lookup tables and
+ * passed on to a ReplayListener.
+ *
+ * A reader keeps its lookup tables between files, so use one per thread.
+ */
+public class ReplayReader {
+
+    // Top-level entries
+    private static final int GAME_DETAILS = 1;
+    private static final int ENTITY = 2;
+    private static final int END = 3;
+    private static final int CURVE = 4;
+    private static final int VECTOR_POINT = 6;
+    private static final int NUMBER_POINT = 8;
+    private static final int VECTOR_STEP_POINT = 9;
+    private static final int GAME_STATS = 13;
+
+    private static final byte[][] ENTITY_TYPE_NAMES = names(EntityType.values());
+    private static final byte[][] TEAM_NAMES = names(Team.values());
+    private static final byte[][] PROPERTY_NAMES = names(Property.values());
+
+    private static final EntityType[] ENTITY_TYPES = EntityType.values();
+    private static final Team[] TEAMS = Team.values();
+    private static final Property[] PROPERTIES = Property.values();
+
+    private ByteBuffer buffer;
+
+    private EntityType[] entityTypes = new EntityType[512];
+    private int[] curveEntities = new int[4096];
+    private Property[] curveProperties = new Property[4096];
+    /** Fields of the team statistics being decoded, by field number. */
+    private final int[] teamStats = new int[5];
+
+    // Fields of the entry being decoded
+    private float time, x, y;
+    private int id, curve;
+    private byte typeIndex, teamIndex, propertyIndex;
+
+    /** Reads the replay file and passes its contents to the listener. */
+    public void read(Path file, ReplayListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), listener);
+        }
+    }
+
+    /** Reads a replay from the buffer, from its position to its limit. */
+    public void read(ByteBuffer replay, ReplayListener listener) {
+        buffer = replay.order(ByteOrder.LITTLE_ENDIAN);
+        Arrays.fill(entityTypes, null);
+        Arrays.fill(curveProperties, null);
+
+        while (buffer.hasRemaining()) {
+            int end = (int) readVarint();
+            end += buffer.position();
+
+            int key = (int) readVarint();
+            if ((key & 7) == 2) {
+                int entryEnd = (int) readVarint();
+                entryEnd += buffer.position();
+                readEntry(key >>> 3, entryEnd, listener);
+            }
+            buffer.position(end);
+        }
+        buffer = null;
+    }
+
+    private void readEntry(int kind, int end, ReplayListener listener) {
+        time = x = y = 0;
+        id = curve = 0;
+        typeIndex = teamIndex = propertyIndex = -1;
+
+        switch (kind) {
+            case GAME_DETAILS:
+                readGameDetails(end, listener);
+                break;
+            case ENTITY:
+                readFields(end, ENTITY_TYPE_NAMES, TEAM_NAMES);
+                EntityType type = typeIndex >= 0 ? ENTITY_TYPES[typeIndex] : EntityType.UNKNOWN;
+                Team team = teamIndex >= 0 ? TEAMS[teamIndex] : Team.NONE;
+                if (id >= entityTypes.length) entityTypes = Arrays.copyOf(entityTypes, Math.max(id + 1, entityTypes.length * 2));
+                entityTypes[id] = type;
+                listener.entity(id, type, team);
+                break;
+            case CURVE:
+                readFields(end, null, PROPERTY_NAMES);
+                if (curve >= curveEntities.length) {
+                    int size = Math.max(curve + 1, curveEntities.length * 2);
+                    curveEntities = Arrays.copyOf(curveEntities, size);
+                    curveProperties = Arrays.copyOf(curveProperties, size);
+                }
+                curveEntities[curve] = id;
+                curveProperties[curve] = propertyIndex >= 0 ? PROPERTIES[propertyIndex] : Property.UNKNOWN;
+                break;
+            case NUMBER_POINT:
+                readFields(end, null, null);
+                if (known(curve)) {
+                    int entity = curveEntities[curve];
+                    listener.number(time, entity, entityType(entity), curveProperties[curve], x);
+                }
+                break;
+            case VECTOR_POINT:
+            case VECTOR_STEP_POINT:
+                readFields(end, null, null);
+                if (known(curve)) {
+                    int entity = curveEntities[curve];
+                    listener.vector(time, entity, entityType(entity), curveProperties[curve], x, y);
+                }
+                break;
+            case GAME_STATS:
+                readGameStats(end, listener);
+                break;
+            case END:
+                readFields(end, null, null);
+                listener.end(time, curve < TEAMS.length ? TEAMS[curve] : Team.NONE);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Reads the fields of an entry in the common layout: 1 time or id,
+     * 2 curve id or entity type, 3 x or value or team, 4 y or property name.
+     * Strings are matched against the name tables without decoding them.
+     */
+    private void readFields(int end, byte[][] typeNames, byte[][] nameNames) {
+        while (buffer.position() < end) {
+            int key = (int) readVarint();
+            int field = key >>> 3;
+            int wireType = key & 7;
+
+            if (wireType == 5) {
+                float value = buffer.getFloat();
+                if (field == 1) time = value;
+                else if (field == 3) x = value;
+                else if (field == 4) y = value;
+            } else if (wireType == 0) {
+                long value = readVarint();
+                if (field == 1) id = (int) value;
+                else if (field == 2) curve = (int) value;
+            } else if (wireType == 2) {
+                int length = (int) readVarint();
+                int start = buffer.position();
+                if (field == 2 && typeNames != null) typeIndex = match(start, length, typeNames);
+                else if (field == 3 && nameNames != null && typeNames != null) teamIndex = match(start, length, nameNames);
+                else if (field == 4 && nameNames != null) propertyIndex = match(start, length, nameNames);
+                buffer.position(start + length);
+            } else {
+                skip(wireType);
+            }
+        }
+    }
+
+    private void readGameDetails(int end, ReplayListener listener) {
+        float width = 0, height = 0, duration = 0;
+        String team1 = "", team2 = "";
+        while (buffer.position() < end) {
+            int key = (int) readVarint();
+            int field = key >>> 3;
+            int wireType = key & 7;
+            if (wireType == 5) {
+                float value = buffer.getFloat();
+                if (field == 1) width = value;
+                else if (field == 2) height = value;
+                else if (field == 5) duration = value;
+            } else if (wireType == 2 && (field == 3 || field == 4)) {
+                byte[] bytes = new byte[(int) readVarint()];
+                buffer.get(bytes);
+                String name = new String(bytes, StandardCharsets.UTF_8);
+                if (field == 3) team1 = name;
+                else team2 = name;
+            } else {
+                skip(wireType);
+            }
+        }
+        listener.header(width, height, team1, team2, duration);
+    }
+
+    private void readGameStats(int end, ReplayListener listener) {
+        float statsTime = 0;
+        while (buffer.position() < end) {
+            int key = (int) readVarint();
+            int field = key >>> 3;
+            int wireType = key & 7;
+            if (field == 1 && wireType == 5) {
+                statsTime = buffer.getFloat();
+            } else if ((field == 3 || field == 4) && wireType == 2) {
+                int teamEnd = (int) readVarint();
+                teamEnd += buffer.position();
+                Arrays.fill(teamStats, 0);
+                readTeamStats(teamEnd, teamStats);
+                listener.gameStats(statsTime, field == 3 ? Team.TEAM_1 : Team.TEAM_2,
+                        teamStats[1], teamStats[2], teamStats[3], teamStats[4]);
+            } else {
+                skip(wireType);
+            }
+        }
+    }
+
+    private void readTeamStats(int end, int[] stats) {
+        while (buffer.position() < end) {
+            int key = (int) readVarint();
+            int field = key >>> 3;
+            if ((key & 7) == 0 && field < stats.length) stats[field] = (int) readVarint();
+            else skip(key & 7);
+        }
+    }
+
+    private boolean known(int curveId) {
+        return curveId < curveProperties.length && curveProperties[curveId] != null;
+    }
+
+    private EntityType entityType(int entity) {
+        EntityType type = entity < entityTypes.length ? entityTypes[entity] : null;
+        return type != null ? type : EntityType.UNKNOWN;
+    }
+
+    private byte match(int start, int length, byte[][] names) {
+        for (int i = 0; i < names.length; i++) {
+            byte[] name = names[i];
+            if (name.length != length) continue;
+            int j = 0;
+            while (j < length && buffer.get(start + j) == name[j]) j++;
+            if (j == length) return (byte) i;
+        }
+        return -1;
+    }
+
+    private long readVarint() {
+        long result = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            result |= (long) (b & 0x7f) << shift;
+            if (b >= 0) return result;
+        }
+    }
+
+    private void skip(int wireType) {
+        switch (wireType) {
+            case 0: readVarint(); break;
+            case 1: buffer.position(buffer.position() + 8); break;
+            case 2: int length = (int) readVarint(); buffer.position(buffer.position() + length); break;
+            case 5: buffer.position(buffer.position() + 4); break;
+            default: throw new IllegalStateException("Unsupported wire type " + wireType);
+        }
+    }
+
+    private static byte[][] names(Enum<?>[] values) {
+        byte[][] names = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            names[i] = values[i].name().getBytes(StandardCharsets.US_ASCII);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,95 @@
+package lia.replay;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Metrics aggregated over many games. Each thread fills its own summary
+ * and the partial summaries are merged with combine at the end.
+ */
+public class ReplaySummary {
+
+    static final Team[] PLAYING_TEAMS = {Team.TEAM_1, Team.TEAM_2};
+    private static final int TEAMS = Team.values().length;
+
+    /** Aggregated metrics of the units of one type. */
+    public static class UnitStats {
+        public final Stat lifetime = new Stat();
+        public final Stat distance = new Stat();
+        public final Stat damageTaken = new Stat();
+        public long deaths;
+
+        void combine(UnitStats other) {
+            lifetime.combine(other.lifetime);
+            distance.combine(other.distance);
+            damageTaken.combine(other.damageTaken);
+            deaths += other.deaths;
+        }
+
+        JsonObject toJson() {
+            JsonObject json = new JsonObject();
+            json.add("lifetime", lifetime.toJson());
+            json.add("distance", distance.toJson());
+            json.add("damageTaken", damageTaken.toJson());
+            json.addProperty("deaths", deaths);
+            return json;
+        }
+    }
+
+    public long games;
+    public long draws;
+    /** Games won, indexed by Team ordinal. */
+    public final long[] wins = new long[TEAMS];
+    public final Stat duration = new Stat();
+    public final Stat timeToFirstKill = new Stat();
+    public final Stat shotsFired = new Stat();
+    public final Stat resourceSpawns = new Stat();
+    /** Units spawned per game, indexed by Team ordinal. */
+    public final Stat[] unitsSpawned = stats();
+    /** Resources gathered per minute, indexed by Team ordinal. */
+    public final Stat[] incomePerMinute = stats();
+    public final UnitStats workers = new UnitStats();
+    public final UnitStats warriors = new UnitStats();
+
+    public void combine(ReplaySummary other) {
+        games += other.games;
+        draws += other.draws;
+        for (int t = 0; t < TEAMS; t++) {
+            wins[t] += other.wins[t];
+            unitsSpawned[t].combine(other.unitsSpawned[t]);
+            incomePerMinute[t].combine(other.incomePerMinute[t]);
+        }
+        duration.combine(other.duration);
+        timeToFirstKill.combine(other.timeToFirstKill);
+        shotsFired.combine(other.shotsFired);
+        resourceSpawns.combine(other.resourceSpawns);
+        workers.combine(other.workers);
+        warriors.combine(other.warriors);
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("games", games);
+        json.addProperty("draws", draws);
+        json.add("duration", duration.toJson());
+        json.add("timeToFirstKill", timeToFirstKill.toJson());
+        json.add("shotsFired", shotsFired.toJson());
+        json.add("resourceSpawns", resourceSpawns.toJson());
+        for (Team team : PLAYING_TEAMS) {
+            int t = team.ordinal();
+            JsonObject teamJson = new JsonObject();
+            teamJson.addProperty("wins", wins[t]);
+            teamJson.add("unitsSpawned", unitsSpawned[t].toJson());
+            teamJson.add("incomePerMinute", incomePerMinute[t].toJson());
+            json.add(team.name(), teamJson);
+        }
+        json.add("workers", workers.toJson());
+        json.add("warriors", warriors.toJson());
+        return json;
+    }
+
+    private static Stat[] stats() {
+        Stat[] stats = new Stat[TEAMS];
+        for (int i = 0; i < TEAMS; i++) stats[i] = new Stat();
+        return stats;
+    }
+}
@@ -0,0 +1,379 @@
+package lia.replay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Converts .lia replays into the columnar format read by ColumnarReplay.
+ * Unit positions, rotations and health are sampled at a fixed tick rate,
+ * positions and rotations interpolated between the replay's points and
+ * health held from the last one. Shots and resource spawns become rows of
+ * the bullet and resource tables.
+ *
+ * Run with: java -cp build/libs/my-bot.jar lia.replay.ReplayTranscoder [directory or file] [options]
+ */
+public class ReplayTranscoder implements ReplayListener {
+
+    /** Ticks per second, the rate at which bots get the game state. */
+    public static final float DEFAULT_TICK_RATE = 10;
+    /** Resources are moved this far out of the map while waiting to respawn. */
+    private static final float PARKED = 10000;
+
+    /** Points of one curve in time order. */
+    private static class Points {
+        float[] time = new float[16];
+        float[] a = new float[16];
+        float[] b = new float[16];
+        int size;
+
+        void add(float t, float x, float y) {
+            if (size == time.length) {
+                time = Arrays.copyOf(time, size * 2);
+                a = Arrays.copyOf(a, size * 2);
+                b = Arrays.copyOf(b, size * 2);
+            }
+            time[size] = t;
+            a[size] = x;
+            b[size] = y;
+            size++;
+        }
+
+        /** Index of the last point at or before the time, -1 if there is none, searching on from the hint. */
+        int before(float t, int hint) {
+            int i = Math.max(hint, 0);
+            while (i < size && time[i] <= t) i++;
+            return i - 1;
+        }
+    }
+
+    private static class Entity {
+        final int id;
+        final EntityType type;
+        final Team team;
+        final Points position = new Points();
+        final Points rotation = new Points();
+        final Points health = new Points();
+        final Points visibility = new Points();
+
+        Entity(int id, EntityType type, Team team) {
+            this.id = id;
+            this.type = type;
+            this.team = team;
+        }
+    }
+
+    private final float tickRate;
+
+    private float mapWidth, mapHeight, duration, endTime;
+    private Team winner;
+    private Entity[] entities = new Entity[512];
+    private final List<Entity> units = new ArrayList<>();
+    private final List<Entity> bullets = new ArrayList<>();
+    private final List<Entity> resources = new ArrayList<>();
+
+    public ReplayTranscoder(float tickRate) {
+        this.tickRate = tickRate;
+    }
+
+    @Override
+    public void header(float mapWidth, float mapHeight, String team1, String team2, float duration) {
+        this.mapWidth = mapWidth;
+        this.mapHeight = mapHeight;
+        this.duration = duration;
+    }
+
+    @Override
+    public void entity(int entityId, EntityType type, Team team) {
+        if (entityId >= entities.length) entities = Arrays.copyOf(entities, Math.max(entityId + 1, entities.length * 2));
+        Entity entity = new Entity(entityId, type, team);
+        entities[entityId] = entity;
+        if (type == EntityType.WARRIOR || type == EntityType.WORKER) units.add(entity);
+        else if (type == EntityType.BULLET) bullets.add(entity);
+        else if (type == EntityType.RESOURCE) resources.add(entity);
+    }
+
+    @Override
+    public void number(float time, int entityId, EntityType type, Property property, float value) {
+        Entity entity = entity(entityId);
+        if (entity == null) return;
+        if (property == Property.VISIBILITY) entity.visibility.add(time, value, 0);
+        else if (property == Property.ROTATION) entity.rotation.add(time, value, 0);
+        else if (property == Property.HEALTH) entity.health.add(time, value, 0);
+    }
+
+    @Override
+    public void vector(float time, int entityId, EntityType type, Property property, float x, float y) {
+        Entity entity = entity(entityId);
+        if (entity != null && property == Property.POSITION) entity.position.add(time, x, y);
+    }
+
+    @Override
+    public void end(float time, Team winner) {
+        endTime = time;
+        this.winner = winner;
+    }
+
+    private Entity entity(int entityId) {
+        // Some entities are still updated after the game has ended
+        if (winner != null || entityId >= entities.length) return null;
+        return entities[entityId];
+    }
+
+    /** Writes the replay that was read to the file. */
+    public void write(Path file) throws IOException {
+        float end = winner != null ? endTime : duration;
+        int ticks = (int) (end * tickRate) + 1;
+        ColumnWriter out = new ColumnWriter();
+
+        writeUnits(out, ticks);
+        writeBullets(out, ticks);
+        writeResources(out, ticks);
+
+        ByteBuffer header = ByteBuffer.allocate(ColumnarReplay.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(ColumnarReplay.MAGIC).putInt(ColumnarReplay.VERSION).putFloat(tickRate).putInt(ticks)
+                .putFloat(mapWidth).putFloat(mapHeight).putFloat(duration)
+                .putInt((winner != null ? winner : Team.NONE).ordinal());
+        Files.write(file, out.finish(header.array()));
+    }
+
+    private void writeUnits(ColumnWriter out, int ticks) {
+        int n = units.size();
+        int[] id = new int[n], type = new int[n], team = new int[n], spawn = new int[n], death = new int[n];
+        for (int row = 0; row < n; row++) {
+            Entity unit = units.get(row);
+            id[row] = unit.id;
+            type[row] = unit.type.ordinal();
+            team[row] = unit.team.ordinal();
+            spawn[row] = ticks;
+            death[row] = ticks;
+            Points visibility = unit.visibility;
+            for (int i = 0; i < visibility.size; i++) {
+                int tick = (int) Math.ceil(visibility.time[i] * tickRate);
+                if (visibility.a[i] != 0 && spawn[row] == ticks) spawn[row] = tick;
+                else if (visibility.a[i] == 0 && spawn[row] < ticks) death[row] = Math.max(spawn[row], tick);
+            }
+            if (spawn[row] == ticks) death[row] = ticks;
+        }
+        out.table(ColumnField.UNIT_ID, id, n);
+        out.table(ColumnField.UNIT_TYPE, type, n);
+        out.table(ColumnField.UNIT_TEAM, team, n);
+        out.table(ColumnField.UNIT_SPAWN_TICK, spawn, n);
+        out.table(ColumnField.UNIT_DEATH_TICK, death, n);
+
+        int[] x = new int[ticks], y = new int[ticks], angle = new int[ticks], health = new int[ticks];
+        for (int row = 0; row < n; row++) {
+            Entity unit = units.get(row);
+            int position = -1, rotation = -1, hp = -1;
+            int length = death[row] - spawn[row];
+            for (int i = 0; i < length; i++) {
+                float time = (spawn[row] + i) / tickRate;
+                position = unit.position.before(time, position);
+                rotation = unit.rotation.before(time, rotation);
+                hp = unit.health.before(time, hp);
+                x[i] = quantize(interpolate(unit.position, unit.position.a, position, time), ColumnField.UNIT_X);
+                y[i] = quantize(interpolate(unit.position, unit.position.b, position, time), ColumnField.UNIT_Y);
+                angle[i] = quantize((float) Math.toDegrees(interpolate(unit.rotation, unit.rotation.a, rotation, time)),
+                        ColumnField.UNIT_ANGLE);
+                health[i] = quantize(hp < 0 ? 0 : unit.health.a[hp], ColumnField.UNIT_HEALTH);
+            }
+            out.track(ColumnField.UNIT_X, row, spawn[row], x, length);
+            out.track(ColumnField.UNIT_Y, row, spawn[row], y, length);
+            out.track(ColumnField.UNIT_ANGLE, row, spawn[row], angle, length);
+            out.track(ColumnField.UNIT_HEALTH, row, spawn[row], health, length);
+        }
+    }
+
+    private void writeBullets(ColumnWriter out, int ticks) {
+        // A bullet entity is reused for many shots, each shown and hidden once
+        List<float[]> shots = new ArrayList<>();
+        for (Entity bullet : bullets) {
+            Points visibility = bullet.visibility;
+            Points position = bullet.position;
+            int first = -1;
+            for (int i = 0; i < visibility.size; i++) {
+                if (visibility.a[i] == 0) continue;
+                float fired = visibility.time[i];
+                float gone = i + 1 < visibility.size ? visibility.time[i + 1] : Float.POSITIVE_INFINITY;
+                first = position.before(fired, first);
+                int last = position.before(gone, first);
+                if (first < 0 || last < 0) continue;
+                shots.add(new float[]{fired, gone, position.a[first], position.b[first], position.a[last], position.b[last]});
+            }
+        }
+        shots.sort((a, b) -> Float.compare(a[0], b[0]));
+
+        int n = shots.size();
+        int[] firedTick = new int[n], goneTick = new int[n], startX = new int[n], startY = new int[n], endX = new int[n], endY = new int[n];
+        for (int i = 0; i < n; i++) {
+            float[] shot = shots.get(i);
+            firedTick[i] = tick(shot[0], ticks);
+            goneTick[i] = Math.max(firedTick[i], tick(shot[1], ticks));
+            startX[i] = quantize(shot[2], ColumnField.BULLET_START_X);
+            startY[i] = quantize(shot[3], ColumnField.BULLET_START_Y);
+            endX[i] = quantize(shot[4], ColumnField.BULLET_END_X);
+            endY[i] = quantize(shot[5], ColumnField.BULLET_END_Y);
+        }
+        out.table(ColumnField.BULLET_FIRED_TICK, firedTick, n);
+        out.table(ColumnField.BULLET_GONE_TICK, goneTick, n);
+        out.table(ColumnField.BULLET_START_X, startX, n);
+        out.table(ColumnField.BULLET_START_Y, startY, n);
+        out.table(ColumnField.BULLET_END_X, endX, n);
+        out.table(ColumnField.BULLET_END_Y, endY, n);
+    }
+
+    private void writeResources(ColumnWriter out, int ticks) {
+        // Every position inside the map is a spawn, moving out of the map is a pickup
+        List<float[]> spawns = new ArrayList<>();
+        for (Entity resource : resources) {
+            Points position = resource.position;
+            for (int i = 0; i < position.size; i++) {
+                if (position.a[i] >= PARKED) continue;
+                float gone = i + 1 < position.size ? position.time[i + 1] : Float.POSITIVE_INFINITY;
+                spawns.add(new float[]{position.time[i], gone, position.a[i], position.b[i]});
+            }
+        }
+        spawns.sort((a, b) -> Float.compare(a[0], b[0]));
+
+        int n = spawns.size();
+        int[] spawnTick = new int[n], goneTick = new int[n], x = new int[n], y = new int[n];
+        for (int i = 0; i < n; i++) {
+            float[] spawn = spawns.get(i);
+            spawnTick[i] = tick(spawn[0], ticks);
+            goneTick[i] = Math.max(spawnTick[i], tick(spawn[1], ticks));
+            x[i] = quantize(spawn[2], ColumnField.RESOURCE_X);
+            y[i] = quantize(spawn[3], ColumnField.RESOURCE_Y);
+        }
+        out.table(ColumnField.RESOURCE_SPAWN_TICK, spawnTick, n);
+        out.table(ColumnField.RESOURCE_GONE_TICK, goneTick, n);
+        out.table(ColumnField.RESOURCE_X, x, n);
+        out.table(ColumnField.RESOURCE_Y, y, n);
+    }
+
+    private int tick(float time, int ticks) {
+        return Math.min(ticks, (int) Math.ceil(time * tickRate));
+    }
+
+    /** Value of a curve at the time, linear between the point before and the one after. */
+    private static float interpolate(Points points, float[] values, int before, float time) {
+        if (before < 0) return points.size > 0 ? values[0] : 0;
+        if (before + 1 >= points.size) return values[before];
+        float t0 = points.time[before];
+        float t1 = points.time[before + 1];
+        if (t1 <= t0) return values[before + 1];
+        return values[before] + (values[before + 1] - values[before]) * (time - t0) / (t1 - t0);
+    }
+
+    private static int quantize(float value, ColumnField field) {
+        return Math.round(value * field.scale);
+    }
+
+    /** Encodes columns into blocks and builds the footer. */
+    private static class ColumnWriter {
+        private byte[] data = new byte[1 << 16];
+        private int size;
+        private final List<int[]> columns = new ArrayList<>();
+        private final List<Integer> blockOffsets = new ArrayList<>();
+
+        void table(ColumnField field, int[] values, int count) {
+            column(field, 0, 0, values, count);
+        }
+
+        void track(ColumnField field, int row, int firstTick, int[] values, int count) {
+            column(field, row, firstTick, values, count);
+        }
+
+        private void column(ColumnField field, int row, int first, int[] values, int count) {
+            columns.add(new int[]{field.ordinal(), row, first, count});
+            for (int i = 0; i < count; i++) {
+                if (i % ColumnarReplay.BLOCK_SIZE == 0) blockOffsets.add(size);
+                int previous = i % ColumnarReplay.BLOCK_SIZE == 0 ? 0 : values[i - 1];
+                writeVarint(zigzag(values[i] - previous));
+            }
+        }
+
+        /** Returns the whole file, the header followed by the column data and the footer. */
+        byte[] finish(byte[] header) {
+            int dataEnd = size;
+            int footerOffset = header.length + size;
+            writeVarint(columns.size());
+            for (int[] column : columns) {
+                for (int value : column) writeVarint(value);
+            }
+            blockOffsets.add(dataEnd);
+            int previous = 0;
+            for (int offset : blockOffsets) {
+                writeVarint(offset - previous);
+                previous = offset;
+            }
+
+            ByteBuffer file = ByteBuffer.allocate(header.length + size + ColumnarReplay.TRAILER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            file.put(header).put(data, 0, size).putLong(footerOffset).putInt(ColumnarReplay.MAGIC);
+            return file.array();
+        }
+
+        private void writeVarint(int value) {
+            if (size + 5 > data.length) data = Arrays.copyOf(data, data.length * 2);
+            while ((value & ~0x7f) != 0) {
+                data[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        private static int zigzag(int value) {
+            return (value << 1) ^ (value >> 31);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path input = Paths.get("../replays");
+        Path output = null;
+        float tickRate = DEFAULT_TICK_RATE;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--output": output = Paths.get(args[++i]); break;
+                case "--tick-rate": tickRate = Float.parseFloat(args[++i]); break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        System.out.println("Usage: ReplayTranscoder [directory or file] [--output directory] [--tick-rate n]");
+                        return;
+                    }
+                    input = Paths.get(args[i]);
+            }
+        }
+
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(input)) {
+            files = paths.filter(p -> p.toString().endsWith(".lia")).collect(Collectors.toList());
+        }
+        ReplayReader reader = new ReplayReader();
+        long inputBytes = 0, outputBytes = 0;
+        long start = System.nanoTime();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            Path directory = output != null ? output : file.getParent();
+            Files.createDirectories(directory);
+            Path target = directory.resolve(name.substring(0, name.length() - ".lia".length()) + ".liac");
+
+            ReplayTranscoder transcoder = new ReplayTranscoder(tickRate);
+            reader.read(file, transcoder);
+            transcoder.write(target);
+            inputBytes += Files.size(file);
+            outputBytes += Files.size(target);
+        }
+        System.out.printf("Transcoded %d replays in %.2f s, %.1f MB to %.1f MB (%.1f%%)%n", files.size(),
+                (System.nanoTime() - start) / 1e9, inputBytes / 1e6, outputBytes / 1e6,
+                inputBytes == 0 ? 0 : 100.0 * outputBytes / inputBytes);
+    }
+}
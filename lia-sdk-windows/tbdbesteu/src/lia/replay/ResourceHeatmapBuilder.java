@@ -0,0 +1,143 @@
+package lia.replay;
+
+import lia.ResourceHeatmap;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Learns a ResourceHeatmap from the resource spawns in replays. Spawns
+ * are counted per grid cell, smoothed over the neighbouring cells so that
+ * a handful of games already gives a usable map, and mixed with a little
+ * of a uniform distribution so that no cell is ruled out completely.
+ *
+ * Run with: java -cp build/libs/my-bot.jar lia.replay.ResourceHeatmapBuilder [directory] [options]
+ */
+public class ResourceHeatmapBuilder implements ReplayListener {
+
+    /** Resources are moved this far out of the map while waiting to respawn. */
+    private static final float PARKED = 10000;
+    /** Share of the probability spread evenly over all cells. */
+    private static final float UNIFORM_SHARE = 0.05f;
+
+    private final float cellSize;
+    private float mapWidth, mapHeight;
+    private int columns, rows;
+    private float[] counts;
+    private int spawns, games;
+
+    // Map size of the replay being read
+    private float replayWidth, replayHeight;
+    private boolean ended;
+
+    public ResourceHeatmapBuilder(float cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    @Override
+    public void header(float mapWidth, float mapHeight, String team1, String team2, float duration) {
+        replayWidth = mapWidth;
+        replayHeight = mapHeight;
+        ended = false;
+        games++;
+        if (counts == null) {
+            // The grid follows the first replay, spawns on maps of other sizes are scaled to it
+            this.mapWidth = mapWidth;
+            this.mapHeight = mapHeight;
+            columns = (int) Math.ceil(mapWidth / cellSize);
+            rows = (int) Math.ceil(mapHeight / cellSize);
+            counts = new float[columns * rows];
+        }
+    }
+
+    @Override
+    public void vector(float time, int entityId, EntityType type, Property property, float x, float y) {
+        if (ended || type != EntityType.RESOURCE || property != Property.POSITION || x >= PARKED) return;
+        add(x / replayWidth, y / replayHeight);
+    }
+
+    @Override
+    public void end(float time, Team winner) {
+        ended = true;
+    }
+
+    /** Adds a spawn at a point given relative to the map size. */
+    public void add(float relativeX, float relativeY) {
+        int column = Math.min(columns - 1, Math.max(0, (int) (relativeX * columns)));
+        int row = Math.min(rows - 1, Math.max(0, (int) (relativeY * rows)));
+        counts[column * rows + row]++;
+        spawns++;
+    }
+
+    /** Smooths and normalizes the counts and writes the heatmap. */
+    public void write(Path file) throws IOException {
+        float[] smoothed = new float[counts.length];
+        float total = 0;
+        for (int column = 0; column < columns; column++) {
+            for (int row = 0; row < rows; row++) {
+                float sum = 0;
+                int n = 0;
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dy = -1; dy <= 1; dy++) {
+                        int c = column + dx;
+                        int r = row + dy;
+                        if (c < 0 || r < 0 || c >= columns || r >= rows) continue;
+                        // The cell itself counts as much as its eight neighbours together
+                        float weight = dx == 0 && dy == 0 ? 8 : 1;
+                        sum += weight * counts[c * rows + r];
+                        n += weight;
+                    }
+                }
+                smoothed[column * rows + row] = sum / n;
+                total += sum / n;
+            }
+        }
+
+        float[] cells = new float[counts.length];
+        for (int i = 0; i < cells.length; i++) {
+            float learned = total > 0 ? smoothed[i] / total : 0;
+            cells[i] = (1 - UNIFORM_SHARE) * learned + UNIFORM_SHARE / cells.length;
+        }
+        ResourceHeatmap.write(file, mapWidth, mapHeight, columns, rows, spawns, games, cells);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Paths.get("../replays");
+        Path output = Paths.get(ResourceHeatmap.DEFAULT_FILE);
+        float cellSize = 2;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--output": output = Paths.get(args[++i]); break;
+                case "--cell-size": cellSize = Float.parseFloat(args[++i]); break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        System.out.println("Usage: ResourceHeatmapBuilder [directory] [--output file] [--cell-size n]");
+                        return;
+                    }
+                    directory = Paths.get(args[i]);
+            }
+        }
+
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            files = paths.filter(p -> p.toString().endsWith(".lia")).collect(Collectors.toList());
+        }
+        if (files.isEmpty()) {
+            System.out.println("No replays in " + directory);
+            return;
+        }
+
+        ReplayReader reader = new ReplayReader();
+        ResourceHeatmapBuilder builder = new ResourceHeatmapBuilder(cellSize);
+        for (Path file : files) reader.read(file, builder);
+        builder.write(output);
+        System.out.printf("Learned %d resource spawns from %d replays, %dx%d cells written to %s (%d bytes)%n",
+                builder.spawns, builder.games, builder.columns, builder.rows, output, Files.size(output));
+    }
+}
@@ -0,0 +1,58 @@
+package lia.replay;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Running count, sum, sum of squares, minimum and maximum of a metric.
+ * Partial stats computed on different threads are merged with combine.
+ */
+public class Stat {
+
+    private long n;
+    private double sum;
+    private double sumSq;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public void add(double value) {
+        n++;
+        sum += value;
+        sumSq += value * value;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    public void combine(Stat other) {
+        n += other.n;
+        sum += other.sum;
+        sumSq += other.sumSq;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long count() {
+        return n;
+    }
+
+    public double mean() {
+        return n == 0 ? Double.NaN : sum / n;
+    }
+
+    public double standardDeviation() {
+        if (n < 2) return 0;
+        double mean = sum / n;
+        return Math.sqrt(Math.max(0, (sumSq - n * mean * mean) / (n - 1)));
+    }
+
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("n", n);
+        if (n > 0) {
+            json.addProperty("mean", (float) mean());
+            json.addProperty("sd", (float) standardDeviation());
+            json.addProperty("min", (float) min);
+            json.addProperty("max", (float) max);
+        }
+        return json;
+    }
+}
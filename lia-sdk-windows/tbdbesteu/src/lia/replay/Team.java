@@ -0,0 +1,6 @@
+package lia.replay;
+
+/** Team of an entity in a replay, the ordinal is the team number the replay uses for the winner. */
+public enum Team {
+    NONE, TEAM_1, TEAM_2
+}
@@ -0,0 +1,63 @@
+package lia.tuning;
+
+import lia.StrategyParams;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plays games by running an external command, usually a script around
+ * the lia CLI that starts a match of the bot against a sparring bot. The
+ * parameters are written to a file whose path is passed to the bot in
+ * the LIA_STRATEGY_PARAMS environment variable, which child processes
+ * inherit. In the command, {seed} and {port} are replaced with the game
+ * seed and a port unique to the evaluation slot. The command must print
+ * the score of the game as the last line of its output.
+ */
+public class CommandGameEvaluator implements GameEvaluator {
+
+    private final String[] command;
+    private final int basePort;
+
+    public CommandGameEvaluator(String[] command, int basePort) {
+        this.command = command;
+        this.basePort = basePort;
+    }
+
+    @Override
+    public double play(StrategyParams params, long seed, int slot) throws Exception {
+        Path paramsFile = Files.createTempFile("strategy-params", ".properties");
+        try {
+            params.save(paramsFile);
+
+            List<String> arguments = new ArrayList<>();
+            for (String part : command) {
+                arguments.add(part.replace("{seed}", Long.toString(seed))
+                        .replace("{port}", Integer.toString(basePort + slot)));
+            }
+            ProcessBuilder builder = new ProcessBuilder(arguments).redirectErrorStream(true);
+            builder.environment().put(StrategyParams.ENVIRONMENT_VARIABLE, paramsFile.toString());
+            Process process = builder.start();
+
+            String lastLine = null;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) lastLine = line.trim();
+                }
+            }
+            int exitCode = process.waitFor();
+            if (exitCode != 0 || lastLine == null) {
+                throw new IOException("Game command exited with " + exitCode + ", last output: " + lastLine);
+            }
+            return Double.parseDouble(lastLine);
+        } finally {
+            Files.deleteIfExists(paramsFile);
+        }
+    }
+}
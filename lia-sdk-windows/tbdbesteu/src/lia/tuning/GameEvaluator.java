@@ -0,0 +1,18 @@
+package lia.tuning;
+
+import lia.StrategyParams;
+
+/**
+ * Plays one game with the given strategy parameters and scores it.
+ * Evaluators are called from several threads at once, each thread has its
+ * own slot number so that games can use separate ports and directories.
+ */
+public interface GameEvaluator {
+
+    /**
+     * Returns the score of the game, higher is better. Games with the same
+     * seed should be as alike as the engine allows, so that candidates are
+     * compared on the same maps.
+     */
+    double play(StrategyParams params, long seed, int slot) throws Exception;
+}
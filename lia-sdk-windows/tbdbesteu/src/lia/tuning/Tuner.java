@@ -0,0 +1,303 @@
+package lia.tuning;
+
+import lia.StrategyParams;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Genetic search over StrategyParams. Every generation all candidates
+ * play the same set of games, spread over a thread pool, and are ranked
+ * by their mean score. The best ones are kept as they are and the rest of
+ * the next generation is bred from tournament-selected parents with
+ * blend crossover and gaussian mutation. The population is written to a
+ * checkpoint after every generation so that a long run can be resumed.
+ *
+ * Run with: java -cp build/libs/my-bot.jar lia.tuning.Tuner [options] -- command...
+ * The command is run for every game, see CommandGameEvaluator.
+ */
+public class Tuner {
+
+    private static final int TOURNAMENT_SIZE = 3;
+
+    private final GameEvaluator evaluator;
+    private final int populationSize;
+    private final int elites;
+    private final int gamesPerCandidate;
+    private final int threads;
+    /** Chance that a parameter of a child is mutated. */
+    private final double mutationRate;
+    /** Standard deviation of a mutation as a share of the parameter's range. */
+    private final double mutationScale;
+    private final Path checkpoint;
+    private final long seed;
+
+    private int generation;
+    private List<double[]> population = new ArrayList<>();
+    private double[] best;
+    private double bestFitness = Double.NEGATIVE_INFINITY;
+
+    public Tuner(GameEvaluator evaluator, int populationSize, int elites, int gamesPerCandidate, int threads,
+                 double mutationRate, double mutationScale, Path checkpoint, long seed) {
+        this.evaluator = evaluator;
+        this.populationSize = populationSize;
+        this.elites = elites;
+        this.gamesPerCandidate = gamesPerCandidate;
+        this.threads = threads;
+        this.mutationRate = mutationRate;
+        this.mutationScale = mutationScale;
+        this.checkpoint = checkpoint;
+        this.seed = seed;
+    }
+
+    /**
+     * Runs the search until the given number of generations is done and
+     * returns the best parameters found, or the defaults if no candidate
+     * got a score.
+     */
+    public StrategyParams run(int generations) throws Exception {
+        if (checkpoint != null && Files.exists(checkpoint)) {
+            loadCheckpoint();
+            System.out.println("Resuming from generation " + generation);
+        } else {
+            initialPopulation();
+        }
+
+        AtomicInteger slots = new AtomicInteger();
+        ThreadLocal<Integer> slot = ThreadLocal.withInitial(slots::getAndIncrement);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "tuner-game");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            for (; generation < generations; generation++) {
+                Random random = generationRandom();
+                long[] gameSeeds = new long[gamesPerCandidate];
+                for (int i = 0; i < gameSeeds.length; i++) gameSeeds[i] = random.nextLong();
+
+                double[] fitness = evaluate(pool, slot, gameSeeds);
+                Integer[] order = new Integer[population.size()];
+                for (int i = 0; i < order.length; i++) order[i] = i;
+                Arrays.sort(order, Comparator.comparingDouble((Integer i) -> fitness[i]).reversed());
+
+                if (fitness[order[0]] > bestFitness) {
+                    bestFitness = fitness[order[0]];
+                    best = population.get(order[0]).clone();
+                }
+                System.out.printf("Generation %d: best %.3f, mean %.3f, best so far %.3f%n", generation,
+                        fitness[order[0]], Arrays.stream(fitness).filter(Double::isFinite).average().orElse(Double.NaN),
+                        bestFitness);
+
+                population = breed(order, fitness, random);
+                if (checkpoint != null) saveCheckpoint(generation + 1);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if (best == null) {
+            // No generation was run or no candidate finished a game
+            System.out.println("No candidate has a score, falling back to the default parameters");
+            return new StrategyParams();
+        }
+        return StrategyParams.fromVector(best);
+    }
+
+    /** Random numbers for a generation, derived from the seed so that a resumed run continues the same way. */
+    private Random generationRandom() {
+        return new Random(seed * 31 + generation);
+    }
+
+    private void initialPopulation() {
+        Random random = new Random(seed);
+        // Start from the hand-tuned values and random points around the space
+        population.add(new StrategyParams().toVector());
+        while (population.size() < populationSize) {
+            double[] genes = new double[StrategyParams.PARAMS.length];
+            for (int i = 0; i < genes.length; i++) {
+                StrategyParams.Param param = StrategyParams.PARAMS[i];
+                genes[i] = param.min + random.nextDouble() * (param.max - param.min);
+            }
+            population.add(StrategyParams.fromVector(genes).toVector());
+        }
+        generation = 0;
+    }
+
+    private double[] evaluate(ExecutorService pool, ThreadLocal<Integer> slot, long[] gameSeeds) throws InterruptedException {
+        List<List<Future<Double>>> games = new ArrayList<>();
+        for (double[] genes : population) {
+            StrategyParams params = StrategyParams.fromVector(genes);
+            List<Future<Double>> candidateGames = new ArrayList<>();
+            for (long gameSeed : gameSeeds) {
+                candidateGames.add(pool.submit(() -> evaluator.play(params, gameSeed, slot.get())));
+            }
+            games.add(candidateGames);
+        }
+
+        double[] fitness = new double[population.size()];
+        for (int c = 0; c < fitness.length; c++) {
+            double sum = 0;
+            int played = 0;
+            for (Future<Double> game : games.get(c)) {
+                try {
+                    sum += game.get();
+                    played++;
+                } catch (Exception e) {
+                    System.out.println("Game of candidate " + c + " failed: " + e.getMessage());
+                }
+            }
+            fitness[c] = played == 0 ? Double.NEGATIVE_INFINITY : sum / played;
+        }
+        return fitness;
+    }
+
+    private List<double[]> breed(Integer[] order, double[] fitness, Random random) {
+        List<double[]> next = new ArrayList<>();
+        for (int i = 0; i < elites && i < order.length; i++) {
+            next.add(population.get(order[i]).clone());
+        }
+
+        int n = StrategyParams.PARAMS.length;
+        while (next.size() < populationSize) {
+            double[] mother = population.get(tournament(fitness, random));
+            double[] father = population.get(tournament(fitness, random));
+            double[] child = new double[n];
+            for (int i = 0; i < n; i++) {
+                StrategyParams.Param param = StrategyParams.PARAMS[i];
+                // Blend crossover, the child may land a bit outside its parents
+                double low = Math.min(mother[i], father[i]);
+                double high = Math.max(mother[i], father[i]);
+                double spread = (high - low) * 0.5;
+                child[i] = low - spread + random.nextDouble() * (high - low + 2 * spread);
+                if (random.nextDouble() < mutationRate) {
+                    child[i] += random.nextGaussian() * mutationScale * (param.max - param.min);
+                }
+            }
+            next.add(StrategyParams.fromVector(child).toVector());
+        }
+        return next;
+    }
+
+    private int tournament(double[] fitness, Random random) {
+        int winner = random.nextInt(fitness.length);
+        for (int i = 1; i < TOURNAMENT_SIZE; i++) {
+            int challenger = random.nextInt(fitness.length);
+            if (fitness[challenger] > fitness[winner]) winner = challenger;
+        }
+        return winner;
+    }
+
+    private void saveCheckpoint(int nextGeneration) throws IOException {
+        Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporary)) {
+            writer.write("# Tuner checkpoint, parameters in the order of StrategyParams.PARAMS\n");
+            writer.write("generation=" + nextGeneration + "\n");
+            writer.write("parameters=" + StrategyParams.PARAMS.length + "\n");
+            if (best != null) {
+                writer.write("bestFitness=" + bestFitness + "\n");
+                writer.write("best=" + join(best) + "\n");
+            }
+            for (double[] genes : population) {
+                writer.write("member=" + join(genes) + "\n");
+            }
+        }
+        // Replace the old checkpoint in one step so that a crash never leaves half a file
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void loadCheckpoint() throws IOException {
+        population = new ArrayList<>();
+        for (String line : Files.readAllLines(checkpoint)) {
+            if (line.startsWith("#") || line.isEmpty()) continue;
+            int separator = line.indexOf('=');
+            String key = line.substring(0, separator);
+            String value = line.substring(separator + 1);
+            switch (key) {
+                case "generation": generation = Integer.parseInt(value); break;
+                case "parameters":
+                    if (Integer.parseInt(value) != StrategyParams.PARAMS.length) {
+                        throw new IOException("Checkpoint was written for different parameters");
+                    }
+                    break;
+                case "bestFitness": bestFitness = Double.parseDouble(value); break;
+                case "best": best = split(value); break;
+                case "member": population.add(split(value)); break;
+                default: break;
+            }
+        }
+    }
+
+    private static String join(double[] values) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) builder.append(' ');
+            builder.append(values[i]);
+        }
+        return builder.toString();
+    }
+
+    private static double[] split(String values) {
+        String[] parts = values.trim().split(" ");
+        double[] result = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) result[i] = Double.parseDouble(parts[i]);
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int generations = 30;
+        int population = 16;
+        int elites = 2;
+        int games = 8;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int port = 9000;
+        long seed = 1;
+        Path checkpoint = Paths.get("tuner-checkpoint.txt");
+        Path output = Paths.get("best-params.properties");
+        String[] command = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--generations": generations = Integer.parseInt(args[++i]); break;
+                case "--population": population = Integer.parseInt(args[++i]); break;
+                case "--elites": elites = Integer.parseInt(args[++i]); break;
+                case "--games": games = Integer.parseInt(args[++i]); break;
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--port": port = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--checkpoint": checkpoint = Paths.get(args[++i]); break;
+                case "--output": output = Paths.get(args[++i]); break;
+                case "--":
+                    command = Arrays.copyOfRange(args, i + 1, args.length);
+                    i = args.length;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (command == null || command.length == 0) {
+            System.out.println("Usage: Tuner [--generations n] [--population n] [--elites n] [--games n] [--threads n]"
+                    + " [--port n] [--seed n] [--checkpoint file] [--output file] -- command {seed} {port}...");
+            return;
+        }
+
+        Tuner tuner = new Tuner(new CommandGameEvaluator(command, port), population, elites, games, threads,
+                0.2, 0.1, checkpoint, seed);
+        StrategyParams best = tuner.run(generations);
+        best.save(output);
+        System.out.print("Best parameters:\n" + best);
+    }
+}